@@ -47,6 +47,7 @@
 import static org.eclipse.jgit.util.HttpSupport.METHOD_POST;
 import static org.eclipse.jgit.util.HttpSupport.METHOD_PUT;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -85,6 +86,7 @@
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
@@ -92,9 +94,11 @@
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.eclipse.jgit.transport.http.HttpConnection;
 import org.eclipse.jgit.transport.http.apache.internal.HttpApacheText;
 import org.eclipse.jgit.util.TemporaryBuffer;
@@ -128,30 +132,18 @@ public class HttpClientConnection implements HttpConnection {
 
 	private Boolean followRedirects;
 
+	private boolean pooled;
+
 	private X509HostnameVerifier hostnameverifier;
 
 	SSLContext ctx;
 
 	private HttpClient getClient() {
-		if (client == null) {
+		if (client == null || (pooled && hostnameverifier != null)) {
+			// A custom hostname verifier cannot be applied to a client shared
+			// with other connections, use a client of our own.
+			pooled = false;
 			HttpClientBuilder clientBuilder = HttpClients.custom();
-			RequestConfig.Builder configBuilder = RequestConfig.custom();
-			if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
-				isUsingProxy = true;
-				InetSocketAddress adr = (InetSocketAddress) proxy.address();
-				clientBuilder.setProxy(
-						new HttpHost(adr.getHostName(), adr.getPort()));
-			}
-			if (timeout != null) {
-				configBuilder.setConnectTimeout(timeout.intValue());
-			}
-			if (readTimeout != null) {
-				configBuilder.setSocketTimeout(readTimeout.intValue());
-			}
-			if (followRedirects != null) {
-				configBuilder
-						.setRedirectsEnabled(followRedirects.booleanValue());
-			}
 			if (hostnameverifier != null) {
 				SSLConnectionSocketFactory sslConnectionFactory = new SSLConnectionSocketFactory(
 						getSSLContext(), hostnameverifier);
@@ -164,13 +156,35 @@ private HttpClient getClient() {
 				clientBuilder.setConnectionManager(
 						new BasicHttpClientConnectionManager(registry));
 			}
-			clientBuilder.setDefaultRequestConfig(configBuilder.build());
 			client = clientBuilder.build();
 		}
 
 		return client;
 	}
 
+	private RequestConfig getRequestConfig() {
+		RequestConfig.Builder configBuilder = RequestConfig.custom();
+		if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
+			isUsingProxy = true;
+			InetSocketAddress adr = (InetSocketAddress) proxy.address();
+			configBuilder.setProxy(
+					new HttpHost(adr.getHostName(), adr.getPort()));
+		}
+		if (timeout != null) {
+			configBuilder.setConnectTimeout(timeout.intValue());
+			// Do not wait forever for a connection of an exhausted pool.
+			configBuilder.setConnectionRequestTimeout(timeout.intValue());
+		}
+		if (readTimeout != null) {
+			configBuilder.setSocketTimeout(readTimeout.intValue());
+		}
+		if (followRedirects != null) {
+			configBuilder
+					.setRedirectsEnabled(followRedirects.booleanValue());
+		}
+		return configBuilder.build();
+	}
+
 	private SSLContext getSSLContext() {
 		if (ctx == null) {
 			try {
@@ -214,11 +228,15 @@ public HttpClientConnection(String urlStr, Proxy proxy)
 	 * @param urlStr
 	 * @param proxy
 	 * @param cl
+	 *            client to execute the request with, possibly shared with
+	 *            other connections. If null or if a custom hostname verifier
+	 *            is set, the connection uses a client of its own.
 	 * @throws MalformedURLException
 	 */
 	public HttpClientConnection(String urlStr, Proxy proxy, HttpClient cl)
 			throws MalformedURLException {
 		this.client = cl;
+		this.pooled = cl != null;
 		this.url = new URL(urlStr);
 		this.proxy = proxy;
 	}
@@ -245,8 +263,13 @@ private void execute() throws IOException, ClientProtocolException {
 			return;
 		}
 
+		if (req instanceof HttpRequestBase) {
+			((HttpRequestBase) req).setConfig(getRequestConfig());
+		}
+
 		if (entity == null) {
 			resp = getClient().execute(req);
+			bufferErrorResponse();
 			return;
 		}
 
@@ -256,12 +279,23 @@ private void execute() throws IOException, ClientProtocolException {
 				eReq.setEntity(entity);
 			}
 			resp = getClient().execute(req);
+			bufferErrorResponse();
 		} finally {
 			entity.close();
 			entity = null;
 		}
 	}
 
+	private void bufferErrorResponse() throws IOException {
+		// Callers frequently inspect only the status of an unsuccessful
+		// response. Read its (small) body right away so the underlying
+		// connection goes back to the pool instead of leaking.
+		HttpEntity e = resp.getEntity();
+		if (e != null && resp.getStatusLine().getStatusCode() >= 300) {
+			resp.setEntity(new BufferedHttpEntity(e));
+		}
+	}
+
 	@Override
 	public Map<String, List<String>> getHeaderFields() {
 		Map<String, List<String>> ret = new HashMap<>();
@@ -396,6 +430,22 @@ public void connect() throws IOException {
 		execute();
 	}
 
+	@Override
+	public void disconnect() {
+		if (resp == null) {
+			return;
+		}
+		// Read the rest of the body so the connection can be reused.
+		EntityUtils.consumeQuietly(resp.getEntity());
+		if (resp instanceof Closeable) {
+			try {
+				((Closeable) resp).close();
+			} catch (IOException e) {
+				// Ignore, the connection is not reused.
+			}
+		}
+	}
+
 	@Override
 	public void setHostnameVerifier(final HostnameVerifier hostnameverifier) {
 		this.hostnameverifier = new X509HostnameVerifier() {
@@ -42,27 +42,122 @@
  */
 package org.eclipse.jgit.transport.http.apache;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import java.io.IOException;
 import java.net.Proxy;
 import java.net.URL;
 
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.eclipse.jgit.transport.http.HttpConnection;
 import org.eclipse.jgit.transport.http.HttpConnectionFactory;
 
 /**
  * A factory returning instances of {@link HttpClientConnection}
+ * <p>
+ * All connections created by one factory share a pool of persistent
+ * connections, so consecutive requests to the same server, such as the
+ * negotiation rounds of a fetch or the object requests of a dumb HTTP fetch,
+ * reuse an already established TCP and TLS connection. Connections which
+ * customize TLS verification use a client of their own and are not pooled.
  *
  * @since 3.3
  */
 public class HttpClientConnectionFactory implements HttpConnectionFactory {
+	/**
+	 * Default maximum number of pooled connections to a single server.
+	 *
+	 * @since 4.8
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+
+	/**
+	 * Default maximum number of pooled connections in total.
+	 *
+	 * @since 4.8
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+	private final int maxConnectionsPerRoute;
+
+	private final int maxConnections;
+
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	private CloseableHttpClient client;
+
+	/** Create a factory with the default connection pool limits. */
+	public HttpClientConnectionFactory() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Create a factory with custom connection pool limits.
+	 *
+	 * @param maxConnectionsPerRoute
+	 *            maximum number of pooled connections to a single server
+	 * @param maxConnections
+	 *            maximum number of pooled connections in total
+	 * @since 4.8
+	 */
+	public HttpClientConnectionFactory(int maxConnectionsPerRoute,
+			int maxConnections) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.maxConnections = maxConnections;
+	}
+
 	@Override
 	public HttpConnection create(URL url) throws IOException {
-		return new HttpClientConnection(url.toString());
+		return new HttpClientConnection(url.toString(), null, getClient());
 	}
 
 	@Override
 	public HttpConnection create(URL url, Proxy proxy)
 			throws IOException {
-		return new HttpClientConnection(url.toString(), proxy);
+		return new HttpClientConnection(url.toString(), proxy, getClient());
+	}
+
+	/**
+	 * Close all idle pooled connections.
+	 * <p>
+	 * Connections still in use are closed when they are returned to the
+	 * pool. The factory remains usable and opens new connections as needed.
+	 *
+	 * @since 4.8
+	 */
+	public synchronized void closeIdleConnections() {
+		if (connectionManager != null) {
+			connectionManager.closeExpiredConnections();
+			connectionManager.closeIdleConnections(0, MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Shut down the connection pool, closing all pooled connections.
+	 * <p>
+	 * Connections created afterwards use a new pool.
+	 *
+	 * @since 4.8
+	 */
+	public synchronized void shutdown() {
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+			connectionManager = null;
+			client = null;
+		}
+	}
+
+	private synchronized HttpClient getClient() {
+		if (client == null) {
+			connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+			connectionManager.setMaxTotal(maxConnections);
+			client = HttpClients.custom()
+					.setConnectionManager(connectionManager).build();
+		}
+		return client;
 	}
 }
@@ -0,0 +1,736 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.eclipse.jgit.http.server.ServletUtils.getRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Runs a smart service request with Servlet 3.1 non-blocking I/O.
+ * <p>
+ * The request body is read by {@link ReadListener} callbacks into a bounded
+ * buffer. Once the body was read completely, or the buffer filled up, the
+ * service is started on an {@link Executor}, reading and writing blocking
+ * streams backed by the buffers. Its output is queued in another bounded
+ * buffer which {@link WriteListener} callbacks write to the client. No
+ * container thread waits for a slow client; the service's thread only waits
+ * if the client is so slow that a buffer runs empty (input) or full (output).
+ * <p>
+ * The servlet container's async timeout limits the whole request, so it is
+ * disabled; instead the request is aborted once it waited for the client
+ * longer than the service's idle timeout without any progress.
+ */
+class AsyncSmartService implements AsyncListener, Runnable {
+	/** Serves a request using blocking streams. */
+	interface Handler {
+		/**
+		 * @param req
+		 *            the request, reading its body from the input buffer.
+		 * @param rsp
+		 *            the response, writing its body to the output buffer.
+		 * @throws IOException
+		 *             the request could not be served.
+		 */
+		void service(HttpServletRequest req, HttpServletResponse rsp)
+				throws IOException;
+	}
+
+	private static final int CHUNK = 8 * 1024;
+
+	/** Maximum number of bytes each direction buffers. */
+	static final int BUFFER_LIMIT = 1024 * 1024;
+
+	private static ScheduledThreadPoolExecutor idleTimer;
+
+	private static synchronized ScheduledThreadPoolExecutor getIdleTimer() {
+		if (idleTimer == null) {
+			idleTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				private final ThreadFactory baseFactory = Executors
+						.defaultThreadFactory();
+
+				@Override
+				public Thread newThread(Runnable taskBody) {
+					Thread thr = baseFactory.newThread(taskBody);
+					thr.setName("JGit-AsyncIdleTimer"); //$NON-NLS-1$
+					thr.setDaemon(true);
+					return thr;
+				}
+			});
+			idleTimer.setRemoveOnCancelPolicy(true);
+		}
+		return idleTimer;
+	}
+
+	/**
+	 * Serve the request asynchronously, if possible.
+	 *
+	 * @param req
+	 *            current request.
+	 * @param rsp
+	 *            current response.
+	 * @param executor
+	 *            executor to run the handler on; null if async mode is
+	 *            disabled.
+	 * @param timeout
+	 *            seconds the request may wait for the client without any
+	 *            progress before it is aborted, usually the timeout of the
+	 *            {@code UploadPack} or {@code ReceivePack} serving it. If 0
+	 *            only the container's connection idle timeout applies.
+	 * @param handler
+	 *            the handler serving the request.
+	 * @return true if the request is served asynchronously; false if the
+	 *         caller must serve it itself.
+	 * @throws IOException
+	 *             the request body cannot be opened.
+	 */
+	static boolean start(HttpServletRequest req, HttpServletResponse rsp,
+			Executor executor, int timeout, Handler handler)
+			throws IOException {
+		if (executor == null || !req.isAsyncSupported())
+			return false;
+
+		// The repository is closed when the calling filters return.
+		Repository db = getRepository(req);
+		db.incrementOpen();
+		try {
+			AsyncContext ctx = req.startAsync(req, rsp);
+			ctx.setTimeout(0);
+			AsyncSmartService s = new AsyncSmartService(ctx, req, rsp, db,
+					executor, handler, timeout * 1000L);
+			ctx.addListener(s);
+			if (0 < timeout)
+				s.scheduleIdleCheck(s.idleTimeout);
+			s.in.src.setReadListener(s.in);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			db.close();
+			throw e;
+		}
+	}
+
+	private final AsyncContext ctx;
+
+	private final HttpServletRequest req;
+
+	private final HttpServletResponse rsp;
+
+	private final Repository db;
+
+	private final Executor executor;
+
+	private final Handler handler;
+
+	private final RequestBody in;
+
+	private final ResponseBody out = new ResponseBody();
+
+	private final AtomicBoolean launched = new AtomicBoolean();
+
+	private final AtomicBoolean completed = new AtomicBoolean();
+
+	private final long idleTimeout;
+
+	/** {@link System#nanoTime()} of the last progress of either stream. */
+	private volatile long lastProgress = System.nanoTime();
+
+	private volatile ScheduledFuture<?> idleCheck;
+
+	private AsyncSmartService(AsyncContext ctx, HttpServletRequest req,
+			HttpServletResponse rsp, Repository db, Executor executor,
+			Handler handler, long idleTimeout) throws IOException {
+		this.ctx = ctx;
+		this.req = req;
+		this.rsp = rsp;
+		this.db = db;
+		this.executor = executor;
+		this.handler = handler;
+		this.idleTimeout = idleTimeout;
+		this.in = new RequestBody(req.getInputStream());
+	}
+
+	private void progress() {
+		lastProgress = System.nanoTime();
+	}
+
+	private void scheduleIdleCheck(long delay) {
+		idleCheck = getIdleTimer().schedule(new Runnable() {
+			@Override
+			public void run() {
+				checkIdle();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Abort the request if it waited for the client longer than the idle
+	 * timeout, otherwise check again once it could have. Waiting for the
+	 * handler never times out here, the handler enforces its own timeout.
+	 */
+	private void checkIdle() {
+		if (completed.get())
+			return;
+		if (!in.isWaiting() && !out.isWaiting()) {
+			scheduleIdleCheck(idleTimeout);
+			return;
+		}
+		long idle = TimeUnit.NANOSECONDS
+				.toMillis(System.nanoTime() - lastProgress);
+		if (idle < idleTimeout) {
+			scheduleIdleCheck(idleTimeout - idle);
+			return;
+		}
+		fail(new InterruptedIOException(MessageFormat.format(
+				HttpServerText.get().clientIdleTimedOut,
+				Long.valueOf(idle))));
+	}
+
+	private void launch() {
+		if (!launched.compareAndSet(false, true))
+			return;
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			db.close();
+			try {
+				rsp.sendError(SC_SERVICE_UNAVAILABLE);
+			} catch (IOException err) {
+				// Nothing more can be done for this client.
+			}
+			complete();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			handler.service(new Request(), new Response());
+			out.close();
+		} catch (IOException | RuntimeException e) {
+			fail(e);
+		} finally {
+			db.close();
+		}
+	}
+
+	private void fail(Throwable cause) {
+		IOException err = cause instanceof IOException ? (IOException) cause
+				: new IOException(cause);
+		in.fail(err);
+		out.fail(err);
+		abandon();
+		complete();
+	}
+
+	/** Never launch the handler; release what it would have released. */
+	private void abandon() {
+		if (launched.compareAndSet(false, true))
+			db.close();
+	}
+
+	private void complete() {
+		if (completed.compareAndSet(false, true)) {
+			try {
+				ctx.complete();
+			} catch (IllegalStateException e) {
+				// The container already completed the request.
+			}
+		}
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) {
+		completed.set(true);
+		ScheduledFuture<?> check = idleCheck;
+		if (check != null)
+			check.cancel(false);
+		IOException err = new InterruptedIOException();
+		in.fail(err);
+		out.fail(err);
+		abandon();
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) {
+		fail(new InterruptedIOException());
+	}
+
+	@Override
+	public void onError(AsyncEvent event) {
+		fail(event.getThrowable());
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+		// Nothing.
+	}
+
+	private class RequestBody extends ServletInputStream
+			implements ReadListener {
+		final ServletInputStream src;
+
+		private final Object pumpLock = new Object();
+
+		private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+
+		private int buffered;
+
+		private boolean eof;
+
+		private boolean paused;
+
+		private boolean reading;
+
+		private IOException error;
+
+		private byte[] cur;
+
+		private int curPos;
+
+		RequestBody(ServletInputStream src) {
+			this.src = src;
+		}
+
+		@Override
+		public void onDataAvailable() throws IOException {
+			pump();
+		}
+
+		@Override
+		public void onAllDataRead() {
+			synchronized (this) {
+				eof = true;
+				notifyAll();
+			}
+			launch();
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			AsyncSmartService.this.fail(t);
+		}
+
+		synchronized void fail(IOException err) {
+			if (error == null)
+				error = err;
+			notifyAll();
+		}
+
+		/**
+		 * @return true if the service waits for the client to send more of
+		 *         the request body.
+		 */
+		synchronized boolean isWaiting() {
+			return !eof && error == null && (reading || !launched.get());
+		}
+
+		/**
+		 * Read from the client until the buffer is full or the container has
+		 * no more data; the container calls {@link #onDataAvailable()} again
+		 * once it has. If reading stopped because the buffer was full,
+		 * {@link #read(byte[], int, int)} resumes once it consumed a chunk.
+		 */
+		private void pump() throws IOException {
+			synchronized (pumpLock) {
+				for (;;) {
+					synchronized (this) {
+						if (eof)
+							break;
+						if (BUFFER_LIMIT <= buffered) {
+							paused = true;
+							break;
+						}
+					}
+					if (!src.isReady())
+						return;
+					byte[] buf = new byte[CHUNK];
+					int n = src.read(buf);
+					progress();
+					synchronized (this) {
+						if (n < 0)
+							eof = true;
+						else if (0 < n) {
+							chunks.add(n < buf.length ? Arrays.copyOf(buf, n)
+									: buf);
+							buffered += n;
+						}
+						notifyAll();
+					}
+				}
+			}
+			launch();
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (cur == null || curPos == cur.length) {
+				boolean resume;
+				synchronized (this) {
+					progress();
+					reading = true;
+					try {
+						while (chunks.isEmpty() && !eof && error == null)
+							wait();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					} finally {
+						reading = false;
+					}
+					if (error != null)
+						throw error;
+					cur = chunks.poll();
+					curPos = 0;
+					if (cur == null)
+						return -1;
+					buffered -= cur.length;
+					resume = paused;
+					paused = false;
+				}
+				if (resume)
+					pump();
+			}
+			int n = Math.min(len, cur.length - curPos);
+			System.arraycopy(cur, curPos, b, off, n);
+			curPos += n;
+			return n;
+		}
+
+		@Override
+		public synchronized boolean isFinished() {
+			return eof && chunks.isEmpty()
+					&& (cur == null || curPos == cur.length);
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			throw new IllegalStateException();
+		}
+	}
+
+	private class ResponseBody extends ServletOutputStream
+			implements WriteListener {
+		private final Object drainLock = new Object();
+
+		private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+
+		private int buffered;
+
+		private boolean closed;
+
+		private IOException error;
+
+		private ServletOutputStream dst;
+
+		private volatile boolean started;
+
+		private boolean errorSent;
+
+		private byte[] buf = new byte[CHUNK];
+
+		private int cnt;
+
+		boolean isStarted() {
+			return started;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (cnt == buf.length)
+				push();
+			buf[cnt++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (0 < len) {
+				if (cnt == buf.length)
+					push();
+				int n = Math.min(len, buf.length - cnt);
+				System.arraycopy(b, off, buf, cnt, n);
+				cnt += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			push();
+		}
+
+		@Override
+		public void close() throws IOException {
+			synchronized (this) {
+				if (closed)
+					return;
+			}
+			push();
+			synchronized (this) {
+				closed = true;
+			}
+			if (errorSent)
+				complete();
+			else
+				drain();
+		}
+
+		void reset() {
+			if (started)
+				throw new IllegalStateException();
+			cnt = 0;
+		}
+
+		private void push() throws IOException {
+			if (cnt == 0)
+				return;
+			byte[] c = Arrays.copyOf(buf, cnt);
+			cnt = 0;
+			synchronized (this) {
+				while (BUFFER_LIMIT <= buffered && error == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+				if (error != null)
+					throw error;
+				if (chunks.isEmpty())
+					progress();
+				chunks.add(c);
+				buffered += c.length;
+			}
+			drain();
+		}
+
+		/**
+		 * Write queued chunks while the container accepts them; the container
+		 * calls {@link #onWritePossible()} once it accepts more.
+		 */
+		private void drain() throws IOException {
+			synchronized (drainLock) {
+				if (dst == null) {
+					started = true;
+					dst = rsp.getOutputStream();
+					dst.setWriteListener(this);
+					return;
+				}
+				for (;;) {
+					byte[] c;
+					boolean done;
+					synchronized (this) {
+						c = chunks.peek();
+						done = closed;
+					}
+					if (!dst.isReady())
+						return;
+					if (c == null) {
+						if (done)
+							complete();
+						return;
+					}
+					dst.write(c);
+					progress();
+					synchronized (this) {
+						chunks.poll();
+						buffered -= c.length;
+						notifyAll();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+			drain();
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			AsyncSmartService.this.fail(t);
+		}
+
+		synchronized void fail(IOException err) {
+			if (error == null)
+				error = err;
+			notifyAll();
+		}
+
+		/**
+		 * @return true if the service waits for the client to accept queued
+		 *         output.
+		 */
+		synchronized boolean isWaiting() {
+			return !chunks.isEmpty() && error == null;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			throw new IllegalStateException();
+		}
+	}
+
+	private class Request extends HttpServletRequestWrapper {
+		Request() {
+			super(req);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			return in;
+		}
+
+		@Override
+		public BufferedReader getReader() throws IOException {
+			String enc = getCharacterEncoding();
+			return new BufferedReader(new InputStreamReader(in,
+					enc != null ? enc : Constants.CHARACTER_ENCODING));
+		}
+	}
+
+	private class Response extends HttpServletResponseWrapper {
+		private PrintWriter writer;
+
+		Response() {
+			super(rsp);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null)
+				writer = new PrintWriter(new OutputStreamWriter(out,
+						getCharacterEncoding()));
+			return writer;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public boolean isCommitted() {
+			return out.isStarted() || super.isCommitted();
+		}
+
+		@Override
+		public void reset() {
+			out.reset();
+			super.reset();
+		}
+
+		@Override
+		public void resetBuffer() {
+			out.reset();
+			super.resetBuffer();
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			sendError(sc, null);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			out.reset();
+			out.errorSent = true;
+			super.sendError(sc, msg);
+		}
+	}
+}
@@ -47,6 +47,7 @@
 import java.text.MessageFormat;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
@@ -95,6 +96,10 @@ public class GitFilter extends MetaFilter {
 
 	private ReceivePackFactory<HttpServletRequest> receivePackFactory = new DefaultReceivePackFactory();
 
+	private InfoRefsCache infoRefsCache;
+
+	private Executor asyncExecutor;
+
 	private final List<Filter> uploadPackFilters = new LinkedList<>();
 
 	private final List<Filter> receivePackFilters = new LinkedList<>();
@@ -156,6 +161,18 @@ public void addUploadPackFilter(Filter filter) {
 		uploadPackFilters.add(filter);
 	}
 
+	/**
+	 * @param cache
+	 *            cache of the references advertised to fetching clients. If
+	 *            {@code null} the advertisement is computed for every
+	 *            request.
+	 * @since 4.8
+	 */
+	public void setInfoRefsCache(InfoRefsCache cache) {
+		assertNotInitialized();
+		this.infoRefsCache = cache;
+	}
+
 	/**
 	 * @param f
 	 *            the factory to construct and configure a {@link ReceivePack}
@@ -178,6 +195,31 @@ public void addReceivePackFilter(Filter filter) {
 		receivePackFilters.add(filter);
 	}
 
+	/**
+	 * Serve fetch and push requests with Servlet 3.1 non-blocking I/O.
+	 * <p>
+	 * The request and response bodies are buffered in memory and transferred
+	 * by container callbacks, while the pack is generated or received on a
+	 * thread of {@code executor}. Container threads are not held while a slow
+	 * client transfers data. Only requests for which
+	 * {@link HttpServletRequest#isAsyncSupported()} is true are served
+	 * this way; the servlet (and any filter in front of it) must be declared
+	 * {@code async-supported}.
+	 * <p>
+	 * The async timeout of a request is the timeout of the
+	 * {@code UploadPack} or {@code ReceivePack} serving it, if the factory
+	 * set one, otherwise the container's default async timeout.
+	 *
+	 * @param executor
+	 *            executor to generate and receive packs on. If {@code null}
+	 *            requests are served on the container's thread.
+	 * @since 4.8
+	 */
+	public void setAsyncExecutor(Executor executor) {
+		assertNotInitialized();
+		this.asyncExecutor = executor;
+	}
+
 	private void assertNotInitialized() {
 		if (initialized)
 			throw new IllegalStateException(HttpServerText.get().alreadyInitializedByContainer);
@@ -200,7 +242,7 @@ public void init(FilterConfig filterConfig) throws ServletException {
 			b = b.through(new UploadPackServlet.Factory(uploadPackFactory));
 			for (Filter f : uploadPackFilters)
 				b = b.through(f);
-			b.with(new UploadPackServlet());
+			b.with(new UploadPackServlet(asyncExecutor));
 		}
 
 		if (receivePackFactory != ReceivePackFactory.DISABLED) {
@@ -208,13 +250,13 @@ public void init(FilterConfig filterConfig) throws ServletException {
 			b = b.through(new ReceivePackServlet.Factory(receivePackFactory));
 			for (Filter f : receivePackFilters)
 				b = b.through(f);
-			b.with(new ReceivePackServlet());
+			b.with(new ReceivePackServlet(asyncExecutor));
 		}
 
 		ServletBinder refs = serve("*/" + Constants.INFO_REFS);
 		if (uploadPackFactory != UploadPackFactory.DISABLED) {
 			refs = refs.through(new UploadPackServlet.InfoRefs(
-					uploadPackFactory, uploadPackFilters));
+					uploadPackFactory, uploadPackFilters, infoRefsCache));
 		}
 		if (receivePackFactory != ReceivePackFactory.DISABLED) {
 			refs = refs.through(new ReceivePackServlet.InfoRefs(
@@ -44,6 +44,7 @@
 package org.eclipse.jgit.http.server;
 
 import java.util.Enumeration;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
@@ -152,6 +153,17 @@ public void addUploadPackFilter(Filter filter) {
 		gitFilter.addUploadPackFilter(filter);
 	}
 
+	/**
+	 * @param cache
+	 *            cache of the references advertised to fetching clients. If
+	 *            {@code null} the advertisement is computed for every
+	 *            request.
+	 * @since 4.8
+	 */
+	public void setInfoRefsCache(InfoRefsCache cache) {
+		gitFilter.setInfoRefsCache(cache);
+	}
+
 	/**
 	 * @param f
 	 *            the factory to construct and configure a {@link ReceivePack}
@@ -171,6 +183,30 @@ public void addReceivePackFilter(Filter filter) {
 		gitFilter.addReceivePackFilter(filter);
 	}
 
+	/**
+	 * Serve fetch and push requests with Servlet 3.1 non-blocking I/O.
+	 * <p>
+	 * The request and response bodies are buffered in memory and transferred
+	 * by container callbacks, while the pack is generated or received on a
+	 * thread of {@code executor}. Container threads are not held while a slow
+	 * client transfers data. Only requests for which
+	 * {@link HttpServletRequest#isAsyncSupported()} is true are served
+	 * this way; the servlet (and any filter in front of it) must be declared
+	 * {@code async-supported}.
+	 * <p>
+	 * The async timeout of a request is the timeout of the
+	 * {@code UploadPack} or {@code ReceivePack} serving it, if the factory
+	 * set one, otherwise the container's default async timeout.
+	 *
+	 * @param executor
+	 *            executor to generate and receive packs on. If {@code null}
+	 *            requests are served on the container's thread.
+	 * @since 4.8
+	 */
+	public void setAsyncExecutor(Executor executor) {
+		gitFilter.setAsyncExecutor(executor);
+	}
+
 	@Override
 	public void init(final ServletConfig config) throws ServletException {
 		gitFilter.init(new FilterConfig() {
@@ -62,6 +62,7 @@ public static HttpServerText get() {
 	/***/ public String alreadyInitializedByContainer;
 	/***/ public String cannotGetLengthOf;
 	/***/ public String clientHas175ChunkedEncodingBug;
+	/***/ public String clientIdleTimedOut;
 	/***/ public String encodingNotSupportedByThisLibrary;
 	/***/ public String expectedRepositoryAttribute;
 	/***/ public String filterMustNotBeNull;
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.AdvertiseRefsHook;
+import org.eclipse.jgit.transport.RefFilter;
+import org.eclipse.jgit.transport.UploadPack;
+
+/**
+ * Caches the smart HTTP {@code info/refs} advertisement of repositories.
+ * <p>
+ * Clients polling a repository for changes request the advertisement over and
+ * over while the references rarely change. With a cache installed through
+ * {@link GitFilter#setInfoRefsCache(InfoRefsCache)} the advertisement is
+ * computed once and served from memory until the references of the
+ * repository change, saving a scan of the reference database per request.
+ * Each advertisement carries an {@code ETag} header; a request repeating it in
+ * {@code If-None-Match} is answered with {@code 304 Not Modified}.
+ * <p>
+ * An advertisement is cached under the repository, the version of its
+ * reference database and the key the request's {@link UploadPack} advertises
+ * references with, see {@link #getAdvertiseKey(HttpServletRequest,
+ * UploadPack)}. The version is bumped whenever a {@link RefsChangedEvent} is
+ * fired for the repository, which happens for every update made through
+ * JGit. Updates JGit doesn't notice immediately, such as changes by other
+ * processes, are picked up when a cached advertisement expires after the
+ * configured maximum age. Versions are kept for a bounded number of
+ * repositories; once more repositories change, the whole cache is
+ * discarded.
+ * <p>
+ * The cache listens to {@link Repository#getGlobalListenerList()} until it is
+ * closed.
+ *
+ * @since 4.8
+ */
+public class InfoRefsCache implements AutoCloseable {
+	/** Default limit of the total size of cached advertisements. */
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	/** Default time a cached advertisement is served for, in milliseconds. */
+	public static final long DEFAULT_MAX_AGE_MILLIS = 1000;
+
+	/** Number of repositories whose version is tracked individually. */
+	private static final int MAX_VERSIONS = 1024;
+
+	/** A cached advertisement. */
+	static class Entry {
+		final byte[] body;
+
+		final String etag;
+
+		final long createdAt;
+
+		Entry(byte[] body, long createdAt) {
+			final MessageDigest md = Constants.newMessageDigest();
+			md.update(body);
+			this.body = body;
+			this.etag = ObjectId.fromRaw(md.digest()).getName();
+			this.createdAt = createdAt;
+		}
+	}
+
+	/** Identifies the advertisement of one request. */
+	class Key {
+		private final String repository;
+
+		private final String name;
+
+		Key(String repository, String name) {
+			this.repository = repository;
+			this.name = name;
+		}
+
+		Entry get() {
+			return InfoRefsCache.this.get(this);
+		}
+
+		Entry put(byte[] body) {
+			return InfoRefsCache.this.put(this, body);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && name.equals(((Key) obj).name);
+		}
+	}
+
+	private final long maxBytes;
+
+	private final long maxAgeMillis;
+
+	/** Version of each repository invalidated since {@link #baseVersion}. */
+	private final ConcurrentMap<String, Long> versions = new ConcurrentHashMap<>();
+
+	/** Version of all repositories missing in {@link #versions}. */
+	private volatile long baseVersion;
+
+	private final AtomicLong lastVersion = new AtomicLong();
+
+	private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(16,
+			0.75f, true);
+
+	private long cachedBytes;
+
+	private final ListenerHandle listener;
+
+	/** Create a cache with the default limits. */
+	public InfoRefsCache() {
+		this(DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+	}
+
+	/**
+	 * @param maxBytes
+	 *            maximum total size of the cached advertisements; the least
+	 *            recently used advertisements are evicted first.
+	 * @param maxAgeMillis
+	 *            how long an advertisement is served from the cache, in
+	 *            milliseconds. Bounds how long reference updates JGit doesn't
+	 *            notice remain invisible to clients.
+	 */
+	public InfoRefsCache(long maxBytes, long maxAgeMillis) {
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.listener = Repository.getGlobalListenerList()
+				.addRefsChangedListener(new RefsChangedListener() {
+					@Override
+					public void onRefsChanged(RefsChangedEvent event) {
+						invalidate(event.getRepository());
+					}
+				});
+	}
+
+	/**
+	 * Get the key identifying a repository in this cache.
+	 * <p>
+	 * Different {@link Repository} instances opened on the same repository
+	 * must return the same key. The default implementation uses the
+	 * repository's directory or, for DFS repositories, its name.
+	 *
+	 * @param db
+	 *            the repository.
+	 * @return key of the repository; null if advertisements of this
+	 *         repository must not be cached.
+	 */
+	protected String getRepositoryKey(Repository db) {
+		String name = ServletUtils.identify(db);
+		return "unknown".equals(name) ? null : name; //$NON-NLS-1$
+	}
+
+	/**
+	 * Get the key of the references a request advertises.
+	 * <p>
+	 * Requests with the same key must produce the same advertisement as long
+	 * as the references of the repository do not change. The default
+	 * implementation only caches advertisements of {@link UploadPack}
+	 * instances using the default {@link AdvertiseRefsHook} and
+	 * {@link RefFilter}, which advertise the same references to everyone. The
+	 * key lists the {@link UploadPack#getAdvertisedCapabilities()
+	 * capabilities}, so settings an {@code UploadPackFactory} applies per
+	 * request, such as the request policy, are taken into account. Servers
+	 * restricting the references visible to a user may override this method
+	 * to return a key describing the user's permissions.
+	 *
+	 * @param req
+	 *            the current request.
+	 * @param up
+	 *            the UploadPack which would advertise the references.
+	 * @return key of the advertisement; null if the advertisement must not be
+	 *         cached.
+	 */
+	protected String getAdvertiseKey(HttpServletRequest req, UploadPack up) {
+		if (up.getAdvertiseRefsHook() != AdvertiseRefsHook.DEFAULT
+				|| up.getRefFilter() != RefFilter.DEFAULT
+				|| up.getAdvertisedRefs() != null) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		for (String cap : up.getAdvertisedCapabilities()) {
+			key.append(cap).append(' ');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Discard the cached advertisements of a repository.
+	 *
+	 * @param db
+	 *            the repository whose references changed.
+	 */
+	public void invalidate(Repository db) {
+		String repository = getRepositoryKey(db);
+		if (repository == null) {
+			return;
+		}
+		Long version = Long.valueOf(lastVersion.incrementAndGet());
+		if (MAX_VERSIONS <= versions.size()) {
+			// Give every repository a new version instead of tracking more.
+			baseVersion = version.longValue();
+			versions.clear();
+			clear();
+			return;
+		}
+		versions.put(repository, version);
+		synchronized (cache) {
+			Iterator<Map.Entry<Key, Entry>> i = cache.entrySet().iterator();
+			while (i.hasNext()) {
+				Map.Entry<Key, Entry> e = i.next();
+				if (e.getKey().repository.equals(repository)) {
+					cachedBytes -= e.getValue().body.length;
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/** Discard all cached advertisements. */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+			cachedBytes = 0;
+		}
+	}
+
+	/** Stop listening to reference updates and discard the cache. */
+	@Override
+	public void close() {
+		listener.remove();
+		clear();
+	}
+
+	Key key(HttpServletRequest req, Repository db, String service,
+			UploadPack up) {
+		String repository = getRepositoryKey(db);
+		if (repository == null) {
+			return null;
+		}
+		String advertise = getAdvertiseKey(req, up);
+		if (advertise == null) {
+			return null;
+		}
+		// Read the version before the advertisement is computed, so an
+		// update racing with the computation makes the entry unreachable.
+		long version = version(repository);
+		return new Key(repository, repository + '\0' + version + '\0'
+				+ service + '\0' + advertise);
+	}
+
+	private long version(String repository) {
+		Long v = versions.get(repository);
+		return v != null ? v.longValue() : baseVersion;
+	}
+
+	Entry get(Key key) {
+		synchronized (cache) {
+			Entry e = cache.get(key);
+			if (e != null && maxAgeMillis <= System.currentTimeMillis()
+					- e.createdAt) {
+				cache.remove(key);
+				cachedBytes -= e.body.length;
+				return null;
+			}
+			return e;
+		}
+	}
+
+	Entry put(Key key, byte[] body) {
+		Entry e = new Entry(body, System.currentTimeMillis());
+		if (maxBytes < body.length) {
+			return e;
+		}
+		synchronized (cache) {
+			Entry old = cache.put(key, e);
+			if (old != null) {
+				cachedBytes -= old.body.length;
+			}
+			cachedBytes += body.length;
+			Iterator<Entry> i = cache.values().iterator();
+			while (maxBytes < cachedBytes && i.hasNext()) {
+				cachedBytes -= i.next().body.length;
+				i.remove();
+			}
+		}
+		return e;
+	}
+}
@@ -64,6 +64,7 @@
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -90,6 +91,12 @@
 class ReceivePackServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 
+	private final transient Executor asyncExecutor;
+
+	ReceivePackServlet(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
 	static class InfoRefs extends SmartServiceInfoRefs {
 		private final ReceivePackFactory<HttpServletRequest> receivePackFactory;
 
@@ -180,6 +187,23 @@ public void doPost(final HttpServletRequest req,
 			return;
 		}
 
+		final ReceivePack rp = (ReceivePack) req.getAttribute(ATTRIBUTE_HANDLER);
+		rp.setBiDirectionalPipe(false);
+		rp.setEchoCommandFailures(hasPushStatusBug(version));
+		boolean async = AsyncSmartService.start(req, rsp, asyncExecutor,
+				rp.getTimeout(), new AsyncSmartService.Handler() {
+					@Override
+					public void service(HttpServletRequest areq,
+							HttpServletResponse arsp) throws IOException {
+						receive(areq, arsp, rp);
+					}
+				});
+		if (!async)
+			receive(req, rsp, rp);
+	}
+
+	private void receive(HttpServletRequest req, HttpServletResponse rsp,
+			ReceivePack rp) throws IOException {
 		SmartOutputStream out = new SmartOutputStream(req, rsp, false) {
 			@Override
 			public void flush() throws IOException {
@@ -187,10 +211,7 @@ public void flush() throws IOException {
 			}
 		};
 
-		ReceivePack rp = (ReceivePack) req.getAttribute(ATTRIBUTE_HANDLER);
 		try {
-			rp.setBiDirectionalPipe(false);
-			rp.setEchoCommandFailures(hasPushStatusBug(version));
 			rsp.setContentType(RECEIVE_PACK_RESULT_TYPE);
 
 			rp.receive(getInputStream(req), out, null);
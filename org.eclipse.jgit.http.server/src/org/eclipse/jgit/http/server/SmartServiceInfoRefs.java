@@ -44,13 +44,18 @@
 package org.eclipse.jgit.http.server;
 
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
 import static org.eclipse.jgit.http.server.GitSmartHttpTools.infoRefsResultType;
 import static org.eclipse.jgit.http.server.GitSmartHttpTools.sendError;
 import static org.eclipse.jgit.http.server.ServletUtils.ATTRIBUTE_HANDLER;
 import static org.eclipse.jgit.http.server.ServletUtils.getRepository;
+import static org.eclipse.jgit.util.HttpSupport.HDR_ETAG;
+import static org.eclipse.jgit.util.HttpSupport.HDR_IF_NONE_MATCH;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import javax.servlet.Filter;
@@ -114,6 +119,7 @@ public void doFilter(ServletRequest request, ServletResponse response,
 				else
 					new Chain().doFilter(request, response);
 			} finally {
+				end(req);
 				req.removeAttribute(ATTRIBUTE_HANDLER);
 			}
 		} else {
@@ -126,26 +132,68 @@ private void service(ServletRequest request, ServletResponse response)
 		final HttpServletRequest req = (HttpServletRequest) request;
 		final HttpServletResponse res = (HttpServletResponse) response;
 		final SmartOutputStream buf = new SmartOutputStream(req, res, true);
+		final InfoRefsCache.Key key = cacheKey(req);
+		if (key != null) {
+			InfoRefsCache.Entry cached = key.get();
+			if (cached != null) {
+				res.setContentType(infoRefsResultType(svc));
+				send(req, res, buf, cached);
+				return;
+			}
+		}
+
+		final ByteArrayOutputStream copy = key != null
+				? new ByteArrayOutputStream() : null;
 		try {
 			res.setContentType(infoRefsResultType(svc));
 
-			final PacketLineOut out = new PacketLineOut(buf);
+			final OutputStream dst = copy != null ? copy : buf;
+			final PacketLineOut out = new PacketLineOut(dst);
 			out.writeString("# service=" + svc + "\n");
 			out.end();
 			advertise(req, new PacketLineOutRefAdvertiser(out));
-			buf.close();
+			if (copy != null)
+				send(req, res, buf, key.put(copy.toByteArray()));
+			else
+				buf.close();
 		} catch (ServiceNotAuthorizedException e) {
 			res.sendError(SC_UNAUTHORIZED, e.getMessage());
 		} catch (ServiceNotEnabledException e) {
 			sendError(req, res, SC_FORBIDDEN, e.getMessage());
 		} catch (ServiceMayNotContinueException e) {
-			if (e.isOutput())
+			if (e.isOutput()) {
+				if (copy != null)
+					copy.writeTo(buf);
 				buf.close();
-			else
+			} else
 				sendError(req, res, e.getStatusCode(), e.getMessage());
 		}
 	}
 
+	private static void send(HttpServletRequest req, HttpServletResponse res,
+			SmartOutputStream buf, InfoRefsCache.Entry adv) throws IOException {
+		res.setHeader(HDR_ETAG, adv.etag);
+		if (adv.etag.equals(req.getHeader(HDR_IF_NONE_MATCH))) {
+			res.setStatus(SC_NOT_MODIFIED);
+			return;
+		}
+
+		buf.write(adv.body);
+		buf.close();
+	}
+
+	/**
+	 * Get the key to cache the advertisement of a request under.
+	 *
+	 * @param req
+	 *            the current request, after {@link #begin(HttpServletRequest,
+	 *            Repository)}.
+	 * @return key of the advertisement; null if it must not be cached.
+	 */
+	InfoRefsCache.Key cacheKey(HttpServletRequest req) {
+		return null;
+	}
+
 	protected abstract void begin(HttpServletRequest req, Repository db)
 			throws IOException, ServiceNotEnabledException,
 			ServiceNotAuthorizedException;
@@ -154,6 +202,17 @@ protected abstract void advertise(HttpServletRequest req,
 			PacketLineOutRefAdvertiser pck) throws IOException,
 			ServiceNotEnabledException, ServiceNotAuthorizedException;
 
+	/**
+	 * Release the resources acquired by {@link #begin(HttpServletRequest,
+	 * Repository)}.
+	 *
+	 * @param req
+	 *            the current request.
+	 */
+	protected void end(HttpServletRequest req) {
+		// Do nothing by default.
+	}
+
 	private class Chain implements FilterChain {
 		private int filterIdx;
 
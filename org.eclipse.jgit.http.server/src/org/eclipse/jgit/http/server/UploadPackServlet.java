@@ -63,6 +63,7 @@
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -88,13 +89,22 @@
 class UploadPackServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 
+	private final transient Executor asyncExecutor;
+
+	UploadPackServlet(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
 	static class InfoRefs extends SmartServiceInfoRefs {
 		private final UploadPackFactory<HttpServletRequest> uploadPackFactory;
 
+		private final InfoRefsCache cache;
+
 		InfoRefs(UploadPackFactory<HttpServletRequest> uploadPackFactory,
-				List<Filter> filters) {
+				List<Filter> filters, InfoRefsCache cache) {
 			super(UPLOAD_PACK, filters);
 			this.uploadPackFactory = uploadPackFactory;
+			this.cache = cache;
 		}
 
 		@Override
@@ -113,12 +123,23 @@ protected void advertise(HttpServletRequest req,
 				PacketLineOutRefAdvertiser pck) throws IOException,
 				ServiceNotEnabledException, ServiceNotAuthorizedException {
 			UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
-			try {
-				up.setBiDirectionalPipe(false);
-				up.sendAdvertisedRefs(pck);
-			} finally {
+			up.setBiDirectionalPipe(false);
+			up.sendAdvertisedRefs(pck);
+		}
+
+		@Override
+		InfoRefsCache.Key cacheKey(HttpServletRequest req) {
+			if (cache == null)
+				return null;
+			UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
+			return cache.key(req, getRepository(req), UPLOAD_PACK, up);
+		}
+
+		@Override
+		protected void end(HttpServletRequest req) {
+			UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
+			if (up != null)
 				up.getRevWalk().close();
-			}
 		}
 	}
 
@@ -179,6 +200,21 @@ public void doPost(final HttpServletRequest req,
 			return;
 		}
 
+		final UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
+		boolean async = AsyncSmartService.start(req, rsp, asyncExecutor,
+				up.getTimeout(), new AsyncSmartService.Handler() {
+					@Override
+					public void service(HttpServletRequest areq,
+							HttpServletResponse arsp) throws IOException {
+						upload(areq, arsp, up);
+					}
+				});
+		if (!async)
+			upload(req, rsp, up);
+	}
+
+	private void upload(HttpServletRequest req, HttpServletResponse rsp,
+			UploadPack up) throws IOException {
 		SmartOutputStream out = new SmartOutputStream(req, rsp, false) {
 			@Override
 			public void flush() throws IOException {
@@ -186,7 +222,6 @@ public void flush() throws IOException {
 			}
 		};
 
-		UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
 		try {
 			up.setBiDirectionalPipe(false);
 			rsp.setContentType(UPLOAD_PACK_RESULT_TYPE);
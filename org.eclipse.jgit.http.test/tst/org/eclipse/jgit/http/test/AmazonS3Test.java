@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.transport.AmazonS3;
+import org.eclipse.jgit.util.Base64;
+import org.eclipse.jgit.util.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AmazonS3Test extends HttpTestCase {
+	private static final String DOMAIN = "s3.test";
+
+	private static final String BUCKET = "bucket";
+
+	private static final String ACCESS_KEY = "access";
+
+	private static final String SECRET_KEY = "secret";
+
+	private static final int PART_SIZE = 64 * 1024;
+
+	private StubS3 stub;
+
+	private ProxySelector defaultProxySelector;
+
+	private AmazonS3 s3;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		stub = new StubS3();
+		ServletContextHandler app = server.addContext("/");
+		app.addServlet(new ServletHolder(stub), "/*");
+		server.setUp();
+
+		// Route requests for the bucket's host name to the stub server.
+		final Proxy proxy = new Proxy(Proxy.Type.HTTP,
+				new InetSocketAddress(server.getURI().getHost(),
+						server.getPort()));
+		defaultProxySelector = ProxySelector.getDefault();
+		ProxySelector.setDefault(new ProxySelector() {
+			@Override
+			public List<Proxy> select(URI uri) {
+				return Collections.singletonList(proxy);
+			}
+
+			@Override
+			public void connectFailed(URI uri, SocketAddress sa,
+					IOException ioe) {
+				// Nothing to do.
+			}
+		});
+		s3 = new AmazonS3(properties(PART_SIZE, 3));
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		ProxySelector.setDefault(defaultProxySelector);
+		super.tearDown();
+	}
+
+	private static Properties properties(int partSize, int threads) {
+		Properties props = new Properties();
+		props.setProperty("accesskey", ACCESS_KEY);
+		props.setProperty("secretkey", SECRET_KEY);
+		props.setProperty("domain", DOMAIN);
+		props.setProperty("multipart.part-size", String.valueOf(partSize));
+		props.setProperty("multipart.threads", String.valueOf(threads));
+		props.setProperty("multipart.min-part-size",
+				String.valueOf(PART_SIZE));
+		return props;
+	}
+
+	private static byte[] data(int size) {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return data;
+	}
+
+	private void put(String key, byte[] data) throws IOException {
+		try (OutputStream out = s3.beginPut(BUCKET, key, null, null)) {
+			// Write in odd sized chunks to cross part boundaries.
+			for (int off = 0; off < data.length; off += 1000) {
+				out.write(data, off, Math.min(1000, data.length - off));
+			}
+		}
+	}
+
+	private byte[] getParallel(String key) throws IOException {
+		try (InputStream in = s3.getParallel(BUCKET, key)) {
+			return readAll(in);
+		}
+	}
+
+	static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testSmallObjectUsesSinglePut() throws Exception {
+		byte[] data = data(PART_SIZE - 1);
+		put("small", data);
+
+		assertArrayEquals(data, stub.objects.get("/small"));
+		assertEquals(0, stub.initiated.get());
+		assertEquals(1, stub.puts.get());
+	}
+
+	@Test
+	public void testEmptyObject() throws Exception {
+		put("empty", new byte[0]);
+		assertArrayEquals(new byte[0], stub.objects.get("/empty"));
+		assertArrayEquals(new byte[0], getParallel("empty"));
+	}
+
+	@Test
+	public void testMultipartUpload() throws Exception {
+		byte[] data = data(5 * PART_SIZE + 123);
+		put("pack/large", data);
+
+		assertArrayEquals(data, stub.objects.get("/pack/large"));
+		assertEquals(1, stub.initiated.get());
+		assertEquals(6, stub.puts.get());
+		assertTrue(stub.uploads.isEmpty());
+	}
+
+	@Test
+	public void testMultipartUploadReportsBytesWritten() throws Exception {
+		byte[] data = data(5 * PART_SIZE + 4000);
+		final AtomicInteger kib = new AtomicInteger();
+		ProgressMonitor pm = new ProgressMonitor() {
+			@Override
+			public void start(int totalTasks) {
+				// Not used.
+			}
+
+			@Override
+			public void beginTask(String title, int totalWork) {
+				// Not used.
+			}
+
+			@Override
+			public void update(int completed) {
+				kib.addAndGet(completed);
+			}
+
+			@Override
+			public void endTask() {
+				// Not used.
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
+		};
+		try (OutputStream out = s3.beginPut(BUCKET, "monitored", pm, null)) {
+			out.write(data);
+		}
+
+		assertArrayEquals(data, stub.objects.get("/monitored"));
+		assertEquals(data.length / 1024, kib.get());
+	}
+
+	@Test
+	public void testTransferThreadsAreDaemons() throws Exception {
+		byte[] data = data(3 * PART_SIZE);
+		try (OutputStream out = s3.beginPut(BUCKET, "threads", null, null)) {
+			out.write(data);
+			assertDaemonThreads("JGit-S3-Upload");
+		}
+		try (InputStream in = s3.getParallel(BUCKET, "threads")) {
+			assertEquals(data[0] & 0xff, in.read());
+			assertDaemonThreads("JGit-S3-Download");
+		}
+	}
+
+	private static void assertDaemonThreads(String name) {
+		int found = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (name.equals(t.getName())) {
+				assertTrue(t.isDaemon());
+				found++;
+			}
+		}
+		assertTrue(found > 0);
+	}
+
+	@Test
+	public void testPartSizeBelowMinimumRejected() {
+		Properties props = properties(PART_SIZE, 3);
+		props.remove("multipart.min-part-size");
+		try {
+			new AmazonS3(props);
+			fail("part size below the S3 minimum was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		props.setProperty("multipart.part-size", String.valueOf(5 << 20));
+		new AmazonS3(props);
+		props.setProperty("multipart.part-size", "0");
+		new AmazonS3(props);
+	}
+
+	@Test
+	public void testMultipartUploadExactParts() throws Exception {
+		byte[] data = data(2 * PART_SIZE);
+		put("exact", data);
+
+		assertArrayEquals(data, stub.objects.get("/exact"));
+		assertEquals(2, stub.puts.get());
+	}
+
+	@Test
+	public void testFailedPartAbortsUpload() throws Exception {
+		stub.failPart = 2;
+		try {
+			put("failed", data(4 * PART_SIZE));
+			fail("upload should have failed");
+		} catch (IOException e) {
+			// expected
+		}
+		assertNull(stub.objects.get("/failed"));
+		assertTrue(stub.uploads.isEmpty());
+		assertEquals(1, stub.aborted.get());
+	}
+
+	@Test
+	public void testParallelGet() throws Exception {
+		byte[] data = data(4 * PART_SIZE + 7);
+		stub.objects.put("/pack/large", data);
+
+		assertArrayEquals(data, getParallel("pack/large"));
+		assertEquals(5, stub.rangeGets.get());
+	}
+
+	@Test
+	public void testParallelGetSmallObject() throws Exception {
+		byte[] data = data(100);
+		stub.objects.put("/small", data);
+
+		assertArrayEquals(data, getParallel("small"));
+		assertEquals(1, stub.rangeGets.get());
+	}
+
+	@Test
+	public void testParallelGetDetectsModification() throws Exception {
+		stub.objects.put("/changing", data(3 * PART_SIZE));
+		try (InputStream in = s3.getParallel(BUCKET, "changing")) {
+			stub.objects.put("/changing", data(3 * PART_SIZE + 1));
+			readAll(in);
+			fail("read should have failed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMultipartDisabled() throws Exception {
+		s3 = new AmazonS3(properties(0, 3));
+		byte[] data = data(3 * PART_SIZE);
+		put("single", data);
+
+		assertArrayEquals(data, stub.objects.get("/single"));
+		assertEquals(0, stub.initiated.get());
+		assertEquals(1, stub.puts.get());
+	}
+
+	/** Minimal S3 service verifying request signatures. */
+	private static class StubS3 extends HttpServlet {
+		private static final long serialVersionUID = 1L;
+
+		private static final Pattern PART = Pattern.compile(
+				"<Part><PartNumber>(\\d+)</PartNumber><ETag>([^<]*)</ETag></Part>");
+
+		final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+		final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+		final AtomicInteger initiated = new AtomicInteger();
+
+		final AtomicInteger puts = new AtomicInteger();
+
+		final AtomicInteger aborted = new AtomicInteger();
+
+		final AtomicInteger rangeGets = new AtomicInteger();
+
+		volatile int failPart;
+
+		private final AtomicInteger nextUploadId = new AtomicInteger();
+
+		@Override
+		protected void service(HttpServletRequest req,
+				HttpServletResponse rsp) throws ServletException, IOException {
+			if (!signature(req).equals(req.getHeader("Authorization"))) {
+				rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
+			super.service(req, rsp);
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest req, HttpServletResponse rsp)
+				throws IOException {
+			byte[] data = objects.get(req.getPathInfo());
+			if (data == null) {
+				rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			String etag = etag(data, 0, data.length);
+			String ifMatch = req.getHeader("If-Match");
+			if (ifMatch != null && !ifMatch.equals(etag)) {
+				rsp.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+				return;
+			}
+			rsp.setHeader("ETag", etag);
+			int first = 0;
+			int last = data.length - 1;
+			String range = req.getHeader("Range");
+			if (range != null) {
+				rangeGets.incrementAndGet();
+				if (data.length == 0) {
+					rsp.sendError(
+							HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					return;
+				}
+				String[] r = range.substring("bytes=".length()).split("-");
+				first = Integer.parseInt(r[0]);
+				last = Math.min(Integer.parseInt(r[1]), data.length - 1);
+				rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				rsp.setHeader("Content-Range",
+						"bytes " + first + "-" + last + "/" + data.length);
+			}
+			rsp.setContentLength(last - first + 1);
+			rsp.getOutputStream().write(data, first, last - first + 1);
+		}
+
+		@Override
+		protected void doPut(HttpServletRequest req, HttpServletResponse rsp)
+				throws IOException {
+			byte[] data = readAll(req.getInputStream());
+			if (!md5(data).equals(req.getHeader("Content-MD5"))) {
+				rsp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			}
+			puts.incrementAndGet();
+			String uploadId = req.getParameter("uploadId");
+			if (uploadId == null) {
+				objects.put(req.getPathInfo(), data);
+				return;
+			}
+			int partNumber = Integer.parseInt(req.getParameter("partNumber"));
+			if (partNumber == failPart) {
+				rsp.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
+			Map<Integer, byte[]> parts = uploads.get(uploadId);
+			if (parts == null) {
+				rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			parts.put(Integer.valueOf(partNumber), data);
+			rsp.setHeader("ETag", etag(data, 0, data.length));
+		}
+
+		@Override
+		protected void doPost(HttpServletRequest req, HttpServletResponse rsp)
+				throws IOException {
+			rsp.setContentType("application/xml");
+			if (req.getParameter("uploads") != null) {
+				initiated.incrementAndGet();
+				String id = "upload-" + nextUploadId.incrementAndGet();
+				uploads.put(id, new ConcurrentHashMap<Integer, byte[]>());
+				rsp.getWriter().write("<InitiateMultipartUploadResult>"
+						+ "<Bucket>" + BUCKET + "</Bucket>"
+						+ "<UploadId>" + id + "</UploadId>"
+						+ "</InitiateMultipartUploadResult>");
+				return;
+			}
+
+			Map<Integer, byte[]> parts = uploads
+					.remove(req.getParameter("uploadId"));
+			if (parts == null) {
+				rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			String body = new String(readAll(req.getInputStream()), "UTF-8");
+			ByteArrayOutputStream object = new ByteArrayOutputStream();
+			Matcher m = PART.matcher(body);
+			int expected = 1;
+			while (m.find()) {
+				int partNumber = Integer.parseInt(m.group(1));
+				byte[] part = parts.get(Integer.valueOf(partNumber));
+				if (partNumber != expected++ || part == null || !m.group(2)
+						.equals(etag(part, 0, part.length))) {
+					rsp.getWriter().write("<Error><Code>InvalidPart</Code></Error>");
+					return;
+				}
+				object.write(part);
+			}
+			objects.put(req.getPathInfo(), object.toByteArray());
+			rsp.getWriter().write("<CompleteMultipartUploadResult>"
+					+ "</CompleteMultipartUploadResult>");
+		}
+
+		@Override
+		protected void doDelete(HttpServletRequest req,
+				HttpServletResponse rsp) {
+			String uploadId = req.getParameter("uploadId");
+			if (uploadId != null) {
+				if (uploads.remove(uploadId) != null)
+					aborted.incrementAndGet();
+			} else {
+				objects.remove(req.getPathInfo());
+			}
+			rsp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+		}
+
+		private static String signature(HttpServletRequest req)
+				throws IOException {
+			StringBuilder s = new StringBuilder();
+			s.append(req.getMethod()).append('\n');
+			s.append(nonNull(req.getHeader("Content-MD5"))).append('\n');
+			s.append(nonNull(req.getHeader("Content-Type"))).append('\n');
+			s.append(nonNull(req.getHeader("Date"))).append('\n');
+			SortedMap<String, String> amz = new TreeMap<>();
+			for (String name : Collections.list(req.getHeaderNames())) {
+				String lc = StringUtils.toLowerCase(name);
+				if (lc.startsWith("x-amz-"))
+					amz.put(lc, req.getHeader(name));
+			}
+			for (Map.Entry<String, String> e : amz.entrySet())
+				s.append(e.getKey()).append(':').append(e.getValue())
+						.append('\n');
+
+			String host = req.getServerName();
+			s.append('/').append(
+					host.substring(0, host.length() - DOMAIN.length() - 1));
+			s.append(req.getRequestURI());
+			SortedMap<String, String> sub = new TreeMap<>();
+			if (req.getQueryString() != null) {
+				for (String p : req.getQueryString().split("&")) {
+					int eq = p.indexOf('=');
+					String name = eq < 0 ? p : p.substring(0, eq);
+					if (name.equals("uploads") || name.equals("uploadId")
+							|| name.equals("partNumber"))
+						sub.put(name, eq < 0 ? null
+								: URLDecoder.decode(p.substring(eq + 1),
+										"UTF-8"));
+				}
+			}
+			char sep = '?';
+			for (Map.Entry<String, String> e : sub.entrySet()) {
+				s.append(sep).append(e.getKey());
+				if (e.getValue() != null)
+					s.append('=').append(e.getValue());
+				sep = '&';
+			}
+
+			try {
+				Mac mac = Mac.getInstance("HmacSHA1");
+				mac.init(new SecretKeySpec(Constants.encodeASCII(SECRET_KEY),
+						"HmacSHA1"));
+				return "AWS " + ACCESS_KEY + ":" + Base64.encodeBytes(
+						mac.doFinal(s.toString().getBytes("UTF-8")));
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+
+		private static String nonNull(String s) {
+			return s != null ? s : "";
+		}
+
+		private static String md5(byte[] data) throws IOException {
+			try {
+				return Base64.encodeBytes(
+						MessageDigest.getInstance("MD5").digest(data));
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+
+		private static String etag(byte[] data, int off, int len)
+				throws IOException {
+			try {
+				MessageDigest md = MessageDigest.getInstance("MD5");
+				md.update(data, off, len);
+				StringBuilder hex = new StringBuilder("\"");
+				for (byte b : md.digest())
+					hex.append(String.format("%02x", Integer.valueOf(b & 0xff)));
+				return hex.append('"').toString();
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+	}
+}
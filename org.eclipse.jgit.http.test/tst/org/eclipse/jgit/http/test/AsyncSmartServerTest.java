@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.TestRng;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.UploadPack;
+import org.eclipse.jgit.transport.resolver.RepositoryResolver;
+import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncSmartServerTest extends HttpTestCase {
+	private static final String master = Constants.R_HEADS + Constants.MASTER;
+
+	private ExecutorService pool;
+
+	private final AtomicInteger tasks = new AtomicInteger();
+
+	private Repository remoteRepository;
+
+	private URIish asyncURI;
+
+	private URIish blockingURI;
+
+	private URIish rejectingURI;
+
+	private URIish timeoutURI;
+
+	private URIish slowURI;
+
+	private CountingRepository counting;
+
+	private RevBlob big;
+
+	private RevCommit A;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		final TestRepository<Repository> src = createTestRepository();
+		final String srcName = src.getRepository().getDirectory().getName();
+		pool = Executors.newFixedThreadPool(2);
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.incrementAndGet();
+				pool.execute(command);
+			}
+		};
+
+		ServletContextHandler app = server.addContext("/git");
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(src, srcName));
+		gs.setAsyncExecutor(executor);
+		ServletHolder holder = new ServletHolder(gs);
+		holder.setAsyncSupported(true);
+		app.addServlet(holder, "/*");
+
+		ServletContextHandler blocking = server.addContext("/blocking");
+		gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(src, srcName));
+		gs.setAsyncExecutor(executor);
+		holder = new ServletHolder(gs);
+		holder.setAsyncSupported(false);
+		blocking.addServlet(holder, "/*");
+
+		ServletContextHandler rejecting = server.addContext("/rejecting");
+		gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(src, srcName));
+		gs.setAsyncExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		});
+		holder = new ServletHolder(gs);
+		holder.setAsyncSupported(true);
+		rejecting.addServlet(holder, "/*");
+
+		ServletContextHandler timeout = server.addContext("/timeout");
+		counting = new CountingRepository(src.getRepository().getDirectory());
+		gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(counting, srcName));
+		gs.setUploadPackFactory(oneSecondTimeout());
+		gs.setAsyncExecutor(executor);
+		holder = new ServletHolder(gs);
+		holder.setAsyncSupported(true);
+		timeout.addServlet(holder, "/*");
+
+		ServletContextHandler slow = server.addContext("/slow");
+		FilterHolder throttle = new FilterHolder(new ThrottleFilter());
+		throttle.setAsyncSupported(true);
+		slow.addFilter(throttle, "/*", EnumSet.of(DispatcherType.REQUEST));
+		gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(src, srcName));
+		gs.setUploadPackFactory(oneSecondTimeout());
+		gs.setAsyncExecutor(executor);
+		holder = new ServletHolder(gs);
+		holder.setAsyncSupported(true);
+		slow.addServlet(holder, "/*");
+
+		server.setUp();
+
+		remoteRepository = src.getRepository();
+		asyncURI = toURIish(app, srcName);
+		blockingURI = toURIish(blocking, srcName);
+		rejectingURI = toURIish(rejecting, srcName);
+		timeoutURI = toURIish(timeout, srcName);
+		slowURI = toURIish(slow, srcName);
+
+		StoredConfig cfg = remoteRepository.getConfig();
+		cfg.setBoolean("http", null, "receivepack", true);
+		cfg.save();
+
+		// Larger than the buffers, so both directions have to wait.
+		big = src.blob(new TestRng("big").nextBytes(3 * 1024 * 1024));
+		A = src.commit().add("big", big).create();
+		src.update(master, A);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdownNow();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+		counting.close();
+		super.tearDown();
+	}
+
+	private static UploadPackFactory<HttpServletRequest> oneSecondTimeout() {
+		return new UploadPackFactory<HttpServletRequest>() {
+			@Override
+			public UploadPack create(HttpServletRequest req, Repository db) {
+				UploadPack up = new UploadPack(db);
+				up.setTimeout(1);
+				return up;
+			}
+		};
+	}
+
+	private static RepositoryResolver<HttpServletRequest> resolver(
+			TestRepository<Repository> src, String srcName) {
+		return resolver(src.getRepository(), srcName);
+	}
+
+	private static RepositoryResolver<HttpServletRequest> resolver(
+			final Repository repo, final String srcName) {
+		return new RepositoryResolver<HttpServletRequest>() {
+			@Override
+			public Repository open(HttpServletRequest req, String name)
+					throws RepositoryNotFoundException,
+					ServiceNotEnabledException {
+				if (!name.equals(srcName))
+					throw new RepositoryNotFoundException(name);
+
+				repo.incrementOpen();
+				return repo;
+			}
+		};
+	}
+
+	@Test
+	public void testFetch() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, asyncURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+		assertTrue(dst.hasObject(big));
+		assertEquals(A, dst.exactRef(master).getObjectId());
+		fsck(dst, A);
+		assertEquals(1, tasks.get());
+	}
+
+	@Test
+	public void testFetch_AsyncNotSupported() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, blockingURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+		assertEquals(A, dst.exactRef(master).getObjectId());
+		assertEquals(0, tasks.get());
+	}
+
+	@Test
+	public void testFetch_Rejected() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, rejectingURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+			fail("fetch succeeded without an executor");
+		} catch (TransportException err) {
+			assertTrue(err.getMessage().contains("503"));
+		}
+		assertFalse(dst.hasObject(big));
+	}
+
+	@Test
+	public void testPush() throws Exception {
+		TestRepository<Repository> src = createTestRepository();
+		RevBlob blob = src.blob(new TestRng("push").nextBytes(3 * 1024 * 1024));
+		RevCommit B = src.commit().add("pushed", blob).create();
+		String dstName = Constants.R_HEADS + "pushed";
+
+		try (Transport t = Transport.open(src.getRepository(), asyncURI)) {
+			RemoteRefUpdate u = new RemoteRefUpdate(src.getRepository(),
+					B.name(), dstName, false, null, null);
+			t.push(NullProgressMonitor.INSTANCE, Collections.singleton(u));
+			assertEquals(RemoteRefUpdate.Status.OK, u.getStatus());
+		}
+
+		assertTrue(remoteRepository.hasObject(blob));
+		assertEquals(B, remoteRepository.exactRef(dstName).getObjectId());
+		fsck(remoteRepository, B);
+		assertEquals(1, tasks.get());
+	}
+
+	@Test
+	public void testTimedOutRequestReleasesRepository() throws Exception {
+		URL u = new URL(timeoutURI + "/git-upload-pack");
+		try (Socket socket = new Socket(u.getHost(), u.getPort())) {
+			// Announce a body that never arrives, the service cannot start.
+			OutputStream out = socket.getOutputStream();
+			out.write(Constants.encodeASCII("POST " + u.getPath()
+					+ " HTTP/1.1\r\n"
+					+ "Host: " + u.getHost() + "\r\n"
+					+ "Content-Type: application/x-git-upload-pack-request\r\n"
+					+ "Content-Length: 1000\r\n"
+					+ "\r\n"
+					+ "0000"));
+			out.flush();
+			socket.setSoTimeout(10000);
+			// Returns once the async timeout aborted the request.
+			socket.getInputStream().read();
+		}
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (counting.opened.get() != counting.closed.get()
+				&& System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertTrue(counting.opened.get() > 0);
+		assertEquals(counting.opened.get(), counting.closed.get());
+		assertEquals(0, tasks.get());
+	}
+
+	@Test
+	public void testSlowFetchOutlivesIdleTimeout() throws Exception {
+		// Unlike TestRng output this does not compress.
+		byte[] data = new byte[3 * 1024 * 1024];
+		new Random(42).nextBytes(data);
+		TestRepository<Repository> src = new TestRepository<>(
+				remoteRepository);
+		RevBlob blob = src.blob(data);
+		RevCommit B = src.commit().add("random", blob).create();
+		String name = Constants.R_HEADS + "random";
+		src.update(name, B);
+
+		Repository dst = createBareRepository();
+		long start = System.currentTimeMillis();
+		try (Transport t = Transport.open(dst, slowURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(name));
+		}
+		// Longer than the idle timeout, but the client kept reading.
+		assertTrue(System.currentTimeMillis() - start > 1000);
+		assertTrue(dst.hasObject(blob));
+		assertEquals(B, dst.exactRef(name).getObjectId());
+	}
+
+	/** Delays every write of a response body to simulate a slow client. */
+	private static class ThrottleFilter implements Filter {
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response,
+				FilterChain chain) throws IOException, ServletException {
+			chain.doFilter(request, new HttpServletResponseWrapper(
+					(HttpServletResponse) response) {
+				@Override
+				public ServletOutputStream getOutputStream()
+						throws IOException {
+					return new ThrottledStream(super.getOutputStream());
+				}
+			});
+		}
+
+		@Override
+		public void init(FilterConfig filterConfig) throws ServletException {
+			// empty
+		}
+
+		@Override
+		public void destroy() {
+			// empty
+		}
+	}
+
+	private static class ThrottledStream extends ServletOutputStream {
+		private final ServletOutputStream dst;
+
+		ThrottledStream(ServletOutputStream dst) {
+			this.dst = dst;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			try {
+				// About 2 MiB/s; the 3 MiB blob takes longer than 1 second.
+				Thread.sleep(len / 2048 + 1);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			dst.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			dst.flush();
+		}
+
+		@Override
+		public boolean isReady() {
+			return dst.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			dst.setWriteListener(writeListener);
+		}
+	}
+
+	private static class CountingRepository extends FileRepository {
+		final AtomicInteger opened = new AtomicInteger();
+
+		final AtomicInteger closed = new AtomicInteger();
+
+		CountingRepository(File gitDir) throws IOException {
+			super(gitDir);
+		}
+
+		@Override
+		public void incrementOpen() {
+			opened.incrementAndGet();
+			super.incrementOpen();
+		}
+
+		@Override
+		public void close() {
+			closed.incrementAndGet();
+			super.close();
+		}
+	}
+}
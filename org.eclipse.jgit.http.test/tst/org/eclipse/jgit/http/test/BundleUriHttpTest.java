@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.BundleWriter;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.UploadPack;
+import org.eclipse.jgit.transport.resolver.RepositoryResolver;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BundleUriHttpTest extends HttpTestCase {
+	private static final String ETAG_A = "\"a\"";
+
+	private static final String ETAG_B = "\"b\"";
+
+	private TestRepository<Repository> src;
+
+	private URIish remoteURI;
+
+	private String bundleUri;
+
+	private BundleServlet bundles;
+
+	private RevCommit a;
+
+	private RevCommit b;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		src = createTestRepository();
+		final String srcName = src.getRepository().getDirectory().getName();
+		a = src.branch("master").commit().add("a", "a").create();
+		b = src.branch("master").commit().parent(a).add("b", "b").create();
+
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver(new RepositoryResolver<HttpServletRequest>() {
+			@Override
+			public Repository open(HttpServletRequest req, String name)
+					throws RepositoryNotFoundException {
+				if (!name.equals(srcName))
+					throw new RepositoryNotFoundException(name);
+				Repository db = src.getRepository();
+				db.incrementOpen();
+				return db;
+			}
+		});
+		gs.setUploadPackFactory(new UploadPackFactory<HttpServletRequest>() {
+			@Override
+			public UploadPack create(HttpServletRequest req, Repository db) {
+				UploadPack up = new UploadPack(db);
+				up.setBundleUris(Collections.singletonList(bundleUri));
+				return up;
+			}
+		});
+		ServletContextHandler app = server.addContext("/git");
+		app.addServlet(new ServletHolder(gs), "/*");
+
+		bundles = new BundleServlet(bundle(a), ETAG_A);
+		ServletContextHandler files = server.addContext("/bundles");
+		files.addServlet(new ServletHolder(bundles), "/*");
+
+		server.setUp();
+		remoteURI = toURIish(app, srcName);
+		bundleUri = toURIish("/bundles/master.bundle").toString();
+	}
+
+	@Test
+	public void testInterruptedDownloadIsResumed() throws Exception {
+		int cut = bundles.content.length / 2;
+		bundles.cutAt = cut;
+		Repository client = fetch();
+
+		assertEquals(a,
+				client.exactRef("refs/bundles/heads/master").getObjectId());
+		assertEquals(b, client.exactRef(master).getObjectId());
+
+		assertEquals(2, bundles.requests.size());
+		assertNull(bundles.requests.get(0));
+		assertEquals("bytes=" + cut + "- " + ETAG_A,
+				bundles.requests.get(1));
+	}
+
+	@Test
+	public void testChangedBundleIsDownloadedAgain() throws Exception {
+		int cut = bundles.content.length / 2;
+		bundles.cutAt = cut;
+		bundles.replacement = bundle(b);
+		Repository client = fetch();
+
+		// The server ignored the range, the client must not append to the
+		// partial file of the old bundle.
+		assertEquals(b,
+				client.exactRef("refs/bundles/heads/master").getObjectId());
+		assertEquals(b, client.exactRef(master).getObjectId());
+		assertEquals(2, bundles.requests.size());
+		assertEquals("bytes=" + cut + "- " + ETAG_A,
+				bundles.requests.get(1));
+	}
+
+	private Repository fetch() throws Exception {
+		Repository client = createBareRepository();
+		try (Transport tn = Transport.open(client, remoteURI)) {
+			tn.setUseBundleUris(true);
+			tn.fetch(NullProgressMonitor.INSTANCE, Collections.singleton(
+					new RefSpec("+refs/heads/*:refs/heads/*")));
+		}
+		return client;
+	}
+
+	private byte[] bundle(RevCommit tip) throws IOException {
+		BundleWriter bw = new BundleWriter(src.getRepository());
+		bw.include(master, tip);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bw.writeBundle(NullProgressMonitor.INSTANCE, out);
+		return out.toByteArray();
+	}
+
+	/** Serves one bundle, honoring {@code Range} and {@code If-Range}. */
+	private static class BundleServlet extends HttpServlet {
+		private static final long serialVersionUID = 1L;
+
+		final List<String> requests = Collections
+				.synchronizedList(new ArrayList<String>());
+
+		volatile byte[] content;
+
+		volatile String etag;
+
+		/** Bytes sent before the first response is aborted; 0 for none. */
+		volatile int cutAt;
+
+		/** Bundle served after the first response was aborted. */
+		volatile byte[] replacement;
+
+		BundleServlet(byte[] content, String etag) {
+			this.content = content;
+			this.etag = etag;
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest req, HttpServletResponse rsp)
+				throws ServletException, IOException {
+			String range = req.getHeader("Range");
+			String ifRange = req.getHeader("If-Range");
+			requests.add(range != null ? range + " " + ifRange : null);
+
+			byte[] data = content;
+			int start = 0;
+			if (range != null && etag.equals(ifRange)) {
+				start = Integer.parseInt(range.substring(
+						"bytes=".length(), range.length() - 1));
+				if (data.length <= start) {
+					rsp.sendError(416);
+					return;
+				}
+				rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				rsp.setHeader("Content-Range", "bytes " + start + "-"
+						+ (data.length - 1) + "/" + data.length);
+			} else {
+				rsp.setStatus(HttpServletResponse.SC_OK);
+			}
+			rsp.setHeader("ETag", etag);
+			rsp.setContentLength(data.length - start);
+
+			OutputStream out = rsp.getOutputStream();
+			if (0 < cutAt) {
+				out.write(data, start, cutAt);
+				rsp.flushBuffer();
+				cutAt = 0;
+				if (replacement != null) {
+					content = replacement;
+					etag = ETAG_B;
+				}
+				throw new IOException("connection lost");
+			}
+			out.write(data, start, data.length - start);
+		}
+	}
+}
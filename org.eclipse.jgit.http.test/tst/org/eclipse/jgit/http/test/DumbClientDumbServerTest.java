@@ -55,12 +55,30 @@
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
 
 import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jgit.errors.NotSupportedException;
@@ -97,6 +115,15 @@ public class DumbClientDumbServerTest extends HttpTestCase {
 
 	private RevCommit A, B;
 
+	/** If set, requests for these objects wait for each other. */
+	private volatile Set<String> gatedObjects = Collections.emptySet();
+
+	private volatile CountDownLatch looseGate;
+
+	private final AtomicInteger looseInFlight = new AtomicInteger();
+
+	private final AtomicInteger maxLooseInFlight = new AtomicInteger();
+
 	@Parameters
 	public static Collection<Object[]> data() {
 		// run all tests with both connection factories we have
@@ -120,6 +147,44 @@ public void setUp() throws Exception {
 
 		ServletContextHandler app = server.addContext("/git");
 		app.setResourceBase(base.toString());
+		app.addFilter(new FilterHolder(new Filter() {
+			@Override
+			public void doFilter(ServletRequest request,
+					ServletResponse response, FilterChain chain)
+					throws IOException, ServletException {
+				String uri = ((HttpServletRequest) request).getRequestURI();
+				if (!uri.matches(".*/objects/[0-9a-f]{2}/[0-9a-f]{38}")) {
+					chain.doFilter(request, response);
+					return;
+				}
+				int n = looseInFlight.incrementAndGet();
+				maxLooseInFlight.accumulateAndGet(n, Math::max);
+				try {
+					CountDownLatch gate = looseGate;
+					if (gate != null && gatedObjects.contains(
+							uri.substring(uri.length() - 41))) {
+						gate.countDown();
+						gate.await(5, TimeUnit.SECONDS);
+					}
+					chain.doFilter(request, response);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} finally {
+					looseInFlight.decrementAndGet();
+				}
+			}
+
+			@Override
+			public void init(FilterConfig filterConfig)
+					throws ServletException {
+				// empty
+			}
+
+			@Override
+			public void destroy() {
+				// empty
+			}
+		}), "/*", EnumSet.of(DispatcherType.REQUEST));
 		ServletHolder holder = app.addServlet(DefaultServlet.class, "/");
 		// The tmp directory is symlinked on OS X
 		holder.setInitParameter("aliases", "true");
@@ -211,6 +276,44 @@ public void testInitialClone_Loose() throws Exception {
 		assertEquals(200, loose.get(0).getStatus());
 	}
 
+	@Test
+	public void testInitialClone_ManyLoose() throws Exception {
+		TestRepository<Repository> src = new TestRepository<>(
+				remoteRepository);
+		List<RevBlob> blobs = new ArrayList<>();
+		RevCommit tip = B;
+		for (int i = 0; i < 20; i++) {
+			RevBlob blob = src.blob("content " + i);
+			blobs.add(blob);
+			tip = src.commit().parent(tip).add("f" + i, blob).create();
+		}
+		src.update(master, tip);
+
+		// Hold the first blob request until a second one arrives, so the
+		// fetch only completes quickly if downloads overlap.
+		Set<String> gated = new HashSet<>();
+		for (RevBlob blob : blobs) {
+			String name = blob.name();
+			gated.add(name.substring(0, 2) + "/" + name.substring(2));
+		}
+		gatedObjects = gated;
+		looseGate = new CountDownLatch(2);
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, remoteURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+
+		assertTrue(maxLooseInFlight.get() > 1);
+		assertEquals(tip, dst.exactRef(master).getObjectId());
+		fsck(dst, tip);
+		for (RevBlob blob : blobs) {
+			assertTrue(dst.hasObject(blob));
+			List<AccessEvent> loose = getRequests(loose(remoteURI, blob));
+			assertEquals(1, loose.size());
+			assertEquals(200, loose.get(0).getStatus());
+		}
+	}
+
 	@Test
 	public void testInitialClone_Packed() throws Exception {
 		new TestRepository<>(remoteRepository).packAndPrune();
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.transport.http.apache.HttpClientConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpClientConnectionPoolTest extends HttpTestCase {
+	/** Larger than the client's buffer, so the body is not read at once. */
+	private static final int BODY_SIZE = 256 * 1024;
+
+	private HttpClientConnectionFactory factory;
+
+	private URL url;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		ServletContextHandler app = server.addContext("/port");
+		app.addServlet(new ServletHolder(new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(HttpServletRequest req,
+					HttpServletResponse rsp)
+					throws ServletException, IOException {
+				rsp.setHeader("X-Client-Port",
+						String.valueOf(req.getRemotePort()));
+				rsp.setContentLength(BODY_SIZE);
+				rsp.getOutputStream().write(new byte[BODY_SIZE]);
+			}
+		}), "/*");
+		server.setUp();
+		url = server.getURI().resolve("/port/").toURL();
+
+		// A single pooled connection makes leaks and reuse observable.
+		factory = new HttpClientConnectionFactory(1, 1);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		factory.shutdown();
+		super.tearDown();
+	}
+
+	@Test
+	public void testConnectionReusedAfterBodyRead() throws Exception {
+		HttpConnection c1 = open();
+		try (InputStream in = c1.getInputStream()) {
+			while (in.read(new byte[8192]) >= 0) {
+				// Read the entire body.
+			}
+		}
+		HttpConnection c2 = open();
+		c2.disconnect();
+
+		assertEquals(port(c1), port(c2));
+	}
+
+	@Test
+	public void testDisconnectReturnsConnectionToPool() throws Exception {
+		HttpConnection c1 = open();
+		// The body is never read by the caller.
+		c1.disconnect();
+		HttpConnection c2 = open();
+		c2.disconnect();
+
+		assertEquals(port(c1), port(c2));
+	}
+
+	@Test
+	public void testWaitForPooledConnectionTimesOut() throws Exception {
+		open();
+		try {
+			// The only connection of the pool was not released.
+			open();
+			fail("expected a timeout waiting for a pooled connection");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+	}
+
+	private HttpConnection open() throws IOException {
+		HttpConnection c = factory.create(url);
+		c.setRequestMethod("GET");
+		c.setConnectTimeout(1000);
+		c.setReadTimeout(5000);
+		assertEquals(HttpConnection.HTTP_OK, c.getResponseCode());
+		return c;
+	}
+
+	private static String port(HttpConnection c) {
+		return c.getHeaderField("X-Client-Port");
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_ALLOW_TIP_SHA1_IN_WANT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.http.server.InfoRefsCache;
+import org.eclipse.jgit.http.server.resolver.DefaultUploadPackFactory;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefFilter;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.UploadPack;
+import org.eclipse.jgit.transport.UploadPack.RequestPolicy;
+import org.eclipse.jgit.transport.resolver.RepositoryResolver;
+import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
+import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
+import org.eclipse.jgit.util.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InfoRefsCacheTest extends HttpTestCase {
+	private TestRepository<Repository> src;
+
+	private InfoRefsCache cache;
+
+	private URIish cachedURI;
+
+	private URIish filteredURI;
+
+	private URIish tipURI;
+
+	private RevCommit A;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		src = createTestRepository();
+		final String srcName = src.getRepository().getDirectory().getName();
+		cache = new InfoRefsCache(InfoRefsCache.DEFAULT_MAX_BYTES, 60 * 1000);
+
+		ServletContextHandler app = server.addContext("/git");
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(srcName));
+		gs.setInfoRefsCache(cache);
+		app.addServlet(new ServletHolder(gs), "/*");
+
+		ServletContextHandler filtered = server.addContext("/filtered");
+		gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(srcName));
+		gs.setInfoRefsCache(cache);
+		gs.setUploadPackFactory(new DefaultUploadPackFactory() {
+			@Override
+			public UploadPack create(HttpServletRequest req, Repository db)
+					throws ServiceNotEnabledException,
+					ServiceNotAuthorizedException {
+				UploadPack up = super.create(req, db);
+				up.setRefFilter(new RefFilter() {
+					@Override
+					public Map<String, Ref> filter(Map<String, Ref> refs) {
+						return refs;
+					}
+				});
+				return up;
+			}
+		});
+		filtered.addServlet(new ServletHolder(gs), "/*");
+
+		ServletContextHandler tip = server.addContext("/tip");
+		gs = new GitServlet();
+		gs.setRepositoryResolver(resolver(srcName));
+		gs.setInfoRefsCache(cache);
+		gs.setUploadPackFactory(new DefaultUploadPackFactory() {
+			@Override
+			public UploadPack create(HttpServletRequest req, Repository db)
+					throws ServiceNotEnabledException,
+					ServiceNotAuthorizedException {
+				UploadPack up = super.create(req, db);
+				up.setRequestPolicy(RequestPolicy.TIP);
+				return up;
+			}
+		});
+		tip.addServlet(new ServletHolder(gs), "/*");
+
+		server.setUp();
+
+		cachedURI = toURIish(app, srcName);
+		filteredURI = toURIish(filtered, srcName);
+		tipURI = toURIish(tip, srcName);
+
+		A = src.commit().create();
+		src.update(Constants.MASTER, A);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		cache.close();
+		super.tearDown();
+	}
+
+	private RepositoryResolver<HttpServletRequest> resolver(
+			final String srcName) {
+		return new RepositoryResolver<HttpServletRequest>() {
+			@Override
+			public Repository open(HttpServletRequest req, String name)
+					throws RepositoryNotFoundException,
+					ServiceNotEnabledException {
+				if (!name.equals(srcName))
+					throw new RepositoryNotFoundException(name);
+
+				final Repository db = src.getRepository();
+				db.incrementOpen();
+				return db;
+			}
+		};
+	}
+
+	@Test
+	public void testETag() throws Exception {
+		Response r = infoRefs(cachedURI, null);
+		assertEquals(200, r.status);
+		assertNotNull(r.etag);
+		assertTrue(r.body.contains(A.name() + " refs/heads/master"));
+
+		Response r2 = infoRefs(cachedURI, null);
+		assertEquals(r.etag, r2.etag);
+		assertEquals(r.body, r2.body);
+
+		Response r3 = infoRefs(cachedURI, r.etag);
+		assertEquals(304, r3.status);
+		assertEquals(r.etag, r3.etag);
+		assertEquals("", r3.body);
+
+		Response r4 = infoRefs(cachedURI, "0000");
+		assertEquals(200, r4.status);
+		assertEquals(r.body, r4.body);
+	}
+
+	@Test
+	public void testServedFromCacheUntilRefsChange() throws Exception {
+		// The first scan of the loose refs reports them as changed.
+		infoRefs(cachedURI, null);
+		Response r = infoRefs(cachedURI, null);
+
+		// Bypass JGit, the cache cannot notice this update.
+		writeLooseRef("refs/heads/external", A);
+		Response r2 = infoRefs(cachedURI, null);
+		assertEquals(r.etag, r2.etag);
+		assertFalse(r2.body.contains("refs/heads/external"));
+
+		RevCommit B = src.commit().parent(A).create();
+		src.update("refs/heads/side", B);
+		Response r3 = infoRefs(cachedURI, r.etag);
+		assertEquals(200, r3.status);
+		assertNotEquals(r.etag, r3.etag);
+		assertTrue(r3.body.contains(B.name() + " refs/heads/side"));
+		assertTrue(r3.body.contains("refs/heads/external"));
+	}
+
+	@Test
+	public void testCustomRefFilterNotCached() throws Exception {
+		Response r = infoRefs(filteredURI, null);
+		assertEquals(200, r.status);
+		assertNull(r.etag);
+
+		writeLooseRef("refs/heads/external", A);
+		r = infoRefs(filteredURI, null);
+		assertTrue(r.body.contains("refs/heads/external"));
+	}
+
+	@Test
+	public void testFactorySettingsInKey() throws Exception {
+		Response r = infoRefs(cachedURI, null);
+		assertFalse(r.body.contains(OPTION_ALLOW_TIP_SHA1_IN_WANT));
+
+		Response r2 = infoRefs(tipURI, null);
+		assertNotEquals(r.etag, r2.etag);
+		assertTrue(r2.body.contains(OPTION_ALLOW_TIP_SHA1_IN_WANT));
+
+		assertEquals(r.etag, infoRefs(cachedURI, null).etag);
+	}
+
+	@Test
+	public void testInvalidateManyRepositories() throws Exception {
+		infoRefs(cachedURI, null);
+		Response r = infoRefs(cachedURI, null);
+		writeLooseRef("refs/heads/external", A);
+
+		// Tracking the versions of this many repositories drops the cache.
+		for (int i = 0; i < 1100; i++) {
+			cache.invalidate(new InMemoryRepository(
+					new DfsRepositoryDescription("repo" + i)));
+		}
+		Response r2 = infoRefs(cachedURI, r.etag);
+		assertEquals(200, r2.status);
+		assertTrue(r2.body.contains("refs/heads/external"));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		infoRefs(cachedURI, null);
+		Response r = infoRefs(cachedURI, null);
+		writeLooseRef("refs/heads/external", A);
+		cache.invalidate(src.getRepository());
+
+		Response r2 = infoRefs(cachedURI, r.etag);
+		assertEquals(200, r2.status);
+		assertTrue(r2.body.contains("refs/heads/external"));
+	}
+
+	private void writeLooseRef(String name, RevCommit id) throws IOException {
+		File f = new File(src.getRepository().getDirectory(), name);
+		write(f, id.name() + "\n");
+	}
+
+	private static class Response {
+		int status;
+
+		String etag;
+
+		String body;
+	}
+
+	private static Response infoRefs(URIish uri, String ifNoneMatch)
+			throws IOException {
+		URL u = new URL(uri.toString() + "/info/refs?service=git-upload-pack");
+		HttpURLConnection c = (HttpURLConnection) u.openConnection();
+		try {
+			if (ifNoneMatch != null)
+				c.setRequestProperty("If-None-Match", ifNoneMatch);
+			Response r = new Response();
+			r.status = c.getResponseCode();
+			r.etag = c.getHeaderField("ETag");
+			if (r.status == 200) {
+				InputStream in = c.getInputStream();
+				try {
+					ByteBuffer b = IO.readWholeStream(in, 0);
+					r.body = new String(b.array(), 0, b.limit(),
+							Constants.CHARSET);
+				} finally {
+					in.close();
+				}
+			} else
+				r.body = "";
+			return r;
+		} finally {
+			c.disconnect();
+		}
+	}
+}
@@ -94,6 +94,7 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.ReflogEntry;
 import org.eclipse.jgit.lib.ReflogReader;
@@ -550,6 +551,32 @@ public void testFetch_TooManyLocalCommits() throws Exception {
 				.getResponseHeader(HDR_CONTENT_TYPE));
 	}
 
+	@Test
+	public void testFetch_Shallow() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, remoteURI)) {
+			t.setDepth(1);
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+		assertEquals(B, dst.exactRef(master).getObjectId());
+		assertFalse(dst.hasObject(A));
+		try (ObjectReader or = dst.newObjectReader()) {
+			assertEquals(Collections.singleton(B), or.getShallowCommits());
+		}
+
+		// Deepen the existing shallow clone by one commit.
+		//
+		try (Transport t = Transport.open(dst, remoteURI)) {
+			t.setDepth(2);
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+		assertTrue(dst.hasObject(A));
+		assertTrue(dst.hasObject(A_txt));
+		try (ObjectReader or = dst.newObjectReader()) {
+			assertFalse(or.getShallowCommits().contains(B));
+		}
+	}
+
 	@Test
 	public void testInitialClone_BrokenServer() throws Exception {
 		Repository dst = createBareRepository();
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lfs.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.Response.Action;
+import org.eclipse.jgit.lfs.test.LongObjectIdTestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingLargeFileRepositoryTest {
+	private static class CountingRepository implements LargeFileRepository {
+		final Map<LongObjectId, Long> sizes = new HashMap<>();
+
+		int lookups;
+
+		int batches;
+
+		@Override
+		public Action getDownloadAction(AnyLongObjectId id) {
+			return new Action();
+		}
+
+		@Override
+		public Action getUploadAction(AnyLongObjectId id, long size) {
+			return new Action();
+		}
+
+		@Override
+		public Action getVerifyAction(AnyLongObjectId id) {
+			return null;
+		}
+
+		@Override
+		public long getSize(AnyLongObjectId id) throws IOException {
+			lookups++;
+			Long size = sizes.get(id);
+			return size != null ? size.longValue() : -1;
+		}
+
+		@Override
+		public long[] getSizes(List<? extends AnyLongObjectId> ids)
+				throws IOException {
+			batches++;
+			return LargeFileRepository.super.getSizes(ids);
+		}
+	}
+
+	private CountingRepository backend;
+
+	private LongObjectId a;
+
+	private LongObjectId b;
+
+	private LongObjectId c;
+
+	@Before
+	public void setUp() {
+		backend = new CountingRepository();
+		a = LongObjectIdTestUtils.hash("a");
+		b = LongObjectIdTestUtils.hash("b");
+		c = LongObjectIdTestUtils.hash("c");
+		backend.sizes.put(a, Long.valueOf(1));
+		backend.sizes.put(b, Long.valueOf(2));
+	}
+
+	@Test
+	public void testSizeIsCached() throws IOException {
+		CachingLargeFileRepository repo = new CachingLargeFileRepository(
+				backend, 10, 0);
+		assertEquals(1, repo.getSize(a));
+		assertEquals(1, repo.getSize(a));
+		assertEquals(1, backend.lookups);
+	}
+
+	@Test
+	public void testMissingNotCachedWithoutTtl() throws IOException {
+		CachingLargeFileRepository repo = new CachingLargeFileRepository(
+				backend, 10, 0);
+		assertEquals(-1, repo.getSize(c));
+		assertEquals(-1, repo.getSize(c));
+		assertEquals(2, backend.lookups);
+	}
+
+	@Test
+	public void testMissingCached() throws IOException {
+		CachingLargeFileRepository repo = new CachingLargeFileRepository(
+				backend, 10, 60000);
+		assertEquals(-1, repo.getSize(c));
+		assertEquals(-1, repo.getSize(c));
+		assertEquals(1, backend.lookups);
+
+		backend.sizes.put(c, Long.valueOf(3));
+		repo.getUploadAction(c, 3);
+		assertEquals(3, repo.getSize(c));
+		assertEquals(2, backend.lookups);
+	}
+
+	@Test
+	public void testBatchLooksUpOnlyMisses() throws IOException {
+		CachingLargeFileRepository repo = new CachingLargeFileRepository(
+				backend, 10, 60000);
+		repo.getSize(a);
+		assertArrayEquals(new long[] { 1, 2, -1 },
+				repo.getSizes(Arrays.asList(a, b, c)));
+		assertEquals(1, backend.batches);
+		assertEquals(3, backend.lookups);
+
+		assertArrayEquals(new long[] { -1, 2, 1 },
+				repo.getSizes(Arrays.asList(c, b, a)));
+		assertEquals(1, backend.batches);
+		assertEquals(3, backend.lookups);
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		CachingLargeFileRepository repo = new CachingLargeFileRepository(
+				backend, 1, 0);
+		repo.getSize(a);
+		repo.getSize(b);
+		repo.getSize(b);
+		assertEquals(2, backend.lookups);
+		repo.getSize(a);
+		assertEquals(3, backend.lookups);
+	}
+}
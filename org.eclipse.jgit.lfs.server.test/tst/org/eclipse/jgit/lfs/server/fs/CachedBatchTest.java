@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lfs.server.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.server.CachingLargeFileRepository;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.test.LongObjectIdTestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachedBatchTest extends LfsServerTest {
+	private static class CountingRepository extends FileLfsRepository {
+		int lookups;
+
+		CountingRepository(String url, Path dir) throws IOException {
+			super(url, dir);
+		}
+
+		@Override
+		public long getSize(AnyLongObjectId id) throws IOException {
+			lookups++;
+			return super.getSize(id);
+		}
+	}
+
+	private CountingRepository backend;
+
+	private CachingLargeFileRepository cache;
+
+	@Before
+	public void setUpCache() throws Exception {
+		backend = new CountingRepository(server.getURI() + "/lfs/objects/",
+				getDir());
+		cache = new CachingLargeFileRepository(backend, 100, 60 * 1000);
+	}
+
+	@Override
+	protected LargeFileRepository getProtocolRepository() {
+		return cache;
+	}
+
+	@Test
+	public void testDownloadSizeIsCached() throws Exception {
+		String content = "test";
+		AnyLongObjectId id = putContent(content);
+
+		String response = batch("download", id, content.length());
+		assertTrue(response, response.contains("\"download\""));
+		response = batch("download", id, content.length());
+		assertTrue(response, response.contains("\"download\""));
+		assertEquals(1, backend.lookups);
+	}
+
+	@Test
+	public void testUploadForgetsMissingObject() throws Exception {
+		String content = "missing";
+		AnyLongObjectId id = LongObjectIdTestUtils.hash(content);
+
+		String response = batch("download", id, content.length());
+		assertTrue(response, response.contains("\"code\":404"));
+		response = batch("download", id, content.length());
+		assertTrue(response, response.contains("\"code\":404"));
+		assertEquals(1, backend.lookups);
+
+		response = batch("upload", id, content.length());
+		assertTrue(response, response.contains("\"upload\""));
+		putContent(id, content);
+
+		response = batch("download", id, content.length());
+		assertTrue(response, response.contains("\"download\""));
+		assertEquals(2, backend.lookups);
+	}
+
+	private String batch(String operation, AnyLongObjectId id, long size)
+			throws IOException {
+		try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+			HttpPost request = new HttpPost(
+					server.getURI() + "/lfs/objects/batch");
+			request.setEntity(new StringEntity(
+					"{\"operation\":\"" + operation + "\",\"objects\":[{\"oid\":\""
+							+ id.name() + "\",\"size\":" + size + "}]}",
+					ContentType.APPLICATION_JSON));
+			try (CloseableHttpResponse response = client.execute(request)) {
+				assertEquals(200, response.getStatusLine().getStatusCode());
+				return EntityUtils.toString(response.getEntity());
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lfs.server.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lfs.Lfs;
+import org.eclipse.jgit.lfs.LfsPointer;
+import org.eclipse.jgit.lfs.SmudgeFilter;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+public class CheckoutTest extends LfsServerTest {
+
+	@Test
+	public void testCheckoutDownloadsMissingContent() throws Exception {
+		SmudgeFilter.register();
+		AnyLongObjectId a = putContent("content of a");
+		AnyLongObjectId b = putContent("content of b");
+
+		File work = getTempDirectory().resolve("repo").toFile();
+		try (Git git = Git.init().setDirectory(work).call()) {
+			StoredConfig cfg = git.getRepository().getConfig();
+			cfg.setBoolean(ConfigConstants.CONFIG_FILTER_SECTION, "lfs",
+					ConfigConstants.CONFIG_KEY_USEJGITBUILTIN, true);
+			cfg.setString(Constants.LFS, null, "url",
+					server.getURI() + "/lfs");
+			cfg.save();
+
+			write(work, ".gitattributes", "*.bin filter=lfs\n");
+			git.add().addFilepattern(".gitattributes").call();
+			RevCommit base = git.commit().setMessage("attributes").call();
+
+			write(work, "a.bin", pointer(a, "content of a"));
+			write(work, "b.bin", pointer(b, "content of b"));
+			git.add().addFilepattern("a.bin").addFilepattern("b.bin").call();
+			RevCommit tip = git.commit().setMessage("pointers").call();
+
+			Lfs lfs = new Lfs(git.getRepository().getDirectory().toPath()
+					.resolve(Constants.LFS));
+			assertFalse(Files.exists(lfs.getMediaFile(a)));
+
+			git.checkout().setName(base.name()).call();
+			git.checkout().setName(tip.name()).call();
+
+			assertTrue(Files.exists(lfs.getMediaFile(a)));
+			assertTrue(Files.exists(lfs.getMediaFile(b)));
+			assertEquals("content of a", read(work, "a.bin"));
+			assertEquals("content of b", read(work, "b.bin"));
+		}
+	}
+
+	private static String pointer(AnyLongObjectId id, String content) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new LfsPointer(id, content.length()).encode(out);
+		return new String(out.toByteArray(), UTF_8);
+	}
+
+	private static void write(File dir, String name, String content)
+			throws IOException {
+		Files.write(dir.toPath().resolve(name), content.getBytes(UTF_8));
+	}
+
+	private static String read(File dir, String name) throws IOException {
+		Path p = dir.toPath().resolve(name);
+		return new String(Files.readAllBytes(p), UTF_8);
+	}
+}
@@ -43,8 +43,12 @@
 package org.eclipse.jgit.lfs.server.fs;
 
 import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_PARTIAL_CONTENT;
+import static org.apache.http.HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
 import static org.apache.http.HttpStatus.SC_UNPROCESSABLE_ENTITY;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -53,6 +57,11 @@
 import java.text.MessageFormat;
 
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
 import org.eclipse.jgit.lfs.test.LongObjectIdTestUtils;
 import org.eclipse.jgit.util.FileUtils;
@@ -136,6 +145,61 @@ public void testLargeFileDownload() throws Exception {
 
 	}
 
+	@Test
+	public void testDownloadRange() throws Exception {
+		AnyLongObjectId id = putContent("0123456789");
+		try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+			HttpGet request = new HttpGet(
+					server.getURI() + "/lfs/objects/" + id.name());
+			request.setHeader("Range", "bytes=2-5");
+			try (CloseableHttpResponse response = client.execute(request)) {
+				assertEquals(SC_PARTIAL_CONTENT,
+						response.getStatusLine().getStatusCode());
+				assertEquals("bytes 2-5/10",
+						response.getFirstHeader("Content-Range").getValue());
+				assertEquals("2345", EntityUtils.toString(response.getEntity()));
+			}
+
+			request.setHeader("Range", "bytes=-3");
+			try (CloseableHttpResponse response = client.execute(request)) {
+				assertEquals(SC_PARTIAL_CONTENT,
+						response.getStatusLine().getStatusCode());
+				assertEquals("789", EntityUtils.toString(response.getEntity()));
+			}
+
+			request.setHeader("Range", "bytes=8-");
+			try (CloseableHttpResponse response = client.execute(request)) {
+				assertEquals("89", EntityUtils.toString(response.getEntity()));
+			}
+
+			request.setHeader("Range", "bytes=10-");
+			try (CloseableHttpResponse response = client.execute(request)) {
+				assertEquals(SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+						response.getStatusLine().getStatusCode());
+				assertEquals("bytes */10",
+						response.getFirstHeader("Content-Range").getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testParseRange() {
+		assertArrayEquals(new long[] { 0, 9 },
+				FileLfsServlet.parseRange("bytes=0-", 10));
+		assertArrayEquals(new long[] { 5, 9 },
+				FileLfsServlet.parseRange("bytes=5-100", 10));
+		assertArrayEquals(new long[] { 0, 9 },
+				FileLfsServlet.parseRange("bytes=-20", 10));
+		assertArrayEquals(new long[0],
+				FileLfsServlet.parseRange("bytes=-0", 10));
+		assertArrayEquals(new long[0],
+				FileLfsServlet.parseRange("bytes=0-", 0));
+		assertNull(FileLfsServlet.parseRange("bytes=5-2", 10));
+		assertNull(FileLfsServlet.parseRange("bytes=0-1,4-5", 10));
+		assertNull(FileLfsServlet.parseRange("items=0-1", 10));
+		assertNull(FileLfsServlet.parseRange("bytes=a-b", 10));
+	}
+
 	@SuppressWarnings("boxing")
 	private String formatErrorMessage(int status, String message) {
 		return String.format("Status: %d {\n  \"message\": \"%s\"\n}", status,
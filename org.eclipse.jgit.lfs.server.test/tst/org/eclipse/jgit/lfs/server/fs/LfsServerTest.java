@@ -75,9 +75,12 @@
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jgit.junit.http.AppServer;
+import org.eclipse.jgit.lfs.errors.LfsException;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
 import org.eclipse.jgit.lfs.lib.Constants;
 import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.LfsProtocolServlet;
 import org.eclipse.jgit.lfs.test.LongObjectIdTestUtils;
 import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.util.IO;
@@ -122,9 +125,32 @@ public void setup() throws Exception {
 		this.repository = new FileLfsRepository(null, dir);
 		servlet = new FileLfsServlet(repository, timeout);
 		app.addServlet(new ServletHolder(servlet), "/objects/*");
+		app.addServlet(new ServletHolder(new LfsProtocolServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected LargeFileRepository getLargeFileRepository(
+					LfsRequest request, String path, String auth)
+					throws LfsException {
+				try {
+					return getProtocolRepository();
+				} catch (IOException e) {
+					throw new LfsException(e.getMessage());
+				}
+			}
+		}), "/objects/batch");
 		server.setUp();
 	}
 
+	/**
+	 * @return the repository the batch API serves; a new one for every
+	 *         request unless overridden.
+	 * @throws IOException
+	 */
+	protected LargeFileRepository getProtocolRepository() throws IOException {
+		return new FileLfsRepository(server.getURI() + "/lfs/objects/", dir);
+	}
+
 	@After
 	public void tearDown() throws Exception {
 		server.tearDown();
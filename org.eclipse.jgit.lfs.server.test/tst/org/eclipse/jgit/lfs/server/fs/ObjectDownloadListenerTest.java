@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lfs.server.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.test.LongObjectIdTestUtils;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ObjectDownloadListenerTest {
+	private static final String CONTENT = "0123456789";
+
+	private Path dir;
+
+	private FileLfsRepository repository;
+
+	private LongObjectId id;
+
+	private boolean completed;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("jgit_lfs_download_");
+		repository = new FileLfsRepository(null, dir);
+		id = LongObjectIdTestUtils.hash(CONTENT);
+		Path p = repository.getPath(id);
+		Files.createDirectories(p.getParent());
+		Files.write(p, CONTENT.getBytes(UTF_8));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.delete(dir.toFile(), FileUtils.RECURSIVE);
+	}
+
+	@Test
+	public void testStreamCopy() throws Exception {
+		Output out = new Output();
+		download(out, 2, 5).onWritePossible();
+		assertTrue(completed);
+		assertEquals("23456", out.toString());
+	}
+
+	@Test
+	public void testChannelTakingNoDataIsCopied() throws Exception {
+		// transferTo returns 0 for a channel not accepting any bytes.
+		Output out = new StalledChannelOutput();
+		download(out, 0, CONTENT.length()).onWritePossible();
+		assertTrue(completed);
+		assertEquals(CONTENT, out.toString());
+	}
+
+	@Test
+	public void testTruncatedObjectFails() throws Exception {
+		Output out = new StalledChannelOutput();
+		ObjectDownloadListener l = download(out, 0, CONTENT.length() + 5);
+		try {
+			l.onWritePossible();
+			fail("expected EOFException");
+		} catch (EOFException e) {
+			// The response must not complete short of its Content-Length.
+		}
+		assertFalse(completed);
+		assertEquals(CONTENT, out.toString());
+	}
+
+	private ObjectDownloadListener download(Output out, long offset,
+			long length) throws IOException {
+		return new ObjectDownloadListener(repository,
+				proxy(AsyncContext.class, new Handler(null) {
+					@Override
+					void complete() {
+						completed = true;
+					}
+				}), proxy(HttpServletResponse.class, new Handler(out)),
+				id, offset, length);
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler h) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+				new Class<?>[] { type }, h));
+	}
+
+	/** Answers getOutputStream and complete, ignores everything else. */
+	private static class Handler implements InvocationHandler {
+		private final ServletOutputStream out;
+
+		Handler(ServletOutputStream out) {
+			this.out = out;
+		}
+
+		void complete() {
+			// Only the AsyncContext completes.
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method m, Object[] args) {
+			switch (m.getName()) {
+			case "getOutputStream":
+				return out;
+			case "complete":
+				complete();
+				return null;
+			case "isCommitted":
+				return Boolean.TRUE;
+			default:
+				return null;
+			}
+		}
+	}
+
+	private static class Output extends ServletOutputStream {
+		private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			// Always ready.
+		}
+
+		@Override
+		public void write(int b) {
+			buf.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			buf.write(b, off, len);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buf.toByteArray(), UTF_8);
+		}
+	}
+
+	private static class StalledChannelOutput extends Output
+			implements WritableByteChannel {
+		@Override
+		public int write(ByteBuffer src) {
+			return 0;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lfs.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * A {@link LargeFileRepository} caching the sizes of the objects of another
+ * repository.
+ * <p>
+ * LFS objects are immutable, so once an object was found its size is kept
+ * until the entry is evicted by newer entries. Objects which were not found are
+ * remembered too, but only for a limited time, since clients upload objects
+ * directly to the underlying storage without passing through this cache.
+ * Handing out an upload action for an object also forgets that it was
+ * missing.
+ * <p>
+ * Lookups for many objects, see {@link #getSizes(List)}, pass all objects
+ * missing from the cache to the underlying repository at once.
+ *
+ * @since 4.8
+ */
+public class CachingLargeFileRepository implements LargeFileRepository {
+	private static final long MISSING = -1;
+
+	private static class Entry {
+		final long size;
+
+		final long expiresAt;
+
+		Entry(long size, long expiresAt) {
+			this.size = size;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final LargeFileRepository repository;
+
+	private final long missingTtlMillis;
+
+	private final Map<LongObjectId, Entry> cache;
+
+	/**
+	 * @param repository
+	 *            the repository whose object sizes are cached
+	 * @param maxEntries
+	 *            maximum number of objects to cache sizes of; the least
+	 *            recently used entries are evicted first
+	 * @param missingTtlMillis
+	 *            how long to remember that an object doesn't exist, in
+	 *            milliseconds. 0 disables caching of missing objects.
+	 */
+	public CachingLargeFileRepository(LargeFileRepository repository,
+			final int maxEntries, long missingTtlMillis) {
+		this.repository = repository;
+		this.missingTtlMillis = missingTtlMillis;
+		this.cache = new LinkedHashMap<LongObjectId, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<LongObjectId, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/** @return the repository whose object sizes are cached. */
+	public LargeFileRepository getRepository() {
+		return repository;
+	}
+
+	@Override
+	public Response.Action getDownloadAction(AnyLongObjectId id) {
+		return repository.getDownloadAction(id);
+	}
+
+	@Override
+	public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+		synchronized (cache) {
+			Entry e = cache.get(id);
+			if (e != null && e.size == MISSING) {
+				cache.remove(id);
+			}
+		}
+		return repository.getUploadAction(id, size);
+	}
+
+	@Override
+	public @Nullable Response.Action getVerifyAction(AnyLongObjectId id) {
+		return repository.getVerifyAction(id);
+	}
+
+	@Override
+	public long getSize(AnyLongObjectId id) throws IOException {
+		Long cached = lookup(id, System.currentTimeMillis());
+		if (cached != null) {
+			return cached.longValue();
+		}
+		long size = repository.getSize(id);
+		store(id, size, System.currentTimeMillis());
+		return size;
+	}
+
+	@Override
+	public long[] getSizes(List<? extends AnyLongObjectId> ids)
+			throws IOException {
+		long now = System.currentTimeMillis();
+		long[] sizes = new long[ids.size()];
+		List<AnyLongObjectId> missed = new ArrayList<>();
+		List<Integer> missedAt = new ArrayList<>();
+		for (int i = 0; i < sizes.length; i++) {
+			Long cached = lookup(ids.get(i), now);
+			if (cached != null) {
+				sizes[i] = cached.longValue();
+			} else {
+				missed.add(ids.get(i));
+				missedAt.add(Integer.valueOf(i));
+			}
+		}
+		if (!missed.isEmpty()) {
+			long[] found = repository.getSizes(missed);
+			now = System.currentTimeMillis();
+			for (int i = 0; i < found.length; i++) {
+				sizes[missedAt.get(i).intValue()] = found[i];
+				store(missed.get(i), found[i], now);
+			}
+		}
+		return sizes;
+	}
+
+	/** Forget all cached sizes. */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private Long lookup(AnyLongObjectId id, long now) {
+		synchronized (cache) {
+			Entry e = cache.get(id);
+			if (e == null) {
+				return null;
+			}
+			if (e.size == MISSING && e.expiresAt <= now) {
+				cache.remove(id);
+				return null;
+			}
+			return Long.valueOf(e.size);
+		}
+	}
+
+	private void store(AnyLongObjectId id, long size, long now) {
+		if (size < 0 && missingTtlMillis <= 0) {
+			return;
+		}
+		Entry e = size < 0 ? new Entry(MISSING, now + missingTtlMillis)
+				: new Entry(size, Long.MAX_VALUE);
+		synchronized (cache) {
+			cache.put(id.toObjectId(), e);
+		}
+	}
+}
@@ -43,6 +43,7 @@
 package org.eclipse.jgit.lfs.server;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
@@ -86,4 +87,27 @@ public interface LargeFileRepository {
 	 * @throws IOException
 	 */
 	public long getSize(AnyLongObjectId id) throws IOException;
+
+	/**
+	 * Get the sizes of several objects at once.
+	 * <p>
+	 * The default implementation calls {@link #getSize(AnyLongObjectId)} for
+	 * each object. Implementations able to look up many objects with fewer
+	 * round trips to their storage should override it.
+	 *
+	 * @param ids
+	 *            ids of the objects
+	 * @return length of the content of each object in bytes, in the order of
+	 *         {@code ids}; -1 for objects which don't exist
+	 * @throws IOException
+	 * @since 4.8
+	 */
+	public default long[] getSizes(List<? extends AnyLongObjectId> ids)
+			throws IOException {
+		long[] sizes = new long[ids.size()];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = getSize(ids.get(i));
+		}
+		return sizes;
+	}
 }
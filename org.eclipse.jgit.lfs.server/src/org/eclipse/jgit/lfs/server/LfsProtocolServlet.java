@@ -155,6 +155,11 @@ protected LargeFileRepository getLargeFileRepository(LfsRequest request,
 
 	/**
 	 * Get the large file repository for the given request and path.
+	 * <p>
+	 * To avoid looking up the same objects in the storage backend again for
+	 * every batch request, wrap the repository in a
+	 * {@link CachingLargeFileRepository} and return that same instance for all
+	 * requests to the repository.
 	 *
 	 * @param request
 	 *            the request
@@ -86,22 +86,23 @@ Body process() throws IOException {
 			Response.Body body = new Response.Body();
 			if (objects.size() > 0) {
 				body.objects = new ArrayList<>();
-				for (LfsObject o : objects) {
-					addObjectInfo(body, o);
+				List<LongObjectId> ids = getIds();
+				long[] sizes = repository.getSizes(ids);
+				for (int i = 0; i < sizes.length; i++) {
+					addObjectInfo(body, objects.get(i), ids.get(i), sizes[i]);
 				}
 			}
 			return body;
 		}
 
-		private void addObjectInfo(Response.Body body, LfsObject o)
-				throws IOException {
+		private void addObjectInfo(Response.Body body, LfsObject o,
+				LongObjectId oid, long size) {
 			Response.ObjectInfo info = new Response.ObjectInfo();
 			body.objects.add(info);
 			info.oid = o.oid;
 			info.size = o.size;
 
-			LongObjectId oid = LongObjectId.fromString(o.oid);
-			if (repository.getSize(oid) == -1) {
+			if (size == -1) {
 				info.actions = new HashMap<>();
 				info.actions.put(UPLOAD,
 						repository.getUploadAction(oid, o.size));
@@ -124,22 +125,23 @@ Body process() throws IOException {
 			Response.Body body = new Response.Body();
 			if (objects.size() > 0) {
 				body.objects = new ArrayList<>();
-				for (LfsObject o : objects) {
-					addObjectInfo(body, o);
+				List<LongObjectId> ids = getIds();
+				long[] sizes = repository.getSizes(ids);
+				for (int i = 0; i < sizes.length; i++) {
+					addObjectInfo(body, objects.get(i), ids.get(i), sizes[i]);
 				}
 			}
 			return body;
 		}
 
-		private void addObjectInfo(Response.Body body, LfsObject o)
-				throws IOException {
+		private void addObjectInfo(Response.Body body, LfsObject o,
+				LongObjectId oid, long size) {
 			Response.ObjectInfo info = new Response.ObjectInfo();
 			body.objects.add(info);
 			info.oid = o.oid;
 			info.size = o.size;
 
-			LongObjectId oid = LongObjectId.fromString(o.oid);
-			if (repository.getSize(oid) >= 0) {
+			if (size >= 0) {
 				info.actions = new HashMap<>();
 				info.actions.put(DOWNLOAD,
 						repository.getDownloadAction(oid));
@@ -163,5 +165,13 @@ private void addObjectInfo(Response.Body body, LfsObject o)
 		this.objects = objects;
 	}
 
+	List<LongObjectId> getIds() {
+		List<LongObjectId> ids = new ArrayList<>(objects.size());
+		for (LfsObject o : objects) {
+			ids.add(LongObjectId.fromString(o.oid));
+		}
+		return ids;
+	}
+
 	abstract Response.Body process() throws IOException;
 }
\ No newline at end of file
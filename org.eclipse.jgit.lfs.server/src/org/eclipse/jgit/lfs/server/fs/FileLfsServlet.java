@@ -42,6 +42,10 @@
  */
 package org.eclipse.jgit.lfs.server.fs;
 
+import static org.eclipse.jgit.util.HttpSupport.HDR_ACCEPT_RANGES;
+import static org.eclipse.jgit.util.HttpSupport.HDR_CONTENT_RANGE;
+import static org.eclipse.jgit.util.HttpSupport.HDR_RANGE;
+
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.MessageFormat;
@@ -77,6 +81,8 @@ public class FileLfsServlet extends HttpServlet {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final String BYTES = "bytes"; //$NON-NLS-1$
+
 	private final FileLfsRepository repository;
 
 	private final long timeout;
@@ -111,18 +117,100 @@ protected void doGet(HttpServletRequest req,
 			HttpServletResponse rsp) throws ServletException, IOException {
 		AnyLongObjectId obj = getObjectToTransfer(req, rsp);
 		if (obj != null) {
-			if (repository.getSize(obj) == -1) {
+			long size = repository.getSize(obj);
+			if (size == -1) {
 				sendError(rsp, HttpStatus.SC_NOT_FOUND, MessageFormat
 						.format(LfsServerText.get().objectNotFound,
 								obj.getName()));
 				return;
 			}
+			rsp.setHeader(HDR_ACCEPT_RANGES, BYTES);
+			long offset = 0;
+			long length = size;
+			// Objects are immutable, so a range always refers to the
+			// content the client saw before and If-Range can be ignored.
+			String range = req.getHeader(HDR_RANGE);
+			if (range != null) {
+				long[] r = parseRange(range, size);
+				if (r != null && r.length == 0) {
+					rsp.setHeader(HDR_CONTENT_RANGE, BYTES + " */" + size); //$NON-NLS-1$
+					sendError(rsp,
+							HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+							MessageFormat.format(
+									LfsServerText.get().rangeNotSatisfiable,
+									range, obj.getName(),
+									String.valueOf(size)));
+					return;
+				} else if (r != null) {
+					offset = r[0];
+					length = r[1] - r[0] + 1;
+					rsp.setStatus(HttpStatus.SC_PARTIAL_CONTENT);
+					rsp.setHeader(HDR_CONTENT_RANGE, BYTES + ' ' + r[0] + '-'
+							+ r[1] + '/' + size);
+				}
+			}
 			AsyncContext context = req.startAsync();
 			context.setTimeout(timeout);
 			rsp.getOutputStream()
 					.setWriteListener(new ObjectDownloadListener(repository,
-							context, rsp, obj));
+							context, rsp, obj, offset, length));
+		}
+	}
+
+	/**
+	 * Parse the value of a {@code Range} header.
+	 * <p>
+	 * Only a single byte range is supported. Requests for multiple ranges are
+	 * answered with the whole object, which HTTP permits.
+	 *
+	 * @param range
+	 *            value of the header
+	 * @param size
+	 *            size of the object
+	 * @return {@code null} if the header is malformed or requests several
+	 *         ranges and should be ignored; an empty array if the range is not
+	 *         satisfiable; otherwise the positions of the first and last byte
+	 *         of the range.
+	 */
+	static long[] parseRange(String range, long size) {
+		String prefix = BYTES + '=';
+		if (!range.startsWith(prefix) || range.indexOf(',') >= 0) {
+			return null;
+		}
+		String spec = range.substring(prefix.length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		long first;
+		long last;
+		try {
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1));
+				if (suffix <= 0 || size == 0) {
+					return new long[0];
+				}
+				first = Math.max(0, size - suffix);
+				last = size - 1;
+			} else {
+				first = Long.parseLong(spec.substring(0, dash));
+				if (dash == spec.length() - 1) {
+					last = size - 1;
+				} else {
+					last = Long.parseLong(spec.substring(dash + 1));
+					if (last < first) {
+						return null;
+					}
+				}
+				if (first >= size) {
+					return new long[0];
+				}
+				last = Math.min(last, size - 1);
+			}
+		} catch (NumberFormatException e) {
+			return null;
 		}
+		return new long[] { first, last };
 	}
 
 	/**
@@ -42,11 +42,12 @@
  */
 package org.eclipse.jgit.lfs.server.fs;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.text.MessageFormat;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,10 +59,18 @@
 import org.apache.http.HttpStatus;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
 import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lfs.server.internal.LfsServerText;
 import org.eclipse.jgit.util.HttpSupport;
 
 /**
  * Handle asynchronous large object download.
+ * <p>
+ * The object, or a range of it, is sent in chunks of up to 64 KiB, one chunk
+ * each time the response stream is ready. If the container's output stream
+ * is a {@link WritableByteChannel} chunks are passed to it with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, allowing
+ * the container to avoid copying through user space. Otherwise each chunk is
+ * read straight into the array handed to the output stream.
  *
  * @since 4.7
  */
@@ -70,17 +79,23 @@ public class ObjectDownloadListener implements WriteListener {
 	private static Logger LOG = Logger
 			.getLogger(ObjectDownloadListener.class.getName());
 
+	private static final int CHUNK_SIZE = 64 * 1024;
+
 	private final AsyncContext context;
 
 	private final HttpServletResponse response;
 
 	private final ServletOutputStream out;
 
-	private final ReadableByteChannel in;
+	private final FileChannel in;
+
+	private final String name;
+
+	private long position;
 
-	private final WritableByteChannel outChannel;
+	private final long end;
 
-	private final ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+	private byte[] buffer;
 
 	/**
 	 * @param repository
@@ -96,14 +111,38 @@ public class ObjectDownloadListener implements WriteListener {
 	public ObjectDownloadListener(FileLfsRepository repository,
 			AsyncContext context, HttpServletResponse response,
 			AnyLongObjectId id) throws IOException {
+		this(repository, context, response, id, 0, repository.getSize(id));
+	}
+
+	/**
+	 * @param repository
+	 *            the repository storing large objects
+	 * @param context
+	 *            the servlet asynchronous context
+	 * @param response
+	 *            the servlet response
+	 * @param id
+	 *            id of the object to be downloaded
+	 * @param offset
+	 *            position of the first byte of the object to send
+	 * @param length
+	 *            number of bytes to send
+	 * @throws IOException
+	 * @since 4.8
+	 */
+	public ObjectDownloadListener(FileLfsRepository repository,
+			AsyncContext context, HttpServletResponse response,
+			AnyLongObjectId id, long offset, long length) throws IOException {
 		this.context = context;
 		this.response = response;
 		this.in = repository.getReadChannel(id);
+		this.name = id.name();
 		this.out = response.getOutputStream();
-		this.outChannel = Channels.newChannel(out);
+		this.position = offset;
+		this.end = offset + length;
 
 		response.addHeader(HttpSupport.HDR_CONTENT_LENGTH,
-				String.valueOf(repository.getSize(id)));
+				String.valueOf(length));
 		response.setContentType(Constants.HDR_APPLICATION_OCTET_STREAM);
 	}
 
@@ -115,21 +154,34 @@ public ObjectDownloadListener(FileLfsRepository repository,
 	@Override
 	public void onWritePossible() throws IOException {
 		while (out.isReady()) {
-			if (in.read(buffer) != -1) {
-				buffer.flip();
-				outChannel.write(buffer);
-				buffer.compact();
-			} else {
+			if (position == end) {
 				in.close();
-				buffer.flip();
-				while (out.isReady()) {
-					if (buffer.hasRemaining()) {
-						outChannel.write(buffer);
-					} else {
-						context.complete();
-					}
+				context.complete();
+				return;
+			}
+			int n = (int) Math.min(CHUNK_SIZE, end - position);
+			long w = 0;
+			if (out instanceof WritableByteChannel) {
+				w = in.transferTo(position, n, (WritableByteChannel) out);
+			}
+			if (w == 0) {
+				// transferTo makes no progress at the end of the file or if
+				// the channel takes no data; copy the chunk instead.
+				if (buffer == null) {
+					buffer = new byte[CHUNK_SIZE];
 				}
+				int r = in.read(ByteBuffer.wrap(buffer, 0, n), position);
+				if (r < 0) {
+					// The file was truncated underneath us, fewer bytes
+					// than the Content-Length sent can be written.
+					throw new EOFException(MessageFormat.format(
+							LfsServerText.get().objectTruncated, name,
+							Long.valueOf(position), Long.valueOf(end)));
+				}
+				out.write(buffer, 0, r);
+				w = r;
 			}
+			position += w;
 		}
 	}
 
@@ -142,8 +194,15 @@ public void onWritePossible() throws IOException {
 	@Override
 	public void onError(Throwable e) {
 		try {
-			FileLfsServlet.sendError(response,
-					HttpStatus.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			if (response.isCommitted()) {
+				// Too late to report the error, the container aborts the
+				// response as it is shorter than its Content-Length.
+				LOG.log(Level.SEVERE, e.getMessage(), e);
+			} else {
+				response.reset();
+				FileLfsServlet.sendError(response,
+						HttpStatus.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			}
 			context.complete();
 			in.close();
 		} catch (IOException ex) {
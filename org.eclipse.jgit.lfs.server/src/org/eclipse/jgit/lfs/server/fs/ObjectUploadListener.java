@@ -44,10 +44,6 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,6 +61,10 @@
 
 /**
  * Handle asynchronous object upload.
+ * <p>
+ * Received data is written straight into the {@link AtomicObjectOutputStream}
+ * which computes the SHA-256 of the content while it is stored and verifies
+ * it against the expected id when the upload completes.
  *
  * @since 4.6
  */
@@ -73,19 +73,19 @@ public class ObjectUploadListener implements ReadListener {
 	private static Logger LOG = Logger
 			.getLogger(ObjectUploadListener.class.getName());
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private final AsyncContext context;
 
 	private final HttpServletResponse response;
 
 	private final ServletInputStream in;
 
-	private final ReadableByteChannel inChannel;
-
 	private final AtomicObjectOutputStream out;
 
-	private WritableByteChannel channel;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
 
-	private final ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+	private boolean closed;
 
 	/**
 	 * @param repository
@@ -104,9 +104,7 @@ public ObjectUploadListener(FileLfsRepository repository,
 		this.context = context;
 		this.response = response;
 		this.in = request.getInputStream();
-		this.inChannel = Channels.newChannel(in);
 		this.out = repository.getOutputStream(id);
-		this.channel = Channels.newChannel(out);
 		response.setContentType(Constants.CONTENT_TYPE_GIT_LFS_JSON);
 	}
 
@@ -118,18 +116,12 @@ public ObjectUploadListener(FileLfsRepository repository,
 	@Override
 	public void onDataAvailable() throws IOException {
 		while (in.isReady()) {
-			if (inChannel.read(buffer) > 0) {
-				buffer.flip();
-				channel.write(buffer);
-				buffer.compact();
-			} else {
-				buffer.flip();
-				while (buffer.hasRemaining()) {
-					channel.write(buffer);
-				}
+			int n = in.read(buffer);
+			if (n < 0) {
 				close();
 				return;
 			}
+			out.write(buffer, 0, n);
 		}
 	}
 
@@ -145,9 +137,13 @@ public void onAllDataRead() throws IOException {
 	 * @throws IOException
 	 */
 	protected void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
 		try {
-			inChannel.close();
-			channel.close();
+			in.close();
+			out.close();
 			// TODO check if status 200 is ok for PUT request, HTTP foresees 204
 			// for successful PUT without response body
 			response.setStatus(HttpServletResponse.SC_OK);
@@ -163,9 +159,10 @@ protected void close() throws IOException {
 	@Override
 	public void onError(Throwable e) {
 		try {
+			closed = true;
 			out.abort();
-			inChannel.close();
-			channel.close();
+			in.close();
+			out.close();
 			int status;
 			if (e instanceof CorruptLongObjectException) {
 				status = HttpStatus.SC_BAD_REQUEST;
@@ -61,6 +61,8 @@ public static LfsServerText get() {
 	/***/ public String failedToCalcSignature;
 	/***/ public String invalidPathInfo;
 	/***/ public String objectNotFound;
+	/***/ public String objectTruncated;
+	/***/ public String rangeNotSatisfiable;
 	/***/ public String undefinedS3AccessKey;
 	/***/ public String undefinedS3Bucket;
 	/***/ public String undefinedS3Region;
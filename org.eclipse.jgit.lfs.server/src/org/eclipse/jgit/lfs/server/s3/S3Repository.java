@@ -80,6 +80,8 @@ public class S3Repository implements LargeFileRepository {
 
 	private S3Config s3Config;
 
+	private final HttpClientConnectionFactory connectionFactory = new HttpClientConnectionFactory();
+
 	/**
 	 * Construct a LFS repository storing large objects in Amazon S3
 	 *
@@ -147,22 +149,25 @@ public long getSize(AnyLongObjectId oid) throws IOException {
 
 		Proxy proxy = HttpSupport.proxyFor(ProxySelector.getDefault(),
 				endpointUrl);
-		HttpClientConnectionFactory f = new HttpClientConnectionFactory();
-		HttpConnection conn = f.create(new URL(href), proxy);
+		HttpConnection conn = connectionFactory.create(new URL(href), proxy);
 		if (s3Config.isDisableSslVerify()) {
 			HttpSupport.disableSslVerify(conn);
 		}
 		conn.setRequestMethod(METHOD_HEAD);
-		conn.connect();
-		int status = conn.getResponseCode();
-		if (status == SC_OK) {
-			String contentLengthHeader = conn
-					.getHeaderField(HDR_CONTENT_LENGTH);
-			if (contentLengthHeader != null) {
-				return Integer.parseInt(contentLengthHeader);
+		try {
+			conn.connect();
+			int status = conn.getResponseCode();
+			if (status == SC_OK) {
+				String contentLengthHeader = conn
+						.getHeaderField(HDR_CONTENT_LENGTH);
+				if (contentLengthHeader != null) {
+					return Integer.parseInt(contentLengthHeader);
+				}
 			}
+			return -1;
+		} finally {
+			conn.disconnect();
 		}
-		return -1;
 	}
 
 	/**
@@ -42,17 +42,48 @@
  */
 package org.eclipse.jgit.lfs;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import org.eclipse.jgit.attributes.BatchFilterCommandFactory;
 import org.eclipse.jgit.attributes.FilterCommand;
 import org.eclipse.jgit.attributes.FilterCommandFactory;
 import org.eclipse.jgit.attributes.FilterCommandRegistry;
+import org.eclipse.jgit.lfs.internal.AtomicObjectOutputStream;
+import org.eclipse.jgit.lfs.internal.LfsConnectionFactory;
+import org.eclipse.jgit.lfs.internal.LfsText;
+import org.eclipse.jgit.lfs.internal.Protocol;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
 import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.util.HttpSupport;
 
 /**
  * Built-in LFS smudge filter
@@ -61,22 +92,47 @@
  * and this filter is configured for that content, then this filter will replace
  * the content of LFS pointer files with the original content. This happens e.g.
  * when a checkout needs to update a working tree file which is under LFS
- * control. This implementation expects that the origin content is already
- * available in the .git/lfs/objects folder. This implementation will not
- * contact any LFS servers in order to get the missing content.
+ * control. The filter itself only copies content from the .git/lfs/objects
+ * folder. Before a checkout filters its files the {@link #FACTORY} downloads all
+ * content missing from that folder, using a single LFS batch API request per
+ * {@value #MAX_BATCH_SIZE} objects and a bounded number of concurrent
+ * transfers.
  *
  * @since 4.6
  */
 public class SmudgeFilter extends FilterCommand {
+	/**
+	 * Max number of objects requested from the LFS server in one batch API
+	 * request.
+	 *
+	 * @since 4.8
+	 */
+	public static final int MAX_BATCH_SIZE = 100;
+
+	/** Pointer files larger than this are not parsed, see the LFS spec. */
+	private static final int MAX_POINTER_SIZE = 1024;
+
+	private static final String CONFIG_KEY_CONCURRENT_TRANSFERS = "concurrentTransfers"; //$NON-NLS-1$
+
+	private static final int DEFAULT_CONCURRENT_TRANSFERS = 8;
+
+	private static final String ACTION_DOWNLOAD = "download"; //$NON-NLS-1$
+
 	/**
 	 * The factory is responsible for creating instances of {@link SmudgeFilter}
 	 */
-	public final static FilterCommandFactory FACTORY = new FilterCommandFactory() {
+	public final static FilterCommandFactory FACTORY = new BatchFilterCommandFactory() {
 		@Override
 		public FilterCommand create(Repository db, InputStream in,
 				OutputStream out) throws IOException {
 			return new SmudgeFilter(db, in, out);
 		}
+
+		@Override
+		public void prefetch(Repository db, Collection<ObjectId> blobs)
+				throws IOException {
+			downloadLfsResource(db, findMissingPointers(db, blobs));
+		}
 	};
 
 	/**
@@ -110,12 +166,210 @@ public SmudgeFilter(Repository db, InputStream in, OutputStream out)
 		}
 	}
 
+	private static List<LfsPointer> findMissingPointers(Repository db,
+			Collection<ObjectId> blobs) throws IOException {
+		Lfs lfs = new Lfs(db.getDirectory().toPath().resolve(Constants.LFS));
+		List<LfsPointer> missing = new ArrayList<>();
+		Set<AnyLongObjectId> seen = new HashSet<>();
+		try (ObjectReader reader = db.newObjectReader()) {
+			for (ObjectId id : blobs) {
+				ObjectLoader ol = reader.open(id,
+						org.eclipse.jgit.lib.Constants.OBJ_BLOB);
+				if (ol.getSize() > MAX_POINTER_SIZE) {
+					continue;
+				}
+				LfsPointer p;
+				try (InputStream is = ol.openStream()) {
+					p = LfsPointer.parseLfsPointer(is);
+				}
+				if (p != null && seen.add(p.getOid())
+						&& !Files.exists(lfs.getMediaFile(p.getOid()))) {
+					missing.add(p);
+				}
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Download the content of LFS pointers into the local media store.
+	 * <p>
+	 * Objects are requested from the repository's LFS server in batches of at
+	 * most {@link #MAX_BATCH_SIZE}. The content is then transferred by up to
+	 * {@code lfs.concurrentTransfers} (default 8) concurrent downloads.
+	 *
+	 * @param db
+	 *            the repository
+	 * @param pointers
+	 *            the pointers whose content should be downloaded
+	 * @return the paths of the downloaded media files
+	 * @throws IOException
+	 *             the LFS server could not be contacted, or at least one
+	 *             object could not be downloaded. Objects downloaded
+	 *             successfully are kept.
+	 * @since 4.8
+	 */
+	public static Collection<Path> downloadLfsResource(Repository db,
+			Collection<LfsPointer> pointers) throws IOException {
+		List<Path> downloaded = new ArrayList<>();
+		if (pointers.isEmpty()) {
+			return downloaded;
+		}
+		Lfs lfs = new Lfs(db.getDirectory().toPath().resolve(Constants.LFS));
+		int threads = Math.max(1, Math.min(pointers.size(),
+				db.getConfig().getInt(Constants.LFS, null,
+						CONFIG_KEY_CONCURRENT_TRANSFERS,
+						DEFAULT_CONCURRENT_TRANSFERS)));
+		ExecutorService pool = newDownloadPool(threads);
+		try {
+			List<Future<Path>> transfers = new ArrayList<>();
+			List<LfsPointer> batch = new ArrayList<>(MAX_BATCH_SIZE);
+			for (LfsPointer p : pointers) {
+				batch.add(p);
+				if (batch.size() == MAX_BATCH_SIZE) {
+					submitDownloads(db, lfs, batch, pool, transfers);
+					batch.clear();
+				}
+			}
+			if (!batch.isEmpty()) {
+				submitDownloads(db, lfs, batch, pool, transfers);
+			}
+
+			IOException failure = null;
+			for (Future<Path> f : transfers) {
+				try {
+					downloaded.add(f.get());
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof IOException
+								? (IOException) e.getCause()
+								: new IOException(e.getCause());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return downloaded;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static ExecutorService newDownloadPool(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final ThreadFactory baseFactory = Executors
+					.defaultThreadFactory();
+
+			@Override
+			public Thread newThread(Runnable taskBody) {
+				Thread thr = baseFactory.newThread(taskBody);
+				thr.setName("JGit-LFS-Download"); //$NON-NLS-1$
+				thr.setDaemon(true);
+				return thr;
+			}
+		});
+	}
+
+	private static void submitDownloads(Repository db, Lfs lfs,
+			List<LfsPointer> batch, ExecutorService pool,
+			List<Future<Path>> transfers) throws IOException {
+		Protocol.Response response = requestBatch(db, batch);
+		if (response.objects == null) {
+			return;
+		}
+		for (Protocol.ObjectInfo o : response.objects) {
+			if (o.error != null) {
+				throw new IOException(MessageFormat.format(
+						LfsText.get().lfsDownloadFailed, o.oid,
+						Integer.valueOf(o.error.code), o.error.message));
+			}
+			Protocol.Action action = o.actions != null
+					? o.actions.get(ACTION_DOWNLOAD)
+					: null;
+			if (action == null) {
+				throw new IOException(MessageFormat.format(
+						LfsText.get().lfsNoDownloadAction, o.oid));
+			}
+			LongObjectId oid = LongObjectId.fromString(o.oid);
+			transfers.add(pool.submit(() -> download(lfs, oid, action)));
+		}
+	}
+
+	private static Protocol.Response requestBatch(Repository db,
+			List<LfsPointer> batch) throws IOException {
+		Protocol.Request req = new Protocol.Request();
+		req.operation = Constants.DOWNLOAD;
+		req.objects = new ArrayList<>(batch.size());
+		for (LfsPointer p : batch) {
+			Protocol.ObjectSpec spec = new Protocol.ObjectSpec();
+			spec.oid = p.getOid().name();
+			spec.size = p.getSize();
+			req.objects.add(spec);
+		}
+
+		HttpConnection c = LfsConnectionFactory.openBatchConnection(db);
+		try {
+			try (Writer w = new OutputStreamWriter(c.getOutputStream(),
+					UTF_8)) {
+				LfsConnectionFactory.getGson().toJson(req, w);
+			}
+			int rc = c.getResponseCode();
+			if (rc != HttpURLConnection.HTTP_OK) {
+				throw new IOException(MessageFormat.format(
+						LfsText.get().lfsBatchRequestFailed, c.getURL(),
+						Integer.valueOf(rc), c.getResponseMessage()));
+			}
+			try (Reader r = new InputStreamReader(c.getInputStream(),
+					UTF_8)) {
+				return LfsConnectionFactory.getGson().fromJson(r,
+						Protocol.Response.class);
+			}
+		} catch (IOException | RuntimeException e) {
+			c.disconnect();
+			throw e;
+		}
+	}
+
+	private static Path download(Lfs lfs, AnyLongObjectId oid,
+			Protocol.Action action) throws IOException {
+		HttpConnection c = LfsConnectionFactory.openAction(action,
+				HttpSupport.METHOD_GET);
+		try {
+			int rc = c.getResponseCode();
+			if (rc != HttpURLConnection.HTTP_OK) {
+				throw new IOException(MessageFormat.format(
+						LfsText.get().lfsDownloadFailed, oid.name(),
+						Integer.valueOf(rc), c.getResponseMessage()));
+			}
+			Path path = lfs.getMediaFile(oid);
+			Files.createDirectories(path.getParent());
+			try (InputStream in = c.getInputStream();
+					AtomicObjectOutputStream out = new AtomicObjectOutputStream(
+							path, oid)) {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					out.write(buf, 0, n);
+				}
+			}
+			return path;
+		} catch (IOException | RuntimeException e) {
+			c.disconnect();
+			throw e;
+		}
+	}
+
 	@Override
 	public int run() throws IOException {
-		int b;
 		if (in != null) {
-			while ((b = in.read()) != -1) {
-				out.write(b);
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
 			}
 			in.close();
 		}
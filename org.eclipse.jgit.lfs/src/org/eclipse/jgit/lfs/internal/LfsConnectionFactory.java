@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lfs.internal;
+
+import static org.eclipse.jgit.util.HttpSupport.HDR_ACCEPT;
+import static org.eclipse.jgit.util.HttpSupport.HDR_CONTENT_TYPE;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.net.URL;
+import java.text.MessageFormat;
+import java.util.Map;
+
+import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.HttpTransport;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.util.HttpSupport;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Opens connections to the LFS server of a repository.
+ * <p>
+ * The server is taken from {@code lfs.url}, or derived from the URL of the
+ * {@code origin} remote the way the Git LFS client does:
+ * {@code https://host/repo.git} serves LFS at
+ * {@code https://host/repo.git/info/lfs}.
+ */
+public class LfsConnectionFactory {
+	private static final String CONFIG_KEY_URL = "url"; //$NON-NLS-1$
+
+	private static final String INFO_LFS = "/info/lfs"; //$NON-NLS-1$
+
+	private static final String OBJECTS_BATCH = "/objects/batch"; //$NON-NLS-1$
+
+	private static final String CONTENTTYPE_VND_GIT_LFS_JSON = Constants.CONTENT_TYPE_GIT_LFS_JSON
+			+ "; charset=utf-8"; //$NON-NLS-1$
+
+	private static final Gson GSON = new GsonBuilder()
+			.setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+			.disableHtmlEscaping().create();
+
+	private LfsConnectionFactory() {
+		// static helpers only
+	}
+
+	/** @return the Gson instance serializing {@link Protocol} messages. */
+	public static Gson getGson() {
+		return GSON;
+	}
+
+	/**
+	 * Determine the URL of the LFS server of a repository.
+	 *
+	 * @param db
+	 *            the repository
+	 * @return the LFS server URL, without a trailing slash.
+	 * @throws IOException
+	 *             no LFS server is configured and none can be derived from
+	 *             the {@code origin} remote.
+	 */
+	public static String getLfsUrl(Repository db) throws IOException {
+		StoredConfig cfg = db.getConfig();
+		String url = cfg.getString(Constants.LFS, null, CONFIG_KEY_URL);
+		if (url == null) {
+			String remote = cfg.getString(
+					ConfigConstants.CONFIG_REMOTE_SECTION,
+					org.eclipse.jgit.lib.Constants.DEFAULT_REMOTE_NAME,
+					CONFIG_KEY_URL);
+			if (remote != null && (remote.startsWith("http://") //$NON-NLS-1$
+					|| remote.startsWith("https://"))) { //$NON-NLS-1$
+				if (remote.endsWith("/")) { //$NON-NLS-1$
+					remote = remote.substring(0, remote.length() - 1);
+				}
+				if (!remote.endsWith(org.eclipse.jgit.lib.Constants.DOT_GIT_EXT)) {
+					remote += org.eclipse.jgit.lib.Constants.DOT_GIT_EXT;
+				}
+				url = remote + INFO_LFS;
+			}
+		}
+		if (url == null) {
+			throw new IOException(MessageFormat
+					.format(LfsText.get().lfsNoServerUrl, db.getDirectory()));
+		}
+		return url.endsWith("/") ? url.substring(0, url.length() - 1) : url; //$NON-NLS-1$
+	}
+
+	/**
+	 * Open a POST connection to the batch API of the repository's LFS server.
+	 *
+	 * @param db
+	 *            the repository
+	 * @return a connection ready to receive a JSON request body.
+	 * @throws IOException
+	 */
+	public static HttpConnection openBatchConnection(Repository db)
+			throws IOException {
+		HttpConnection c = open(new URL(getLfsUrl(db) + OBJECTS_BATCH));
+		c.setRequestMethod(HttpSupport.METHOD_POST);
+		c.setRequestProperty(HDR_ACCEPT, CONTENTTYPE_VND_GIT_LFS_JSON);
+		c.setRequestProperty(HDR_CONTENT_TYPE, CONTENTTYPE_VND_GIT_LFS_JSON);
+		c.setDoOutput(true);
+		return c;
+	}
+
+	/**
+	 * Open a connection executing an action offered by the LFS server.
+	 *
+	 * @param action
+	 *            the action from the batch API response
+	 * @param method
+	 *            the HTTP method to use
+	 * @return the connection, carrying the headers requested by the action.
+	 * @throws IOException
+	 */
+	public static HttpConnection openAction(Protocol.Action action,
+			String method) throws IOException {
+		HttpConnection c = open(new URL(action.href));
+		c.setRequestMethod(method);
+		if (action.header != null) {
+			for (Map.Entry<String, String> h : action.header.entrySet()) {
+				c.setRequestProperty(h.getKey(), h.getValue());
+			}
+		}
+		return c;
+	}
+
+	private static HttpConnection open(URL url) throws IOException {
+		return HttpTransport.getConnectionFactory().create(url,
+				HttpSupport.proxyFor(ProxySelector.getDefault(), url));
+	}
+}
@@ -69,4 +69,8 @@ public static LfsText get() {
 	/***/ public String lfsUnavailable;
 	/***/ public String lfsUnathorized;
 	/***/ public String lfsFailedToGetRepository;
+	/***/ public String lfsBatchRequestFailed;
+	/***/ public String lfsDownloadFailed;
+	/***/ public String lfsNoDownloadAction;
+	/***/ public String lfsNoServerUrl;
 }
@@ -86,6 +86,15 @@ class Daemon extends TextBuiltin {
 	@Option(name = "--timeout", metaVar = "metaVar_seconds", usage = "usage_abortConnectionIfNoActivity")
 	int timeout = -1;
 
+	@Option(name = "--max-connections", metaVar = "metaVar_n", usage = "usage_maxConnections")
+	int maxConnections;
+
+	@Option(name = "--max-connections-per-address", metaVar = "metaVar_n", usage = "usage_maxConnectionsPerAddress")
+	int maxConnectionsPerAddress;
+
+	@Option(name = "--max-queued-connections", metaVar = "metaVar_n", usage = "usage_maxQueuedConnections")
+	int maxQueuedConnections;
+
 	@Option(name = "--enable", metaVar = "metaVar_service", usage = "usage_enableTheServiceInAllRepositories", multiValued = true)
 	final List<String> enable = new ArrayList<>();
 
@@ -154,6 +163,9 @@ protected void run() throws Exception {
 		d.setRepositoryResolver(resolver);
 		if (0 <= timeout)
 			d.setTimeout(timeout);
+		d.setMaxConnections(maxConnections);
+		d.setMaxConnectionsPerAddress(maxConnectionsPerAddress);
+		d.setMaxQueuedConnections(maxQueuedConnections);
 
 		for (final String n : enable)
 			service(d, n).setEnabled(true);
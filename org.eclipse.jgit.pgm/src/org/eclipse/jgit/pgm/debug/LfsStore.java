@@ -62,6 +62,7 @@
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lfs.server.CachingLargeFileRepository;
 import org.eclipse.jgit.lfs.server.LargeFileRepository;
 import org.eclipse.jgit.lfs.server.LfsProtocolServlet;
 import org.eclipse.jgit.lfs.server.fs.FileLfsRepository;
@@ -205,6 +206,14 @@ private static enum StorageClass {
 	@Option(name = "--no-ssl-verify", usage = "usage_S3NoSslVerify")
 	boolean disableSslVerify = false;
 
+	@Option(name = "--cache-size", metaVar = "metaVar_n",
+			usage = "usage_LFSCacheSize")
+	int cacheSize = 0;
+
+	@Option(name = "--cache-missing-ttl", metaVar = "metaVar_seconds",
+			usage = "usage_LFSCacheMissingTtl")
+	int cacheMissingTtlSeconds = 10;
+
 	@Argument(required = false, metaVar = "metaVar_directory", usage = "usage_LFSDirectory")
 	String directory;
 
@@ -225,7 +234,7 @@ protected void run() throws Exception {
 		URI baseURI = server.getURI();
 		ServletContextHandler app = server.addContext("/"); //$NON-NLS-1$
 
-		final LargeFileRepository repository;
+		LargeFileRepository store;
 		switch (storeType) {
 		case FS:
 			Path dir = Paths.get(directory);
@@ -233,7 +242,7 @@ protected void run() throws Exception {
 					getStoreUrl(baseURI), dir);
 			FileLfsServlet content = new FileLfsServlet(fsRepo, 30000);
 			app.addServlet(new ServletHolder(content), STORE_PATH);
-			repository = fsRepo;
+			store = fsRepo;
 			break;
 
 		case S3:
@@ -242,13 +251,17 @@ protected void run() throws Exception {
 			S3Config config = new S3Config(region, bucket,
 					storageClass.toString(), accessKey, secretKey,
 					expirationSeconds, disableSslVerify);
-			repository = new S3Repository(config);
+			store = new S3Repository(config);
 			break;
 		default:
 			throw new IllegalArgumentException(MessageFormat
 					.format(CLIText.get().lfsUnknownStoreType, storeType));
 		}
 
+		final LargeFileRepository repository = cacheSize > 0
+				? new CachingLargeFileRepository(store, cacheSize,
+						cacheMissingTtlSeconds * 1000L)
+				: store;
 		LfsProtocolServlet protocol = new LfsProtocolServlet() {
 
 			private static final long serialVersionUID = 1L;
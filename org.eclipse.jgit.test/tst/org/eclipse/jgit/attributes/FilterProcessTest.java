@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.attributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.FilterFailedException;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.PacketLineIn;
+import org.eclipse.jgit.transport.PacketLineOut;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.QuotedString;
+import org.junit.Test;
+
+public class FilterProcessTest extends RepositoryTestCase {
+	private File startLog;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		startLog = new File(getTemporaryDirectory(), "filter-starts");
+		configureProcess("clean smudge");
+		writeTrashFile(".gitattributes", "*.txt filter=tst");
+	}
+
+	private void configureProcess(String capabilities) throws IOException {
+		String java = new File(System.getProperty("java.home"), "bin/java")
+				.getPath();
+		String cmd = QuotedString.BOURNE.quote(java) + " -cp "
+				+ QuotedString.BOURNE.quote(
+						System.getProperty("java.class.path"))
+				+ " " + QuotedString.BOURNE.quote(Server.class.getName())
+				+ " " + QuotedString.BOURNE.quote(startLog.getPath())
+				+ " " + capabilities;
+		StoredConfig config = db.getConfig();
+		config.setString(ConfigConstants.CONFIG_FILTER_SECTION, "tst",
+				ConfigConstants.CONFIG_KEY_PROCESS, cmd);
+		config.save();
+	}
+
+	private int countStarts() throws IOException {
+		if (!startLog.exists()) {
+			return 0;
+		}
+		return read(startLog).length();
+	}
+
+	@Test
+	public void testCleanAndSmudgeShareOneProcess() throws Exception {
+		writeTrashFile("a.txt", "hello\n");
+		writeTrashFile("b.txt", "world\n");
+		writeTrashFile("c.bin", "as is\n");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").call();
+			assertEquals(
+					"[.gitattributes, mode:100644, content:*.txt filter=tst]"
+					+ "[a.txt, mode:100644, content:HELLO\n]"
+					+ "[b.txt, mode:100644, content:WORLD\n]"
+					+ "[c.bin, mode:100644, content:as is\n]",
+					indexState(CONTENT));
+			git.commit().setMessage("add").call();
+
+			FileUtils.delete(new File(trash, "a.txt"));
+			FileUtils.delete(new File(trash, "b.txt"));
+			git.checkout().addPath("a.txt").addPath("b.txt").call();
+			assertEquals("hello\n", read("a.txt"));
+			assertEquals("world\n", read("b.txt"));
+		}
+		assertEquals(1, countStarts());
+	}
+
+	@Test
+	public void testUnsupportedCapabilityCopiesContent() throws Exception {
+		configureProcess("smudge");
+		writeTrashFile("a.txt", "hello\n");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a.txt").call();
+			assertEquals("[a.txt, mode:100644, content:hello\n]",
+					indexState(CONTENT));
+		}
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		writeTrashFile("fail.txt", "hello\n");
+		try (Git git = new Git(db)) {
+			try {
+				git.add().addFilepattern("fail.txt").call();
+				fail("Didn't receive the expected exception");
+			} catch (FilterFailedException e) {
+				assertEquals("fail.txt", e.getPath());
+			}
+
+			// The process survives an error reported for a single file.
+			writeTrashFile("a.txt", "hello\n");
+			git.add().addFilepattern("a.txt").call();
+			assertTrue(indexState(CONTENT)
+					.contains("[a.txt, mode:100644, content:HELLO\n]"));
+		}
+		assertEquals(1, countStarts());
+	}
+
+	/**
+	 * Filter process converting content to upper case on clean and to lower
+	 * case on smudge. Reports an error for files named {@code fail.txt}.
+	 * <p>
+	 * Arguments are a file to which one byte is appended at startup, followed
+	 * by the capabilities to announce.
+	 */
+	public static class Server {
+		public static void main(String[] args) throws IOException {
+			try (OutputStream log = new FileOutputStream(args[0], true)) {
+				log.write('s');
+			}
+			PacketLineIn in = new PacketLineIn(System.in);
+			PacketLineOut out = new PacketLineOut(System.out);
+
+			readList(in);
+			out.writeString("git-filter-server\n");
+			out.writeString("version=2\n");
+			out.end();
+			readList(in);
+			for (int i = 1; i < args.length; i++) {
+				out.writeString("capability=" + args[i] + "\n");
+			}
+			out.end();
+
+			for (;;) {
+				String command = null;
+				String path = null;
+				String line;
+				try {
+					line = in.readString();
+				} catch (IOException e) {
+					return; // stdin was closed
+				}
+				for (; line != PacketLineIn.END; line = in.readString()) {
+					if (line.startsWith("command=")) {
+						command = line.substring(8);
+					} else if (line.startsWith("pathname=")) {
+						path = line.substring(9);
+					}
+				}
+				StringBuilder content = new StringBuilder();
+				while ((line = in.readStringRaw()) != PacketLineIn.END) {
+					content.append(line);
+				}
+
+				if ("fail.txt".equals(path)) {
+					out.writeString("status=error\n");
+					out.end();
+					continue;
+				}
+				String result = Constants.ATTR_FILTER_TYPE_CLEAN
+						.equals(command)
+								? content.toString().toUpperCase(Locale.ROOT)
+								: content.toString().toLowerCase(Locale.ROOT);
+				out.writeString("status=success\n");
+				out.end();
+				if (result.length() > 0) {
+					out.writePacket(Constants.encode(result));
+				}
+				out.end();
+				out.end(); // keep status
+			}
+		}
+
+		private static void readList(PacketLineIn in) throws IOException {
+			while (in.readString() != PacketLineIn.END) {
+				// skip
+			}
+		}
+	}
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.ketch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.eclipse.jgit.internal.ketch.Proposal.State.QUEUED;
+import static org.eclipse.jgit.internal.ketch.Proposal.State.RUNNING;
+import static org.eclipse.jgit.transport.ReceiveCommand.Result.OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.util.time.MonotonicSystemClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KetchLeaderTest {
+	private ScheduledExecutorService executor;
+
+	private InMemoryRepository repo;
+
+	private TestRepository<InMemoryRepository> git;
+
+	private KetchSystem system;
+
+	private KetchLeader leader;
+
+	private HeldLocalReplica local;
+
+	private HeldReplica r1;
+
+	private HeldReplica r2;
+
+	private final List<String> executed = Collections
+			.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() throws Exception {
+		executor = new ScheduledThreadPoolExecutor(4);
+		repo = new InMemoryRepository(new DfsRepositoryDescription("leader"));
+		git = new TestRepository<>(repo);
+		system = new KetchSystem(executor, new MonotonicSystemClock(),
+				"refs/txn/");
+		leader = new KetchLeader(system) {
+			@Override
+			protected Repository openRepository() {
+				repo.incrementOpen();
+				return repo;
+			}
+		};
+		local = new HeldLocalReplica(leader);
+		r1 = new HeldReplica(leader, "r1");
+		r2 = new HeldReplica(leader, "r2");
+		leader.setReplicas(Arrays.<KetchReplica> asList(local, r1, r2));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		leader.shutdown();
+		executor.shutdownNow();
+		executor.awaitTermination(10, SECONDS);
+	}
+
+	@Test
+	public void testRoundsInFlightAreLimited() throws Exception {
+		leader.setMaxRoundsInFlight(2);
+		elect();
+
+		Proposal p1 = startRound("p1");
+		startRound("p2");
+		LogIndex head = leader.snapshot().getHead();
+		Proposal p3 = propose("p3");
+		leader.queueProposal(p3);
+
+		// Both rounds wait for votes, so the third cannot start.
+		assertFalse(p3.awaitStateChange(QUEUED, 100, MILLISECONDS));
+		assertEquals(head, leader.snapshot().getHead());
+
+		accept(local);
+		accept(r1);
+		await(p1);
+		assertTrue(p3.awaitStateChange(QUEUED, 10, SECONDS));
+	}
+
+	@Test
+	public void testPipelinedRoundsCommitInOrder() throws Exception {
+		leader.setMaxRoundsInFlight(3);
+		elect();
+
+		Proposal p1 = startRound("p1");
+		Proposal p2 = startRound("p2");
+		Proposal p3 = startRound("p3");
+		assertEquals(RUNNING, p3.getState());
+
+		// The replica accepts round 1, then rounds 2 and 3 in one push.
+		accept(r1);
+		accept(r1);
+		assertFalse(p1.isDone());
+
+		accept(local);
+		await(p1);
+		assertFalse(p2.isDone());
+		assertFalse(p3.isDone());
+
+		accept(local);
+		await(p3);
+		assertTrue(p2.isDone());
+		assertExecuted("p1", "p2", "p3");
+	}
+
+	@Test
+	public void testQuorumCountsReplicaAheadOfRound() throws Exception {
+		leader.setMaxRoundsInFlight(2);
+		elect();
+
+		Proposal p1 = startRound("p1");
+		Proposal p2 = startRound("p2");
+
+		// r1 is already past round 1 when r2 accepts it.
+		accept(r1);
+		accept(r1);
+		assertFalse(p1.isDone());
+		accept(r2);
+		await(p1);
+		assertFalse(p2.isDone());
+
+		accept(r2);
+		await(p2);
+		assertExecuted("p1", "p2");
+	}
+
+	/** Run the election with all replicas accepting immediately. */
+	private void elect() throws Exception {
+		Proposal p = propose("elect");
+		leader.queueProposal(p);
+		await(p);
+		assertExecuted("elect");
+		executed.clear();
+
+		// Let the trailing commit reach every replica, so later rounds are
+		// pushed on their own instead of queued behind it.
+		LogIndex head = leader.snapshot().getHead();
+		for (int i = 0; !isCommittedEverywhere(head); i++) {
+			assertTrue("election not committed: " + leader.snapshot(),
+					i < 1000);
+			Thread.sleep(10);
+		}
+
+		local.hold = true;
+		r1.hold = true;
+		r2.hold = true;
+	}
+
+	private boolean isCommittedEverywhere(LogIndex index) {
+		for (ReplicaSnapshot r : leader.snapshot().getReplicas()) {
+			if (!index.equals(r.getCommitted())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Queue a proposal and wait until its round was sent to replicas. */
+	private Proposal startRound(String name) throws Exception {
+		LogIndex head = leader.snapshot().getHead();
+		Proposal p = propose(name);
+		leader.queueProposal(p);
+		for (int i = 0; i < 1000; i++) {
+			if (!head.equals(leader.snapshot().getHead())) {
+				return p;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("round of " + name + " did not start");
+	}
+
+	private Proposal propose(final String name) throws Exception {
+		ObjectId id = git.commit().message(name).create();
+		Proposal p = new Proposal(git.getRevWalk(), Collections.singletonList(
+				new ReceiveCommand(ObjectId.zeroId(), id, "refs/heads/" + name)));
+		p.addListener(new Runnable() {
+			@Override
+			public void run() {
+				executed.add(name);
+			}
+		});
+		return p;
+	}
+
+	private void await(Proposal p) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!p.isDone()) {
+			long wait = deadline - System.currentTimeMillis();
+			assertTrue("proposal not done: " + p + leader.snapshot(), wait > 0);
+			p.await(wait, MILLISECONDS);
+		}
+	}
+
+	/** Listeners run after the proposal is done; wait for them too. */
+	private void assertExecuted(String... names) throws InterruptedException {
+		List<String> expect = Arrays.asList(names);
+		for (int i = 0; i < 1000 && executed.size() < names.length; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(expect, executed);
+	}
+
+	private static void accept(Held replica) throws Exception {
+		ReplicaPushRequest req = replica.held().poll(10, SECONDS);
+		assertNotNull("no round sent to replica", req);
+		replica.accept(req);
+	}
+
+	private static boolean isAccept(KetchReplica r, ReplicaPushRequest req) {
+		for (ReceiveCommand cmd : req.getCommands()) {
+			if (cmd.getRefName().equals(r.getSystem().getTxnAccepted())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Replica whose votes are cast by the test. */
+	private interface Held {
+		BlockingQueue<ReplicaPushRequest> held();
+
+		void accept(ReplicaPushRequest req);
+	}
+
+	private static class HeldReplica extends KetchReplica implements Held {
+		private final BlockingQueue<ReplicaPushRequest> held =
+				new LinkedBlockingQueue<>();
+
+		volatile boolean hold;
+
+		HeldReplica(KetchLeader leader, String name) {
+			super(leader, name, new ReplicaConfig());
+		}
+
+		@Override
+		public BlockingQueue<ReplicaPushRequest> held() {
+			return held;
+		}
+
+		@Override
+		protected void startPush(final ReplicaPushRequest req) {
+			if (hold && isAccept(this, req)) {
+				held.add(req);
+				return;
+			}
+			getSystem().getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					accept(req);
+				}
+			});
+		}
+
+		@Override
+		public void accept(ReplicaPushRequest req) {
+			for (ReceiveCommand cmd : req.getCommands()) {
+				cmd.setResult(OK);
+			}
+			req.done(null);
+		}
+
+		@Override
+		protected void blockingFetch(Repository repo, ReplicaFetchRequest req)
+				throws IOException {
+			throw new IOException("not supported");
+		}
+	}
+
+	private static class HeldLocalReplica extends LocalReplica
+			implements Held {
+		private final BlockingQueue<ReplicaPushRequest> held =
+				new LinkedBlockingQueue<>();
+
+		volatile boolean hold;
+
+		HeldLocalReplica(KetchLeader leader) {
+			super(leader, "local", new ReplicaConfig());
+		}
+
+		@Override
+		public BlockingQueue<ReplicaPushRequest> held() {
+			return held;
+		}
+
+		@Override
+		protected void startPush(ReplicaPushRequest req) {
+			if (hold && isAccept(this, req)) {
+				held.add(req);
+			} else {
+				super.startPush(req);
+			}
+		}
+
+		@Override
+		public void accept(ReplicaPushRequest req) {
+			super.startPush(req);
+		}
+	}
+}
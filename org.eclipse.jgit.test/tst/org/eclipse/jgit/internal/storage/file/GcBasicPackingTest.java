@@ -46,6 +46,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
@@ -53,9 +54,18 @@
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
 import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
@@ -157,6 +167,145 @@ public void testPackCommitsAndLooseOne(boolean aggressive)
 		assertEquals(1, stats.numberOfBitmaps);
 	}
 
+	@Test
+	public void testParallelRepackWritesPacksConcurrently() throws Exception {
+		tr.branch("refs/heads/master").commit().add("A", "A").create();
+		tr.branch("refs/notes/n").commit().noParents().add("C", "C").create();
+
+		final CountDownLatch headsStarted = new CountDownLatch(1);
+		final CountDownLatch restStarted = new CountDownLatch(1);
+		final AtomicBoolean concurrent = new AtomicBoolean();
+		final List<Thread> writers = new ArrayList<>();
+		GC parallelGc = new GC(repo) {
+			@Override
+			ThreadFactory newRepackThreadFactory() {
+				return newLatchedThreadFactory(super.newRepackThreadFactory(),
+						restStarted, headsStarted, writers);
+			}
+		};
+		parallelGc.setProgressMonitor(new EmptyProgressMonitor() {
+			@Override
+			public void beginTask(String title, int totalWork) {
+				if (!JGitText.get().countingObjects.equals(title)
+						|| headsStarted.getCount() == 0)
+					return;
+				// The other writer cannot finish before the heads pack
+				// started, so both are running if it started too.
+				headsStarted.countDown();
+				concurrent.set(await(restStarted));
+			}
+		});
+		parallelGc.setParallelRepack(true);
+		parallelGc.gc();
+
+		assertTrue(concurrent.get());
+		assertEquals(1, writers.size());
+		assertEquals("JGit-ParallelRepack", writers.get(0).getName());
+		assertTrue(writers.get(0).isDaemon());
+		assertEquals(2, parallelGc.getStatistics().numberOfPackFiles);
+	}
+
+	@Test
+	public void testParallelRepackFailureLeavesNoPack() throws Exception {
+		tr.branch("refs/heads/master").commit().add("A", "A").create();
+		tr.branch("refs/notes/n").commit().noParents().add("C", "C").create();
+
+		final CountDownLatch restDone = new CountDownLatch(1);
+		GC parallelGc = new GC(repo) {
+			@Override
+			ExecutorService newRepackExecutor() {
+				return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+						new LinkedBlockingQueue<Runnable>(),
+						newRepackThreadFactory()) {
+					@Override
+					protected void afterExecute(Runnable r, Throwable t) {
+						restDone.countDown();
+					}
+				};
+			}
+		};
+		parallelGc.setProgressMonitor(new EmptyProgressMonitor() {
+			@Override
+			public void beginTask(String title, int totalWork) {
+				if (JGitText.get().countingObjects.equals(title)) {
+					// Fail the heads pack once the other pack was written.
+					assertTrue(await(restDone));
+					throw new IllegalStateException("heads pack failed");
+				}
+			}
+		});
+		parallelGc.setParallelRepack(true);
+		try {
+			parallelGc.gc();
+			fail("gc should have failed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		// The pack of the other writer was removed.
+		assertEquals(0, parallelGc.getStatistics().numberOfPackFiles);
+		File packDir = new File(repo.getObjectDatabase().getDirectory(),
+				"pack");
+		String[] names = packDir.list();
+		assertEquals(0, names != null ? names.length : 0);
+	}
+
+	/**
+	 * Wrap a thread factory so its threads signal {@code started}, then wait
+	 * for {@code proceed} before running their work.
+	 */
+	static ThreadFactory newLatchedThreadFactory(final ThreadFactory base,
+			final CountDownLatch started, final CountDownLatch proceed,
+			final List<Thread> threads) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable taskBody) {
+				Thread thr = base.newThread(new Runnable() {
+					@Override
+					public void run() {
+						started.countDown();
+						await(proceed);
+						taskBody.run();
+					}
+				});
+				synchronized (threads) {
+					threads.add(thr);
+				}
+				return thr;
+			}
+		};
+	}
+
+	private static boolean await(CountDownLatch latch) {
+		try {
+			return latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Test
+	public void testMemoryLimitFromConfig() throws Exception {
+		repo.getConfig().setLong(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MEMORY_LIMIT, 1024 * 1024);
+		PackConfig pc = new PackConfig(repo);
+		pc.setThreads(2);
+		gc.setPackConfig(pc);
+
+		// A quarter of each writer's share goes to the delta cache, the
+		// rest is split between the delta search threads.
+		PackConfig cfg = gc.newPackConfig(1);
+		assertEquals(256 * 1024, cfg.getDeltaCacheSize());
+		assertEquals(384 * 1024, cfg.getDeltaSearchMemoryLimit());
+		assertEquals(384 * 1024, cfg.getBigFileThreshold());
+
+		cfg = gc.newPackConfig(2);
+		assertEquals(128 * 1024, cfg.getDeltaCacheSize());
+		assertEquals(192 * 1024, cfg.getDeltaSearchMemoryLimit());
+		assertEquals(192 * 1024, cfg.getBigFileThreshold());
+	}
+
 	@Theory
 	public void testNotPackTwice(boolean aggressive) throws Exception {
 		BranchBuilder bb = tr.branch("refs/heads/master");
@@ -186,6 +335,22 @@ public void testNotPackTwice(boolean aggressive) throws Exception {
 		assertEquals(11, packs.get(0).getObjectCount());
 	}
 
+	@Test
+	public void testParallelRepack() throws Exception {
+		tr.branch("refs/heads/master").commit().add("A", "A").add("B", "B")
+				.create();
+		tr.branch("refs/notes/n").commit().noParents().add("C", "C").create();
+
+		gc.setParallelRepack(true);
+		gc.setMemoryLimit(1024 * 1024);
+		gc.gc();
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(7, stats.numberOfPackedObjects);
+		assertEquals(2, stats.numberOfPackFiles);
+		assertEquals(1, stats.numberOfBitmaps);
+	}
+
 	@Test
 	public void testDonePruneTooYoungPacks() throws Exception {
 		BranchBuilder bb = tr.branch("refs/heads/master");
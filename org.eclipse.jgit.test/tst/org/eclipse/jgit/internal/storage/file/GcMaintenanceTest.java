@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+public class GcMaintenanceTest extends GcTestCase {
+	@Test
+	public void testPacksLooseObjects() throws Exception {
+		RevCommit tip = commitChain(2);
+		tr.update("refs/heads/master", tip);
+		RevBlob unreferenced = tr.blob("unreferenced");
+
+		Collection<PackFile> packs = gc.maintenance();
+		assertEquals(1, packs.size());
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(7, stats.numberOfPackedObjects);
+		assertEquals(1, stats.numberOfPackFiles);
+		assertTrue(repo.hasObject(unreferenced));
+	}
+
+	@Test
+	public void testMergesSmallPacks() throws Exception {
+		RevCommit first = commitChain(1);
+		tr.update("refs/heads/master", first);
+		gc.maintenance();
+		tr.update("refs/heads/master", tr.commit().parent(first)
+				.add("b", "b").create());
+		fsTick();
+		gc.setPackExpireAgeMillis(0);
+		gc.maintenance();
+
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(6, stats.numberOfPackedObjects);
+		assertEquals(1, stats.numberOfPackFiles);
+	}
+
+	@Test
+	public void testKeepsRecentlyMergedPacks() throws Exception {
+		RevCommit first = commitChain(1);
+		tr.update("refs/heads/master", first);
+		gc.maintenance();
+		File merged = repo.getObjectDatabase().getPacks().iterator().next()
+				.getPackFile();
+		tr.update("refs/heads/master", tr.commit().parent(first)
+				.add("b", "b").create());
+		gc.maintenance();
+
+		// The merged pack is younger than gc.prunePackExpire.
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(2, stats.numberOfPackFiles);
+		assertTrue(merged.exists());
+	}
+
+	@Test
+	public void testDoesNotMergeKeptPacksAgain() throws Exception {
+		RevCommit first = commitChain(1);
+		tr.update("refs/heads/master", first);
+		gc.maintenance();
+		tr.update("refs/heads/master", tr.commit().parent(first)
+				.add("b", "b").create());
+		gc.maintenance();
+		stats = gc.getStatistics();
+		long packed = stats.numberOfPackedObjects;
+
+		assertTrue(gc.maintenance().isEmpty());
+		assertTrue(gc.maintenance().isEmpty());
+		stats = gc.getStatistics();
+		assertEquals(packed, stats.numberOfPackedObjects);
+		assertEquals(2, stats.numberOfPackFiles);
+	}
+
+	@Test
+	public void testPrunesKeptPacksOnceExpired() throws Exception {
+		RevCommit first = commitChain(1);
+		tr.update("refs/heads/master", first);
+		gc.maintenance();
+		File merged = repo.getObjectDatabase().getPacks().iterator().next()
+				.getPackFile();
+		tr.update("refs/heads/master", tr.commit().parent(first)
+				.add("b", "b").create());
+		gc.maintenance();
+		assertTrue(merged.exists());
+
+		fsTick();
+		gc.setPackExpireAgeMillis(0);
+		assertTrue(gc.maintenance().isEmpty());
+		stats = gc.getStatistics();
+		assertEquals(6, stats.numberOfPackedObjects);
+		assertEquals(1, stats.numberOfPackFiles);
+		assertFalse(merged.exists());
+		for (String n : merged.getParentFile().list())
+			assertFalse(n, n.endsWith(".merged"));
+	}
+
+	@Test
+	public void testKeepsLargePack() throws Exception {
+		RevCommit tip = commitChain(10);
+		tr.update("refs/heads/master", tip);
+		gc.setExpireAgeMillis(0);
+		gc.gc();
+		File large = repo.getObjectDatabase().getPacks().iterator().next()
+				.getPackFile();
+
+		tr.update("refs/heads/master", tr.commit().parent(tip)
+				.add("b", "b").create());
+		assertEquals(1, gc.maintenance().size());
+
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(2, stats.numberOfPackFiles);
+		assertTrue(large.exists());
+	}
+
+	@Test
+	public void testNothingToDo() throws Exception {
+		assertTrue(gc.maintenance().isEmpty());
+		assertEquals(0, gc.getStatistics().numberOfPackFiles);
+	}
+}
@@ -45,6 +45,9 @@
 
 import static org.eclipse.jgit.internal.storage.pack.PackWriter.NONE;
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+import static org.eclipse.jgit.lib.Constants.OBJ_COMMIT;
+import static org.eclipse.jgit.lib.Constants.OBJ_TAG;
+import static org.eclipse.jgit.lib.Constants.OBJ_TREE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -75,6 +78,7 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdSet;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.Sets;
 import org.eclipse.jgit.revwalk.DepthWalk;
@@ -485,6 +489,127 @@ public void testDeltaStatistics() throws Exception {
 		}
 	}
 
+	@Test
+	public void testDeltaIslandsSeparateForks() throws Exception {
+		FileRepository repo = createBareRepository();
+		TestRepository<FileRepository> testRepo = new TestRepository<>(repo);
+		RevCommit fork1 = testRepo.branch("refs/virtual/1/heads/master")
+				.commit().add("f", genDeltableData(1000)).create();
+		RevCommit fork2 = testRepo.branch("refs/virtual/2/heads/master")
+				.commit().add("f", genDeltableData(1005)).create();
+
+		assertEquals(1, countBlobDeltas(repo, wants(fork1, fork2), null));
+		assertEquals(0, countBlobDeltas(repo, wants(fork1, fork2),
+				"^refs/virtual/([^/]+)/"));
+	}
+
+	@Test
+	public void testDeltaIslandsSameFork() throws Exception {
+		FileRepository repo = createBareRepository();
+		TestRepository<FileRepository> testRepo = new TestRepository<>(repo);
+		BranchBuilder bb = testRepo.branch("refs/virtual/1/heads/master");
+		bb.commit().add("f", genDeltableData(1000)).create();
+		RevCommit tip = bb.commit().add("f", genDeltableData(1005)).create();
+
+		assertEquals(1, countBlobDeltas(repo, wants(tip),
+				"^refs/virtual/([^/]+)/"));
+	}
+
+	private long countBlobDeltas(FileRepository repo, Set<ObjectId> want,
+			String island) throws IOException {
+		PackConfig pc = new PackConfig(repo);
+		if (island != null)
+			pc.setDeltaIslandPatterns(Collections.singletonList(island));
+		try (PackWriter pw = new PackWriter(pc, repo.newObjectReader())) {
+			NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+			pw.setDeltaIslandRefs(repo.getRefDatabase()
+					.getRefs(RefDatabase.ALL).values());
+			pw.preparePack(m, want, NONE);
+			pw.writePack(m, m, new ByteArrayOutputStream());
+			return pw.getStatistics().byObjectType(OBJ_BLOB).getDeltas();
+		}
+	}
+
+	@Test
+	public void testReusePackPrefix() throws Exception {
+		FileRepository repo = createBareRepository();
+		TestRepository<FileRepository> testRepo = new TestRepository<>(repo);
+		BranchBuilder bb = testRepo.branch("refs/heads/master");
+		RevCommit c1 = bb.commit().add("f", genDeltableData(1000)).create();
+		RevCommit s1 = testRepo.branch("refs/heads/side").commit().parent(c1)
+				.add("s", "side").create();
+		RevCommit c2 = bb.commit().add("f", genDeltableData(1005)).create();
+		new GC(repo).gc();
+
+		// The prefix ends at the first object of the pack not reachable
+		// from c2.
+		Set<ObjectId> need = new HashSet<>();
+		try (ObjectWalk ow = new ObjectWalk(repo)) {
+			ow.markStart(ow.parseCommit(c2));
+			RevObject o;
+			while ((o = ow.next()) != null)
+				need.add(o.copy());
+			while ((o = ow.nextObject()) != null)
+				need.add(o.copy());
+		}
+		PackFile pack = repo.getObjectDatabase().getPacks().iterator().next();
+		List<MutableEntry> entries = new ArrayList<>();
+		for (MutableEntry e : pack)
+			entries.add(e.cloneEntry());
+		Collections.sort(entries, new Comparator<MutableEntry>() {
+			@Override
+			public int compare(MutableEntry a, MutableEntry b) {
+				return Long.signum(a.getOffset() - b.getOffset());
+			}
+		});
+		int prefix = 0;
+		while (need.contains(entries.get(prefix).toObjectId()))
+			prefix++;
+		assertTrue(prefix > 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PackConfig config = new PackConfig(repo);
+		config.setReuseObjects(false);
+		config.setReuseDeltas(false);
+		try (PackWriter pw = new PackWriter(config, repo.newObjectReader())) {
+			NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+			pw.setUseBitmaps(true);
+			pw.setUseCachedPacks(true);
+			pw.setReuseValidatingObjects(false);
+			pw.setDeltaBaseAsOffset(true);
+			pw.preparePack(m, wants(c2), NONE);
+			pw.writePack(m, m, out);
+			assertTrue(pw.isIndexDisabled());
+			assertTrue(pw.willInclude(c2));
+
+			// Only the prefix is reused, as reuse of other objects is off.
+			PackStatistics stats = pw.getStatistics();
+			assertEquals(prefix, stats.getReusedObjects());
+			long objects = 0;
+			long reused = 0;
+			for (int type : new int[] { OBJ_COMMIT, OBJ_TREE, OBJ_BLOB,
+					OBJ_TAG }) {
+				objects += stats.byObjectType(type).getObjects();
+				reused += stats.byObjectType(type).getReusedObjects();
+			}
+			assertEquals(need.size(), objects);
+			assertEquals(prefix, reused);
+			assertEquals(need.size(), stats.getTotalObjects());
+		}
+
+		FileRepository client = createBareRepository();
+		try (ObjectInserter ins = client.newObjectInserter()) {
+			ins.newPackParser(new ByteArrayInputStream(out.toByteArray()))
+					.parse(NullProgressMonitor.INSTANCE);
+			ins.flush();
+		}
+		testRepo.getRevWalk().parseBody(c2);
+		testRepo.getRevWalk().parseBody(c1);
+		for (RevObject o : Arrays.asList(c1, c2, c1.getTree(), c2.getTree()))
+			assertTrue(client.hasObject(o));
+		assertFalse(client.hasObject(s1));
+	}
+
 	// Generate consistent junk data for building files that delta well
 	private String genDeltableData(int length) {
 		assertTrue("Generated data must have a length > 0", length > 0);
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.pack.PackStatistics;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BundleUriTest extends LocalDiskRepositoryTestCase {
+	private static final RefSpec HEADS = new RefSpec(
+			"+refs/heads/*:refs/heads/*");
+
+	private TestRepository<Repository> remote;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private List<String> bundleUris;
+
+	private List<String> advertisedUris = Collections.emptyList();
+
+	private final List<PackStatistics> stats = new ArrayList<>();
+
+	private RevCommit a;
+
+	private RevCommit b;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		remote = new TestRepository<>(createBareRepository());
+		a = remote.branch("master").commit().add("a", "a").create();
+
+		File bundle = new File(createTempDirectory("bundles"), "a.bundle");
+		BundleWriter bw = new BundleWriter(remote.getRepository());
+		bw.include("refs/heads/master", a);
+		try (OutputStream out = new FileOutputStream(bundle)) {
+			bw.writeBundle(NullProgressMonitor.INSTANCE, out);
+		}
+		bundleUris = Collections.singletonList(bundle.getPath());
+
+		b = remote.branch("master").commit().parent(a).add("b", "b")
+				.create();
+
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				UploadPack up = new UploadPack(db);
+				up.setBundleUris(advertisedUris);
+				up.setPostUploadHook(new PostUploadHook() {
+					@Override
+					public void onPostUpload(PackStatistics s) {
+						stats.add(s);
+					}
+				});
+				return up;
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				return new ReceivePack(db);
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), remote.getRepository());
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testFetchUsesBundle() throws Exception {
+		Repository client = createBareRepository();
+		fetch(client, true);
+
+		assertEquals(b, client.exactRef("refs/heads/master").getObjectId());
+		assertEquals(a,
+				client.exactRef("refs/bundles/heads/master").getObjectId());
+		assertTrue(client.hasObject(a.getTree()));
+
+		// Only the commit, tree and blob of b came from the remote.
+		assertEquals(1, stats.size());
+		assertEquals(3, stats.get(0).getTotalObjects());
+	}
+
+	@Test
+	public void testBundlesNotUsedByDefault() throws Exception {
+		Repository client = createBareRepository();
+		fetch(client, false);
+
+		assertEquals(b, client.exactRef("refs/heads/master").getObjectId());
+		assertNull(client.exactRef("refs/bundles/heads/master"));
+		assertEquals(6, stats.get(0).getTotalObjects());
+	}
+
+	@Test
+	public void testBundlesNotUsedForIncrementalFetch() throws Exception {
+		Repository client = createBareRepository();
+		fetch(client, false);
+		remote.branch("master").commit().parent(b).add("c", "c").create();
+		fetch(client, true);
+
+		assertNull(client.exactRef("refs/bundles/heads/master"));
+	}
+
+	@Test
+	public void testAdvertisedLocalBundleIsRejected() throws Exception {
+		advertisedUris = bundleUris;
+		bundleUris = Collections.emptyList();
+		Repository client = createBareRepository();
+		FetchResult r = fetch(client, true);
+
+		assertEquals(b, client.exactRef("refs/heads/master").getObjectId());
+		assertTrue(r.getMessages().contains("Cannot use bundle"));
+		assertNull(client.exactRef("refs/bundles/heads/master"));
+		assertEquals(6, stats.get(0).getTotalObjects());
+	}
+
+	@Test
+	public void testMissingBundleIsSkipped() throws Exception {
+		bundleUris = Collections.singletonList(
+				new File(createTempDirectory("missing"), "x.bundle")
+						.getPath());
+		Repository client = createBareRepository();
+		FetchResult r = fetch(client, true);
+
+		assertEquals(b, client.exactRef("refs/heads/master").getObjectId());
+		assertTrue(r.getMessages().contains("Cannot use bundle"));
+		Collection<Ref> bundleRefs = client.getRefDatabase()
+				.getRefs("refs/bundles/").values();
+		assertTrue(bundleRefs.isEmpty());
+	}
+
+	private FetchResult fetch(Repository client, boolean useBundleUris)
+			throws Exception {
+		try (Transport tn = Transport.open(client, uri)) {
+			tn.setUseBundleUris(useBundleUris);
+			tn.setBundleUris(bundleUris);
+			return tn.fetch(NullProgressMonitor.INSTANCE,
+					Collections.singleton(HEADS));
+		}
+	}
+}
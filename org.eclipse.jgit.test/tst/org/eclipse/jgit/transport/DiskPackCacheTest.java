@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.eclipse.jgit.util.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskPackCacheTest extends LocalDiskRepositoryTestCase {
+	private static final RefSpec HEADS = new RefSpec(
+			"+refs/heads/*:refs/heads/*");
+
+	private TestRepository<Repository> remote;
+
+	private CountingCache cache;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private static class CountingCache extends DiskPackCache {
+		final AtomicInteger generated = new AtomicInteger();
+
+		final AtomicInteger served = new AtomicInteger();
+
+		/** Pretend another request is storing the pack and fails. */
+		boolean failedWriter;
+
+		CountingCache(File directory) throws IOException {
+			super(directory, 1024 * 1024);
+		}
+
+		@Override
+		public Output create(Repository db, String key) throws IOException {
+			if (failedWriter) {
+				failedWriter = false;
+				return null;
+			}
+			Output out = super.create(db, key);
+			if (out != null)
+				generated.incrementAndGet();
+			return out;
+		}
+
+		@Override
+		public InputStream open(Repository db, String key) throws IOException {
+			InputStream in = super.open(db, key);
+			if (in != null)
+				served.incrementAndGet();
+			return in;
+		}
+	}
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		remote = new TestRepository<>(createBareRepository());
+		cache = new CountingCache(createTempDirectory("packcache"));
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				UploadPack up = new UploadPack(db);
+				up.setPackCache(cache);
+				return up;
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				return new ReceivePack(db);
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), remote.getRepository());
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testIdenticalClonesShareOnePack() throws Exception {
+		RevCommit a = remote.branch("master").commit().add("a", "a").create();
+
+		Repository first = fetch();
+		Repository second = fetch();
+
+		assertEquals(a, first.exactRef("refs/heads/master").getObjectId());
+		assertEquals(a, second.exactRef("refs/heads/master").getObjectId());
+		assertTrue(second.hasObject(a));
+		assertEquals(1, cache.generated.get());
+		assertEquals(1, cache.served.get());
+	}
+
+	@Test
+	public void testNewCommitGeneratesNewPack() throws Exception {
+		RevCommit a = remote.branch("master").commit().add("a", "a").create();
+		fetch();
+
+		RevCommit b = remote.branch("master").commit().parent(a)
+				.add("b", "b").create();
+		Repository dst = fetch();
+
+		assertEquals(b, dst.exactRef("refs/heads/master").getObjectId());
+		assertEquals(2, cache.generated.get());
+		assertEquals(0, cache.served.get());
+	}
+
+	@Test
+	public void testOpenWaitsForWriter() throws Exception {
+		final Repository db = remote.getRepository();
+		PackCache.Output out = cache.create(db, "k");
+		assertNotNull(out);
+		assertNull("only one writer", cache.create(db, "k"));
+
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			Future<byte[]> reader = pool.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					try (InputStream in = cache.open(db, "k")) {
+						byte[] buf = new byte[3];
+						IO.readFully(in, buf, 0, 3);
+						return buf;
+					}
+				}
+			});
+			out.write(new byte[] { 1, 2, 3 });
+			out.commit();
+			out.close();
+			assertArrayEquals(new byte[] { 1, 2, 3 },
+					reader.get(10, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testOpenStopsWaitingForSlowWriter() throws Exception {
+		Repository db = remote.getRepository();
+		cache.setWaitTimeout(1);
+		try (PackCache.Output out = cache.create(db, "k")) {
+			long start = System.nanoTime();
+			assertNull(cache.open(db, "k"));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+					.toNanos(900));
+		}
+	}
+
+	@Test
+	public void testOpenForResumeReadsWhileWriting() throws Exception {
+		final Repository db = remote.getRepository();
+		PackCache.Output out = cache.create(db, "k");
+		out.write(new byte[] { 1, 2 });
+
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try (InputStream in = cache.openForResume(db, "k")) {
+			assertNotNull("does not wait for the writer", in);
+			assertEquals(1, in.read());
+			assertEquals(2, in.read());
+			Future<Integer> reader = pool.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return Integer.valueOf(in.read());
+				}
+			});
+			out.write(3);
+			assertEquals(3, reader.get(10, TimeUnit.SECONDS).intValue());
+			out.commit();
+			out.close();
+			assertEquals(-1, in.read());
+		} finally {
+			pool.shutdownNow();
+		}
+		assertNotNull(cache.open(db, "k"));
+	}
+
+	@Test
+	public void testOpenForResumeFailsIfWriterAborts() throws Exception {
+		Repository db = remote.getRepository();
+		PackCache.Output out = cache.create(db, "k");
+		out.write(1);
+		try (InputStream in = cache.openForResume(db, "k")) {
+			assertEquals(1, in.read());
+			out.close();
+			try {
+				in.read();
+				fail("reading a discarded pack should fail");
+			} catch (IOException e) {
+				// Expected.
+			}
+		}
+		assertNull(cache.openForResume(db, "k"));
+	}
+
+	@Test
+	public void testPackKeptAfterRepack() throws Exception {
+		RevCommit a = remote.branch("master").commit().add("a", "a").create();
+		fetch();
+		remote.packAndPrune();
+		Repository dst = fetch();
+
+		assertEquals(a, dst.exactRef("refs/heads/master").getObjectId());
+		assertEquals(1, cache.generated.get());
+		assertEquals(1, cache.served.get());
+	}
+
+	@Test
+	public void testPackStoredAfterFailedWriter() throws Exception {
+		RevCommit a = remote.branch("master").commit().add("a", "a").create();
+
+		cache.failedWriter = true;
+		Repository first = fetch();
+		Repository second = fetch();
+
+		assertEquals(a, first.exactRef("refs/heads/master").getObjectId());
+		assertEquals(a, second.exactRef("refs/heads/master").getObjectId());
+		assertEquals(1, cache.generated.get());
+		assertEquals(1, cache.served.get());
+	}
+
+	@Test
+	public void testAbortedPackNotCached() throws Exception {
+		Repository db = remote.getRepository();
+		PackCache.Output out = cache.create(db, "k");
+		out.write(1);
+		out.close();
+		assertNull(cache.open(db, "k"));
+		assertNotNull(cache.create(db, "k"));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		Repository db = remote.getRepository();
+		store(db, "a", 400 * 1024);
+		store(db, "b", 400 * 1024);
+		cache.open(db, "a").close();
+		store(db, "c", 400 * 1024);
+
+		assertNotNull(cache.open(db, "a"));
+		assertNull(cache.open(db, "b"));
+		assertNotNull(cache.open(db, "c"));
+	}
+
+	@Test
+	public void testReusedAfterRestart() throws Exception {
+		Repository db = remote.getRepository();
+		store(db, "a", 10);
+		DiskPackCache reopened = new CountingCache(cache.getDirectory());
+		try (InputStream in = reopened.open(db, "a")) {
+			assertNotNull(in);
+		}
+	}
+
+	private void store(Repository db, String key, int size)
+			throws IOException {
+		try (PackCache.Output out = cache.create(db, key)) {
+			out.write(new byte[size]);
+			out.commit();
+		}
+	}
+
+	private Repository fetch() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.fetch(NullProgressMonitor.INSTANCE, Collections.singleton(HEADS));
+		}
+		return dst;
+	}
+}
@@ -67,12 +67,17 @@
 import org.eclipse.jgit.junit.JGitTestUtil;
 import org.eclipse.jgit.junit.RepositoryTestCase;
 import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
 import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.util.NB;
 import org.eclipse.jgit.util.TemporaryBuffer;
 import org.eclipse.jgit.util.io.UnionInputStream;
@@ -166,6 +171,47 @@ public void testTinyThinPack() throws Exception {
 		p.parse(NullProgressMonitor.INSTANCE);
 	}
 
+	@Test
+	public void testReferencedObjectIds() throws Exception {
+		TestRepository d = new TestRepository<Repository>(db);
+		RevBlob a = d.blob("a");
+		RevCommit A = d.commit().add("a", a).create();
+
+		ObjectInserter.Formatter fmt = new ObjectInserter.Formatter();
+		byte[] blobData = Constants.encode("n");
+		TreeFormatter tree = new TreeFormatter();
+		tree.append("a", FileMode.REGULAR_FILE, a);
+		tree.append("n", FileMode.REGULAR_FILE,
+				fmt.idFor(Constants.OBJ_BLOB, blobData));
+		tree.append("s", FileMode.GITLINK, ObjectId
+				.fromString("0123456789012345678901234567890123456789"));
+		byte[] treeData = tree.toByteArray();
+		CommitBuilder commit = new CommitBuilder();
+		commit.setTreeId(fmt.idFor(Constants.OBJ_TREE, treeData));
+		commit.setParentId(A);
+		commit.setAuthor(author);
+		commit.setCommitter(committer);
+		commit.setMessage("n");
+		byte[] commitData = commit.build();
+
+		TemporaryBuffer.Heap pack = new TemporaryBuffer.Heap(1024);
+		packHeader(pack, 3);
+		wholeObject(pack, Constants.OBJ_COMMIT, commitData);
+		wholeObject(pack, Constants.OBJ_TREE, treeData);
+		wholeObject(pack, Constants.OBJ_BLOB, blobData);
+		digest(pack);
+
+		PackParser p = index(new ByteArrayInputStream(pack.toByteArray()));
+		p.setNeedReferencedObjectIds(true);
+		p.parse(NullProgressMonitor.INSTANCE);
+
+		assertEquals(3, p.getNewObjectIds().size());
+		ObjectIdSubclassMap<ObjectId> referenced = p.getReferencedObjectIds();
+		assertEquals(2, referenced.size());
+		assertTrue(referenced.contains(A));
+		assertTrue(referenced.contains(a));
+	}
+
 	@Test
 	public void testPackWithDuplicateBlob() throws Exception {
 		final byte[] data = Constants.encode("0123456789abcdefg");
@@ -462,6 +508,20 @@ private static void packHeader(TemporaryBuffer.Heap tinyPack, int cnt)
 		tinyPack.write(hdr, 0, 8);
 	}
 
+	private static void wholeObject(TemporaryBuffer.Heap tinyPack, int type,
+			byte[] content) throws IOException {
+		int sz = content.length;
+		int b = (type << 4) | (sz & 0x0F);
+		sz >>>= 4;
+		while (sz > 0) {
+			tinyPack.write(b | 0x80);
+			b = sz & 0x7F;
+			sz >>>= 7;
+		}
+		tinyPack.write(b);
+		deflate(tinyPack, content);
+	}
+
 	private static void deflate(TemporaryBuffer.Heap tinyPack,
 			final byte[] content)
 			throws IOException {
@@ -44,8 +44,10 @@
 package org.eclipse.jgit.transport;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -209,6 +211,45 @@ public void testReadStringRaw4() {
 		}
 	}
 
+	// readLine
+
+	@Test
+	public void testReadLine() throws IOException {
+		init("0032have fcfcfb1fd94829c1a1704f894fc111d14770d34e\n0008done0000");
+		assertEquals(45, in.readLine());
+		assertTrue(in.lineStartsWith(Constants.encodeASCII("have ")));
+		assertFalse(in.lineStartsWith(Constants.encodeASCII("want ")));
+		MutableObjectId id = new MutableObjectId();
+		assertTrue(in.parseLineId(5, id));
+		assertEquals(ObjectId
+				.fromString("fcfcfb1fd94829c1a1704f894fc111d14770d34e"), id);
+		assertFalse(in.parseLineId(6, id));
+
+		assertEquals(4, in.readLine());
+		assertTrue(in.lineEquals(Constants.encodeASCII("done")));
+		assertFalse(in.lineEquals(Constants.encodeASCII("don")));
+		assertEquals("done", in.lineToString());
+
+		assertEquals(-1, in.readLine());
+		assertSame(PacketLineIn.END, in.lineToString());
+		assertEOF();
+	}
+
+	@Test
+	public void testReadLine_LongLine() throws IOException {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 2000; i++)
+			b.append('x');
+		String line = b.toString();
+		init(String.format("%04x", Integer.valueOf(line.length() + 5)) + line
+				+ "\n0006a\n");
+		assertEquals(2000, in.readLine());
+		assertEquals(line, in.lineToString());
+		assertEquals(1, in.readLine());
+		assertEquals("a", in.lineToString());
+		assertEOF();
+	}
+
 	// readACK
 
 	@Test
@@ -51,6 +51,7 @@
 import java.io.OutputStream;
 
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -146,6 +147,19 @@ public void testWritePacket3() throws IOException {
 		}
 	}
 
+	// writeId
+
+	@Test
+	public void testWriteId() throws IOException {
+		ObjectId id = ObjectId
+				.fromString("fcfcfb1fd94829c1a1704f894fc111d14770d34e");
+		out.writeId(Constants.encodeASCII("ACK "), id,
+				Constants.encodeASCII(" continue\n"));
+		out.writeId(new byte[0], id, new byte[0]);
+		assertBuffer("003aACK fcfcfb1fd94829c1a1704f894fc111d14770d34e continue\n"
+				+ "002cfcfcfb1fd94829c1a1704f894fc111d14770d34e");
+	}
+
 	// flush
 
 	@Test
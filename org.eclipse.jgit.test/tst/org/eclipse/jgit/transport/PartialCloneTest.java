@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartialCloneTest extends LocalDiskRepositoryTestCase {
+	private static final RefSpec HEADS = new RefSpec(
+			"+refs/heads/*:refs/heads/*");
+
+	private TestRepository<Repository> remote;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private RevBlob small;
+
+	private RevBlob large;
+
+	private RevCommit commit;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		remote = new TestRepository<>(createBareRepository());
+		StoredConfig cfg = remote.getRepository().getConfig();
+		cfg.setBoolean("uploadpack", null, "allowfilter", true);
+		cfg.setBoolean("uploadpack", null, "allowanysha1inwant", true);
+		cfg.save();
+
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				return new UploadPack(db);
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				return new ReceivePack(db);
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), remote.getRepository());
+
+		byte[] data = new byte[2048];
+		Arrays.fill(data, (byte) 'x');
+		small = remote.blob("small");
+		large = remote.blob(data);
+		commit = remote.branch("master").commit().add("small", small)
+				.add("dir/large", large).create();
+		remote.parseBody(commit);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testParseFilter() throws Exception {
+		assertEquals(0, FilterSpec.fromFilterLine("blob:none").getBlobLimit());
+		assertEquals(2048,
+				FilterSpec.fromFilterLine("blob:limit=2k").getBlobLimit());
+		assertEquals(1,
+				FilterSpec.fromFilterLine("tree:1").getTreeDepthLimit());
+		assertEquals("blob:limit=1048576",
+				FilterSpec.fromFilterLine("blob:limit=1m").filterLine());
+		for (String bad : new String[] { "blob:limit=", "blob:limit=-1",
+				"tree:x", "sparse:oid=HEAD" }) {
+			try {
+				FilterSpec.fromFilterLine(bad);
+				fail("accepted " + bad);
+			} catch (PackProtocolException e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public void testBlobNone() throws Exception {
+		Repository dst = fetch(FilterSpec.withBlobLimit(0));
+		assertTrue(dst.hasObject(commit));
+		assertTrue(dst.hasObject(commit.getTree()));
+		assertTrue(dst.hasObject(subtree()));
+		assertFalse(dst.hasObject(small));
+		assertFalse(dst.hasObject(large));
+	}
+
+	@Test
+	public void testBlobLimit() throws Exception {
+		Repository dst = fetch(FilterSpec.withBlobLimit(1024));
+		assertTrue(dst.hasObject(small));
+		assertFalse(dst.hasObject(large));
+	}
+
+	@Test
+	public void testBlobLimitWithBitmaps() throws Exception {
+		GC gc = new GC((FileRepository) remote.getRepository());
+		gc.gc();
+		assertNotNull(remote.getRevWalk().getObjectReader().getBitmapIndex());
+
+		Repository dst = fetch(FilterSpec.withBlobLimit(1024));
+		assertTrue(dst.hasObject(commit.getTree()));
+		assertTrue(dst.hasObject(small));
+		assertFalse(dst.hasObject(large));
+	}
+
+	@Test
+	public void testTreeDepth() throws Exception {
+		Repository dst = fetch(FilterSpec.withTreeDepthLimit(1));
+		assertTrue(dst.hasObject(commit));
+		assertTrue(dst.hasObject(commit.getTree()));
+		assertFalse(dst.hasObject(subtree()));
+		assertFalse(dst.hasObject(small));
+		assertFalse(dst.hasObject(large));
+	}
+
+	@Test
+	public void testFilterIgnoredWhenNotAllowed() throws Exception {
+		StoredConfig cfg = remote.getRepository().getConfig();
+		cfg.setBoolean("uploadpack", null, "allowfilter", false);
+		cfg.save();
+
+		Repository dst = fetch(FilterSpec.withBlobLimit(0));
+		assertTrue(dst.hasObject(small));
+		assertTrue(dst.hasObject(large));
+	}
+
+	@Test
+	public void testReaderFetchesMissingObjects() throws Exception {
+		Repository dst = fetch(FilterSpec.withBlobLimit(0));
+		try (PromisorObjectReader reader = new PromisorObjectReader(dst,
+				uri.toString())) {
+			assertEquals(2048, reader.getObjectSize(large, Constants.OBJ_BLOB));
+			assertEquals("small",
+					new String(reader.open(small).getCachedBytes(), "UTF-8"));
+		}
+		assertTrue(dst.hasObject(small));
+		assertTrue(dst.hasObject(large));
+	}
+
+	@Test
+	public void testCloneChecksOutFilteredBlobs() throws Exception {
+		File dir = createTempDirectory("partial");
+		try (Git git = Git.cloneRepository().setURI(uri.toString())
+				.setDirectory(dir).setFilterSpec(FilterSpec.withBlobLimit(0))
+				.call()) {
+			Repository dst = git.getRepository();
+			assertEquals("origin", dst.getConfig().getString(
+					ConfigConstants.CONFIG_EXTENSIONS_SECTION, null,
+					ConfigConstants.CONFIG_KEY_PARTIAL_CLONE));
+			assertEquals("blob:none", dst.getConfig().getString(
+					ConfigConstants.CONFIG_REMOTE_SECTION, "origin",
+					ConfigConstants.CONFIG_KEY_PARTIAL_CLONE_FILTER));
+			assertEquals("small", new String(
+					IO.readFully(new File(dir, "small")), "UTF-8"));
+			assertEquals(2048, new File(dir, "dir/large").length());
+
+			// Later fetches keep the filter and do not fail the
+			// connectivity check on missing objects.
+			remote.branch("master").commit().parent(commit)
+					.add("other", remote.blob("other")).create();
+			git.fetch().setCheckFetchedObjects(true).call();
+			assertFalse(dst.hasObject(remote.blob("other")));
+		}
+	}
+
+	private ObjectId subtree() throws Exception {
+		try (TreeWalk tw = TreeWalk.forPath(remote.getRepository(), "dir",
+				commit.getTree())) {
+			return tw.getObjectId(0);
+		}
+	}
+
+	private Repository fetch(FilterSpec filter) throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport tn = Transport.open(dst, uri)) {
+			tn.setFilterSpec(filter);
+			tn.fetch(NullProgressMonitor.INSTANCE,
+					Collections.singletonList(HEADS));
+		}
+		return dst;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.IO;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartialPackTest extends LocalDiskRepositoryTestCase {
+	private static final String KEY = ObjectId.zeroId().name();
+
+	private File dir;
+
+	private byte[] data;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		dir = createTempDirectory("resume");
+		data = new byte[1000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) i;
+	}
+
+	@Test
+	public void testResentPackKeepsPartialData() throws Exception {
+		receive(new PartialPack(dir), KEY, 0, Arrays.copyOf(data, 600));
+
+		PartialPack p = new PartialPack(dir);
+		assertEquals(KEY, p.getKey());
+		assertEquals(600, p.getLength());
+		PartialPack.Receiver r = p.receive(KEY, 0,
+				new ByteArrayInputStream(data, 0, 300));
+		assertArrayEquals(Arrays.copyOf(data, 300), readAll(r));
+		assertEquals(600, r.getSaved());
+		assertEquals(600, new PartialPack(dir).getLength());
+	}
+
+	@Test
+	public void testDifferentDataCutsPartialData() throws Exception {
+		receive(new PartialPack(dir), KEY, 0, Arrays.copyOf(data, 600));
+
+		byte[] other = Arrays.copyOf(data, 300);
+		other[200] = -1;
+		PartialPack.Receiver r = receive(new PartialPack(dir), KEY, 0,
+				other);
+		assertEquals(300, r.getSaved());
+		assertEquals(300, new PartialPack(dir).getLength());
+	}
+
+	@Test
+	public void testNewKeyReplacesPartialPack() throws Exception {
+		receive(new PartialPack(dir), KEY, 0, Arrays.copyOf(data, 600));
+
+		String key = ObjectId.fromString(
+				"0123456789012345678901234567890123456789").name();
+		receive(new PartialPack(dir), key, 0, Arrays.copyOf(data, 10));
+		PartialPack p = new PartialPack(dir);
+		assertEquals(key, p.getKey());
+		assertEquals(10, p.getLength());
+	}
+
+	@Test
+	public void testResumedPackReadsSavedData() throws Exception {
+		receive(new PartialPack(dir), KEY, 0, Arrays.copyOf(data, 600));
+
+		PartialPack p = new PartialPack(dir);
+		PartialPack.Receiver r = p.receive(KEY, 600,
+				new ByteArrayInputStream(data, 600, 400));
+		assertArrayEquals(data, readAll(r));
+		p.delete();
+		assertNull(new PartialPack(dir).getKey());
+	}
+
+	private static PartialPack.Receiver receive(PartialPack p, String key,
+			long start, byte[] buf) throws IOException {
+		PartialPack.Receiver r = p.receive(key, start,
+				new ByteArrayInputStream(buf));
+		readAll(r);
+		return r;
+	}
+
+	private static byte[] readAll(PartialPack.Receiver r) throws IOException {
+		try {
+			ByteBuffer b = IO.readWholeStream(r, 0);
+			return Arrays.copyOf(b.array(), b.limit());
+		} finally {
+			r.close();
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.eclipse.jgit.util.TemporaryBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PushNegotiateTest extends LocalDiskRepositoryTestCase {
+	private FileRepository server;
+
+	private TestRepository<Repository> client;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private RevCommit fork;
+
+	private boolean allowNegotiate = true;
+
+	private boolean checkReachable;
+
+	private boolean checkObjects;
+
+	private boolean hideRefs;
+
+	private boolean anyCommit;
+
+	private ReceivePack receivePack;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		server = createBareRepository();
+		client = new TestRepository<Repository>(createBareRepository());
+
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				return new UploadPack(db);
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				ReceivePack rp = new ReceivePack(db);
+				rp.setAllowPushNegotiate(allowNegotiate);
+				rp.setCheckReferencedObjectsAreReachable(checkReachable);
+				rp.setCheckReceivedObjects(checkObjects);
+				rp.setPushNegotiateAnyCommit(anyCommit);
+				if (hideRefs)
+					rp.setRefFilter(new RefFilter() {
+						@Override
+						public Map<String, Ref> filter(Map<String, Ref> refs) {
+							Map<String, Ref> r = new HashMap<>(refs);
+							r.remove("refs/hidden/fork");
+							return r;
+						}
+					});
+				receivePack = rp;
+				return rp;
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), server);
+
+		// The server keeps the objects of a fork of master no ref points to.
+		TestRepository<Repository> s = new TestRepository<Repository>(server);
+		RevCommit base = s.branch("master").commit().add("a", "a").create();
+		fork = base;
+		for (int i = 0; i < 3; i++)
+			fork = s.commit().parent(fork).add("f" + i, "f" + i).create();
+		s.update("refs/heads/fork", fork);
+
+		try (Transport t = Transport.open(client.getRepository(), uri)) {
+			t.fetch(NullProgressMonitor.INSTANCE, Collections
+					.singleton(new RefSpec("+refs/*:refs/*")));
+		}
+		deleteRef("refs/heads/fork");
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testPushWithoutNegotiationSendsFork() throws Exception {
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, false));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(4, receivedCommits());
+	}
+
+	@Test
+	public void testNegotiationOmitsUnadvertisedHistory() throws Exception {
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(1, receivedCommits());
+	}
+
+	@Test
+	public void testNegotiationOfAdvertisedHistory() throws Exception {
+		RevCommit master = client.getRevWalk()
+				.parseCommit(server.resolve("refs/heads/master"));
+		RevCommit topic = client.commit().parent(master).add("t", "t")
+				.create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(1, receivedCommits());
+	}
+
+	@Test
+	public void testNegotiationWithConnectivityCheck() throws Exception {
+		checkObjects = true;
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(1, receivedCommits());
+	}
+
+	@Test
+	public void testNegotiationWithConnectivityCheckAndBitmaps()
+			throws Exception {
+		// Repack while the fork is referenced, so it has a bitmap.
+		new TestRepository<Repository>(server).update("refs/heads/fork", fork);
+		new GC(server).gc();
+		deleteRef("refs/heads/fork");
+		checkObjects = true;
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(1, receivedCommits());
+	}
+
+	@Test
+	public void testHiddenRefsAreNotAcknowledged() throws Exception {
+		hideRefs = true;
+		new TestRepository<Repository>(server).update("refs/hidden/fork",
+				fork);
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(4, receivedCommits());
+	}
+
+	@Test
+	public void testHiddenRefsAcknowledgedIfAnyCommitAllowed()
+			throws Exception {
+		hideRefs = true;
+		anyCommit = true;
+		new TestRepository<Repository>(server).update("refs/hidden/fork",
+				fork);
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(1, receivedCommits());
+	}
+
+	@Test
+	public void testHiddenRefsStillAcknowledgeReachableCommits()
+			throws Exception {
+		hideRefs = true;
+		// The client does not know the new tip of master, but its base.
+		TestRepository<Repository> s = new TestRepository<Repository>(server);
+		RevCommit base = s.getRevWalk()
+				.parseCommit(server.resolve("refs/heads/master"));
+		s.update("refs/heads/master",
+				s.commit().parent(base).add("m", "m").create());
+		RevCommit topic = client.commit().parent(base).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(1, receivedCommits());
+	}
+
+	@Test
+	public void testTooManyHaveLines() throws Exception {
+		ReceivePack rp = new ReceivePack(server);
+		rp.setAllowPushNegotiate(true);
+		TemporaryBuffer.Heap inBuf = new TemporaryBuffer.Heap(128 * 1024);
+		PacketLineOut in = new PacketLineOut(inBuf);
+		for (int i = 0; i <= 1024; i++)
+			in.writeString("have " + ObjectId.zeroId().name() + '\n');
+		in.end();
+
+		try {
+			rp.receive(new ByteArrayInputStream(inBuf.toByteArray()),
+					new ByteArrayOutputStream(), null);
+			fail("accepted more than 1024 have lines");
+		} catch (PackProtocolException e) {
+			assertEquals(MessageFormat.format(
+					JGitText.get().tooManyHaveLines, Integer.valueOf(1024)),
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNegotiationDisabledByDefault() throws Exception {
+		assertFalse(new ReceivePack(server).isAllowPushNegotiate());
+	}
+
+	@Test
+	public void testNegotiationDisabledByServer() throws Exception {
+		allowNegotiate = false;
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(4, receivedCommits());
+	}
+
+	@Test
+	public void testNoNegotiationWhenCheckingReachability() throws Exception {
+		checkReachable = true;
+		RevCommit topic = client.commit().parent(fork).add("t", "t").create();
+
+		assertEquals(RemoteRefUpdate.Status.OK, push(topic, true));
+		assertEquals(topic, server.resolve("refs/heads/topic"));
+		assertEquals(4, receivedCommits());
+	}
+
+	private RemoteRefUpdate.Status push(RevCommit topic, boolean negotiate)
+			throws Exception {
+		try (Transport t = Transport.open(client.getRepository(), uri)) {
+			t.setPushNegotiate(negotiate);
+			RemoteRefUpdate u = new RemoteRefUpdate(client.getRepository(),
+					null, topic, "refs/heads/topic", false, null, null);
+			PushResult r = t.push(NullProgressMonitor.INSTANCE,
+					Collections.singleton(u));
+			return r.getRemoteUpdate("refs/heads/topic").getStatus();
+		}
+	}
+
+	private void deleteRef(String name) throws Exception {
+		RefUpdate u = server.updateRef(name);
+		u.setForceUpdate(true);
+		assertEquals(RefUpdate.Result.FORCED, u.delete());
+	}
+
+	private long receivedCommits() {
+		ReceivedPackStatistics stats = receivePack
+				.getReceivedPackStatistics();
+		return stats.getNumWholeCommit() + stats.getNumDeltaCommit();
+	}
+}
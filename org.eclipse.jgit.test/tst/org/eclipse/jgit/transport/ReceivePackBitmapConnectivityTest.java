@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.zip.Deflater;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.UnpackException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.TemporaryBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReceivePackBitmapConnectivityTest
+		extends LocalDiskRepositoryTestCase {
+	private static final NullProgressMonitor PM = NullProgressMonitor.INSTANCE;
+
+	private static final String R_MASTER = Constants.R_HEADS + Constants.MASTER;
+
+	private static final String R_TOPIC = Constants.R_HEADS + "topic";
+
+	private FileRepository src;
+
+	private FileRepository dst;
+
+	private TestRepository<Repository> s;
+
+	private RevBlob a;
+
+	private RevCommit A, D;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		src = createBareRepository();
+		dst = createBareRepository();
+
+		// Give dst some history and cover all of it with bitmaps.
+		//
+		TestRepository<Repository> d = new TestRepository<>(dst);
+		a = d.blob("a");
+		A = d.commit(d.tree(d.file("a", a)));
+		RevCommit B = d.commit().parent(A).add("b", "b").create();
+		RevCommit C = d.commit().parent(B).add("c", "c").create();
+		D = d.commit().parent(C).add("d", "d").create();
+		d.update(R_MASTER, D);
+		new GC(dst).gc();
+		try (ObjectReader reader = dst.newObjectReader()) {
+			assertNotNull(reader.getBitmapIndex());
+		}
+
+		try (Transport t = Transport.open(src, uriOf(dst))) {
+			t.fetch(PM, Collections.singleton(new RefSpec("+refs/*:refs/*")));
+			assertEquals(D, src.resolve(R_MASTER));
+		}
+		s = new TestRepository<>(src);
+	}
+
+	@Test
+	public void testCreateBranchAtOldCommit() throws Exception {
+		TemporaryBuffer.Heap outBuf = receive(ObjectId.zeroId(), A, R_TOPIC);
+		assertReport(outBuf, "ok " + R_TOPIC);
+		assertEquals(A, dst.resolve(R_TOPIC));
+	}
+
+	@Test
+	public void testNewCommitOnDeepAncestor() throws Exception {
+		RevBlob n = s.blob("n");
+		RevCommit N = s.commit().parent(A).add("n", n).create();
+		s.parseBody(N);
+
+		// The pack holds only the new objects; blob a and commit A are
+		// reachable from the bitmap of master.
+		//
+		TemporaryBuffer.Heap outBuf = receive(ObjectId.zeroId(), N, R_TOPIC,
+				N, N.getTree(), n);
+		assertReport(outBuf, "ok " + R_TOPIC);
+		assertEquals(N, dst.resolve(R_TOPIC));
+	}
+
+	@Test
+	public void testFastForwardFromRefWithoutBitmap() throws Exception {
+		// E is written after the repack and has no bitmap of its own.
+		//
+		TestRepository<Repository> d = new TestRepository<>(dst);
+		RevCommit E = d.commit().parent(D).add("e", "e").create();
+		d.update(R_MASTER, E);
+		try (Transport t = Transport.open(src, uriOf(dst))) {
+			t.fetch(PM, Collections.singleton(new RefSpec("+refs/*:refs/*")));
+		}
+
+		RevBlob f = s.blob("f");
+		RevCommit F = s.commit().parent(E).add("f", f).create();
+		s.parseBody(F);
+
+		TemporaryBuffer.Heap outBuf = receive(E, F, R_MASTER, F,
+				F.getTree(), f);
+		assertReport(outBuf, "ok " + R_MASTER);
+		assertEquals(F, dst.resolve(R_MASTER));
+	}
+
+	@Test
+	public void testUsingBlobOfRefWithoutBitmap() throws Exception {
+		// E has no bitmap; the bitmap walk covers it from D's bitmap.
+		//
+		TestRepository<Repository> d = new TestRepository<>(dst);
+		RevBlob e = d.blob("e");
+		RevCommit E = d.commit().parent(D).add("e", e).create();
+		d.update(R_MASTER, E);
+		try (Transport t = Transport.open(src, uriOf(dst))) {
+			t.fetch(PM, Collections.singleton(new RefSpec("+refs/*:refs/*")));
+		}
+
+		RevCommit N = s.commit().parent(A).add("e", e).create();
+		s.parseBody(N);
+
+		TemporaryBuffer.Heap outBuf = receive(ObjectId.zeroId(), N, R_TOPIC,
+				N, N.getTree());
+		assertReport(outBuf, "ok " + R_TOPIC);
+		assertEquals(N, dst.resolve(R_TOPIC));
+	}
+
+	@Test
+	public void testUsingUnknownBlobFails() throws Exception {
+		RevBlob n = s.blob("n");
+		RevCommit N = s.commit().parent(A).add("n", n).create();
+		s.parseBody(N);
+
+		try {
+			receive(ObjectId.zeroId(), N, R_TOPIC, N, N.getTree());
+			fail("Expected UnpackException");
+		} catch (UnpackException failed) {
+			Throwable err = failed.getCause();
+			assertTrue(err instanceof MissingObjectException);
+			assertEquals(n, ((MissingObjectException) err).getObjectId());
+		}
+	}
+
+	@Test
+	public void testUsingUnknownParentFails() throws Exception {
+		RevCommit X = s.commit().parent(D).add("x", "x").create();
+		RevCommit N = s.commit().parent(X).create();
+		s.parseBody(N);
+
+		try {
+			receive(ObjectId.zeroId(), N, R_TOPIC, N, N.getTree());
+			fail("Expected UnpackException");
+		} catch (UnpackException failed) {
+			Throwable err = failed.getCause();
+			assertTrue(err instanceof MissingObjectException);
+			assertEquals(X, ((MissingObjectException) err).getObjectId());
+		}
+	}
+
+	private TemporaryBuffer.Heap receive(AnyObjectId oldId, AnyObjectId newId,
+			String name, AnyObjectId... objects) throws IOException {
+		TemporaryBuffer.Heap pack = new TemporaryBuffer.Heap(1024);
+		packHeader(pack, objects.length);
+		for (AnyObjectId id : objects)
+			copy(pack, src.open(id));
+		digest(pack);
+
+		TemporaryBuffer.Heap inBuf = new TemporaryBuffer.Heap(1024);
+		PacketLineOut inPckLine = new PacketLineOut(inBuf);
+		inPckLine.writeString(oldId.name() + ' ' + newId.name() + ' ' + name
+				+ '\0' + BasePackPushConnection.CAPABILITY_REPORT_STATUS);
+		inPckLine.end();
+		pack.writeTo(inBuf, PM);
+
+		TemporaryBuffer.Heap outBuf = new TemporaryBuffer.Heap(1024);
+		ReceivePack rp = new ReceivePack(dst);
+		rp.setCheckReceivedObjects(true);
+		rp.receive(new ByteArrayInputStream(inBuf.toByteArray()), outBuf,
+				null);
+		return outBuf;
+	}
+
+	private static void assertReport(TemporaryBuffer.Heap outBuf,
+			String status) throws IOException {
+		PacketLineIn r = new PacketLineIn(
+				new ByteArrayInputStream(outBuf.toByteArray()));
+		while (r.readString() != PacketLineIn.END) {
+			// Skip the advertisement.
+		}
+		assertEquals("unpack ok", r.readString());
+		assertEquals(status, r.readString());
+		assertSame(PacketLineIn.END, r.readString());
+	}
+
+	private static void packHeader(TemporaryBuffer.Heap tinyPack, int cnt)
+			throws IOException {
+		final byte[] hdr = new byte[8];
+		NB.encodeInt32(hdr, 0, 2);
+		NB.encodeInt32(hdr, 4, cnt);
+
+		tinyPack.write(Constants.PACK_SIGNATURE);
+		tinyPack.write(hdr, 0, 8);
+	}
+
+	private static void copy(TemporaryBuffer.Heap tinyPack, ObjectLoader ldr)
+			throws IOException {
+		final byte[] buf = new byte[64];
+		final byte[] content = ldr.getCachedBytes();
+		int dataLength = content.length;
+		int nextLength = dataLength >>> 4;
+		int size = 0;
+		buf[size++] = (byte) ((nextLength > 0 ? 0x80 : 0x00)
+				| (ldr.getType() << 4) | (dataLength & 0x0F));
+		dataLength = nextLength;
+		while (dataLength > 0) {
+			nextLength >>>= 7;
+			buf[size++] = (byte) ((nextLength > 0 ? 0x80 : 0x00)
+					| (dataLength & 0x7F));
+			dataLength = nextLength;
+		}
+		tinyPack.write(buf, 0, size);
+
+		final Deflater deflater = new Deflater();
+		final byte[] out = new byte[128];
+		deflater.setInput(content, 0, content.length);
+		deflater.finish();
+		do {
+			final int n = deflater.deflate(out, 0, out.length);
+			if (n > 0)
+				tinyPack.write(out, 0, n);
+		} while (!deflater.finished());
+		deflater.end();
+	}
+
+	private static void digest(TemporaryBuffer.Heap buf) throws IOException {
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(buf.toByteArray());
+		buf.write(md.digest());
+	}
+
+	private static URIish uriOf(Repository r) throws URISyntaxException {
+		return new URIish(r.getDirectory().getAbsolutePath());
+	}
+}
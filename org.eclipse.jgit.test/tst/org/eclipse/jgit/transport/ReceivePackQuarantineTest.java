@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.ReceiveCommand.Result;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReceivePackQuarantineTest extends LocalDiskRepositoryTestCase {
+	private FileRepository server;
+
+	private TestRepository<Repository> client;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private RevCommit base;
+
+	private boolean reject;
+
+	private boolean seenInHook;
+
+	private boolean visibleInRepository;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		server = createBareRepository();
+		client = new TestRepository<Repository>(createBareRepository());
+
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				return new UploadPack(db);
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				ReceivePack rp = new ReceivePack(db);
+				rp.setQuarantine(true);
+				rp.setPreReceiveHook(new PreReceiveHook() {
+					@Override
+					public void onPreReceive(ReceivePack hookRp,
+							Collection<ReceiveCommand> commands) {
+						checkVisibility(hookRp, commands);
+					}
+				});
+				return rp;
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), server);
+
+		TestRepository<Repository> s = new TestRepository<Repository>(server);
+		base = s.branch("master").commit().add("a", "a").create();
+		try (Transport t = Transport.open(client.getRepository(), uri)) {
+			t.fetch(NullProgressMonitor.INSTANCE, Collections
+					.singleton(new RefSpec("+refs/heads/*:refs/heads/*")));
+		}
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testAcceptedPushPublishesObjects() throws Exception {
+		RevCommit next = client.branch("master").commit().add("b", "b")
+				.create();
+
+		RemoteRefUpdate u = push();
+
+		assertEquals(RemoteRefUpdate.Status.OK, u.getStatus());
+		assertTrue(seenInHook);
+		assertFalse(visibleInRepository);
+		assertTrue(server.hasObject(next));
+		assertEquals(next, server.resolve("refs/heads/master"));
+		assertNoQuarantineLeft();
+	}
+
+	@Test
+	public void testRejectedPushLeavesNoObjects() throws Exception {
+		int packs = countPacks();
+		RevCommit next = client.branch("master").commit().add("b", "b")
+				.create();
+
+		reject = true;
+		RemoteRefUpdate u = push();
+
+		assertEquals(RemoteRefUpdate.Status.REJECTED_OTHER_REASON,
+				u.getStatus());
+		assertTrue(seenInHook);
+		assertFalse(server.hasObject(next));
+		assertEquals(base, server.resolve("refs/heads/master"));
+		assertEquals(packs, countPacks());
+		assertNoQuarantineLeft();
+	}
+
+	void checkVisibility(ReceivePack rp, Collection<ReceiveCommand> commands) {
+		for (ReceiveCommand cmd : commands) {
+			try {
+				rp.getRevWalk().parseCommit(cmd.getNewId());
+				seenInHook = true;
+				visibleInRepository = rp.getRepository()
+						.hasObject(cmd.getNewId());
+			} catch (Exception e) {
+				seenInHook = false;
+			}
+			if (reject)
+				cmd.setResult(Result.REJECTED_OTHER_REASON, "rejected");
+		}
+	}
+
+	private RemoteRefUpdate push() throws Exception {
+		try (Transport t = Transport.open(client.getRepository(), uri)) {
+			RemoteRefUpdate u = new RemoteRefUpdate(client.getRepository(),
+					"refs/heads/master", "refs/heads/master", false, null,
+					null);
+			PushResult r = t.push(NullProgressMonitor.INSTANCE,
+					Collections.singleton(u));
+			return r.getRemoteUpdate("refs/heads/master");
+		}
+	}
+
+	private int countPacks() {
+		String[] names = new File(server.getObjectsDirectory(), "pack").list();
+		return names != null ? names.length : 0;
+	}
+
+	private void assertNoQuarantineLeft() {
+		String[] names = server.getObjectsDirectory().list();
+		assertNotNull(names);
+		for (String name : names)
+			assertFalse(name, name.startsWith("incoming"));
+	}
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResumablePackTest extends LocalDiskRepositoryTestCase {
+	private static final RefSpec HEADS = new RefSpec(
+			"+refs/heads/*:refs/heads/*");
+
+	private TestRepository<Repository> remote;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private DiskPackCache cache;
+
+	private boolean useCache = true;
+
+	/** Bytes after which the next upload is cut; 0 to not cut it. */
+	private int cutAfter;
+
+	/**
+	 * Whether the next cut upload keeps storing the pack in the background
+	 * after the client saw the connection end.
+	 */
+	private boolean detach;
+
+	/** Uploads running in the background. */
+	private final List<Thread> detached = new ArrayList<>();
+
+	/** Counted down when an upload was cut. */
+	private final CountDownLatch cut = new CountDownLatch(1);
+
+	/** Counted down when a client resumes from the pack cache. */
+	private final CountDownLatch resumed = new CountDownLatch(1);
+
+	/** Whether storing the pack after a cut waits for a resuming client. */
+	private volatile boolean holdCache;
+
+	/** Bytes written by each upload. */
+	private final List<Long> written = new ArrayList<>();
+
+	private RevCommit tip;
+
+	private class CuttingOutputStream extends FilterOutputStream {
+		private final int limit;
+
+		private long count;
+
+		CuttingOutputStream(OutputStream out, int limit) {
+			super(out);
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (0 < limit && limit < count + len) {
+				int n = (int) (limit - count);
+				out.write(b, off, n);
+				count += n;
+				cut.countDown();
+				throw new IOException("cut");
+			}
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private class CuttingUploadPack extends UploadPack {
+		CuttingUploadPack(Repository db) {
+			super(db);
+		}
+
+		@Override
+		public void upload(final InputStream input, OutputStream output,
+				final OutputStream messages) throws IOException {
+			final CuttingOutputStream out = new CuttingOutputStream(output,
+					cutAfter);
+			cutAfter = 0;
+			if (!detach) {
+				try {
+					super.upload(input, out, messages);
+				} finally {
+					written.add(Long.valueOf(out.count));
+				}
+				return;
+			}
+
+			// Return at the cut so the client sees the connection end, while
+			// the pack is still being stored.
+			detach = false;
+			final Repository db = getRepository();
+			db.incrementOpen();
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						CuttingUploadPack.super.upload(input, out, messages);
+					} catch (IOException e) {
+						// The client went away at the cut.
+					} finally {
+						db.close();
+					}
+				}
+			};
+			detached.add(t);
+			t.start();
+			try {
+				cut.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			written.add(Long.valueOf(out.count));
+		}
+	}
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		remote = new TestRepository<>(createBareRepository());
+		Random rng = new Random(42);
+		RevCommit parent = null;
+		for (int i = 0; i < 4; i++) {
+			byte[] data = new byte[16 * 1024];
+			rng.nextBytes(data);
+			RevBlob blob = remote.blob(data);
+			TestRepository<Repository>.CommitBuilder cb = remote
+					.branch("master").commit().add("f" + i, blob);
+			if (parent != null)
+				cb.parent(parent);
+			parent = cb.create();
+		}
+		tip = parent;
+
+		cache = new DiskPackCache(
+				createTempDirectory("packcache"), 1024 * 1024) {
+			@Override
+			public Output create(Repository db, String key)
+					throws IOException {
+				final Output out = super.create(db, key);
+				if (out == null || !holdCache)
+					return out;
+				return new Output() {
+					@Override
+					public void write(int b) throws IOException {
+						write(new byte[] { (byte) b }, 0, 1);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len)
+							throws IOException {
+						try {
+							if (cut.getCount() == 0)
+								resumed.await(10, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void commit() throws IOException {
+						out.commit();
+					}
+
+					@Override
+					public void close() throws IOException {
+						out.close();
+					}
+				};
+			}
+
+			@Override
+			public InputStream openForResume(Repository db, String key)
+					throws IOException {
+				InputStream in = super.openForResume(db, key);
+				resumed.countDown();
+				return in;
+			}
+		};
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				UploadPack up = new CuttingUploadPack(db);
+				if (useCache)
+					up.setPackCache(cache);
+				return up;
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				return new ReceivePack(db);
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), remote.getRepository());
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		resumed.countDown();
+		for (Thread t : detached)
+			t.join();
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testInterruptedFetchResumes() throws Exception {
+		fetch(createBareRepository(), false);
+		long full = written.get(0).longValue();
+
+		cutAfter = (int) (full / 2);
+		Repository dst = createBareRepository();
+		fetch(dst, true);
+
+		assertEquals(tip, dst.exactRef("refs/heads/master").getObjectId());
+		assertTrue(dst.hasObject(tip));
+		assertEquals(3, written.size());
+		assertEquals(full / 2, written.get(1).longValue());
+		assertTrue("resumed transfer sends less",
+				written.get(2).longValue() < full / 2 + 1024);
+		assertNoPartialPack(dst);
+	}
+
+	@Test
+	public void testInterruptedFirstFetchResumes() throws Exception {
+		// Measure the pack without storing it in the cache.
+		useCache = false;
+		fetch(createBareRepository(), false);
+		long full = written.get(0).longValue();
+
+		// The first transfer of the pack is cut; it is cached anyway.
+		useCache = true;
+		cutAfter = (int) (full / 2);
+		Repository dst = createBareRepository();
+		fetch(dst, true);
+
+		assertEquals(tip, dst.exactRef("refs/heads/master").getObjectId());
+		assertEquals(3, written.size());
+		assertEquals(full / 2, written.get(1).longValue());
+		assertTrue("resumed transfer sends less",
+				written.get(2).longValue() < full / 2 + 1024);
+		assertNoPartialPack(dst);
+	}
+
+	@Test
+	public void testResumeWhilePackIsStillStored() throws Exception {
+		useCache = false;
+		fetch(createBareRepository(), false);
+		long full = written.get(0).longValue();
+
+		// The cut upload is still storing the pack when the client resumes,
+		// longer than a request waits for a pack being stored.
+		cache.setWaitTimeout(1);
+		useCache = true;
+		holdCache = true;
+		detach = true;
+		cutAfter = (int) (full / 2);
+		Repository dst = createBareRepository();
+		fetch(dst, true);
+
+		assertEquals(tip, dst.exactRef("refs/heads/master").getObjectId());
+		assertTrue(dst.hasObject(tip));
+		assertEquals(3, written.size());
+		assertEquals(full / 2, written.get(1).longValue());
+		assertTrue("resumed transfer sends less",
+				written.get(2).longValue() < full / 2 + 1024);
+		assertNoPartialPack(dst);
+	}
+
+	@Test
+	public void testInterruptedFetchFailsWithoutResume() throws Exception {
+		fetch(createBareRepository(), false);
+		cutAfter = (int) (written.get(0).longValue() / 2);
+
+		Repository dst = createBareRepository();
+		try {
+			fetch(dst, false);
+		} catch (TransportException e) {
+			assertEquals(2, written.size());
+			assertNoPartialPack(dst);
+			return;
+		}
+		throw new AssertionError("fetch should fail");
+	}
+
+	@Test
+	public void testStalePartialPackReplaced() throws Exception {
+		Repository dst = createBareRepository();
+		File dir = new File(dst.getDirectory(), "resume");
+		assertTrue(dir.mkdirs());
+		try (OutputStream out = new FileOutputStream(
+				new File(dir, ObjectId.zeroId().name() + ".pack.part"))) {
+			out.write(new byte[100]);
+		}
+
+		fetch(dst, true);
+
+		assertEquals(tip, dst.exactRef("refs/heads/master").getObjectId());
+		assertNoPartialPack(dst);
+	}
+
+	@Test
+	public void testServerWithoutCache() throws Exception {
+		useCache = false;
+		Repository dst = createBareRepository();
+		fetch(dst, true);
+		assertEquals(tip, dst.exactRef("refs/heads/master").getObjectId());
+		assertFalse(new File(dst.getDirectory(), "resume").exists());
+	}
+
+	private void fetch(Repository dst, boolean resumable) throws Exception {
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setResumableFetch(resumable);
+			t.fetch(NullProgressMonitor.INSTANCE,
+					Collections.singleton(HEADS));
+		}
+	}
+
+	private static void assertNoPartialPack(Repository dst) {
+		String[] names = new File(dst.getDirectory(), "resume").list();
+		assertTrue(names == null || names.length == 0);
+	}
+}
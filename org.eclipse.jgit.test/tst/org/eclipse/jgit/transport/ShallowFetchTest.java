@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShallowFetchTest extends LocalDiskRepositoryTestCase {
+	private static final RefSpec MASTER = new RefSpec(
+			"+refs/heads/master:refs/heads/master");
+
+	private TestRepository<Repository> remote;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private RevCommit a;
+
+	private RevCommit b;
+
+	private RevCommit c;
+
+	private RevCommit d;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		remote = new TestRepository<>(createBareRepository());
+		a = remote.commit().add("a", "a").create();
+		remote.tick(100);
+		b = remote.commit().parent(a).add("b", "b").create();
+		remote.tick(100);
+		c = remote.commit().parent(b).add("c", "c").create();
+		remote.tick(100);
+		d = remote.commit().parent(c).add("d", "d").create();
+		remote.update("master", d);
+		remote.update("maint", b);
+
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				return new UploadPack(db);
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				return new ReceivePack(db);
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), remote.getRepository());
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testDepth() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDepth(2);
+			fetch(t);
+		}
+
+		assertEquals(d, dst.exactRef("refs/heads/master").getObjectId());
+		assertHas(dst, d, c);
+		assertNotHas(dst, b, a);
+		assertShallow(dst, c);
+	}
+
+	@Test
+	public void testDeepenSince() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDeepenSince(c.getAuthorIdent().getWhen());
+			fetch(t);
+		}
+
+		assertHas(dst, d, c);
+		assertNotHas(dst, b, a);
+		assertShallow(dst, c);
+	}
+
+	@Test
+	public void testDeepenSinceAfterWant() throws Exception {
+		Repository dst = createBareRepository();
+		int time = remote.getRevWalk().parseCommit(d).getCommitTime();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDeepenSince(new Date((time + 1) * 1000L));
+			fetch(t);
+		}
+
+		// The wanted commit is sent even though it is older than the limit.
+		assertHas(dst, d);
+		assertNotHas(dst, c, b, a);
+		assertShallow(dst, d);
+	}
+
+	@Test
+	public void testDeepenNotOfWant() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDeepenNots(Collections.singleton("master"));
+			fetch(t);
+		}
+
+		assertHas(dst, d);
+		assertNotHas(dst, c, b, a);
+		assertShallow(dst, d);
+	}
+
+	@Test
+	public void testDeepenNot() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDeepenNots(Collections.singleton("maint"));
+			fetch(t);
+		}
+
+		assertHas(dst, d, c);
+		assertNotHas(dst, b, a);
+		assertShallow(dst, c);
+	}
+
+	@Test
+	public void testDeepenShallowRepository() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDepth(1);
+			fetch(t);
+		}
+		assertShallow(dst, d);
+
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDepth(3);
+			fetch(t);
+		}
+		assertHas(dst, d, c, b);
+		assertNotHas(dst, a);
+		assertShallow(dst, b);
+	}
+
+	@Test
+	public void testFetchIntoShallowRepository() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDepth(1);
+			fetch(t);
+		}
+
+		assertShallow(dst, d);
+		RevCommit e = remote.commit().parent(d).add("e", "e").create();
+		remote.update("master", e);
+		try (Transport t = Transport.open(dst, uri)) {
+			fetch(t);
+		}
+
+		assertHas(dst, e, d);
+		assertNotHas(dst, c);
+		assertShallow(dst, d);
+	}
+
+	@Test
+	public void testDepthCannotBeCombined() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, uri)) {
+			t.setDepth(1);
+			t.setDeepenSince(new Date(c.getCommitTime() * 1000L));
+			fetch(t);
+			fail("deepen and deepen-since were combined");
+		} catch (TransportException e) {
+			// Expected.
+		}
+		assertFalse(dst.hasObject(d));
+	}
+
+	@Test
+	public void testShallowClone() throws Exception {
+		File dir = createTempDirectory("shallow");
+		try (Git git = Git.cloneRepository().setURI(uri.toString())
+				.setDirectory(dir).setDepth(1).call()) {
+			Repository dst = git.getRepository();
+			assertEquals(d, dst.resolve("HEAD"));
+			assertNotHas(dst, c, a);
+			// maint is fetched as a remote-tracking branch, cut at b.
+			assertShallow(dst, d, b);
+			assertTrue(new File(dir, "d").isFile());
+		}
+	}
+
+	private static void fetch(Transport t) throws Exception {
+		t.fetch(NullProgressMonitor.INSTANCE, Collections.singleton(MASTER));
+	}
+
+	private static void assertHas(Repository dst, ObjectId... ids) {
+		for (ObjectId id : ids)
+			assertTrue(id.name(), dst.hasObject(id));
+	}
+
+	private static void assertNotHas(Repository dst, ObjectId... ids) {
+		for (ObjectId id : ids)
+			assertFalse(id.name(), dst.hasObject(id));
+	}
+
+	private static void assertShallow(Repository dst, ObjectId... ids)
+			throws Exception {
+		Set<ObjectId> expect = new HashSet<>();
+		Collections.addAll(expect, ids);
+		try (ObjectReader or = dst.newObjectReader()) {
+			assertEquals(expect, or.getShallowCommits());
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SkippingNegotiatorTest extends LocalDiskRepositoryTestCase {
+	private static final RefSpec MASTER = new RefSpec(
+			"+refs/heads/master:refs/remotes/origin/master");
+
+	private TestRepository<Repository> remote;
+
+	private TestProtocol<Object> proto;
+
+	private URIish uri;
+
+	private RevCommit base;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		remote = new TestRepository<>(createBareRepository());
+		proto = new TestProtocol<>(new UploadPackFactory<Object>() {
+			@Override
+			public UploadPack create(Object req, Repository db) {
+				return new UploadPack(db);
+			}
+		}, new ReceivePackFactory<Object>() {
+			@Override
+			public ReceivePack create(Object req, Repository db) {
+				return new ReceivePack(db);
+			}
+		});
+		Transport.register(proto);
+		uri = proto.register(new Object(), remote.getRepository());
+		base = remote.branch("master").commit().add("a", "a").create();
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		Transport.unregister(proto);
+		super.tearDown();
+	}
+
+	@Test
+	public void testSkippingSendsFewerHaves() throws Exception {
+		Repository consecutive = localAhead(300, null);
+		Repository skipping = localAhead(300, "skipping");
+		RevCommit tip = remote.branch("master").commit().parent(base)
+				.add("b", "b").create();
+
+		FetchResult c = fetch(consecutive);
+		FetchResult s = fetch(skipping);
+
+		assertEquals(tip, consecutive.resolve("refs/remotes/origin/master"));
+		assertEquals(tip, skipping.resolve("refs/remotes/origin/master"));
+		assertEquals(0, c.getHavesSkipped());
+		assertTrue(c.getHavesSent() > 300);
+		assertTrue(s.getHavesSent() < 32);
+		assertTrue(s.getHavesSkipped() > 250);
+		assertTrue(s.getNegotiationRounds() < c.getNegotiationRounds());
+		assertEquals(s.getHavesSkipped() * 50, s.getNegotiationBytesSaved());
+	}
+
+	@Test
+	public void testGapsGrowAndTipsAreSent() throws Exception {
+		RevCommit[] c = new RevCommit[21];
+		c[0] = base;
+		for (int i = 1; i < c.length; i++)
+			c[i] = remote.commit().parent(c[i - 1]).create();
+
+		try (RevWalk rw = new RevWalk(remote.getRepository())) {
+			RevCommit tip = rw.parseCommit(c[20]);
+			RevCommit other = rw.parseCommit(c[2]);
+			rw.markStart(tip);
+			rw.markStart(other);
+			rw.sort(RevSort.COMMIT_TIME_DESC);
+
+			SkippingNegotiator n = new SkippingNegotiator(
+					Arrays.asList(tip, other));
+			List<RevCommit> sent = new ArrayList<>();
+			RevCommit h;
+			while ((h = n.next(rw)) != null)
+				sent.add(h);
+
+			assertEquals(Arrays.asList(c[20], c[19], c[17], c[14], c[9], c[2],
+					c[1]), sent);
+			assertEquals(c.length - sent.size(), n.getSkipped());
+		}
+	}
+
+	@Test
+	public void testAcknowledgementResetsGaps() throws Exception {
+		RevCommit[] c = new RevCommit[8];
+		c[0] = base;
+		for (int i = 1; i < c.length; i++)
+			c[i] = remote.commit().parent(c[i - 1]).create();
+
+		try (RevWalk rw = new RevWalk(remote.getRepository())) {
+			RevCommit tip = rw.parseCommit(c[7]);
+			rw.markStart(tip);
+			rw.sort(RevSort.COMMIT_TIME_DESC);
+
+			SkippingNegotiator n = new SkippingNegotiator(
+					Collections.singleton(tip));
+			assertEquals(c[7], n.next(rw));
+			assertEquals(c[6], n.next(rw));
+			assertEquals(c[4], n.next(rw));
+			n.acknowledged();
+			assertEquals(c[3], n.next(rw));
+			assertEquals(c[2], n.next(rw));
+			assertEquals(c[0], n.next(rw));
+		}
+	}
+
+	/**
+	 * Create a repository holding {@link #base} as fetched from the remote
+	 * and a local branch {@code n} commits ahead of it.
+	 */
+	private Repository localAhead(int n, String algorithm) throws Exception {
+		Repository dst = createBareRepository();
+		if (algorithm != null) {
+			StoredConfig cfg = dst.getConfig();
+			cfg.setString("fetch", null, "negotiationAlgorithm", algorithm);
+			cfg.save();
+		}
+		fetch(dst);
+
+		TestRepository<Repository> local = new TestRepository<>(dst);
+		RevCommit c = local.getRevWalk().parseCommit(base);
+		for (int i = 0; i < n; i++)
+			c = local.commit().parent(c).add("f", "" + i).create();
+		local.update("refs/heads/local", c);
+		return dst;
+	}
+
+	private FetchResult fetch(Repository dst) throws Exception {
+		try (Transport tn = Transport.open(dst, uri)) {
+			return tn.fetch(NullProgressMonitor.INSTANCE,
+					Collections.singletonList(MASTER));
+		}
+	}
+}
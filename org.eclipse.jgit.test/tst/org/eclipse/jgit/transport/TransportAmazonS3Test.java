@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransportAmazonS3Test extends LocalDiskRepositoryTestCase {
+	private Repository db;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createBareRepository();
+	}
+
+	@Test
+	public void testConcurrentOpenWithoutEncryption() throws Exception {
+		writeProperties("plain", "");
+		assertTrue(openDatabase("plain").supportsConcurrentOpen());
+	}
+
+	@Test
+	public void testNoConcurrentOpenWithEncryption() throws Exception {
+		// Decryption keeps state between validating and decrypting a
+		// response, so concurrent downloads would mix up their ciphers.
+		writeProperties("encrypted", "password: secret\n");
+		assertFalse(openDatabase("encrypted").supportsConcurrentOpen());
+	}
+
+	private void writeProperties(String name, String extra)
+			throws Exception {
+		write(new File(db.getDirectory(), name),
+				"accesskey: key\nsecretkey: secret\n" + extra);
+	}
+
+	private TransportAmazonS3.DatabaseS3 openDatabase(String user)
+			throws Exception {
+		TransportAmazonS3 t = new TransportAmazonS3(db,
+				new URIish("amazon-s3://" + user + "@bucket/repo.git"));
+		return t.new DatabaseS3("bucket", "repo.git/objects");
+	}
+}
@@ -48,6 +48,7 @@
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -62,20 +63,27 @@
 import org.eclipse.jgit.lib.BranchConfig.BranchRebaseMode;
 import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.PromisorObjectReader;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.transport.Transport;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FileUtils;
 
@@ -107,6 +115,18 @@ public class CloneCommand extends TransportCommand<CloneCommand, Git> {
 
 	private boolean noCheckout;
 
+	private FilterSpec filterSpec = FilterSpec.NO_FILTER;
+
+	private boolean useBundleUris;
+
+	private boolean resumable;
+
+	private int depth;
+
+	private Date shallowSince;
+
+	private final List<String> shallowExcludes = new ArrayList<>();
+
 	private Collection<String> branchesToClone;
 
 	private Callback callback;
@@ -277,6 +297,8 @@ private FetchResult fetch(Repository clonedRepo, URIish u)
 
 		config.addFetchRefSpec(refSpec);
 		config.update(clonedRepo.getConfig());
+		if (!filterSpec.isNoOp())
+			configurePartialClone(clonedRepo.getConfig());
 
 		clonedRepo.getConfig().save();
 
@@ -284,7 +306,20 @@ private FetchResult fetch(Repository clonedRepo, URIish u)
 		FetchCommand command = new FetchCommand(clonedRepo);
 		command.setRemote(remote);
 		command.setProgressMonitor(monitor);
-		command.setTagOpt(TagOpt.FETCH_TAGS);
+		if (isShallow()) {
+			// Only fetch tags pointing into the shallow history.
+			command.setTagOpt(TagOpt.AUTO_FOLLOW);
+			command.setDepth(depth);
+			command.setShallowSince(shallowSince);
+			for (String ref : shallowExcludes)
+				command.addShallowExclude(ref);
+		} else {
+			command.setTagOpt(TagOpt.FETCH_TAGS);
+		}
+		command.setFilterSpec(filterSpec);
+		if (useBundleUris)
+			command.setUseBundleUris(true);
+		command.setResumable(resumable);
 		configure(command);
 
 		List<RefSpec> specs = calculateRefSpecs(dst);
@@ -293,6 +328,23 @@ private FetchResult fetch(Repository clonedRepo, URIish u)
 		return command.call();
 	}
 
+	private boolean isShallow() {
+		return depth != 0 || shallowSince != null
+				|| !shallowExcludes.isEmpty();
+	}
+
+	private void configurePartialClone(StoredConfig cfg) {
+		cfg.setBoolean(ConfigConstants.CONFIG_REMOTE_SECTION, remote,
+				ConfigConstants.CONFIG_KEY_PROMISOR, true);
+		cfg.setString(ConfigConstants.CONFIG_REMOTE_SECTION, remote,
+				ConfigConstants.CONFIG_KEY_PARTIAL_CLONE_FILTER,
+				filterSpec.filterLine());
+		cfg.setString(ConfigConstants.CONFIG_EXTENSIONS_SECTION, null,
+				ConfigConstants.CONFIG_KEY_PARTIAL_CLONE, remote);
+		cfg.setInt(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_REPO_FORMAT_VERSION, 1);
+	}
+
 	private List<RefSpec> calculateRefSpecs(final String dst) {
 		RefSpec wcrs = new RefSpec();
 		wcrs = wcrs.setForceUpdate(true);
@@ -345,6 +397,8 @@ private void checkout(Repository clonedRepo, FetchResult result)
 		u.forceUpdate();
 
 		if (!bare) {
+			if (!filterSpec.isNoOp())
+				fetchMissingObjects(clonedRepo, commit.getTree());
 			DirCache dc = clonedRepo.lockDirCache();
 			DirCacheCheckout co = new DirCacheCheckout(clonedRepo, dc,
 					commit.getTree());
@@ -354,6 +408,33 @@ private void checkout(Repository clonedRepo, FetchResult result)
 		}
 	}
 
+	/**
+	 * Fetch the objects the checkout needs that the filter omitted, in one
+	 * request for all blobs rather than one for each file.
+	 */
+	private void fetchMissingObjects(Repository clonedRepo, RevTree tree)
+			throws IOException {
+		try (PromisorObjectReader reader = new PromisorObjectReader(
+				clonedRepo) {
+			@Override
+			protected void configureTransport(Transport tn) {
+				configure(tn);
+			}
+		}; TreeWalk walk = new TreeWalk(reader)) {
+			walk.addTree(tree);
+			walk.setRecursive(true);
+			List<ObjectId> missing = new ArrayList<>();
+			while (walk.next()) {
+				if (walk.getFileMode(0) == FileMode.GITLINK)
+					continue;
+				ObjectId id = walk.getObjectId(0);
+				if (!reader.has(id))
+					missing.add(id);
+			}
+			reader.fetch(missing);
+		}
+	}
+
 	private void cloneSubmodules(Repository clonedRepo) throws IOException,
 			GitAPIException {
 		SubmoduleInitCommand init = new SubmoduleInitCommand(clonedRepo);
@@ -606,6 +687,106 @@ public CloneCommand setNoCheckout(boolean noCheckout) {
 		return this;
 	}
 
+	/**
+	 * Make a partial clone, omitting objects matching the filter.
+	 * <p>
+	 * The remote is recorded as promisor remote; a
+	 * {@link PromisorObjectReader} fetches omitted objects from it on demand.
+	 * Objects needed to check out the cloned branch are fetched before the
+	 * checkout.
+	 *
+	 * @param filter
+	 *            the objects to omit; {@link FilterSpec#NO_FILTER} to clone
+	 *            every object.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public CloneCommand setFilterSpec(FilterSpec filter) {
+		this.filterSpec = filter != null ? filter : FilterSpec.NO_FILTER;
+		return this;
+	}
+
+	/**
+	 * Download the pre-generated bundles the remote advertises before cloning,
+	 * and only fetch the objects they lack from the remote.
+	 * <p>
+	 * Refs of the downloaded bundles are kept below {@code refs/bundles/}.
+	 * Default is the {@code transfer.bundleuri} user configuration.
+	 *
+	 * @param use
+	 *            true to use the bundles the remote advertises.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public CloneCommand setUseBundleUris(boolean use) {
+		this.useBundleUris = use;
+		return this;
+	}
+
+	/**
+	 * Resume the pack transfer if it is interrupted, instead of sending the
+	 * pack again from the start.
+	 * <p>
+	 * Requires the remote to support the {@code resume-pack} capability.
+	 *
+	 * @param resumable
+	 *            true to resume interrupted pack transfers.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public CloneCommand setResumable(boolean resumable) {
+		this.resumable = resumable;
+		return this;
+	}
+
+	/**
+	 * Create a shallow clone with a history truncated to a number of commits
+	 * from the tip of each cloned branch.
+	 *
+	 * @param depth
+	 *            number of commits to clone; 1 clones only the tips. 0 to
+	 *            clone the entire history.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public CloneCommand setDepth(int depth) {
+		if (depth < 0)
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().invalidDepth, Integer.valueOf(depth)));
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * Create a shallow clone with a history truncated to commits made at or
+	 * after a time. Cannot be combined with {@link #setDepth(int)}.
+	 *
+	 * @param since
+	 *            time of the oldest commits to clone; null to not limit the
+	 *            history by time.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public CloneCommand setShallowSince(Date since) {
+		this.shallowSince = since;
+		return this;
+	}
+
+	/**
+	 * Create a shallow clone excluding the history of a remote ref. Cannot be
+	 * combined with {@link #setDepth(int)}.
+	 *
+	 * @param ref
+	 *            name of a ref of the remote, e.g. {@code "refs/heads/maint"}
+	 *            or {@code "maint"}.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public CloneCommand addShallowExclude(String ref) {
+		shallowExcludes.add(ref);
+		return this;
+	}
+
 	/**
 	 * Register a progress callback.
 	 *
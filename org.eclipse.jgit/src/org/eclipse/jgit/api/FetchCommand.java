@@ -46,6 +46,7 @@
 import java.net.URISyntaxException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -55,6 +56,7 @@
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.NoRemoteRepositoryException;
 import org.eclipse.jgit.errors.NotSupportedException;
+import org.eclipse.jgit.errors.PackProtocolException;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.ConfigConstants;
@@ -68,6 +70,7 @@
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.Transport;
@@ -95,6 +98,18 @@ public class FetchCommand extends TransportCommand<FetchCommand, FetchResult> {
 
 	private boolean thin = Transport.DEFAULT_FETCH_THIN;
 
+	private FilterSpec filterSpec;
+
+	private Boolean useBundleUris;
+
+	private boolean resumable;
+
+	private int depth;
+
+	private Date shallowSince;
+
+	private final List<String> shallowExcludes = new ArrayList<>();
+
 	private TagOpt tagOption;
 
 	private FetchRecurseSubmodulesMode submoduleRecurseMode = null;
@@ -170,7 +185,8 @@ private void fetchSubmodules(FetchResult results)
 							.setProgressMonitor(monitor).setTagOpt(tagOption)
 							.setCheckFetchedObjects(checkFetchedObjects)
 							.setRemoveDeletedRefs(isRemoveDeletedRefs())
-							.setThin(thin).setRefSpecs(refSpecs)
+							.setThin(thin).setFilterSpec(filterSpec)
+							.setRefSpecs(refSpecs)
 							.setDryRun(dryRun)
 							.setRecurseSubmodules(recurseMode);
 					results.addSubmodule(walk.getPath(), f.call());
@@ -208,6 +224,13 @@ public FetchResult call() throws GitAPIException, InvalidRemoteException,
 			if (tagOption != null)
 				transport.setTagOpt(tagOption);
 			transport.setFetchThin(thin);
+			transport.setFilterSpec(getFilterSpec());
+			if (useBundleUris != null)
+				transport.setUseBundleUris(useBundleUris.booleanValue());
+			transport.setResumableFetch(resumable);
+			transport.setDepth(depth);
+			transport.setDeepenSince(shallowSince);
+			transport.setDeepenNots(shallowExcludes);
 			configure(transport);
 
 			FetchResult result = transport.fetch(monitor, refSpecs);
@@ -423,6 +446,129 @@ public FetchCommand setThin(boolean thin) {
 		return this;
 	}
 
+	/**
+	 * Sets the filter for a partial fetch, asking the remote to omit objects
+	 * the repository can fetch later on demand.
+	 *
+	 * Default is the remote's {@code partialclonefilter} configuration, which
+	 * is set by a partial clone.
+	 *
+	 * @param filter
+	 *            the objects to omit; {@link FilterSpec#NO_FILTER} to fetch
+	 *            every object.
+	 * @return {@code this}
+	 * @since 4.8
+	 */
+	public FetchCommand setFilterSpec(FilterSpec filter) {
+		checkCallable();
+		this.filterSpec = filter;
+		return this;
+	}
+
+	/**
+	 * Sets whether a fetch into a repository without refs first downloads the
+	 * pre-generated bundles the remote advertises.
+	 *
+	 * Default is the {@code transfer.bundleuri} configuration of the
+	 * repository.
+	 *
+	 * @param use
+	 *            true to fetch advertised bundles before fetching the
+	 *            remaining objects from the remote.
+	 * @return {@code this}
+	 * @see Transport#setUseBundleUris(boolean)
+	 * @since 4.8
+	 */
+	public FetchCommand setUseBundleUris(boolean use) {
+		checkCallable();
+		this.useBundleUris = Boolean.valueOf(use);
+		return this;
+	}
+
+	/**
+	 * Sets whether an interrupted pack transfer is resumed instead of being
+	 * sent again from the start.
+	 *
+	 * Default is false.
+	 *
+	 * @param resumable
+	 *            true to resume interrupted pack transfers.
+	 * @return {@code this}
+	 * @see Transport#setResumableFetch(boolean)
+	 * @since 4.8
+	 */
+	public FetchCommand setResumable(boolean resumable) {
+		checkCallable();
+		this.resumable = resumable;
+		return this;
+	}
+
+	/**
+	 * Limits fetching to a number of commits from the tip of each fetched
+	 * ref, making the repository shallow. On a shallow repository this
+	 * deepens or shortens the history of the fetched refs.
+	 *
+	 * Default is 0, fetching the entire history.
+	 *
+	 * @param depth
+	 *            number of commits to fetch; 1 fetches only the tips.
+	 * @return {@code this}
+	 * @see Transport#setDepth(int)
+	 * @since 4.8
+	 */
+	public FetchCommand setDepth(int depth) {
+		checkCallable();
+		if (depth < 0)
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().invalidDepth, Integer.valueOf(depth)));
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * Limits fetching to commits made at or after a time, making the
+	 * repository shallow. Cannot be combined with {@link #setDepth(int)}.
+	 *
+	 * @param since
+	 *            time of the oldest commits to fetch; null to not limit the
+	 *            history by time.
+	 * @return {@code this}
+	 * @see Transport#setDeepenSince(Date)
+	 * @since 4.8
+	 */
+	public FetchCommand setShallowSince(Date since) {
+		checkCallable();
+		this.shallowSince = since;
+		return this;
+	}
+
+	/**
+	 * Excludes the history of a remote ref from the fetch, making the
+	 * repository shallow. Cannot be combined with {@link #setDepth(int)}.
+	 *
+	 * @param ref
+	 *            name of a ref advertised by the remote, e.g.
+	 *            {@code "refs/heads/maint"} or {@code "maint"}.
+	 * @return {@code this}
+	 * @see Transport#setDeepenNots(java.util.Collection)
+	 * @since 4.8
+	 */
+	public FetchCommand addShallowExclude(String ref) {
+		checkCallable();
+		shallowExcludes.add(ref);
+		return this;
+	}
+
+	private FilterSpec getFilterSpec() throws PackProtocolException {
+		if (filterSpec != null)
+			return filterSpec;
+		String spec = repo.getConfig().getString(
+				ConfigConstants.CONFIG_REMOTE_SECTION, remote,
+				ConfigConstants.CONFIG_KEY_PARTIAL_CLONE_FILTER);
+		return spec != null ? FilterSpec.fromFilterLine(spec)
+				: FilterSpec.NO_FILTER;
+	}
+
 	/**
 	 * Sets the specification of annotated tag behavior during fetch
 	 *
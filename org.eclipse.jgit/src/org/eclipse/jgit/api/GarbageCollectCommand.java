@@ -96,6 +96,8 @@ public class GarbageCollectCommand extends GitCommand<Properties> {
 
 	private PackConfig pconfig;
 
+	private boolean maintenance;
+
 	/**
 	 * @param repo
 	 */
@@ -191,6 +193,24 @@ public GarbageCollectCommand setPrunePreserved(boolean prunePreserved) {
 		return this;
 	}
 
+	/**
+	 * Whether to only pack loose objects and merge the smallest pack files
+	 * instead of running a full garbage collection.
+	 * <p>
+	 * This mode does not walk the object graph and never removes objects, so
+	 * it is cheap enough to run frequently. Repositories not stored on the
+	 * local file system ignore this setting.
+	 *
+	 * @since 4.8
+	 * @param maintenance
+	 *            whether to run in maintenance mode
+	 * @return this instance
+	 */
+	public GarbageCollectCommand setMaintenance(boolean maintenance) {
+		this.maintenance = maintenance;
+		return this;
+	}
+
 	@Override
 	public Properties call() throws GitAPIException {
 		checkCallable();
@@ -204,7 +224,10 @@ public Properties call() throws GitAPIException {
 					gc.setExpire(expire);
 
 				try {
-					gc.gc();
+					if (maintenance)
+						gc.maintenance();
+					else
+						gc.gc();
 					return toProperties(gc.getStatistics());
 				} catch (ParseException e) {
 					throw new JGitInternalException(JGitText.get().gcFailed, e);
@@ -45,9 +45,11 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 
 /**
@@ -111,6 +113,28 @@ public static Set<String> getRegisteredFilterCommands() {
 		return filterCommandRegistry.keySet();
 	}
 
+	/**
+	 * Lets the factory registered for the given name prepare the filtering of
+	 * a set of blobs. Does nothing unless the factory is a
+	 * {@link BatchFilterCommandFactory}.
+	 *
+	 * @param filterCommandName
+	 *            the name of the filter command
+	 * @param db
+	 *            the repository the blobs are checked out from
+	 * @param blobs
+	 *            the blobs the filter will be applied to
+	 * @throws IOException
+	 * @since 4.8
+	 */
+	public static void prefetch(String filterCommandName, Repository db,
+			Collection<ObjectId> blobs) throws IOException {
+		FilterCommandFactory cf = filterCommandRegistry.get(filterCommandName);
+		if (cf instanceof BatchFilterCommandFactory) {
+			((BatchFilterCommandFactory) cf).prefetch(db, blobs);
+		}
+	}
+
 	/**
 	 * Creates a new {@link FilterCommand} for the given name. A factory must be
 	 * registered for the name in advance.
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.attributes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.errors.FilterFailedException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PacketLineIn;
+import org.eclipse.jgit.transport.PacketLineOut;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * A long-running filter process configured by {@code filter.<driver>.process}.
+ * <p>
+ * Instead of starting one process per file, as {@code filter.<driver>.clean}
+ * and {@code filter.<driver>.smudge} do, a single process is started for the
+ * driver and then fed one file after another over its stdin and stdout using
+ * the pkt-line based protocol defined by C Git. After a handshake announcing
+ * version 2 of the protocol both sides agree on the commands ({@code clean},
+ * {@code smudge}) the process implements.
+ * <p>
+ * Processes are owned by their {@link Repository}, see
+ * {@link Repository#getFilterProcess(String)}, and are terminated when the
+ * repository is closed. Requests are serialized; a process handles one file at
+ * a time.
+ *
+ * @since 4.8
+ */
+public class FilterProcess {
+	/** Largest content payload of a single packet. */
+	private static final int MAX_PACKET_DATA = 65516;
+
+	/** Time given to a process to exit after its stdin was closed. */
+	private static final long EXIT_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Check whether a filter command refers to a long-running filter process.
+	 *
+	 * @param filterCommand
+	 *            command name as returned by
+	 *            {@link org.eclipse.jgit.treewalk.TreeWalk#getFilterCommand(String)}
+	 * @return true if the command starts with
+	 *         {@link Constants#PROCESS_FILTER_PREFIX}.
+	 */
+	public static boolean isProcessCommand(String filterCommand) {
+		return filterCommand.startsWith(Constants.PROCESS_FILTER_PREFIX);
+	}
+
+	/**
+	 * Run a filter command referring to a long-running filter process.
+	 * <p>
+	 * The process of the filter driver named by {@code filterCommand} is
+	 * started if it is not yet running. If the process does not support the
+	 * requested command the content is copied through unmodified.
+	 *
+	 * @param db
+	 *            the repository owning the process.
+	 * @param filterCommand
+	 *            the command, {@code jgit://process/<driver>/<type>}.
+	 * @param path
+	 *            path of the file being filtered, relative to the working
+	 *            tree.
+	 * @param in
+	 *            content to be filtered.
+	 * @param out
+	 *            receives the filtered content.
+	 * @throws IOException
+	 *             the process could not be started, failed to communicate or
+	 *             reported an error for the file. If the process reported the
+	 *             error the cause is a {@link FilterFailedException}.
+	 */
+	public static void run(Repository db, String filterCommand, String path,
+			InputStream in, OutputStream out) throws IOException {
+		String s = filterCommand
+				.substring(Constants.PROCESS_FILTER_PREFIX.length());
+		int slash = s.lastIndexOf('/');
+		String driver = s.substring(0, slash);
+		String type = s.substring(slash + 1);
+		db.getFilterProcess(driver).filter(type, path, in, out);
+	}
+
+	private final String command;
+
+	private final Process process;
+
+	private final PacketLineIn pckIn;
+
+	private final PacketLineOut pckOut;
+
+	private final InputStream rawIn;
+
+	private final Set<String> capabilities = new HashSet<>();
+
+	private boolean broken;
+
+	/**
+	 * Start the filter process of a driver and perform the handshake.
+	 *
+	 * @param db
+	 *            repository whose working tree the process runs in.
+	 * @param driver
+	 *            name of the filter driver.
+	 * @throws IOException
+	 *             the process is not configured, could not be started or the
+	 *             handshake failed.
+	 */
+	public FilterProcess(Repository db, String driver) throws IOException {
+		command = db.getConfig().getString(
+				ConfigConstants.CONFIG_FILTER_SECTION, driver,
+				ConfigConstants.CONFIG_KEY_PROCESS);
+		if (command == null) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().filterProcessNotConfigured, driver));
+		}
+		ProcessBuilder pb = db.getFS().runInShell(command, new String[0]);
+		pb.directory(db.getWorkTree());
+		pb.environment().put(Constants.GIT_DIR_KEY,
+				db.getDirectory().getAbsolutePath());
+		pb.redirectError(Redirect.INHERIT);
+		process = pb.start();
+		rawIn = process.getInputStream();
+		pckIn = new PacketLineIn(rawIn);
+		pckOut = new PacketLineOut(process.getOutputStream());
+		try {
+			handshake();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private void handshake() throws IOException {
+		pckOut.writeString("git-filter-client\n"); //$NON-NLS-1$
+		pckOut.writeString("version=2\n"); //$NON-NLS-1$
+		pckOut.end();
+
+		String welcome = pckIn.readString();
+		if (!"git-filter-server".equals(welcome)) { //$NON-NLS-1$
+			throw badHandshake(welcome);
+		}
+		boolean v2 = false;
+		String line;
+		while ((line = pckIn.readString()) != PacketLineIn.END) {
+			if ("version=2".equals(line)) { //$NON-NLS-1$
+				v2 = true;
+			}
+		}
+		if (!v2) {
+			throw badHandshake(welcome);
+		}
+
+		pckOut.writeString("capability=" //$NON-NLS-1$
+				+ Constants.ATTR_FILTER_TYPE_CLEAN + '\n');
+		pckOut.writeString("capability=" //$NON-NLS-1$
+				+ Constants.ATTR_FILTER_TYPE_SMUDGE + '\n');
+		pckOut.end();
+		while ((line = pckIn.readString()) != PacketLineIn.END) {
+			if (line.startsWith("capability=")) { //$NON-NLS-1$
+				capabilities.add(line.substring("capability=".length())); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private IOException badHandshake(String line) {
+		return new IOException(MessageFormat.format(
+				JGitText.get().filterProcessBadHandshake, command, line));
+	}
+
+	/** @return the command the process was started with. */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * Check whether the process implements a filter command.
+	 *
+	 * @param type
+	 *            the command, e.g. {@code clean} or {@code smudge}.
+	 * @return true if the process announced the capability during the
+	 *         handshake and has not aborted it since.
+	 */
+	public synchronized boolean supports(String type) {
+		return capabilities.contains(type);
+	}
+
+	/**
+	 * @return true if the process can accept further requests; false once
+	 *         communication with it failed or it was closed.
+	 */
+	public synchronized boolean isUsable() {
+		return !broken;
+	}
+
+	/**
+	 * Filter the content of one file.
+	 *
+	 * @param type
+	 *            the command, e.g. {@code clean} or {@code smudge}.
+	 * @param path
+	 *            path of the file being filtered, relative to the working
+	 *            tree.
+	 * @param in
+	 *            content to be filtered.
+	 * @param out
+	 *            receives the filtered content. If the process does not
+	 *            support {@code type} the content is copied unmodified.
+	 * @throws IOException
+	 *             communication with the process failed or the process
+	 *             reported an error for the file. If the process reported the
+	 *             error the cause is a {@link FilterFailedException}.
+	 */
+	public synchronized void filter(String type, String path, InputStream in,
+			OutputStream out) throws IOException {
+		if (!capabilities.contains(type)) {
+			copy(in, out);
+			return;
+		}
+		String status;
+		try {
+			pckOut.writeString("command=" + type + '\n'); //$NON-NLS-1$
+			pckOut.writeString("pathname=" + path + '\n'); //$NON-NLS-1$
+			pckOut.end();
+			writeContent(in);
+
+			status = readStatus(null);
+			if ("success".equals(status)) { //$NON-NLS-1$
+				readContent(out);
+				status = readStatus(status);
+			}
+		} catch (IOException e) {
+			close();
+			throw new IOException(new FilterFailedException(e, command, path));
+		}
+		if ("success".equals(status)) { //$NON-NLS-1$
+			return;
+		}
+		if ("abort".equals(status)) { //$NON-NLS-1$
+			// The process gave up on this command for the remaining files.
+			capabilities.remove(type);
+		}
+		throw new IOException(new FilterFailedException(
+				new IOException(MessageFormat.format(
+						JGitText.get().filterProcessReportedStatus, command,
+						status, path)),
+				command, path));
+	}
+
+	private void writeContent(InputStream in) throws IOException {
+		byte[] buf = new byte[MAX_PACKET_DATA];
+		int n;
+		while ((n = IO.readFully(in, buf, 0)) > 0) {
+			pckOut.writePacket(buf, 0, n);
+		}
+		pckOut.end();
+	}
+
+	private void readContent(OutputStream out) throws IOException {
+		byte[] hdr = new byte[4];
+		byte[] buf = null;
+		for (;;) {
+			IO.readFully(rawIn, hdr, 0, 4);
+			int len = RawParseUtils.parseHexInt16(hdr, 0);
+			if (len == 0) {
+				return;
+			} else if (len < 4) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().invalidPacketLineHeader,
+						RawParseUtils.decode(hdr)));
+			}
+			len -= 4;
+			if (buf == null || buf.length < len) {
+				buf = new byte[Math.max(len, MAX_PACKET_DATA)];
+			}
+			IO.readFully(rawIn, buf, 0, len);
+			out.write(buf, 0, len);
+		}
+	}
+
+	private String readStatus(String current) throws IOException {
+		String status = current;
+		String line;
+		while ((line = pckIn.readString()) != PacketLineIn.END) {
+			if (line.startsWith("status=")) { //$NON-NLS-1$
+				status = line.substring("status=".length()); //$NON-NLS-1$
+			}
+		}
+		return status;
+	}
+
+	private static void copy(InputStream in, OutputStream out)
+			throws IOException {
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+	}
+
+	/**
+	 * Terminate the process.
+	 * <p>
+	 * The process' stdin is closed, signaling it to exit. If it does not exit
+	 * within a few seconds it is destroyed.
+	 */
+	public synchronized void close() {
+		broken = true;
+		try {
+			process.getOutputStream().close();
+		} catch (IOException e) {
+			// Ignore, the process is terminated below.
+		}
+		try {
+			if (!process.waitFor(EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				process.destroy();
+			}
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
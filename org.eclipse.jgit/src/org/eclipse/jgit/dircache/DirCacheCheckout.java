@@ -56,6 +56,7 @@
 import org.eclipse.jgit.api.errors.FilterFailedException;
 import org.eclipse.jgit.attributes.FilterCommand;
 import org.eclipse.jgit.attributes.FilterCommandRegistry;
+import org.eclipse.jgit.attributes.FilterProcess;
 import org.eclipse.jgit.errors.CheckoutConflictException;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -497,6 +498,7 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 			if (file != null)
 				removeEmptyParents(file);
 
+			prefetchFilterContent();
 			for (Map.Entry<String, CheckoutMetadata> e : updated.entrySet()) {
 				String path = e.getKey();
 				CheckoutMetadata meta = e.getValue();
@@ -512,6 +514,35 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 		return toBeDeleted.size() == 0;
 	}
 
+	/**
+	 * Pass the blobs of all updated entries to their builtin smudge filters at
+	 * once, so filters fetching content remotely can fetch it in bulk.
+	 */
+	private void prefetchFilterContent() {
+		Map<String, List<ObjectId>> blobsByFilter = new HashMap<>();
+		for (Map.Entry<String, CheckoutMetadata> e : updated.entrySet()) {
+			String cmd = e.getValue().smudgeFilterCommand;
+			if (cmd == null || !FilterCommandRegistry.isRegistered(cmd)) {
+				continue;
+			}
+			DirCacheEntry entry = dc.getEntry(e.getKey());
+			if (entry != null
+					&& !FileMode.GITLINK.equals(entry.getRawMode())) {
+				blobsByFilter.computeIfAbsent(cmd, k -> new ArrayList<>())
+						.add(entry.getObjectId());
+			}
+		}
+		for (Map.Entry<String, List<ObjectId>> e : blobsByFilter.entrySet()) {
+			try {
+				FilterCommandRegistry.prefetch(e.getKey(), repo, e.getValue());
+			} catch (IOException err) {
+				// Each file is still filtered individually below.
+				LOG.warn(MessageFormat.format(
+						JGitText.get().filterPrefetchFailed, e.getKey()), err);
+			}
+		}
+	}
+
 	private static boolean isSamePrefix(String a, String b) {
 		int as = a.lastIndexOf('/');
 		int bs = b.lastIndexOf('/');
@@ -1321,6 +1352,11 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 						.isRegistered(checkoutMetadata.smudgeFilterCommand)) {
 					runBuiltinFilterCommand(repo, checkoutMetadata, ol,
 							channel);
+				} else if (FilterProcess.isProcessCommand(
+						checkoutMetadata.smudgeFilterCommand)) {
+					FilterProcess.run(repo,
+							checkoutMetadata.smudgeFilterCommand,
+							entry.getPathString(), ol.openStream(), channel);
 				} else {
 					runExternalFilterCommand(repo, entry, checkoutMetadata, ol,
 							fs, channel);
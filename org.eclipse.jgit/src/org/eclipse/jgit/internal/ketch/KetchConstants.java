@@ -68,6 +68,9 @@ public class KetchConstants {
 	/** Section for Ketch configuration ({@code ketch}). */
 	public static final String CONFIG_SECTION_KETCH = "ketch"; //$NON-NLS-1$
 
+	/** Rounds a leader may run at once ({@code ketch.maxRoundsInFlight}) */
+	public static final String CONFIG_KEY_MAX_ROUNDS_IN_FLIGHT = "maxRoundsInFlight"; //$NON-NLS-1$
+
 	/** Behavior for a replica ({@code remote.$name.ketch-type}) */
 	public static final String CONFIG_KEY_TYPE = "ketch-type"; //$NON-NLS-1$
 
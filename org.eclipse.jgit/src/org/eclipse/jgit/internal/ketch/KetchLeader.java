@@ -54,7 +54,9 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -184,7 +186,7 @@ public static enum State {
 	 * avoids duplicating {@link #refTree}, reducing both time and memory used.
 	 * However if proposals arrive more frequently {@link #refTree} must be
 	 * duplicated to prevent newly queued proposals from corrupting the
-	 * {@link #runningRound}.
+	 * round being prepared.
 	 */
 	volatile boolean roundHoldsReferenceToRefTree;
 
@@ -195,15 +197,22 @@ public static enum State {
 	private LogIndex committedIndex;
 
 	/**
-	 * Is the leader idle with no work pending? If {@code true} there is no work
-	 * for the leader (normal state). This field is {@code false} when the
-	 * leader thread is scheduled for execution, or while {@link #runningRound}
-	 * defines a round in progress.
+	 * Is the leader thread scheduled to prepare the next round? At most one
+	 * round is prepared at a time, as each round builds on the log entry
+	 * created by the round before it.
 	 */
-	private boolean idle;
+	private boolean preparing;
 
-	/** Current round the leader is preparing and waiting for a vote on. */
-	private Round runningRound;
+	/**
+	 * Rounds distributed to replicas and waiting for a vote, oldest first.
+	 * Each round's {@code acceptedOldIndex} is the {@code acceptedNewIndex}
+	 * of the round before it, so a replica accepting a round also accepts all
+	 * earlier rounds.
+	 */
+	private final LinkedList<Round> runningRounds;
+
+	/** Maximum number of proposal rounds in {@link #runningRounds}. */
+	private int maxRoundsInFlight = 1;
 
 	/**
 	 * Construct a leader for a Ketch instance.
@@ -215,7 +224,7 @@ protected KetchLeader(KetchSystem system) {
 		this.system = system;
 		this.lock = new ReentrantLock(true /* fair */);
 		this.queued = new ArrayList<>(4);
-		this.idle = true;
+		this.runningRounds = new LinkedList<>();
 	}
 
 	/** @return system configuration. */
@@ -289,6 +298,31 @@ private static LocalReplica findLocal(Collection<KetchReplica> voters) {
 		return null;
 	}
 
+	/**
+	 * Set the number of proposal rounds that may be sent to replicas before
+	 * the oldest one is committed.
+	 * <p>
+	 * With the default of 1 the leader waits for each round to reach a
+	 * majority before building the next one from the queued proposals. Larger
+	 * values pipeline rounds. Replicas still apply rounds in log order, but
+	 * combine all rounds queued behind a running push into one request, so
+	 * throughput depends on the batch size rather than the round trip time.
+	 *
+	 * @param max
+	 *            maximum number of rounds in flight; must be at least 1.
+	 */
+	public void setMaxRoundsInFlight(int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException();
+		}
+		lock.lock();
+		try {
+			maxRoundsInFlight = max;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * Get an instance of the repository for use by a leader thread.
 	 * <p>
@@ -347,10 +381,7 @@ public void queueProposal(Proposal proposal)
 
 			queued.add(proposal);
 			proposal.notifyState(QUEUED);
-
-			if (idle) {
-				scheduleLeader();
-			}
+			scheduleNextRound();
 		} finally {
 			lock.unlock();
 		}
@@ -372,8 +403,22 @@ private void initialize() throws IOException {
 		}
 	}
 
+	private void scheduleNextRound() {
+		if (!preparing && !queued.isEmpty() && canStartRound()) {
+			scheduleLeader();
+		}
+	}
+
+	private boolean canStartRound() {
+		if (state == LEADER) {
+			return runningRounds.size() < maxRoundsInFlight;
+		}
+		// Elections are never pipelined.
+		return runningRounds.isEmpty();
+	}
+
 	private void scheduleLeader() {
-		idle = false;
+		preparing = true;
 		system.getExecutor().execute(new Runnable() {
 			@Override
 			public void run() {
@@ -445,7 +490,7 @@ LogIndex getCommitted() {
 	}
 
 	boolean isIdle() {
-		return idle;
+		return !preparing && runningRounds.isEmpty();
 	}
 
 	void runAsync(Round round) {
@@ -455,7 +500,8 @@ void runAsync(Round round) {
 			// reasonable to assume at least one replica will eventually get
 			// this, and there is reasonable probability it commits.
 			headIndex = round.acceptedNewIndex;
-			runningRound = round;
+			runningRounds.add(round);
+			preparing = false;
 
 			for (KetchReplica replica : voters) {
 				replica.pushTxnAcceptedAsync(round);
@@ -463,6 +509,7 @@ void runAsync(Round round) {
 			for (KetchReplica replica : followers) {
 				replica.pushTxnAcceptedAsync(round);
 			}
+			scheduleNextRound();
 		} finally {
 			lock.unlock();
 		}
@@ -485,28 +532,25 @@ void onReplicaUpdate(KetchReplica replica) {
 		if (replica.getParticipation() == FOLLOWER_ONLY) {
 			// Followers cannot vote, so votes haven't changed.
 			return;
-		} else if (runningRound == null) {
+		} else if (runningRounds.isEmpty()) {
 			// No round running, no need to tally votes.
 			return;
 		}
 
-		assert headIndex.equals(runningRound.acceptedNewIndex);
-		int matching = 0;
-		for (KetchReplica r : voters) {
-			if (r.hasAccepted(headIndex)) {
-				matching++;
-			}
-		}
-
-		int quorum = voters.length / 2 + 1;
-		boolean success = matching >= quorum;
-		if (!success) {
+		assert headIndex.equals(runningRounds.getLast().acceptedNewIndex);
+		int done = countCommittedRounds();
+		if (done == 0) {
 			return;
 		}
+		List<Round> committed = new ArrayList<>(done);
+		for (int i = 0; i < done; i++) {
+			committed.add(runningRounds.removeFirst());
+		}
+		Round last = committed.get(done - 1);
 
 		switch (state) {
 		case CANDIDATE:
-			term = ((ElectionRound) runningRound).getTerm();
+			term = ((ElectionRound) last).getTerm();
 			state = LEADER;
 			if (log.isDebugEnabled()) {
 				log.debug("Won election, running term " + term); //$NON-NLS-1$
@@ -514,15 +558,17 @@ void onReplicaUpdate(KetchReplica replica) {
 
 			//$FALL-THROUGH$
 		case LEADER:
-			committedIndex = headIndex;
+			committedIndex = last.acceptedNewIndex;
 			if (log.isDebugEnabled()) {
 				log.debug("Committed {} in term {}", //$NON-NLS-1$
 						committedIndex.describeForLog(),
 						Long.valueOf(term));
 			}
-			nextRound();
+			scheduleNextRound();
 			commitAsync(replica);
-			notifySuccess(runningRound);
+			for (Round r : committed) {
+				notifySuccess(r);
+			}
 			if (log.isDebugEnabled()) {
 				log.debug("Leader state:\n{}", snapshot()); //$NON-NLS-1$
 			}
@@ -534,6 +580,43 @@ void onReplicaUpdate(KetchReplica replica) {
 		}
 	}
 
+	/**
+	 * Count the running rounds accepted by a majority of voters.
+	 * <p>
+	 * A replica accepting a round also accepted all rounds before it, so the
+	 * committed rounds are always a prefix of {@link #runningRounds}.
+	 *
+	 * @return number of rounds at the start of {@link #runningRounds} that
+	 *         are committed.
+	 */
+	private int countCommittedRounds() {
+		int quorum = voters.length / 2 + 1;
+		int done = 0;
+		for (int pos = 0; pos < runningRounds.size(); pos++) {
+			int matching = 0;
+			for (KetchReplica r : voters) {
+				if (hasAcceptedFrom(r, pos)) {
+					matching++;
+				}
+			}
+			if (matching < quorum) {
+				break;
+			}
+			done = pos + 1;
+		}
+		return done;
+	}
+
+	private boolean hasAcceptedFrom(KetchReplica replica, int start) {
+		ListIterator<Round> i = runningRounds.listIterator(start);
+		while (i.hasNext()) {
+			if (replica.hasAccepted(i.next().acceptedNewIndex)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private void notifySuccess(Round round) {
 		// Drop the leader lock while notifying Proposal listeners.
 		lock.unlock();
@@ -563,18 +646,17 @@ private void commitAsync(KetchReplica caller) {
 		}
 	}
 
-	/** Schedule the next round; invoked while {@link #lock} is held. */
+	/**
+	 * Schedule the next round after a round was prepared without being sent
+	 * to replicas; invoked while {@link #lock} is held.
+	 */
 	void nextRound() {
-		runningRound = null;
-
-		if (queued.isEmpty()) {
-			idle = true;
-		} else {
-			// Caller holds lock. Reschedule leader on a new thread so
-			// the call stack can unwind and lock is not held unexpectedly
-			// during prepare for the next round.
-			scheduleLeader();
-		}
+		preparing = false;
+
+		// Caller holds lock. Reschedule leader on a new thread so the call
+		// stack can unwind and lock is not held unexpectedly during prepare
+		// for the next round.
+		scheduleNextRound();
 	}
 
 	/** @return snapshot this leader. */
@@ -194,6 +194,12 @@ public enum State {
 	private State state = UNKNOWN;
 	private String error;
 
+	/** Number of pushes completed without a transport error. */
+	private long pushCount;
+
+	/** Number of log entries accepted by the replica through pushes. */
+	private long acceptedCount;
+
 	/** Scheduled retry due to communication failure. */
 	private Future<?> retryFuture;
 	private long lastRetryMillis;
@@ -281,6 +287,9 @@ ReplicaSnapshot snapshot() {
 		s.state = state;
 		s.error = error;
 		s.retryAtMillis = waitingForRetry() ? retryAtMillis : 0;
+		s.pushCount = pushCount;
+		s.acceptedCount = acceptedCount;
+		s.lag = getLag();
 		return s;
 	}
 
@@ -301,6 +310,19 @@ void initialize(Map<String, Ref> refs) {
 		}
 	}
 
+	/**
+	 * @return number of log entries the replica is behind the leader's head;
+	 *         -1 if the replica has not accepted an entry of this leader.
+	 */
+	private long getLag() {
+		LogIndex head = leader.getHead();
+		if (head != null && txnAccepted instanceof LogIndex) {
+			return Math.max(0,
+					head.getIndex() - ((LogIndex) txnAccepted).getIndex());
+		}
+		return -1;
+	}
+
 	ObjectId getTxnAccepted() {
 		return txnAccepted;
 	}
@@ -326,7 +348,8 @@ void pushTxnAcceptedAsync(Round round) {
 		if (commitSpeed == BATCHED) {
 			LogIndex committedIndex = leader.getCommitted();
 			if (equals(txnAccepted, committedIndex)
-					&& !equals(txnCommitted, committedIndex)) {
+					&& !equals(txnCommitted, committedIndex)
+					&& !isCommitPending()) {
 				prepareTxnCommitted(cmds, committedIndex);
 			}
 		}
@@ -358,6 +381,16 @@ void pushCommitAsync(LogIndex committed) {
 		pushAsync(new ReplicaPushRequest(this, cmds));
 	}
 
+	/**
+	 * With several rounds in flight another push may already carry an update
+	 * of {@code refs/txn/committed}. A second update would start from the old
+	 * value and fail once the first one lands, so wait for it instead.
+	 */
+	private boolean isCommitPending() {
+		String name = getSystem().getTxnCommitted();
+		return running.containsKey(name) || waiting.containsKey(name);
+	}
+
 	private void prepareTxnCommitted(List<ReceiveCommand> cmds,
 			ObjectId committed) {
 		removeStaged(cmds, committed);
@@ -413,7 +446,7 @@ private static void delete(List<ReceiveCommand> cmds,
 	 */
 	private void runNextPushRequest() {
 		LogIndex committed = leader.getCommitted();
-		if (!equals(txnCommitted, committed)
+		if (!equals(txnCommitted, committed) && !isCommitPending()
 				&& shouldPushUnbatchedCommit(committed, leader.isIdle())) {
 			pushCommitAsync(committed);
 		}
@@ -610,9 +643,11 @@ void afterPush(@Nullable Repository repo, ReplicaPushRequest req) {
 
 			lastRetryMillis = 0;
 			error = null;
+			pushCount++;
 			updateView(req, acceptId, commitCmd);
 
 			if (acceptCmd != null && acceptCmd.getResult() == OK) {
+				acceptedCount += countEntries(acceptCmd);
 				state = hasAccepted(leader.getHead()) ? CURRENT : LAGGING;
 				if (stages != null) {
 					staged.put(acceptCmd.getNewId(), stages);
@@ -628,6 +663,16 @@ void afterPush(@Nullable Repository repo, ReplicaPushRequest req) {
 		}
 	}
 
+	private static long countEntries(ReceiveCommand acceptCmd) {
+		ObjectId oldId = acceptCmd.getOldId();
+		ObjectId newId = acceptCmd.getNewId();
+		if (oldId instanceof LogIndex && newId instanceof LogIndex) {
+			return ((LogIndex) newId).getIndex()
+					- ((LogIndex) oldId).getIndex();
+		}
+		return 1;
+	}
+
 	private void updateView(ReplicaPushRequest req, @Nullable ObjectId acceptId,
 			ReceiveCommand commitCmd) {
 		if (acceptId != null) {
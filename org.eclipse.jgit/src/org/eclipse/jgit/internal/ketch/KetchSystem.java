@@ -45,6 +45,7 @@
 
 import static org.eclipse.jgit.internal.ketch.KetchConstants.ACCEPTED;
 import static org.eclipse.jgit.internal.ketch.KetchConstants.COMMITTED;
+import static org.eclipse.jgit.internal.ketch.KetchConstants.CONFIG_KEY_MAX_ROUNDS_IN_FLIGHT;
 import static org.eclipse.jgit.internal.ketch.KetchConstants.CONFIG_KEY_TYPE;
 import static org.eclipse.jgit.internal.ketch.KetchConstants.CONFIG_SECTION_KETCH;
 import static org.eclipse.jgit.internal.ketch.KetchConstants.DEFAULT_TXN_NAMESPACE;
@@ -233,6 +234,8 @@ protected Repository openRepository() {
 			}
 		};
 		leader.setReplicas(createReplicas(leader, repo));
+		leader.setMaxRoundsInFlight(Math.max(1, repo.getConfig().getInt(
+				CONFIG_SECTION_KETCH, CONFIG_KEY_MAX_ROUNDS_IN_FLIGHT, 1)));
 		return leader;
 	}
 
@@ -163,7 +163,7 @@ private ObjectId insertProposals(Repository git, ProposedTimestamp ts)
 				id = insertMultiProposal(git, ts, inserter);
 			}
 
-			stageCommands = makeStageList(git, inserter);
+			stageCommands = makeStageList(git, inserter, id);
 			inserter.flush();
 		}
 		return id;
@@ -277,7 +277,7 @@ void success() {
 	}
 
 	private List<ReceiveCommand> makeStageList(Repository git,
-			ObjectInserter inserter) throws IOException {
+			ObjectInserter inserter, ObjectId txnId) throws IOException {
 		// For each branch, collapse consecutive updates to only most recent,
 		// avoiding sending multiple objects in a rapid fast-forward chain, or
 		// rewritten content.
@@ -295,9 +295,11 @@ private List<ReceiveCommand> makeStageList(Repository git,
 		}
 
 		Set<ObjectId> newObjs = new HashSet<>(byRef.values());
+		// acceptedNewIndex is only set once the round runs; name the
+		// staging refs after the commit the round proposes.
 		StageBuilder b = new StageBuilder(
 				leader.getSystem().getTxnStage(),
-				acceptedNewIndex);
+				txnId);
 		return b.makeStageList(newObjs, git, inserter);
 	}
 
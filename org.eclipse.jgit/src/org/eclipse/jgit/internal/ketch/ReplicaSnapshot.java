@@ -60,6 +60,9 @@ public class ReplicaSnapshot {
 	KetchReplica.State state;
 	String error;
 	long retryAtMillis;
+	long pushCount;
+	long acceptedCount;
+	long lag;
 
 	ReplicaSnapshot(KetchReplica replica) {
 		this.replica = replica;
@@ -106,4 +109,30 @@ public String getErrorMessage() {
 	public Date getRetryAt() {
 		return retryAtMillis > 0 ? new Date(retryAtMillis) : null;
 	}
+
+	/**
+	 * @return number of pushes to the replica completed without a transport
+	 *         error since the leader started.
+	 */
+	public long getPushCount() {
+		return pushCount;
+	}
+
+	/**
+	 * @return number of log entries the replica accepted since the leader
+	 *         started. Divided by {@link #getPushCount()} this is the average
+	 *         number of rounds combined into one push.
+	 */
+	public long getAcceptedCount() {
+		return acceptedCount;
+	}
+
+	/**
+	 * @return number of log entries the replica is behind the leader's head;
+	 *         -1 if the replica has not yet accepted an entry from the current
+	 *         leader.
+	 */
+	public long getLag() {
+		return lag;
+	}
 }
@@ -481,16 +481,21 @@ void copyPackAsIs(PackOutputStream out, DfsReader ctx)
 			ctx.pin(this, 0);
 			ctx.unpin();
 		}
-		if (cache.shouldCopyThroughCache(length))
-			copyPackThroughCache(out, ctx);
-		else
-			copyPackBypassCache(out, ctx);
+		copyPackPrefixAsIs(out, length - 20, ctx);
 	}
 
-	private void copyPackThroughCache(PackOutputStream out, DfsReader ctx)
+	void copyPackPrefixAsIs(PackOutputStream out, long end, DfsReader ctx)
 			throws IOException {
+		if (cache.shouldCopyThroughCache(end))
+			copyPackThroughCache(out, end, ctx);
+		else
+			copyPackBypassCache(out, end, ctx);
+	}
+
+	private void copyPackThroughCache(PackOutputStream out, long end,
+			DfsReader ctx) throws IOException {
 		long position = 12;
-		long remaining = length - (12 + 20);
+		long remaining = end - 12;
 		while (0 < remaining) {
 			DfsBlock b = cache.getOrLoad(this, position, ctx);
 			int ptr = (int) (position - b.start);
@@ -501,14 +506,14 @@ private void copyPackThroughCache(PackOutputStream out, DfsReader ctx)
 		}
 	}
 
-	private long copyPackBypassCache(PackOutputStream out, DfsReader ctx)
-			throws IOException {
+	private long copyPackBypassCache(PackOutputStream out, long end,
+			DfsReader ctx) throws IOException {
 		try (ReadableChannel rc = ctx.db.openFile(packDesc, PACK)) {
 			ByteBuffer buf = newCopyBuffer(out, rc);
 			if (ctx.getOptions().getStreamPackBufferSize() > 0)
 				rc.setReadAheadBytes(ctx.getOptions().getStreamPackBufferSize());
 			long position = 12;
-			long remaining = length - (12 + 20);
+			long remaining = end - 12;
 			boolean packHeadSkipped = false;
 			while (0 < remaining) {
 				DfsBlock b = cache.get(key, alignToBlock(position));
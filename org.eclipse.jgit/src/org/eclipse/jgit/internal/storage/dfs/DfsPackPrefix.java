@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.dfs;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_COMMIT;
+import static org.eclipse.jgit.lib.Constants.OBJ_TAG;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.internal.storage.file.PackBitmapIndex;
+import org.eclipse.jgit.internal.storage.pack.PackOutputStream;
+import org.eclipse.jgit.internal.storage.pack.ReusablePackPrefix;
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/** A leading range of a {@link DfsPackFile} copied as-is by PackWriter. */
+class DfsPackPrefix extends ReusablePackPrefix {
+	private final DfsReader ctx;
+
+	private final DfsPackFile pack;
+
+	private final long objectCount;
+
+	private final long endOffset;
+
+	private final long[] typeCounts = new long[OBJ_TAG + 1];
+
+	DfsPackPrefix(DfsReader ctx, DfsPackFile pack, PackBitmapIndex index,
+			int objectCount, long endOffset) {
+		this.ctx = ctx;
+		this.pack = pack;
+		this.objectCount = objectCount;
+		this.endOffset = endOffset;
+		for (int type = OBJ_COMMIT; type <= OBJ_TAG; type++)
+			typeCounts[type] = index.countLeadingObjects(objectCount, type);
+	}
+
+	@Override
+	public long getObjectCount() {
+		return objectCount;
+	}
+
+	@Override
+	public long getObjectCount(int type) {
+		return typeCounts[type];
+	}
+
+	@Override
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	@Override
+	public long findOffset(AnyObjectId id) throws IOException {
+		long offset = pack.findOffset(ctx, id);
+		return offset < endOffset ? offset : -1;
+	}
+
+	void copyAsIs(PackOutputStream out) throws IOException {
+		pack.copyPackPrefixAsIs(out, endOffset, ctx);
+	}
+}
@@ -76,6 +76,7 @@
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
 import org.eclipse.jgit.internal.storage.pack.PackOutputStream;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.internal.storage.pack.ReusablePackPrefix;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.AsyncObjectLoaderQueue;
@@ -165,6 +166,33 @@ public Collection<CachedPack> getCachedPacksAndUpdate(
 		return Collections.emptyList();
 	}
 
+	@Override
+	public ReusablePackPrefix getReusablePackPrefixAndUpdate(
+			BitmapBuilder needBitmap) throws IOException {
+		for (DfsPackFile pack : db.getPacks()) {
+			PackBitmapIndex bitmapIndex = pack.getBitmapIndex(this);
+			if (bitmapIndex == null)
+				continue;
+			int cnt = needBitmap.removeLeadingObjects(bitmapIndex);
+			if (cnt == 0)
+				continue;
+
+			long end;
+			if (cnt < bitmapIndex.getObjectCount()) {
+				end = pack.findOffset(this, bitmapIndex.getObject(cnt));
+			} else {
+				// If the length hasn't been determined yet, pin to set it.
+				if (pack.length == -1) {
+					pin(pack, 0);
+					unpin();
+				}
+				end = pack.length - 20;
+			}
+			return new DfsPackPrefix(this, pack, bitmapIndex, cnt, end);
+		}
+		return null;
+	}
+
 	@Override
 	public Collection<ObjectId> resolve(AbbreviatedObjectId id)
 			throws IOException {
@@ -652,6 +680,12 @@ public void copyPackAsIs(PackOutputStream out, CachedPack pack)
 		((DfsCachedPack) pack).copyAsIs(out, this);
 	}
 
+	@Override
+	public void copyPackPrefixAsIs(PackOutputStream out,
+			ReusablePackPrefix prefix) throws IOException {
+		((DfsPackPrefix) prefix).copyAsIs(out);
+	}
+
 	/**
 	 * Copy bytes from the window to a caller supplied buffer.
 	 *
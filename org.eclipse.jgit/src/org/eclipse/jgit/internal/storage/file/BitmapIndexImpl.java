@@ -292,6 +292,26 @@ public boolean removeAllOrNone(PackBitmapIndex index) {
 			return true;
 		}
 
+		@Override
+		public int removeLeadingObjects(PackBitmapIndex index) {
+			if (!bitmapIndex.packIndex.equals(index))
+				return 0;
+
+			int cnt = bitmapIndex.indexObjectCount;
+			EWAHCompressedBitmap curr = bitset.combine();
+
+			// The first bit set in the complement is the first object of
+			// the pack not contained in this bitmap.
+			IntIterator ii = curr.xor(ones(cnt)).intIterator();
+			if (ii.hasNext())
+				cnt = Math.min(cnt, ii.next());
+			if (cnt == 0)
+				return 0;
+
+			bitset = new ComboBitset(curr.andNot(ones(cnt)));
+			return cnt;
+		}
+
 		@Override
 		public BitmapIndexImpl getBitmapIndex() {
 			return bitmapIndex;
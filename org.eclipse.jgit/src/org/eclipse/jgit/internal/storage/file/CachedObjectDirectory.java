@@ -152,6 +152,12 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return wrapped.getShallowCommits();
 	}
 
+	@Override
+	public void setShallowCommits(Set<ObjectId> shallowCommits)
+			throws IOException {
+		wrapped.setShallowCommits(shallowCommits);
+	}
+
 	private CachedObjectDirectory[] myAlternates() {
 		if (alts == null) {
 			ObjectDirectory.AlternateHandle[] src = wrapped.myAlternates();
@@ -73,6 +73,12 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -103,6 +109,7 @@
 import org.eclipse.jgit.lib.ReflogEntry;
 import org.eclipse.jgit.lib.ReflogReader;
 import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.pack.PackConfig;
@@ -139,10 +146,18 @@ public class GC {
 
 	private static final String INDEX_EXT = "." + PackExt.INDEX.getExtension(); //$NON-NLS-1$
 
+	/**
+	 * Marks a pack whose objects {@link #maintenance()} already merged into a
+	 * newer pack, while the pack is kept for concurrent readers.
+	 */
+	private static final String MERGED_EXT = ".merged"; //$NON-NLS-1$
+
 	private static final int DEFAULT_AUTOPACKLIMIT = 50;
 
 	private static final int DEFAULT_AUTOLIMIT = 6700;
 
+	private static final int GEOMETRIC_FACTOR = 2;
+
 	private final FileRepository repo;
 
 	private ProgressMonitor pm;
@@ -157,6 +172,10 @@ public class GC {
 
 	private PackConfig pconfig = null;
 
+	private long memoryLimit = -1;
+
+	private Boolean parallelRepack;
+
 	/**
 	 * the refs which existed during the last call to {@link #repack()}. This is
 	 * needed during {@link #prune(Set)} where we can optimize by looking at the
@@ -373,6 +392,7 @@ private void prunePack(String packName) {
 					removeOldPack(f, packName, ext, deleteOptions);
 				}
 			}
+			FileUtils.delete(nameFor(packName, MERGED_EXT), deleteOptions);
 		} catch (IOException e) {
 			// Deletion of the .pack file failed. Silently return.
 		}
@@ -776,25 +796,61 @@ public Collection<PackFile> repack() throws IOException {
 
 		List<PackFile> ret = new ArrayList<>(2);
 		PackFile heads = null;
-		if (!allHeadsAndTags.isEmpty()) {
-			heads = writePack(allHeadsAndTags, PackWriter.NONE, allTags,
-					tagTargets, excluded);
-			if (heads != null) {
-				ret.add(heads);
-				excluded.add(0, heads.getIndex());
+		ExecutorService executor = null;
+		Future<PackFile> restTask = null;
+		boolean written = false;
+		try {
+			PackConfig cfg;
+			if (isParallelRepack() && !allHeadsAndTags.isEmpty()
+					&& !nonHeads.isEmpty()) {
+				// Objects reachable from heads and tags are already excluded
+				// from the second pack by its have set, so it can be written
+				// without waiting for the index of the first pack.
+				cfg = newPackConfig(2);
+				PackConfig restCfg = cfg;
+				List<ObjectIdSet> restExcluded = new ArrayList<>(excluded);
+				executor = newRepackExecutor();
+				restTask = executor.submit(() -> writePack(nonHeads,
+						allHeadsAndTags, PackWriter.NONE, tagTargets,
+						restExcluded, refsBefore, NullProgressMonitor.INSTANCE,
+						restCfg));
+			} else {
+				cfg = newPackConfig(1);
+			}
+
+			if (!allHeadsAndTags.isEmpty()) {
+				heads = writePack(allHeadsAndTags, PackWriter.NONE, allTags,
+						tagTargets, excluded, refsBefore, pm, cfg);
+				if (heads != null) {
+					ret.add(heads);
+					excluded.add(0, heads.getIndex());
+				}
+			}
+			PackFile rest = null;
+			if (restTask != null) {
+				rest = awaitPack(restTask);
+			} else if (!nonHeads.isEmpty()) {
+				rest = writePack(nonHeads, allHeadsAndTags, PackWriter.NONE,
+						tagTargets, excluded, refsBefore, pm, cfg);
 			}
-		}
-		if (!nonHeads.isEmpty()) {
-			PackFile rest = writePack(nonHeads, allHeadsAndTags, PackWriter.NONE,
-					tagTargets, excluded);
 			if (rest != null)
 				ret.add(rest);
-		}
-		if (!txnHeads.isEmpty()) {
-			PackFile txn = writePack(txnHeads, PackWriter.NONE, PackWriter.NONE,
-					null, excluded);
-			if (txn != null)
-				ret.add(txn);
+			if (!txnHeads.isEmpty()) {
+				PackFile txn = writePack(txnHeads, PackWriter.NONE,
+						PackWriter.NONE, null, excluded, null, pm, cfg);
+				if (txn != null)
+					ret.add(txn);
+			}
+			written = true;
+		} finally {
+			if (executor != null) {
+				// Interrupt the second writer if the first one failed, and
+				// wait for it so it cannot add a pack after repack returned.
+				executor.shutdownNow();
+				awaitTermination(executor);
+				if (!written)
+					discardPack(restTask, toBeDeleted);
+			}
 		}
 		try {
 			deleteOldPacks(toBeDeleted, ret);
@@ -812,6 +868,197 @@ public Collection<PackFile> repack() throws IOException {
 		return ret;
 	}
 
+	/**
+	 * Packs all loose objects and merges the smallest pack files, without
+	 * walking the object graph.
+	 * <p>
+	 * Pack files are ordered by their number of objects. The smallest ones
+	 * are combined with the loose objects into one new pack file, until every
+	 * remaining pack holds at least twice as many objects as the next smaller
+	 * one, including the new pack. Pack files with a .keep file are
+	 * never merged. No object is removed from the repository, so this is much
+	 * cheaper than {@link #gc()} and suitable for running frequently. Merged
+	 * packs are only deleted once they are older than the pack expire date,
+	 * see {@link #setPackExpire(Date)}. Until then they are marked as merged
+	 * and not merged again.
+	 *
+	 * @return the collection of newly created pack files
+	 * @throws IOException
+	 *             when reading loose objects or pack files or writing the new
+	 *             pack file fails
+	 * @since 4.8
+	 */
+	public Collection<PackFile> maintenance() throws IOException {
+		ObjectDirectory odb = repo.getObjectDatabase();
+		long packExpireDate;
+		try {
+			packExpireDate = getPackExpireDate();
+		} catch (ParseException e) {
+			// Wrapped for the same reason as in repack().
+			throw new IOException(e);
+		}
+
+		// Packs merged by an earlier run were only kept for concurrent
+		// readers, their objects are in a newer pack.
+		List<PackFile> packs = new ArrayList<>();
+		boolean pruned = false;
+		for (PackFile p : odb.getPacks()) {
+			if (!nameFor(p.getPackName(), MERGED_EXT).exists())
+				packs.add(p);
+			else if (!p.shouldBeKept() && repo.getFS()
+					.lastModified(p.getPackFile()) < packExpireDate) {
+				p.close();
+				prunePack(p.getPackName());
+				pruned = true;
+			}
+		}
+
+		List<ObjectId> loose = listLooseObjects();
+		List<PackFile> rollup = selectGeometricRollup(packs, loose.size());
+		if (loose.isEmpty() && rollup.size() < 2) {
+			if (pruned)
+				odb.rescanPacks();
+			return Collections.emptyList();
+		}
+
+		PackFile pack;
+		try (WindowCursor curs = new WindowCursor(odb);
+				RevWalk rw = new RevWalk(curs);
+				PackWriter pw = new PackWriter(newPackConfig(1), curs)) {
+			pw.setDeltaBaseAsOffset(true);
+			pw.setReuseDeltaCommits(false);
+
+			RevFlag added = rw.newFlag("added"); //$NON-NLS-1$
+			for (ObjectId id : loose) {
+				checkCancelled();
+				int type;
+				try {
+					type = curs.open(id).getType();
+				} catch (MissingObjectException e) {
+					// Deleted concurrently, it must have been packed by now.
+					continue;
+				}
+				addObject(pw, rw.lookupAny(id, type), added);
+			}
+			for (PackFile p : rollup) {
+				for (PackIndex.MutableEntry e : p) {
+					checkCancelled();
+					int type = p.getObjectType(curs, e.getOffset());
+					addObject(pw, rw.lookupAny(e.toObjectId(), type), added);
+				}
+			}
+			pack = writePack(pw, pm);
+		}
+		if (pack == null) {
+			if (pruned)
+				odb.rescanPacks();
+			return Collections.emptyList();
+		}
+
+		// Like repack(), keep merged packs a concurrent reader may have
+		// just opened until they are older than gc.prunePackExpire.
+		for (PackFile p : rollup) {
+			if (p.getPackName().equals(pack.getPackName()))
+				continue;
+			if (repo.getFS().lastModified(p.getPackFile()) < packExpireDate) {
+				p.close();
+				prunePack(p.getPackName());
+			} else {
+				FileUtils.createNewFile(nameFor(p.getPackName(), MERGED_EXT));
+			}
+		}
+		// Drop the deleted packs without closing packs in use.
+		odb.rescanPacks();
+		prunePacked();
+		return Collections.singletonList(pack);
+	}
+
+	private static void addObject(PackWriter pw, RevObject obj, RevFlag added)
+			throws IncorrectObjectTypeException {
+		if (!obj.has(added)) {
+			obj.add(added);
+			pw.addObject(obj);
+		}
+	}
+
+	/**
+	 * Select the pack files to merge so the remaining packs form a geometric
+	 * progression.
+	 *
+	 * @param packs
+	 *            the existing pack files.
+	 * @param looseCount
+	 *            number of loose objects which will be packed as well.
+	 * @return the pack files whose objects should go into the new pack.
+	 * @throws IOException
+	 *             the index of a pack file cannot be read.
+	 */
+	static List<PackFile> selectGeometricRollup(Collection<PackFile> packs,
+			long looseCount) throws IOException {
+		List<PackFile> sorted = new ArrayList<>(packs.size());
+		Map<PackFile, Long> counts = new HashMap<>();
+		for (PackFile p : packs) {
+			if (!p.shouldBeKept()) {
+				sorted.add(p);
+				counts.put(p, Long.valueOf(p.getObjectCount()));
+			}
+		}
+		Collections.sort(sorted, new Comparator<PackFile>() {
+			@Override
+			public int compare(PackFile a, PackFile b) {
+				return counts.get(a).compareTo(counts.get(b));
+			}
+		});
+
+		// Find the largest pack which breaks the progression; all smaller
+		// packs are merged.
+		int split = 0;
+		for (int i = sorted.size() - 1; i > 0; i--) {
+			long smaller = counts.get(sorted.get(i - 1)).longValue();
+			if (smaller * GEOMETRIC_FACTOR > counts.get(sorted.get(i))
+					.longValue()) {
+				split = i;
+				break;
+			}
+		}
+		long merged = looseCount;
+		for (int i = 0; i < split; i++)
+			merged += counts.get(sorted.get(i)).longValue();
+
+		// The merged pack must also fit below the next larger one.
+		while (split < sorted.size() && 0 < merged && merged
+				* GEOMETRIC_FACTOR > counts.get(sorted.get(split)).longValue()) {
+			merged += counts.get(sorted.get(split)).longValue();
+			split++;
+		}
+		return sorted.subList(0, split);
+	}
+
+	private List<ObjectId> listLooseObjects() {
+		List<ObjectId> ids = new ArrayList<>();
+		File objects = repo.getObjectsDirectory();
+		String[] fanout = objects.list();
+		if (fanout == null)
+			return ids;
+		for (String d : fanout) {
+			if (d.length() != 2)
+				continue;
+			String[] entries = new File(objects, d).list();
+			if (entries == null)
+				continue;
+			for (String e : entries) {
+				if (e.length() != Constants.OBJECT_ID_STRING_LENGTH - 2)
+					continue;
+				try {
+					ids.add(ObjectId.fromString(d + e));
+				} catch (IllegalArgumentException notAnObject) {
+					// ignoring the file that does not represent loose object
+				}
+			}
+		}
+		return ids;
+	}
+
 	private static boolean isHead(Ref ref) {
 		return ref.getName().startsWith(Constants.R_HEADS);
 	}
@@ -836,7 +1083,8 @@ private void deleteOrphans() {
 					.filter(name -> {
 						return (name.endsWith(PACK_EXT)
 								|| name.endsWith(BITMAP_EXT)
-								|| name.endsWith(INDEX_EXT));
+								|| name.endsWith(INDEX_EXT)
+								|| name.endsWith(MERGED_EXT));
 					}).sorted(Collections.reverseOrder())
 					.collect(Collectors.toList());
 		} catch (IOException e1) {
@@ -975,11 +1223,174 @@ private Set<ObjectId> listNonHEADIndexObjects()
 		}
 	}
 
+	private boolean isParallelRepack() {
+		if (parallelRepack != null)
+			return parallelRepack.booleanValue();
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_GC_SECTION,
+				ConfigConstants.CONFIG_KEY_PARALLEL_REPACK, false);
+	}
+
+	private long getMemoryLimit() {
+		if (memoryLimit >= 0)
+			return memoryLimit;
+		return repo.getConfig().getLong(ConfigConstants.CONFIG_GC_SECTION,
+				ConfigConstants.CONFIG_KEY_MEMORY_LIMIT, 0);
+	}
+
+	/**
+	 * Create the configuration for one of several concurrent pack writers.
+	 * <p>
+	 * If a memory limit is set it is split evenly between the writers. A
+	 * quarter of each share is given to the delta cache, the rest is divided
+	 * among the delta search threads as their search memory limit.
+	 *
+	 * @param writers
+	 *            number of pack writers running at the same time.
+	 * @return the pack configuration for each writer.
+	 */
+	PackConfig newPackConfig(int writers) {
+		PackConfig cfg = (pconfig == null) ? new PackConfig(repo) : pconfig;
+		long limit = getMemoryLimit();
+		if (limit <= 0)
+			return cfg;
+
+		cfg = new PackConfig(cfg);
+
+		long share = limit / writers;
+		int threads = cfg.getThreads() > 0 ? cfg.getThreads()
+				: Runtime.getRuntime().availableProcessors();
+		long cache = share / 4;
+		if (0 < cfg.getDeltaCacheSize() && cfg.getDeltaCacheSize() < cache)
+			cache = cfg.getDeltaCacheSize();
+		long window = Math.max(1, (share - cache) / threads);
+		long current = cfg.getDeltaSearchMemoryLimit();
+		if (current <= 0 || window < current)
+			cfg.setDeltaSearchMemoryLimit(window);
+		cfg.setDeltaCacheSize(Math.max(1, cache));
+		if (window < cfg.getBigFileThreshold())
+			cfg.setBigFileThreshold((int) window);
+		return cfg;
+	}
+
+	ExecutorService newRepackExecutor() {
+		return Executors.newSingleThreadExecutor(newRepackThreadFactory());
+	}
+
+	ThreadFactory newRepackThreadFactory() {
+		return new ThreadFactory() {
+			private final ThreadFactory baseFactory = Executors
+					.defaultThreadFactory();
+
+			@Override
+			public Thread newThread(Runnable taskBody) {
+				Thread thr = baseFactory.newThread(taskBody);
+				thr.setName("JGit-ParallelRepack"); //$NON-NLS-1$
+				thr.setDaemon(true);
+				return thr;
+			}
+		};
+	}
+
+	private static void awaitTermination(ExecutorService executor) {
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				try {
+					if (executor.awaitTermination(Long.MAX_VALUE,
+							TimeUnit.MILLISECONDS))
+						return;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Delete the pack written by a writer whose sibling failed. The old packs
+	 * are kept in that case, so the pack is redundant, unless it replaced an
+	 * old pack of the same name.
+	 */
+	private void discardPack(Future<PackFile> task,
+			Collection<PackFile> oldPacks) {
+		if (task == null || !task.isDone() || task.isCancelled())
+			return;
+		PackFile pack;
+		try {
+			pack = task.get();
+		} catch (InterruptedException | ExecutionException e) {
+			return;
+		}
+		if (pack == null)
+			return;
+		for (PackFile old : oldPacks)
+			if (old.getPackName().equals(pack.getPackName()))
+				return;
+		pack.close();
+		String name = pack.getPackName();
+		for (PackExt ext : PackExt.values()) {
+			File f = nameFor(name, "." + ext.getExtension()); //$NON-NLS-1$
+			try {
+				FileUtils.delete(f, FileUtils.RETRY | FileUtils.SKIP_MISSING);
+			} catch (IOException e) {
+				// Leave the file for a later gc.
+			}
+		}
+		repo.getObjectDatabase().rescanPacks();
+	}
+
+	private static PackFile awaitPack(Future<PackFile> task)
+			throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			throw new IOException(
+					JGitText.get().packingCancelledDuringObjectsWriting, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
 	private PackFile writePack(@NonNull Set<? extends ObjectId> want,
 			@NonNull Set<? extends ObjectId> have, @NonNull Set<ObjectId> tags,
-			Set<ObjectId> tagTargets, List<ObjectIdSet> excludeObjects)
+			Set<ObjectId> tagTargets, List<ObjectIdSet> excludeObjects,
+			Collection<Ref> islandRefs, ProgressMonitor monitor,
+			PackConfig cfg) throws IOException {
+		checkCancelled();
+		try (PackWriter pw = new PackWriter(cfg, repo.newObjectReader())) {
+			// prepare the PackWriter
+			pw.setDeltaBaseAsOffset(true);
+			pw.setReuseDeltaCommits(false);
+			if (tagTargets != null) {
+				pw.setTagTargets(tagTargets);
+			}
+			if (islandRefs != null) {
+				pw.setDeltaIslandRefs(islandRefs);
+			}
+			if (excludeObjects != null)
+				for (ObjectIdSet idx : excludeObjects)
+					pw.excludeObjects(idx);
+			pw.preparePack(monitor, want, have, PackWriter.NONE, tags);
+			return writePack(pw, monitor);
+		}
+	}
+
+	private PackFile writePack(PackWriter pw, ProgressMonitor monitor)
 			throws IOException {
+		if (pw.getObjectCount() == 0)
+			return null;
 		checkCancelled();
+
 		File tmpPack = null;
 		Map<PackExt, File> tmpExts = new TreeMap<>(
 				new Comparator<PackExt>() {
@@ -998,23 +1409,7 @@ public int compare(PackExt o1, PackExt o2) {
 					}
 
 				});
-		try (PackWriter pw = new PackWriter(
-				(pconfig == null) ? new PackConfig(repo) : pconfig,
-				repo.newObjectReader())) {
-			// prepare the PackWriter
-			pw.setDeltaBaseAsOffset(true);
-			pw.setReuseDeltaCommits(false);
-			if (tagTargets != null) {
-				pw.setTagTargets(tagTargets);
-			}
-			if (excludeObjects != null)
-				for (ObjectIdSet idx : excludeObjects)
-					pw.excludeObjects(idx);
-			pw.preparePack(pm, want, have, PackWriter.NONE, tags);
-			if (pw.getObjectCount() == 0)
-				return null;
-			checkCancelled();
-
+		try {
 			// create temporary files
 			String id = pw.computeName().getName();
 			File packdir = new File(repo.getObjectsDirectory(), "pack"); //$NON-NLS-1$
@@ -1033,7 +1428,7 @@ public int compare(PackExt o1, PackExt o2) {
 			FileChannel channel = fos.getChannel();
 			OutputStream channelStream = Channels.newOutputStream(channel);
 			try {
-				pw.writePack(pm, pm, channelStream);
+				pw.writePack(monitor, monitor, channelStream);
 			} finally {
 				channel.force(true);
 				channelStream.close();
@@ -1052,7 +1447,7 @@ public int compare(PackExt o1, PackExt o2) {
 				fos.close();
 			}
 
-			if (pw.prepareBitmapIndex(pm)) {
+			if (pw.prepareBitmapIndex(monitor)) {
 				File tmpBitmapIdx = new File(packdir, tmpBase + ".bitmap_tmp"); //$NON-NLS-1$
 				tmpExts.put(BITMAP_INDEX, tmpBitmapIdx);
 
@@ -1295,6 +1690,39 @@ public void setPackConfig(PackConfig pconfig) {
 		this.pconfig = pconfig;
 	}
 
+	/**
+	 * Limit the memory used by delta compression while repacking.
+	 * <p>
+	 * The limit is shared between all pack writers running at the same time
+	 * and bounds their delta search memory, delta cache and the size of
+	 * objects considered for delta compression. It does not bound the memory
+	 * needed to enumerate the objects being packed. If not set the value of
+	 * {@code gc.memoryLimit} is used; 0 means no limit.
+	 *
+	 * @param limit
+	 *            maximum number of bytes, 0 for no limit.
+	 * @since 4.8
+	 */
+	public void setMemoryLimit(long limit) {
+		this.memoryLimit = limit;
+	}
+
+	/**
+	 * Write the pack of objects reachable from heads and tags and the pack of
+	 * other reachable objects at the same time.
+	 * <p>
+	 * The second pack is written on a separate thread and does not report
+	 * progress. If not set the value of {@code gc.parallelRepack} is used,
+	 * which defaults to {@code false}.
+	 *
+	 * @param parallel
+	 *            whether both packs may be written concurrently.
+	 * @since 4.8
+	 */
+	public void setParallelRepack(boolean parallel) {
+		this.parallelRepack = Boolean.valueOf(parallel);
+	}
+
 	/**
 	 * During gc() or prune() each unreferenced, loose object which has been
 	 * created or modified after or at <code>expire</code> will not be pruned.
@@ -69,6 +69,7 @@
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.errors.LockFailedException;
 import org.eclipse.jgit.errors.PackInvalidException;
 import org.eclipse.jgit.errors.PackMismatchException;
 import org.eclipse.jgit.internal.JGitText;
@@ -220,6 +221,30 @@ public ObjectDirectoryInserter newInserter() {
 		return new ObjectDirectoryInserter(this, config);
 	}
 
+	/**
+	 * Open an object directory holding objects not yet accepted into this one.
+	 * <p>
+	 * Lookups search {@code dir} first and then this directory. Closing the
+	 * returned directory leaves this directory open.
+	 *
+	 * @param dir
+	 *            location of the quarantined objects.
+	 * @return the quarantine directory.
+	 * @throws IOException
+	 *             the quarantine directory cannot be opened.
+	 */
+	ObjectDirectory newQuarantine(File dir) throws IOException {
+		ObjectDirectory q = new ObjectDirectory(config, dir, null, fs,
+				shallowFile);
+		q.alternates.set(new AlternateHandle[] { new AlternateHandle(this) {
+			@Override
+			void close() {
+				// The repository owns this directory, not the quarantine.
+			}
+		} });
+		return q;
+	}
+
 	@Override
 	public void close() {
 		unpackedObjectCache.clear();
@@ -747,6 +772,15 @@ InsertLooseObjectResult insertUnpackedObject(File tmp, ObjectId id,
 		return InsertLooseObjectResult.FAILURE;
 	}
 
+	/**
+	 * Scan the pack directory again, even if its modification time did not
+	 * change, so deleted pack files are dropped from the list of packs.
+	 * Packs that still exist keep their open file handles.
+	 */
+	void rescanPacks() {
+		scanPacks(packList.get());
+	}
+
 	private boolean searchPacksAgain(PackList old) {
 		// Whether to trust the pack folder's modification time. If set
 		// to false we will always scan the .git/objects/pack folder to
@@ -802,6 +836,38 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return shallowCommitsIds;
 	}
 
+	@Override
+	public void setShallowCommits(Set<ObjectId> shallowCommits)
+			throws IOException {
+		if (shallowFile == null) {
+			super.setShallowCommits(shallowCommits);
+			return;
+		}
+
+		if (shallowCommits.isEmpty()) {
+			FileUtils.delete(shallowFile, FileUtils.SKIP_MISSING);
+		} else {
+			List<ObjectId> sorted = new ArrayList<>(shallowCommits);
+			Collections.sort(sorted);
+			StringBuilder b = new StringBuilder(
+					sorted.size() * (Constants.OBJECT_ID_STRING_LENGTH + 1));
+			for (ObjectId id : sorted)
+				b.append(id.name()).append('\n');
+
+			LockFile lock = new LockFile(shallowFile);
+			if (!lock.lock())
+				throw new LockFailedException(shallowFile);
+			try {
+				lock.write(Constants.encode(b.toString()));
+				if (!lock.commit())
+					throw new LockFailedException(shallowFile);
+			} finally {
+				lock.unlock();
+			}
+		}
+		shallowFileSnapshot = FileSnapshot.DIRTY;
+	}
+
 	private void insertPack(final PackFile pf) {
 		PackList o, n;
 		do {
@@ -50,6 +50,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
@@ -65,8 +66,10 @@
 import org.eclipse.jgit.lib.CoreConfig;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.transport.PackQuarantine;
 import org.eclipse.jgit.transport.PackedObjectInfo;
 import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.util.NB;
@@ -122,6 +125,9 @@ public class ObjectDirectoryPackParser extends PackParser {
 	/** The pack that was created, if parsing was successful. */
 	private PackFile newPack;
 
+	/** Holds {@link #newPack} if the objects were quarantined. */
+	private Quarantine quarantine;
+
 	ObjectDirectoryPackParser(FileObjectDatabase odb, InputStream src) {
 		super(odb, src);
 		this.db = odb;
@@ -169,6 +175,11 @@ public PackFile getPackFile() {
 		return newPack;
 	}
 
+	@Override
+	public PackQuarantine getQuarantine() {
+		return quarantine;
+	}
+
 	@Override
 	public long getPackSize() {
 		if (newPack == null)
@@ -440,6 +451,39 @@ private PackLock renameAndOpenPack(final String lockMessage)
 		}
 
 		final String name = ObjectId.fromRaw(d.digest()).name();
+		if (isQuarantine() && db instanceof ObjectDirectory) {
+			quarantine = openQuarantine((ObjectDirectory) db, name,
+					lockMessage);
+			return null;
+		}
+		return movePack(name, lockMessage);
+	}
+
+	private Quarantine openQuarantine(ObjectDirectory odb, String name,
+			String lockMessage) throws IOException {
+		File dir = Files.createTempDirectory(db.getDirectory().toPath(),
+				"incoming-").toFile(); //$NON-NLS-1$
+		try {
+			File packDir = new File(dir, "pack"); //$NON-NLS-1$
+			FileUtils.mkdir(packDir);
+			File pack = new File(packDir, "pack-" + name + ".pack"); //$NON-NLS-1$ //$NON-NLS-2$
+			File idx = new File(packDir, "pack-" + name + ".idx"); //$NON-NLS-1$ //$NON-NLS-2$
+			FileUtils.rename(tmpPack, pack, StandardCopyOption.ATOMIC_MOVE);
+			FileUtils.rename(tmpIdx, idx, StandardCopyOption.ATOMIC_MOVE);
+
+			ObjectDirectory q = odb.newQuarantine(dir);
+			newPack = q.openPack(pack);
+			return new Quarantine(dir, q, name, pack, idx, lockMessage);
+		} catch (IOException e) {
+			cleanupTemporaryFiles();
+			FileUtils.delete(dir, FileUtils.RECURSIVE | FileUtils.RETRY
+					| FileUtils.IGNORE_ERRORS);
+			throw e;
+		}
+	}
+
+	private PackLock movePack(String name, String lockMessage)
+			throws IOException {
 		final File packDir = new File(db.getDirectory(), "pack"); //$NON-NLS-1$
 		final File finalPack = new File(packDir, "pack-" + name + ".pack"); //$NON-NLS-1$ //$NON-NLS-2$
 		final File finalIdx = new File(packDir, "pack-" + name + ".idx"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -511,4 +555,61 @@ private PackLock renameAndOpenPack(final String lockMessage)
 
 		return lockMessage != null ? keep : null;
 	}
+
+	private class Quarantine extends PackQuarantine {
+		private final File dir;
+
+		private final ObjectDirectory odb;
+
+		private final String name;
+
+		private final File pack;
+
+		private final File idx;
+
+		private final String lockMessage;
+
+		private boolean closed;
+
+		Quarantine(File dir, ObjectDirectory odb, String name, File pack,
+				File idx, String lockMessage) {
+			this.dir = dir;
+			this.odb = odb;
+			this.name = name;
+			this.pack = pack;
+			this.idx = idx;
+			this.lockMessage = lockMessage;
+		}
+
+		@Override
+		public ObjectReader newReader() {
+			return odb.newReader();
+		}
+
+		@Override
+		public PackLock commit() throws IOException {
+			odb.close();
+			tmpPack = pack;
+			tmpIdx = idx;
+			try {
+				return movePack(name, lockMessage);
+			} finally {
+				close();
+			}
+		}
+
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			odb.close();
+			try {
+				FileUtils.delete(dir, FileUtils.RECURSIVE | FileUtils.RETRY
+						| FileUtils.SKIP_MISSING);
+			} catch (IOException e) {
+				// Ignored. Nothing reads an abandoned quarantine.
+			}
+		}
+	}
 }
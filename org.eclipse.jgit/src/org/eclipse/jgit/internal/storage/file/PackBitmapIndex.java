@@ -175,6 +175,21 @@ public static PackBitmapIndex read(
 	public abstract EWAHCompressedBitmap ofObjectType(
 			EWAHCompressedBitmap bitmap, int type);
 
+	/**
+	 * Count the objects of a Git type among the leading objects of the pack.
+	 *
+	 * @param count
+	 *            number of objects at the start of the pack to look at.
+	 * @param type
+	 *            the Git type.
+	 * @return number of objects of the type among the first {@code count}
+	 *         objects of the pack.
+	 * @since 4.8
+	 */
+	public int countLeadingObjects(int count, int type) {
+		return ofObjectType(BitmapIndexImpl.ones(count), type).cardinality();
+	}
+
 	/**
 	 * Returns the previously constructed bitmap for the object.
 	 *
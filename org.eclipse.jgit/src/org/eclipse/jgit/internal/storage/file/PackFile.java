@@ -365,7 +365,17 @@ void copyPackAsIs(PackOutputStream out, WindowCursor curs)
 			throws IOException {
 		// Pin the first window, this ensures the length is accurate.
 		curs.pin(this, 0);
-		curs.copyPackAsIs(this, length, out);
+		curs.copyPackAsIs(this, length - 20, out);
+	}
+
+	void copyPackPrefixAsIs(PackOutputStream out, long end, WindowCursor curs)
+			throws IOException {
+		curs.pin(this, 0);
+		curs.copyPackAsIs(this, end, out);
+	}
+
+	long findOffset(AnyObjectId id) throws IOException {
+		return idx().findOffset(id);
 	}
 
 	final void copyAsIs(PackOutputStream out, LocalObjectToPack src,
@@ -63,6 +63,7 @@
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
 import org.eclipse.jgit.internal.storage.pack.PackOutputStream;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.internal.storage.pack.ReusablePackPrefix;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.BitmapIndex;
@@ -259,10 +260,39 @@ public void copyPackAsIs(PackOutputStream out, CachedPack pack)
 		((LocalCachedPack) pack).copyAsIs(out, this);
 	}
 
-	void copyPackAsIs(final PackFile pack, final long length,
+	@Override
+	public ReusablePackPrefix getReusablePackPrefixAndUpdate(
+			BitmapBuilder needBitmap) throws IOException {
+		for (PackFile pack : db.getPacks()) {
+			PackBitmapIndex index = pack.getBitmapIndex();
+			if (index == null)
+				continue;
+			int cnt = needBitmap.removeLeadingObjects(index);
+			if (cnt == 0)
+				continue;
+
+			// Pin the first window, this ensures the length is accurate.
+			pin(pack, 0);
+			long end;
+			if (cnt < index.getObjectCount())
+				end = pack.findOffset(index.getObject(cnt));
+			else
+				end = pack.length - 20;
+			return new LocalPackPrefix(pack, index, cnt, end);
+		}
+		return null;
+	}
+
+	@Override
+	public void copyPackPrefixAsIs(PackOutputStream out,
+			ReusablePackPrefix prefix) throws IOException {
+		((LocalPackPrefix) prefix).copyAsIs(out, this);
+	}
+
+	void copyPackAsIs(final PackFile pack, final long end,
 			final PackOutputStream out) throws IOException {
 		long position = 12;
-		long remaining = length - (12 + 20);
+		long remaining = end - 12;
 		while (0 < remaining) {
 			pin(pack, position);
 
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapObject;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+
+/**
+ * Assignment of the objects being packed to delta islands.
+ * <p>
+ * An island is the set of objects reachable from a group of references whose
+ * names match one of the configured island patterns. Capture groups in a
+ * pattern name the island, so {@code ^refs/virtual/([^/]+)/} creates one
+ * island per fork. An object may only be stored as a delta against a base that
+ * belongs to every island the object itself belongs to. A pack served for one
+ * island can then reuse every stored delta, as no delta base is ever only
+ * reachable from another island.
+ * <p>
+ * Objects outside of all islands may delta against any base, but are never
+ * used as a base for an object that belongs to an island.
+ */
+final class DeltaIslands {
+	/**
+	 * Compute the islands of objects included in the pack.
+	 *
+	 * @param patterns
+	 *            regular expressions selecting the references of each island.
+	 * @param refs
+	 *            all references of the repository.
+	 * @param reader
+	 *            reader to walk the object graph with.
+	 * @param objects
+	 *            objects being packed. Only these are assigned to islands.
+	 * @param pm
+	 *            progress monitor, updated once per object visited.
+	 * @return the islands; null if no reference matches any pattern.
+	 * @throws IOException
+	 *             the object graph cannot be walked.
+	 */
+	static DeltaIslands compute(List<String> patterns, Collection<Ref> refs,
+			ObjectReader reader, ObjectIdOwnerMap<ObjectToPack> objects,
+			ProgressMonitor pm) throws IOException {
+		Map<String, List<ObjectId>> tips = groupByIsland(patterns, refs);
+		if (tips.isEmpty())
+			return null;
+
+		DeltaIslands islands = new DeltaIslands(tips.size());
+		BitmapIndex bitmapIndex = reader.getBitmapIndex();
+		try (ObjectWalk walk = new ObjectWalk(reader)) {
+			PackWriterBitmapWalker bitmapWalker = null;
+			if (bitmapIndex != null)
+				bitmapWalker = new PackWriterBitmapWalker(
+						walk, bitmapIndex, pm);
+
+			int island = 0;
+			for (List<ObjectId> start : tips.values()) {
+				Map<Marks, Marks> added = new HashMap<>();
+				if (bitmapWalker != null) {
+					for (BitmapObject o : bitmapWalker.findObjects(
+							start, null, true))
+						islands.mark(objects, o.getObjectId(), island, added);
+				} else {
+					walk.reset();
+					for (ObjectId id : start) {
+						try {
+							walk.markStart(walk.parseAny(id));
+						} catch (MissingObjectException notFound) {
+							continue;
+						}
+					}
+					RevCommit c;
+					while ((c = walk.next()) != null) {
+						islands.mark(objects, c, island, added);
+						pm.update(1);
+					}
+					RevObject o;
+					while ((o = walk.nextObject()) != null) {
+						islands.mark(objects, o, island, added);
+						pm.update(1);
+					}
+				}
+				island++;
+			}
+		}
+		return islands;
+	}
+
+	private static Map<String, List<ObjectId>> groupByIsland(
+			List<String> patterns, Collection<Ref> refs) {
+		List<Pattern> compiled = new ArrayList<>(patterns.size());
+		for (String p : patterns)
+			compiled.add(Pattern.compile(p));
+
+		Map<String, List<ObjectId>> tips = new LinkedHashMap<>();
+		for (Ref ref : refs) {
+			if (ref.isSymbolic() || ref.getObjectId() == null)
+				continue;
+			String name = islandName(compiled, ref.getName());
+			if (name == null)
+				continue;
+			List<ObjectId> ids = tips.get(name);
+			if (ids == null) {
+				ids = new ArrayList<>();
+				tips.put(name, ids);
+			}
+			ids.add(ref.getObjectId());
+		}
+		return tips;
+	}
+
+	private static String islandName(List<Pattern> patterns, String refName) {
+		for (Pattern p : patterns) {
+			Matcher m = p.matcher(refName);
+			if (!m.find())
+				continue;
+			StringBuilder name = new StringBuilder();
+			for (int g = 1; g <= m.groupCount(); g++) {
+				if (g > 1)
+					name.append('-');
+				if (m.group(g) != null)
+					name.append(m.group(g));
+			}
+			return name.toString();
+		}
+		return null;
+	}
+
+	private final ObjectIdOwnerMap<Entry> entries;
+
+	private final Marks empty;
+
+	private DeltaIslands(int islandCount) {
+		entries = new ObjectIdOwnerMap<>();
+		empty = new Marks(new long[(islandCount + 63) >>> 6]);
+	}
+
+	private void mark(ObjectIdOwnerMap<ObjectToPack> objects, AnyObjectId id,
+			int island, Map<Marks, Marks> added) {
+		if (!objects.contains(id))
+			return;
+
+		Entry e = entries.get(id);
+		if (e == null) {
+			e = new Entry(id, empty);
+			entries.add(e);
+		}
+
+		// Objects tend to share island sets, so each distinct set is
+		// allocated once and the result of adding this island is reused.
+		Marks next = added.get(e.marks);
+		if (next == null) {
+			next = e.marks.with(island);
+			added.put(e.marks, next);
+		}
+		e.marks = next;
+	}
+
+	/**
+	 * Get the islands an object belongs to.
+	 *
+	 * @param id
+	 *            the object.
+	 * @return the object's islands; null if it belongs to no island.
+	 */
+	Marks get(AnyObjectId id) {
+		Entry e = entries.get(id);
+		return e != null ? e.marks : null;
+	}
+
+	/**
+	 * Check if {@code res} may be stored as a delta against {@code base}.
+	 *
+	 * @param res
+	 *            object that would be stored as a delta.
+	 * @param base
+	 *            candidate delta base.
+	 * @return true if every island of {@code res} also contains {@code base}.
+	 */
+	boolean canDelta(AnyObjectId res, AnyObjectId base) {
+		return canDelta(get(res), get(base));
+	}
+
+	static boolean canDelta(Marks res, Marks base) {
+		if (res == null || res == base)
+			return true;
+		if (base == null)
+			return false;
+		return res.isSubsetOf(base);
+	}
+
+	private static final class Entry extends ObjectIdOwnerMap.Entry {
+		Marks marks;
+
+		Entry(AnyObjectId id, Marks marks) {
+			super(id);
+			this.marks = marks;
+		}
+	}
+
+	/** Immutable set of islands shared by objects with the same membership. */
+	static final class Marks {
+		private final long[] bits;
+
+		private final int hash;
+
+		Marks(long[] bits) {
+			this.bits = bits;
+			this.hash = Arrays.hashCode(bits);
+		}
+
+		Marks with(int island) {
+			long[] n = bits.clone();
+			n[island >>> 6] |= 1L << (island & 63);
+			return new Marks(n);
+		}
+
+		boolean isSubsetOf(Marks other) {
+			for (int i = 0; i < bits.length; i++) {
+				if ((bits[i] & ~other.bits[i]) != 0)
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Marks && Arrays.equals(bits, ((Marks) o).bits);
+		}
+	}
+}
@@ -65,6 +65,7 @@ static final class Block {
 		final List<DeltaTask> tasks;
 		final int threads;
 		final PackConfig config;
+		final DeltaIslands islands;
 		final ObjectReader templateReader;
 		final DeltaCache dc;
 		final ThreadSafeProgressMonitor pm;
@@ -75,12 +76,14 @@ static final class Block {
 		private long totalWeight;
 		long bytesPerUnit;
 
-		Block(int threads, PackConfig config, ObjectReader reader,
-				DeltaCache dc, ThreadSafeProgressMonitor pm,
+		Block(int threads, PackConfig config, DeltaIslands islands,
+				ObjectReader reader, DeltaCache dc,
+				ThreadSafeProgressMonitor pm,
 				ObjectToPack[] list, int begin, int end) {
 			this.tasks = new ArrayList<>(threads);
 			this.threads = threads;
 			this.config = config;
+			this.islands = islands;
 			this.templateReader = reader;
 			this.dc = dc;
 			this.pm = pm;
@@ -318,8 +321,8 @@ public Object call() throws Exception {
 	}
 
 	DeltaWindow initWindow(Slice s) {
-		DeltaWindow w = new DeltaWindow(block.config, block.dc,
-				or, block.pm, block.bytesPerUnit,
+		DeltaWindow w = new DeltaWindow(block.config, block.islands,
+				block.dc, or, block.pm, block.bytesPerUnit,
 				block.list, s.beginIndex, s.endIndex);
 		synchronized (this) {
 			dw = w;
@@ -61,6 +61,7 @@ final class DeltaWindow {
 	private static final boolean NEXT_SRC = true;
 
 	private final PackConfig config;
+	private final DeltaIslands islands;
 	private final DeltaCache deltaCache;
 	private final ObjectReader reader;
 	private final ProgressMonitor monitor;
@@ -93,10 +94,11 @@ final class DeltaWindow {
 	/** Used to compress cached deltas. */
 	private Deflater deflater;
 
-	DeltaWindow(PackConfig pc, DeltaCache dc, ObjectReader or,
-			ProgressMonitor pm, long bpu,
+	DeltaWindow(PackConfig pc, DeltaIslands di, DeltaCache dc,
+			ObjectReader or, ProgressMonitor pm, long bpu,
 			ObjectToPack[] in, int beginIndex, int endIndex) {
 		config = pc;
+		islands = di;
 		deltaCache = dc;
 		reader = or;
 		monitor = pm;
@@ -160,6 +162,8 @@ void search() throws IOException {
 						clear(n);
 				}
 				res.set(next);
+				if (islands != null)
+					res.islands = islands.get(next);
 				clearWindowOnTypeSwitch();
 
 				if (res.object.isEdge() || res.object.doNotAttemptDelta()) {
@@ -268,6 +272,10 @@ private void searchInWindow() throws IOException {
 
 	private boolean delta(final DeltaWindowEntry src)
 			throws IOException {
+		// Never use a base outside of the islands this object belongs to.
+		if (!DeltaIslands.canDelta(res.islands, src.islands))
+			return NEXT_SRC;
+
 		// If the sizes are radically different, this is a bad pairing.
 		if (res.size() < src.size() >>> 4)
 			return NEXT_SRC;
@@ -54,10 +54,14 @@ final class DeltaWindowEntry {
 	/** Index of this object's content, to encode other deltas. Lazily loaded. */
 	DeltaIndex index;
 
+	/** Delta islands containing this object; null if not in any island. */
+	DeltaIslands.Marks islands;
+
 	final void set(ObjectToPack object) {
 		this.object = object;
 		this.index = null;
 		this.buffer = null;
+		this.islands = null;
 	}
 
 	/** @return current delta chain depth of this object. */
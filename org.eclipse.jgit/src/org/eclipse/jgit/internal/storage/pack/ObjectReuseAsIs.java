@@ -232,4 +232,46 @@ public abstract void copyPackAsIs(PackOutputStream out, CachedPack pack)
 	 */
 	public Collection<CachedPack> getCachedPacksAndUpdate(
 			BitmapBuilder needBitmap) throws IOException;
+
+	/**
+	 * Obtain the leading range of a pack whose objects are all in the bitmap,
+	 * and update the bitmap by removing the objects of that range.
+	 * <p>
+	 * Unlike a cached pack the range need not cover the entire pack, allowing
+	 * most of a clone to be sent as-is when the client wants only part of the
+	 * repository, or when a few objects were added after the pack was made.
+	 * Only packs with a bitmap index are considered. Deltas inside the range
+	 * must use offsets to reference their bases, as the pack writer stores
+	 * packs with bitmaps.
+	 *
+	 * @param needBitmap
+	 *            the bitmap that contains all of the objects the client wants.
+	 * @return the range to send; null if no pack starts with objects the
+	 *         client wants.
+	 * @throws IOException
+	 *             the packs cannot be listed from the repository. Callers may
+	 *             choose to ignore this and continue as-if there were no
+	 *             reusable range.
+	 * @since 4.8
+	 */
+	public ReusablePackPrefix getReusablePackPrefixAndUpdate(
+			BitmapBuilder needBitmap) throws IOException;
+
+	/**
+	 * Copy the leading range of a pack onto the output stream.
+	 * <p>
+	 * The range, excluding the pack header, is sent. The stream must be
+	 * positioned just after the header of the output pack.
+	 *
+	 * @param out
+	 *            stream to write the range onto.
+	 * @param prefix
+	 *            the range to send, as returned by
+	 *            {@link #getReusablePackPrefixAndUpdate(org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder)}.
+	 * @throws IOException
+	 *             the pack cannot be read, or stream did not accept a write.
+	 * @since 4.8
+	 */
+	public void copyPackPrefixAsIs(PackOutputStream out,
+			ReusablePackPrefix prefix) throws IOException;
 }
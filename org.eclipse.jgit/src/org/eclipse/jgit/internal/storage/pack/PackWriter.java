@@ -104,6 +104,7 @@
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
 import org.eclipse.jgit.revwalk.AsyncRevObjectQueue;
@@ -117,6 +118,7 @@
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.storage.pack.PackStatistics;
+import org.eclipse.jgit.transport.FilterSpec;
 import org.eclipse.jgit.transport.ObjectCountCallback;
 import org.eclipse.jgit.transport.WriteAbortedException;
 import org.eclipse.jgit.util.BlockList;
@@ -233,6 +235,8 @@ public static Iterable<PackWriter> getInstances() {
 
 	private List<CachedPack> cachedPacks = new ArrayList<>(2);
 
+	private ReusablePackPrefix reusedPrefix;
+
 	private Set<ObjectId> tagTargets = NONE;
 
 	private Set<? extends ObjectId> excludeFromBitmapSelection = NONE;
@@ -290,6 +294,12 @@ public static Iterable<PackWriter> getInstances() {
 
 	private Collection<? extends ObjectId> unshallowObjects;
 
+	private FilterSpec filterSpec = FilterSpec.NO_FILTER;
+
+	private Collection<Ref> islandRefs;
+
+	private DeltaIslands deltaIslands;
+
 	private PackBitmapIndexBuilder writeBitmaps;
 
 	private CRC32 crc32;
@@ -491,10 +501,13 @@ public boolean isUseCachedPacks() {
 	 * @param useCached
 	 *            if set to true and a cached pack is present, it will be
 	 *            appended onto the end of a thin-pack, reducing the amount of
-	 *            working set space and CPU used by PackWriter. Enabling this
-	 *            feature prevents PackWriter from creating an index for the
-	 *            newly created pack, so its only suitable for writing to a
-	 *            network client, where the client will make the index.
+	 *            working set space and CPU used by PackWriter. If no
+	 *            cached pack can be used in full, the leading range of a
+	 *            bitmapped pack may instead be copied onto the start of the
+	 *            output. Enabling this feature prevents PackWriter from
+	 *            creating an index for the newly created pack, so its only
+	 *            suitable for writing to a network client, where the client
+	 *            will make the index.
 	 */
 	public void setUseCachedPacks(boolean useCached) {
 		useCachedPacks = useCached;
@@ -515,7 +528,7 @@ public void setUseBitmaps(boolean useBitmaps) {
 
 	/** @return true if the index file cannot be created by this PackWriter. */
 	public boolean isIndexDisabled() {
-		return indexDisabled || !cachedPacks.isEmpty();
+		return indexDisabled || !cachedPacks.isEmpty() || reusedPrefix != null;
 	}
 
 	/**
@@ -564,6 +577,23 @@ public void setTagTargets(Set<ObjectId> objects) {
 		tagTargets = objects;
 	}
 
+	/**
+	 * Set the references used to compute delta islands.
+	 * <p>
+	 * References matching one of {@link PackConfig#getDeltaIslandPatterns()}
+	 * define the islands. Objects are only stored as a delta against a base
+	 * reachable from every island that contains the object, so that a pack
+	 * later sent for any single island can reuse the deltas as-is. Has no
+	 * effect if no island patterns are configured.
+	 *
+	 * @param refs
+	 *            all references of the repository being packed.
+	 * @since 4.8
+	 */
+	public void setDeltaIslandRefs(Collection<Ref> refs) {
+		islandRefs = refs;
+	}
+
 	/**
 	 * Configure this pack for a shallow clone.
 	 *
@@ -581,6 +611,23 @@ public void setShallowPack(int depth,
 		this.unshallowObjects = unshallow;
 	}
 
+	/**
+	 * Omit trees and blobs from the pack, as requested by a partial clone.
+	 * <p>
+	 * Objects passed as "want" to {@code preparePack} are always included.
+	 * Filtered packs are never thin, as the receiver may lack the objects
+	 * the filter omitted from its earlier packs, and bitmaps are only used
+	 * by filters that do not depend on an object's path.
+	 *
+	 * @param filter
+	 *            the objects to omit; {@link FilterSpec#NO_FILTER} to send
+	 *            every object.
+	 * @since 4.8
+	 */
+	public void setFilterSpec(FilterSpec filter) {
+		filterSpec = filter != null ? filter : FilterSpec.NO_FILTER;
+	}
+
 	/**
 	 * Returns objects number in a pack file that was created by this writer.
 	 *
@@ -599,6 +646,8 @@ public long getObjectCount() throws IOException {
 
 			for (CachedPack pack : cachedPacks)
 				objCnt += pack.getObjectCount();
+			if (reusedPrefix != null)
+				objCnt += reusedPrefix.getObjectCount();
 			return objCnt;
 		}
 		return stats.totalObjects;
@@ -617,7 +666,7 @@ public long getObjectCount() throws IOException {
 	 */
 	public ObjectIdOwnerMap<ObjectIdOwnerMap.Entry> getObjectSet()
 			throws IOException {
-		if (!cachedPacks.isEmpty())
+		if (!cachedPacks.isEmpty() || reusedPrefix != null)
 			throw new IOException(
 					JGitText.get().cachedPacksPreventsListingObjects);
 
@@ -857,7 +906,9 @@ public void preparePack(ProgressMonitor countingMonitor,
 	 */
 	public boolean willInclude(final AnyObjectId id) throws IOException {
 		ObjectToPack obj = objectsMap.get(id);
-		return obj != null && !obj.isEdge();
+		if (obj != null)
+			return !obj.isEdge();
+		return reusedPrefix != null && 0 <= reusedPrefix.findOffset(id);
 	}
 
 	/**
@@ -996,6 +1047,9 @@ private void beginPhase(PackingPhase phase, ProgressMonitor monitor,
 		case BUILDING_BITMAPS:
 			task = JGitText.get().buildingBitmaps;
 			break;
+		case MARKING_ISLANDS:
+			task = JGitText.get().markingDeltaIslands;
+			break;
 		default:
 			throw new IllegalArgumentException(
 					MessageFormat.format(JGitText.get().illegalPackingPhase, phase));
@@ -1059,6 +1113,9 @@ public void writePack(ProgressMonitor compressMonitor,
 					TimeUnit.MILLISECONDS);
 		}
 
+		if (islandRefs != null
+				&& !config.getDeltaIslandPatterns().isEmpty())
+			findDeltaIslands(compressMonitor);
 		if (needSearchForReuse)
 			searchForReuse(compressMonitor);
 		if (config.isDeltaCompress())
@@ -1082,7 +1139,16 @@ public void writePack(ProgressMonitor compressMonitor,
 			out.writeFileHeader(PACK_VERSION_GENERATED, objCnt);
 			out.flush();
 
+			if (reusedPrefix != null)
+				reuseSupport.copyPackPrefixAsIs(out, reusedPrefix);
 			writeObjects(out);
+			if (reusedPrefix != null) {
+				for (int type = OBJ_COMMIT; type <= OBJ_TAG; type++) {
+					long cnt = reusedPrefix.getObjectCount(type);
+					stats.objectTypes[type].cntObjects += cnt;
+					stats.objectTypes[type].reusedObjects += cnt;
+				}
+			}
 			if (!edgeObjects.isEmpty() || !cachedPacks.isEmpty()) {
 				for (PackStatistics.ObjectType.Accumulator typeStat : stats.objectTypes) {
 					if (typeStat == null)
@@ -1147,6 +1213,14 @@ public void close() {
 		instances.remove(selfRef);
 	}
 
+	private void findDeltaIslands(ProgressMonitor monitor) throws IOException {
+		beginPhase(PackingPhase.MARKING_ISLANDS, monitor,
+				ProgressMonitor.UNKNOWN);
+		deltaIslands = DeltaIslands.compute(config.getDeltaIslandPatterns(),
+				islandRefs, reader, objectsMap, monitor);
+		endPhase(monitor);
+	}
+
 	private void searchForReuse(ProgressMonitor monitor) throws IOException {
 		long cnt = 0;
 		cnt += objectsLists[OBJ_COMMIT].size();
@@ -1403,7 +1477,7 @@ private void singleThreadDeltaSearch(ProgressMonitor monitor,
 			cost++;
 
 		beginPhase(PackingPhase.COMPRESSING, monitor, cost);
-		new DeltaWindow(config, new DeltaCache(config), reader,
+		new DeltaWindow(config, deltaIslands, new DeltaCache(config), reader,
 				monitor, bytesPerUnit,
 				list, 0, cnt).search();
 		endPhase(monitor);
@@ -1414,7 +1488,7 @@ private void parallelDeltaSearch(ProgressMonitor monitor,
 		DeltaCache dc = new ThreadSafeDeltaCache(config);
 		ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(monitor);
 		DeltaTask.Block taskBlock = new DeltaTask.Block(threads, config,
-				reader, dc, pm,
+				deltaIslands, reader, dc, pm,
 				list, 0, cnt);
 		taskBlock.partitionTasks();
 		beginPhase(PackingPhase.COMPRESSING, monitor, taskBlock.cost());
@@ -1706,17 +1780,22 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 		stats.interestingObjects = Collections.unmodifiableSet(new HashSet<ObjectId>(want));
 		stats.uninterestingObjects = Collections.unmodifiableSet(new HashSet<ObjectId>(have));
 		excludeFromBitmapSelection = noBitmaps;
+		if (!filterSpec.isNoOp())
+			thin = false;
 
 		canBuildBitmaps = config.isBuildBitmaps()
 				&& !shallowPack
 				&& have.isEmpty()
+				&& filterSpec.isNoOp()
 				&& (excludeInPacks == null || excludeInPacks.length == 0);
-		if (!shallowPack && useBitmaps) {
+		if (!shallowPack && useBitmaps && filterSpec.getTreeDepthLimit() < 0) {
 			BitmapIndex bitmapIndex = reader.getBitmapIndex();
 			if (bitmapIndex != null) {
 				PackWriterBitmapWalker bitmapWalker = new PackWriterBitmapWalker(
 						walker, bitmapIndex, countingMonitor);
 				findObjectsToPackUsingBitmaps(bitmapWalker, want, have);
+				if (!filterSpec.isNoOp())
+					addFilteredWants(walker, want);
 				endPhase(countingMonitor);
 				stats.timeCounting = System.currentTimeMillis() - countingStart;
 				stats.bitmapIndexMisses = bitmapWalker.getCountOfBitmapIndexMisses();
@@ -1887,7 +1966,7 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 			while ((o = walker.nextObject()) != null) {
 				if (o.has(RevFlag.UNINTERESTING))
 					continue;
-				if (exclude(o))
+				if (exclude(o) || omitByFilter(walker, o, want))
 					continue;
 
 				int pathHash = walker.getPathHashCode();
@@ -1902,15 +1981,19 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 			while ((o = walker.nextObject()) != null) {
 				if (o.has(RevFlag.UNINTERESTING))
 					continue;
-				if (exclude(o))
+				if (exclude(o) || omitByFilter(walker, o, want))
 					continue;
 				addObject(o, walker.getPathHashCode());
 				countingMonitor.update(1);
 			}
 		}
+		if (!filterSpec.isNoOp())
+			addFilteredWants(walker, want);
 
 		for (CachedPack pack : cachedPacks)
 			countingMonitor.update((int) pack.getObjectCount());
+		if (reusedPrefix != null)
+			countingMonitor.update((int) reusedPrefix.getObjectCount());
 		endPhase(countingMonitor);
 		stats.timeCounting = System.currentTimeMillis() - countingStart;
 		stats.bitmapIndexMisses = -1;
@@ -1927,16 +2010,30 @@ private void findObjectsToPackUsingBitmaps(
 		BitmapBuilder needBitmap = wantBitmap.andNot(haveBitmap);
 
 		if (useCachedPacks && reuseSupport != null && !reuseValidate
+				&& filterSpec.isNoOp()
 				&& (excludeInPacks == null || excludeInPacks.length == 0))
 			cachedPacks.addAll(
 					reuseSupport.getCachedPacksAndUpdate(needBitmap));
 
+		// Without a whole cached pack, try to send the leading objects of a
+		// bitmapped pack as-is. Deltas in the range are copied verbatim, so
+		// the client must accept offset deltas.
+		if (useCachedPacks && cachedPacks.isEmpty() && reuseSupport != null
+				&& !reuseValidate && deltaBaseAsOffset && filterSpec.isNoOp()
+				&& (excludeInPacks == null || excludeInPacks.length == 0))
+			reusedPrefix = reuseSupport
+					.getReusablePackPrefixAndUpdate(needBitmap);
+
 		for (BitmapObject obj : needBitmap) {
 			ObjectId objectId = obj.getObjectId();
 			if (exclude(objectId)) {
 				needBitmap.remove(objectId);
 				continue;
 			}
+			if (obj.getType() == OBJ_BLOB && omitBlob(objectId, want)) {
+				needBitmap.remove(objectId);
+				continue;
+			}
 			addObject(objectId, obj.getType(), 0);
 		}
 
@@ -1944,6 +2041,56 @@ private void findObjectsToPackUsingBitmaps(
 			haveObjects = haveBitmap;
 	}
 
+	private boolean omitByFilter(ObjectWalk walker, RevObject o,
+			Set<? extends ObjectId> want) throws IOException {
+		int type = o.getType();
+		if (type == OBJ_BLOB && omitBlob(o, want))
+			return true;
+		long limit = filterSpec.getTreeDepthLimit();
+		if (limit < 0 || (type != OBJ_TREE && type != OBJ_BLOB)
+				|| want.contains(o))
+			return false;
+
+		// The root tree has an empty path and depth 0; each path component
+		// below it adds one. Where an object is reachable under several
+		// paths, the first path the walk visits decides.
+		int pathLen = walker.getPathLength();
+		if (pathLen == 0)
+			return limit == 0;
+		byte[] path = walker.getPathBuffer();
+		long objDepth = 1;
+		for (int i = 0; i < pathLen && objDepth < limit; i++) {
+			if (path[i] == '/')
+				objDepth++;
+		}
+		return objDepth >= limit;
+	}
+
+	private boolean omitBlob(AnyObjectId id, Set<? extends ObjectId> want)
+			throws IOException {
+		long limit = filterSpec.getBlobLimit();
+		if (limit < 0 || want.contains(id))
+			return false;
+		return limit == 0 || reader.getObjectSize(id, OBJ_BLOB) >= limit;
+	}
+
+	/**
+	 * Add wanted trees and blobs the walk skipped as reachable from a "have".
+	 * A partial clone asks for such objects by name when it finds them
+	 * missing, so they must be sent even though the other side has a commit
+	 * that references them.
+	 */
+	private void addFilteredWants(ObjectWalk walker,
+			Set<? extends ObjectId> want) throws IOException {
+		for (ObjectId id : want) {
+			if (objectsMap.contains(id) || exclude(id))
+				continue;
+			RevObject o = walker.parseAny(id);
+			if (o.getType() == OBJ_TREE || o.getType() == OBJ_BLOB)
+				addObject(o, 0);
+		}
+	}
+
 	private static void pruneEdgesFromObjectList(List<ObjectToPack> list) {
 		final int size = list.size();
 		int src = 0;
@@ -2044,7 +2191,9 @@ public void select(ObjectToPack otp, StoredObjectRepresentation next) {
 		if (nFmt == PACK_DELTA && reuseDeltas && reuseDeltaFor(otp)) {
 			ObjectId baseId = next.getDeltaBase();
 			ObjectToPack ptr = objectsMap.get(baseId);
-			if (ptr != null && !ptr.isEdge()) {
+			if (ptr == null)
+				ptr = findInPrefix(baseId, otp.getType());
+			if (ptr != null && !ptr.isEdge() && inSameIsland(otp, ptr)) {
 				otp.setDeltaBase(ptr);
 				otp.setReuseAsIs();
 			} else if (thin && have(ptr, baseId)) {
@@ -2075,6 +2224,31 @@ public void select(ObjectToPack otp, StoredObjectRepresentation next) {
 		otp.select(next);
 	}
 
+	private ObjectToPack findInPrefix(ObjectId baseId, int type) {
+		if (reusedPrefix == null)
+			return null;
+		long offset;
+		try {
+			offset = reusedPrefix.findOffset(baseId);
+		} catch (IOException e) {
+			// Treat the base as unavailable and send the object whole.
+			return null;
+		}
+		if (offset < 0)
+			return null;
+
+		// The base was already written by the prefix at the same offset it
+		// has in the source pack, so the delta can refer back to it.
+		ObjectToPack base = new ObjectToPack(baseId, type);
+		base.setOffset(offset);
+		objectsMap.add(base);
+		return base;
+	}
+
+	private boolean inSameIsland(ObjectToPack otp, ObjectToPack base) {
+		return deltaIslands == null || deltaIslands.canDelta(otp, base);
+	}
+
 	private final boolean have(ObjectToPack ptr, AnyObjectId objectId) {
 		return (ptr != null && ptr.isEdge())
 				|| (haveObjects != null && haveObjects.contains(objectId));
@@ -2101,7 +2275,7 @@ private final boolean have(ObjectToPack ptr, AnyObjectId objectId) {
 	 */
 	public boolean prepareBitmapIndex(ProgressMonitor pm) throws IOException {
 		if (!canBuildBitmaps || getObjectCount() > Integer.MAX_VALUE
-				|| !cachedPacks.isEmpty())
+				|| !cachedPacks.isEmpty() || reusedPrefix != null)
 			return false;
 
 		if (pm == null)
@@ -2505,7 +2679,14 @@ public static enum PackingPhase {
 		WRITING,
 
 		/** Building bitmaps phase. */
-		BUILDING_BITMAPS;
+		BUILDING_BITMAPS,
+
+		/**
+		 * Marking delta islands phase.
+		 *
+		 * @since 4.8
+		 */
+		MARKING_ISLANDS;
 	}
 
 	/** Summary of the current state of a PackWriter. */
@@ -63,7 +63,7 @@
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 
 /** Helper class for PackWriter to do ObjectWalks with pack index bitmaps. */
-final class PackWriterBitmapWalker {
+public final class PackWriterBitmapWalker {
 
 	private final ObjectWalk walker;
 
@@ -73,7 +73,17 @@ final class PackWriterBitmapWalker {
 
 	private long countOfBitmapIndexMisses;
 
-	PackWriterBitmapWalker(
+	/**
+	 * Create a bitmap walker.
+	 *
+	 * @param walker
+	 *            walker to use when traversing the object graph.
+	 * @param bitmapIndex
+	 *            index to obtain bitmaps from.
+	 * @param pm
+	 *            progress monitor to report progress on; may be null.
+	 */
+	public PackWriterBitmapWalker(
 			ObjectWalk walker, BitmapIndex bitmapIndex, ProgressMonitor pm) {
 		this.walker = walker;
 		this.bitmapIndex = bitmapIndex;
@@ -84,7 +94,28 @@ long getCountOfBitmapIndexMisses() {
 		return countOfBitmapIndexMisses;
 	}
 
-	BitmapBuilder findObjects(Iterable<? extends ObjectId> start, BitmapBuilder seen,
+	/**
+	 * Find all objects reachable from the starting points.
+	 * <p>
+	 * Commits without a bitmap are walked until a commit with a bitmap is
+	 * found, whose bitmap is then used for its entire history.
+	 *
+	 * @param start
+	 *            objects to start the walk from.
+	 * @param seen
+	 *            objects already known to be reachable; may be null.
+	 * @param ignoreMissing
+	 *            skip starting points an object reachable from them is
+	 *            missing for, instead of failing.
+	 * @return objects reachable from {@code start}.
+	 * @throws MissingObjectException
+	 *             an object is missing and {@code ignoreMissing} is false.
+	 * @throws IncorrectObjectTypeException
+	 *             an object does not have the expected type.
+	 * @throws IOException
+	 *             an object could not be read.
+	 */
+	public BitmapBuilder findObjects(Iterable<? extends ObjectId> start, BitmapBuilder seen,
 			boolean ignoreMissing)
 			throws MissingObjectException, IncorrectObjectTypeException,
 				   IOException {
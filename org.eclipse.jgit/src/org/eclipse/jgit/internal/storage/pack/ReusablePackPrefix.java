@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/**
+ * Describes a leading range of a pack file {@link ObjectReuseAsIs} can copy
+ * onto the start of a stream.
+ * <p>
+ * Every object in the range is needed by the pack being written, so the bytes
+ * following the source pack's header can be copied verbatim immediately after
+ * the header of the output pack. Objects keep their offsets, so deltas within
+ * the range remain valid and objects written after it may use the range's
+ * objects as offset delta bases.
+ */
+public abstract class ReusablePackPrefix {
+	/**
+	 * Get the number of objects in this range.
+	 *
+	 * @return the object count of the range.
+	 */
+	public abstract long getObjectCount();
+
+	/**
+	 * Get the number of objects of a type in this range.
+	 *
+	 * @param type
+	 *            the Git type of the objects to count.
+	 * @return the number of objects of the type in the range.
+	 */
+	public abstract long getObjectCount(int type);
+
+	/**
+	 * Get the position of the first byte following this range.
+	 * <p>
+	 * This is also the size of the range including the 12 byte pack header.
+	 *
+	 * @return offset of the first object not included in the range.
+	 */
+	public abstract long getEndOffset();
+
+	/**
+	 * Locate an object within this range.
+	 *
+	 * @param id
+	 *            the object to find.
+	 * @return offset of the object within the range, which is also its offset
+	 *         within the output pack; -1 if the object is not in this range.
+	 * @throws IOException
+	 *             the pack index cannot be read.
+	 */
+	public abstract long findOffset(AnyObjectId id) throws IOException;
+}
@@ -206,6 +206,20 @@ public interface BitmapBuilder extends Bitmap {
 		 */
 		boolean removeAllOrNone(PackBitmapIndex bitmapIndex);
 
+		/**
+		 * Determines how many of the leading objects of the bitmap index, in
+		 * pack order, are contained in the bitmap. The matching bits are
+		 * removed from the bitmap. If the bitmap index is null or is not the
+		 * index this bitmap was built from, 0 is returned.
+		 *
+		 * @param bitmapIndex
+		 *            the bitmap index whose leading objects are checked.
+		 * @return number of objects at the start of the pack that were all
+		 *         contained in the bitmap and have now been removed from it.
+		 * @since 4.8
+		 */
+		int removeLeadingObjects(PackBitmapIndex bitmapIndex);
+
 		/** @return the number of elements in the bitmap. */
 		int cardinality();
 
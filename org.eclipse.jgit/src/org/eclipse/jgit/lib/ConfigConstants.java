@@ -113,6 +113,12 @@ public class ConfigConstants {
 	 */
 	public static final String CONFIG_FILTER_SECTION = "filter";
 
+	/**
+	 * The "extensions" section
+	 * @since 4.8
+	 */
+	public static final String CONFIG_EXTENSIONS_SECTION = "extensions";
+
 	/** The "algorithm" key */
 	public static final String CONFIG_KEY_ALGORITHM = "algorithm";
 
@@ -375,6 +381,22 @@ public class ConfigConstants {
 	 */
 	public static final String CONFIG_KEY_USEJGITBUILTIN = "useJGitBuiltin";
 
+	/**
+	 * The "process" key in the filter section, the command of a long-running
+	 * filter process
+	 *
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_PROCESS = "process";
+
+	/**
+	 * The "parallelDownloads" key in the fetch section, the number of objects
+	 * a fetch over a dumb transport downloads concurrently
+	 *
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_PARALLEL_DOWNLOADS = "parallelDownloads";
+
 	/**
 	 * The "fetchRecurseSubmodules" key
 	 * @since 4.7
@@ -386,4 +408,36 @@ public class ConfigConstants {
 	 * @since 4.7
 	 */
 	public static final String CONFIG_KEY_RECURSE_SUBMODULES = "recurseSubmodules";
+
+	/**
+	 * The "memoryLimit" key
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_MEMORY_LIMIT = "memoryLimit";
+
+	/**
+	 * The "parallelRepack" key
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_PARALLEL_REPACK = "parallelRepack";
+
+	/**
+	 * The "partialclone" key in the extensions section, the remote a partial
+	 * clone fetches missing objects from
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_PARTIAL_CLONE = "partialclone";
+
+	/**
+	 * The "promisor" key in a remote section
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_PROMISOR = "promisor";
+
+	/**
+	 * The "partialclonefilter" key in a remote section, the filter applied
+	 * when fetching from a promisor remote
+	 * @since 4.8
+	 */
+	public static final String CONFIG_KEY_PARTIAL_CLONE_FILTER = "partialclonefilter";
 }
@@ -398,6 +398,14 @@ public final class Constants {
 	 */
 	public static final String BUILTIN_FILTER_PREFIX = "jgit://builtin/";
 
+	/**
+	 * Filter commands handled by a long-running filter process start with
+	 * this prefix
+	 *
+	 * @since 4.8
+	 */
+	public static final String PROCESS_FILTER_PREFIX = "jgit://process/";
+
 	/** Name of the ignore file */
 	public static final String DOT_GIT_IGNORE = ".gitignore";
 
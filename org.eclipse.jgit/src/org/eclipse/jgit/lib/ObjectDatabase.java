@@ -44,9 +44,11 @@
 package org.eclipse.jgit.lib;
 
 import java.io.IOException;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.JGitText;
 
 /**
  * Abstraction of arbitrary object storage.
@@ -125,6 +127,27 @@ public boolean has(final AnyObjectId objectId) throws IOException {
 		}
 	}
 
+	/**
+	 * Replace the shallow commits of this database.
+	 * <p>
+	 * The parents of a shallow commit are not stored in the database, and
+	 * readers treat the commit as having no parents. The set is read through
+	 * {@link ObjectReader#getShallowCommits()}.
+	 *
+	 * @param shallowCommits
+	 *            the new shallow commits; empty if the history stored in the
+	 *            database is complete.
+	 * @throws IOException
+	 *             the shallow commits cannot be stored, or the database does
+	 *             not support shallow commits.
+	 * @since 4.8
+	 */
+	public void setShallowCommits(Set<ObjectId> shallowCommits)
+			throws IOException {
+		if (!shallowCommits.isEmpty())
+			throw new IOException(JGitText.get().shallowCommitsNotSupported);
+	}
+
 	/**
 	 * Open an object from this database.
 	 * <p>
@@ -71,6 +71,7 @@
 import org.eclipse.jgit.annotations.NonNull;
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.attributes.AttributesNodeProvider;
+import org.eclipse.jgit.attributes.FilterProcess;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.errors.AmbiguousObjectException;
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -147,6 +148,9 @@ public static ListenerList getGlobalListenerList() {
 	/** If not bare, the index file caching the working file states. */
 	private final File indexFile;
 
+	/** Long-running filter processes started for this repository, by driver. */
+	private final Map<String, FilterProcess> filterProcesses = new HashMap<>();
+
 	/**
 	 * Initialize a new repository instance.
 	 *
@@ -258,6 +262,32 @@ public ObjectReader newObjectReader() {
 	@NonNull
 	public abstract AttributesNodeProvider createAttributesNodeProvider();
 
+	/**
+	 * Get the long-running filter process of a filter driver.
+	 * <p>
+	 * The process configured by {@code filter.<driver>.process} is started
+	 * on first use and reused for later requests until this repository is
+	 * closed, or until communication with the process fails.
+	 *
+	 * @param driver
+	 *            name of the filter driver.
+	 * @return the running process.
+	 * @throws IOException
+	 *             the process could not be started.
+	 * @since 4.8
+	 */
+	@NonNull
+	public FilterProcess getFilterProcess(String driver) throws IOException {
+		synchronized (filterProcesses) {
+			FilterProcess p = filterProcesses.get(driver);
+			if (p == null || !p.isUsable()) {
+				p = new FilterProcess(this, driver);
+				filterProcesses.put(driver, p);
+			}
+			return p;
+		}
+	}
+
 	/**
 	 * @return the used file system abstraction, or or {@code null} if
 	 *         repository isn't local.
@@ -917,11 +947,18 @@ public void close() {
 	/**
 	 * Invoked when the use count drops to zero during {@link #close()}.
 	 * <p>
-	 * The default implementation closes the object and ref databases.
+	 * The default implementation closes the object and ref databases and
+	 * terminates long-running filter processes.
 	 */
 	protected void doClose() {
 		getObjectDatabase().close();
 		getRefDatabase().close();
+		synchronized (filterProcesses) {
+			for (FilterProcess p : filterProcesses.values()) {
+				p.close();
+			}
+			filterProcesses.clear();
+		}
 	}
 
 	@Override
@@ -48,6 +48,7 @@
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
 
 /**
  * Only produce commits which are below a specified depth.
@@ -78,6 +79,18 @@ class DepthGenerator extends Generator {
 	 */
 	private final RevFlag REINTERESTING;
 
+	/**
+	 * Commits made before this time (in seconds) are not produced, unless
+	 * they are a starting point of the walk.
+	 */
+	private final int deepenSince;
+
+	/**
+	 * Commits reachable from a deepen-not commit. Neither they nor their
+	 * ancestors are produced, unless they are a starting point of the walk.
+	 */
+	private final RevFlag DEEPEN_NOT;
+
 	/**
 	 * @param w
 	 * @param s Parent generator
@@ -93,6 +106,8 @@ class DepthGenerator extends Generator {
 		this.depth = w.getDepth();
 		this.UNSHALLOW = w.getUnshallowFlag();
 		this.REINTERESTING = w.getReinterestingFlag();
+		this.deepenSince = w.getDeepenSince();
+		this.DEEPEN_NOT = w.getDeepenNotFlag();
 
 		s.shareFreeList(pending);
 
@@ -105,6 +120,50 @@ class DepthGenerator extends Generator {
 			if (((DepthWalk.Commit) c).getDepth() == 0)
 				pending.add(c);
 		}
+
+		if (DEEPEN_NOT != null)
+			markDeepenNots(w.getDeepenNots());
+	}
+
+	/**
+	 * Flag the history of the deepen-not commits.
+	 * <p>
+	 * The flags are set on the commits of the walk itself, so commits parsed
+	 * here are not parsed again when the depth is computed.
+	 */
+	private void markDeepenNots(Iterable<ObjectId> ids)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		FIFORevQueue q = new FIFORevQueue();
+		for (ObjectId id : ids) {
+			RevCommit c = walk.parseCommit(id);
+			if (!c.has(DEEPEN_NOT)) {
+				c.add(DEEPEN_NOT);
+				q.add(c);
+			}
+		}
+		RevCommit c;
+		while ((c = q.next()) != null) {
+			if ((c.flags & RevWalk.PARSED) == 0)
+				c.parseHeaders(walk);
+			for (RevCommit p : c.parents) {
+				if (!p.has(DEEPEN_NOT)) {
+					p.add(DEEPEN_NOT);
+					q.add(p);
+				}
+			}
+		}
+	}
+
+	private boolean isExcluded(RevCommit c) throws MissingObjectException,
+			IncorrectObjectTypeException, IOException {
+		if (DEEPEN_NOT != null && c.has(DEEPEN_NOT))
+			return true;
+		if (deepenSince == 0)
+			return false;
+		if ((c.flags & RevWalk.PARSED) == 0)
+			c.parseHeaders(walk);
+		return c.getCommitTime() < deepenSince;
 	}
 
 	@Override
@@ -128,7 +187,6 @@ RevCommit next() throws MissingObjectException,
 			final DepthWalk.Commit c = (DepthWalk.Commit) pending.next();
 			if (c == null)
 				return null;
-
 			if ((c.flags & RevWalk.PARSED) == 0)
 				c.parseHeaders(walk);
 
@@ -145,9 +203,12 @@ RevCommit next() throws MissingObjectException,
 					dp.depth = newDepth;
 
 					// If the parent is not too deep, add it to the queue
-					// so that we can produce it later
-					if (newDepth <= depth)
+					// so that we can produce it later. Otherwise its child
+					// becomes a shallow boundary.
+					if (newDepth <= depth && !isExcluded(p))
 						pending.add(p);
+					else
+						dp.makesChildBoundary = true;
 				}
 
 				// If the current commit has become unshallowed, everything
@@ -45,10 +45,13 @@
 package org.eclipse.jgit.revwalk;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 
@@ -63,16 +66,60 @@ public interface DepthWalk {
 	/** @return flag marking commits that are interesting again. */
 	public RevFlag getReinterestingFlag();
 
+	/**
+	 * @return commit time in seconds since the epoch that commits must be at
+	 *         or after to be returned; 0 to not filter by commit time.
+	 * @since 4.8
+	 */
+	public default int getDeepenSince() {
+		return 0;
+	}
+
+	/**
+	 * @return commits whose history must not be returned, in addition to the
+	 *         depth and commit time limits.
+	 * @since 4.8
+	 */
+	public default List<ObjectId> getDeepenNots() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return flag marking commits reachable from {@link #getDeepenNots()};
+	 *         null if the walk does not support excluding history.
+	 * @since 4.8
+	 */
+	public default RevFlag getDeepenNotFlag() {
+		return null;
+	}
+
 	/** RevCommit with a depth (in commits) from a root. */
 	public static class Commit extends RevCommit {
 		/** Depth of this commit in the graph, via shortest path. */
 		int depth;
 
+		/** A parent of this commit was cut off from the walk. */
+		boolean makesChildBoundary;
+
 		/** @return depth of this commit, as found by the shortest path. */
 		public int getDepth() {
 			return depth;
 		}
 
+		/**
+		 * @return true if a parent of this commit was not walked because of
+		 *         the depth, commit time or excluded history limits. The
+		 *         commit is shallow in the client after the fetch.
+		 * @since 4.8
+		 */
+		public boolean isBoundary() {
+			for (RevCommit p : parents) {
+				if (((Commit) p).makesChildBoundary)
+					return true;
+			}
+			return false;
+		}
+
 		/**
 		 * Initialize a new commit.
 		 *
@@ -93,6 +140,12 @@ public class RevWalk extends org.eclipse.jgit.revwalk.RevWalk implements DepthWa
 
 		private final RevFlag REINTERESTING;
 
+		private final RevFlag DEEPEN_NOT;
+
+		private int deepenSince;
+
+		private List<ObjectId> deepenNots = Collections.emptyList();
+
 		/**
 		 * @param repo Repository to walk
 		 * @param depth Maximum depth to return
@@ -103,6 +156,7 @@ public RevWalk(Repository repo, int depth) {
 			this.depth = depth;
 			this.UNSHALLOW = newFlag("UNSHALLOW"); //$NON-NLS-1$
 			this.REINTERESTING = newFlag("REINTERESTING"); //$NON-NLS-1$
+			this.DEEPEN_NOT = newFlag("DEEPEN_NOT"); //$NON-NLS-1$
 		}
 
 		/**
@@ -115,6 +169,7 @@ public RevWalk(ObjectReader or, int depth) {
 			this.depth = depth;
 			this.UNSHALLOW = newFlag("UNSHALLOW"); //$NON-NLS-1$
 			this.REINTERESTING = newFlag("REINTERESTING"); //$NON-NLS-1$
+			this.DEEPEN_NOT = newFlag("DEEPEN_NOT"); //$NON-NLS-1$
 		}
 
 		/**
@@ -153,12 +208,53 @@ public RevFlag getReinterestingFlag() {
 			return REINTERESTING;
 		}
 
+		@Override
+		public int getDeepenSince() {
+			return deepenSince;
+		}
+
+		/**
+		 * Only walk commits made at or after a time.
+		 *
+		 * @param limit
+		 *            commit time in seconds since the epoch; 0 to not limit
+		 *            the walk by commit time.
+		 * @since 4.8
+		 */
+		public void setDeepenSince(int limit) {
+			deepenSince = limit;
+		}
+
+		@Override
+		public List<ObjectId> getDeepenNots() {
+			return deepenNots;
+		}
+
+		/**
+		 * Do not walk the history of some commits.
+		 *
+		 * @param commits
+		 *            commits whose ancestors, including themselves, are not
+		 *            returned by the walk.
+		 * @since 4.8
+		 */
+		public void setDeepenNots(List<ObjectId> commits) {
+			deepenNots = commits;
+		}
+
+		@Override
+		public RevFlag getDeepenNotFlag() {
+			return DEEPEN_NOT;
+		}
+
 		/**
 		 * @since 4.5
 		 */
 		@Override
 		public ObjectWalk toObjectWalkWithSameObjects() {
 			ObjectWalk ow = new ObjectWalk(reader, depth);
+			ow.deepenSince = deepenSince;
+			ow.deepenNots = deepenNots;
 			ow.objects = objects;
 			ow.freeFlags = freeFlags;
 			return ow;
@@ -173,6 +269,12 @@ public class ObjectWalk extends org.eclipse.jgit.revwalk.ObjectWalk implements D
 
 		private final RevFlag REINTERESTING;
 
+		private final RevFlag DEEPEN_NOT;
+
+		private int deepenSince;
+
+		private List<ObjectId> deepenNots = Collections.emptyList();
+
 		/**
 		 * @param repo Repository to walk
 		 * @param depth Maximum depth to return
@@ -183,6 +285,7 @@ public ObjectWalk(Repository repo, int depth) {
 			this.depth = depth;
 			this.UNSHALLOW = newFlag("UNSHALLOW"); //$NON-NLS-1$
 			this.REINTERESTING = newFlag("REINTERESTING"); //$NON-NLS-1$
+			this.DEEPEN_NOT = newFlag("DEEPEN_NOT"); //$NON-NLS-1$
 		}
 
 		/**
@@ -195,6 +298,7 @@ public ObjectWalk(ObjectReader or, int depth) {
 			this.depth = depth;
 			this.UNSHALLOW = newFlag("UNSHALLOW"); //$NON-NLS-1$
 			this.REINTERESTING = newFlag("REINTERESTING"); //$NON-NLS-1$
+			this.DEEPEN_NOT = newFlag("DEEPEN_NOT"); //$NON-NLS-1$
 		}
 
 		/**
@@ -256,5 +360,44 @@ public RevFlag getUnshallowFlag() {
 		public RevFlag getReinterestingFlag() {
 			return REINTERESTING;
 		}
+
+		@Override
+		public int getDeepenSince() {
+			return deepenSince;
+		}
+
+		/**
+		 * Only walk commits made at or after a time.
+		 *
+		 * @param limit
+		 *            commit time in seconds since the epoch; 0 to not limit
+		 *            the walk by commit time.
+		 * @since 4.8
+		 */
+		public void setDeepenSince(int limit) {
+			deepenSince = limit;
+		}
+
+		@Override
+		public List<ObjectId> getDeepenNots() {
+			return deepenNots;
+		}
+
+		/**
+		 * Do not walk the history of some commits.
+		 *
+		 * @param commits
+		 *            commits whose ancestors, including themselves, are not
+		 *            returned by the walk.
+		 * @since 4.8
+		 */
+		public void setDeepenNots(List<ObjectId> commits) {
+			deepenNots = commits;
+		}
+
+		@Override
+		public RevFlag getDeepenNotFlag() {
+			return DEEPEN_NOT;
+		}
 	}
 }
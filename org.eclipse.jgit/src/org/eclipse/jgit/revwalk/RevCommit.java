@@ -168,7 +168,7 @@ void parseBody(final RevWalk walk) throws MissingObjectException,
 	void parseCanonical(final RevWalk walk, final byte[] raw)
 			throws IOException {
 		if (!walk.shallowCommitsInitialized)
-			walk.initializeShallowCommits();
+			walk.initializeShallowCommits(this);
 
 		final MutableObjectId idBuffer = walk.idBuffer;
 		idBuffer.fromString(raw, 5);
@@ -1428,7 +1428,7 @@ public void assumeShallow(Collection<? extends ObjectId> ids) {
 			lookupCommit(id).parents = RevCommit.NO_PARENTS;
 	}
 
-	void initializeShallowCommits() throws IOException {
+	void initializeShallowCommits(RevCommit parsing) throws IOException {
 		if (shallowCommitsInitialized)
 			throw new IllegalStateException(
 					JGitText.get().shallowCommitsAlreadyInitialized);
@@ -1438,7 +1438,12 @@ void initializeShallowCommits() throws IOException {
 		if (reader == null)
 			return;
 
-		for (ObjectId id : reader.getShallowCommits())
-			lookupCommit(id).parents = RevCommit.NO_PARENTS;
+		for (ObjectId id : reader.getShallowCommits()) {
+			// The commit being parsed may not be in the object map yet.
+			if (id.equals(parsing))
+				parsing.parents = RevCommit.NO_PARENTS;
+			else
+				lookupCommit(id).parents = RevCommit.NO_PARENTS;
+		}
 	}
 }
@@ -44,6 +44,9 @@
 
 package org.eclipse.jgit.storage.pack;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.zip.Deflater;
 
@@ -260,6 +263,8 @@ public class PackConfig {
 
 	private boolean cutDeltaChains;
 
+	private List<String> deltaIslandPatterns = Collections.emptyList();
+
 	/** Create a default configuration. */
 	public PackConfig() {
 		// Fields are initialized to defaults.
@@ -320,6 +325,7 @@ public PackConfig(PackConfig cfg) {
 		this.bitmapExcessiveBranchCount = cfg.bitmapExcessiveBranchCount;
 		this.bitmapInactiveBranchAgeInDays = cfg.bitmapInactiveBranchAgeInDays;
 		this.cutDeltaChains = cfg.cutDeltaChains;
+		this.deltaIslandPatterns = cfg.deltaIslandPatterns;
 	}
 
 	/**
@@ -991,6 +997,46 @@ public void setBitmapInactiveBranchAgeInDays(int ageInDays) {
 		bitmapInactiveBranchAgeInDays = ageInDays;
 	}
 
+	/**
+	 * Get the patterns selecting the references of each delta island.
+	 *
+	 * Default setting: no islands
+	 *
+	 * @return regular expressions matched against reference names; empty if
+	 *         delta islands are disabled.
+	 * @see #setDeltaIslandPatterns(List)
+	 * @since 4.8
+	 */
+	public List<String> getDeltaIslandPatterns() {
+		return deltaIslandPatterns;
+	}
+
+	/**
+	 * Set the patterns selecting the references of each delta island.
+	 *
+	 * A delta island is the set of objects reachable from the references whose
+	 * names match a pattern. If the pattern has capture groups, the captured
+	 * text names the island, allowing one pattern such as
+	 * {@code ^refs/virtual/([^/]+)/} to define one island per fork. When
+	 * islands are used an object is only stored as a delta against a base that
+	 * is reachable from every island containing the object, so a clone of a
+	 * single island never needs its deltas to be recomputed.
+	 *
+	 * Islands are only computed when the writer is given the repository's
+	 * references, such as during garbage collection.
+	 *
+	 * Default setting: no islands
+	 *
+	 * @param patterns
+	 *            regular expressions matched against reference names; empty
+	 *            to disable delta islands.
+	 * @since 4.8
+	 */
+	public void setDeltaIslandPatterns(List<String> patterns) {
+		deltaIslandPatterns = Collections
+				.unmodifiableList(Arrays.asList(patterns.toArray(new String[0])));
+	}
+
 	/**
 	 * Update properties by setting fields from the configuration.
 	 *
@@ -1042,6 +1088,9 @@ public void fromConfig(final Config rc) {
 		setBitmapInactiveBranchAgeInDays(
 				rc.getInt("pack", "bitmapinactivebranchageindays", //$NON-NLS-1$ //$NON-NLS-2$
 						getBitmapInactiveBranchAgeInDays()));
+		String[] islands = rc.getStringList("pack", null, "island"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (islands.length > 0)
+			setDeltaIslandPatterns(Arrays.asList(islands));
 	}
 
 	@Override
@@ -1073,6 +1122,7 @@ public String toString() {
 				.append(getBitmapExcessiveBranchCount());
 		b.append(", bitmapInactiveBranchAge=") //$NON-NLS-1$
 				.append(getBitmapInactiveBranchAgeInDays());
+		b.append(", deltaIslandPatterns=").append(getDeltaIslandPatterns()); //$NON-NLS-1$
 		return b.toString();
 	}
 }
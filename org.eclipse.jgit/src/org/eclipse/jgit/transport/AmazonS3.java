@@ -43,18 +43,21 @@
 
 package org.eclipse.jgit.transport;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.ProxySelector;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.URLDecoder;
 import java.security.DigestOutputStream;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
@@ -67,6 +70,7 @@
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -75,6 +79,13 @@
 import java.util.SortedMap;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -85,6 +96,7 @@
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.util.Base64;
 import org.eclipse.jgit.util.HttpSupport;
+import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.StringUtils;
 import org.eclipse.jgit.util.TemporaryBuffer;
 import org.xml.sax.Attributes;
@@ -119,11 +131,27 @@ public class AmazonS3 {
 
 	private static final String X_AMZ_META = "x-amz-meta-"; //$NON-NLS-1$
 
+	private static final String UPLOADS = "uploads"; //$NON-NLS-1$
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private static final String UPLOAD_ID = "uploadId"; //$NON-NLS-1$
+
+	private static final String PART_NUMBER = "partNumber"; //$NON-NLS-1$
+
+	/** Query parameters which are part of the signed resource. */
+	private static final Set<String> SIGNED_SUBRESOURCES;
+
 	static {
 		SIGNED_HEADERS = new HashSet<>();
 		SIGNED_HEADERS.add("content-type"); //$NON-NLS-1$
 		SIGNED_HEADERS.add("content-md5"); //$NON-NLS-1$
 		SIGNED_HEADERS.add("date"); //$NON-NLS-1$
+
+		SIGNED_SUBRESOURCES = new HashSet<>();
+		SIGNED_SUBRESOURCES.add(PART_NUMBER);
+		SIGNED_SUBRESOURCES.add(UPLOAD_ID);
+		SIGNED_SUBRESOURCES.add(UPLOADS);
 	}
 
 	private static boolean isSignedHeader(final String name) {
@@ -183,9 +211,18 @@ private static MessageDigest newMD5() {
 	/** Directory for locally buffered content. */
 	private final File tmpDir;
 
+	/** Size of the parts large objects are transferred in; 0 to disable. */
+	private final int partSize;
+
+	/** Number of parts of one object transferred concurrently. */
+	private final int threads;
+
 	/** S3 Bucket Domain. */
 	private final String domain;
 
+	/** Smallest part S3 accepts in a multipart upload, except the last. */
+	private static final int MIN_PART_SIZE = 5 << 20;
+
 	/** Property names used in amazon connection configuration file. */
 	interface Keys {
 		String ACCESS_KEY = "accesskey"; //$NON-NLS-1$
@@ -197,6 +234,9 @@ interface Keys {
 		String DOMAIN = "domain"; //$NON-NLS-1$
 		String HTTP_RETRY = "httpclient.retry-max"; //$NON-NLS-1$
 		String TMP_DIR = "tmpdir"; //$NON-NLS-1$
+		String PART_SIZE = "multipart.part-size"; //$NON-NLS-1$
+		String THREADS = "multipart.threads"; //$NON-NLS-1$
+		String MIN_PART_SIZE = "multipart.min-part-size"; //$NON-NLS-1$
 	}
 
 	/**
@@ -225,6 +265,18 @@ interface Keys {
 	 * # End-to-end encryption (hides content from S3 owners)
 	 * password: &lt;encryption pass-phrase&gt;
 	 * crypto.algorithm: PBEWithMD5AndDES
+	 *
+	 * # Size in bytes of the parts large objects are uploaded and downloaded
+	 * # in (defaults to 16 MiB). S3 requires at least 5 MiB. 0 uploads every
+	 * # object with a single request, spooling large objects to tmpdir.
+	 * multipart.part-size: 16777216
+	 *
+	 * # Number of parts of one object transferred concurrently (defaults to 4).
+	 * multipart.threads: 4
+	 *
+	 * # Smallest part size accepted (defaults to the 5 MiB required by S3).
+	 * # Only lower this for S3 compatible services with a smaller limit.
+	 * multipart.min-part-size: 5242880
 	 * </pre>
 	 *
 	 * @param props
@@ -267,6 +319,17 @@ else if (StringUtils.equalsIgnoreCase("PUBLIC_READ", pacl)) //$NON-NLS-1$
 
 		String tmp = props.getProperty(Keys.TMP_DIR);
 		tmpDir = tmp != null && tmp.length() > 0 ? new File(tmp) : null;
+
+		partSize = Integer.parseInt(
+				props.getProperty(Keys.PART_SIZE, String.valueOf(16 << 20)));
+		final int minPartSize = Integer.parseInt(props.getProperty(
+				Keys.MIN_PART_SIZE, String.valueOf(MIN_PART_SIZE)));
+		if (partSize < 0 || (partSize > 0 && partSize < minPartSize))
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().amazonS3PartSizeTooSmall,
+					Integer.valueOf(partSize), Integer.valueOf(minPartSize)));
+		threads = Math.max(1,
+				Integer.parseInt(props.getProperty(Keys.THREADS, "4"))); //$NON-NLS-1$
 	}
 
 	/**
@@ -315,6 +378,96 @@ public InputStream decrypt(final URLConnection u) throws IOException {
 		return encryption.decrypt(u.getInputStream());
 	}
 
+	boolean isEncrypted() {
+		return encryption != WalkEncryption.NONE;
+	}
+
+	/**
+	 * Get the plain text content of a large bucket object.
+	 * <p>
+	 * The object is requested in ranges of the configured part size. While
+	 * the caller reads one range, up to the configured number of following
+	 * ranges are downloaded concurrently and held in memory. All ranges are
+	 * requested with the ETag of the first one, so a concurrent modification
+	 * of the object fails the read instead of mixing two versions.
+	 *
+	 * @param bucket
+	 *            name of the bucket storing the object.
+	 * @param key
+	 *            key of the object within its bucket.
+	 * @return stream to read the plain text of the object from.
+	 * @throws IOException
+	 *             sending the request was not possible, or decryption could
+	 *             not be configured.
+	 * @since 4.8
+	 */
+	public InputStream getParallel(final String bucket, final String key)
+			throws IOException {
+		if (partSize <= 0 || threads <= 1) {
+			return decrypt(get(bucket, key));
+		}
+
+		final HttpURLConnection c = getRange(bucket, key, 0, partSize - 1,
+				null);
+		if (HttpSupport.response(c) == HTTP_RANGE_NOT_SATISFIABLE) {
+			// Only an empty object has no first byte.
+			return decrypt(get(bucket, key));
+		}
+		encryption.validate(c, X_AMZ_META);
+		if (HttpSupport.response(c) == HttpURLConnection.HTTP_OK) {
+			// The server ignored the range and sends the entire object.
+			return encryption.decrypt(c.getInputStream());
+		}
+
+		final long size = parseContentRangeSize(c, key);
+		if (size <= partSize) {
+			return encryption.decrypt(c.getInputStream());
+		}
+		return encryption.decrypt(new ParallelGet(bucket, key,
+				c.getHeaderField("ETag"), c.getInputStream(), size)); //$NON-NLS-1$
+	}
+
+	private HttpURLConnection getRange(final String bucket, final String key,
+			long first, long last, String etag) throws IOException {
+		for (int curAttempt = 0; curAttempt < maxAttempts; curAttempt++) {
+			final HttpURLConnection c = open("GET", bucket, key); //$NON-NLS-1$
+			c.setRequestProperty("Range", "bytes=" + first + "-" + last); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			if (etag != null) {
+				c.setRequestProperty("If-Match", etag); //$NON-NLS-1$
+			}
+			authorize(c);
+			switch (HttpSupport.response(c)) {
+			case HttpURLConnection.HTTP_OK:
+			case HttpURLConnection.HTTP_PARTIAL:
+			case HTTP_RANGE_NOT_SATISFIABLE:
+				return c;
+			case HttpURLConnection.HTTP_NOT_FOUND:
+				throw new FileNotFoundException(key);
+			case HttpURLConnection.HTTP_INTERNAL_ERROR:
+				continue;
+			default:
+				throw error(JGitText.get().s3ActionReading, key, c);
+			}
+		}
+		throw maxAttempts(JGitText.get().s3ActionReading, key);
+	}
+
+	private static long parseContentRangeSize(HttpURLConnection c, String key)
+			throws IOException {
+		final String range = c.getHeaderField("Content-Range"); //$NON-NLS-1$
+		final int slash = range != null ? range.lastIndexOf('/') : -1;
+		if (slash > 0) {
+			try {
+				return Long.parseLong(range.substring(slash + 1));
+			} catch (NumberFormatException e) {
+				// Fall through to report the invalid response.
+			}
+		}
+		throw new IOException(MessageFormat.format(
+				JGitText.get().amazonS3InvalidResponse,
+				JGitText.get().s3ActionReading, key));
+	}
+
 	/**
 	 * List the names of keys available within a bucket.
 	 * <p>
@@ -439,17 +592,23 @@ public void put(final String bucket, final String key, final byte[] data)
 	/**
 	 * Atomically create or replace a single large object.
 	 * <p>
-	 * Initially the returned output stream buffers data into memory, but if the
-	 * total number of written bytes starts to exceed an internal limit the data
-	 * is spooled to a temporary file on the local drive.
+	 * The returned output stream buffers data into memory. Once more than the
+	 * configured part size was written, a multipart upload is started and
+	 * every full part is uploaded in the background, with up to the
+	 * configured number of parts in flight at once. The object only becomes
+	 * visible when <code>close()</code> completes the upload. Smaller
+	 * objects are transmitted with a single request when
+	 * <code>close()</code> gets called.
 	 * <p>
-	 * Network transmission is attempted only when <code>close()</code> gets
-	 * called at the end of output. Closing the returned stream can therefore
-	 * take significant time, especially if the written content is very large.
+	 * If multipart uploads are disabled the data is spooled to a temporary
+	 * file on the local drive once it exceeds an internal limit, and network
+	 * transmission is attempted only when <code>close()</code> gets called.
+	 * Closing the returned stream can therefore take significant time,
+	 * especially if the written content is very large.
 	 * <p>
 	 * End-to-end data integrity is assured by internally computing the MD5
-	 * checksum of the supplied data and transmitting the checksum along with
-	 * the data itself.
+	 * checksum of the supplied data (or of each part) and transmitting the
+	 * checksum along with the data itself.
 	 *
 	 * @param bucket
 	 *            name of the bucket storing the object.
@@ -467,6 +626,11 @@ public void put(final String bucket, final String key, final byte[] data)
 	public OutputStream beginPut(final String bucket, final String key,
 			final ProgressMonitor monitor, final String monitorTask)
 			throws IOException {
+		if (partSize > 0) {
+			return encryption.encrypt(
+					new MultipartPut(bucket, key, monitor, monitorTask));
+		}
+
 		final MessageDigest md5 = newMD5();
 		final TemporaryBuffer buffer = new TemporaryBuffer.LocalFile(tmpDir) {
 			@Override
@@ -522,6 +686,144 @@ void putImpl(final String bucket, final String key,
 		throw maxAttempts(JGitText.get().s3ActionWriting, key);
 	}
 
+	private String initiateMultipart(final String bucket, final String key)
+			throws IOException {
+		final Map<String, String> args = new TreeMap<>();
+		args.put(UPLOADS, null);
+		for (int curAttempt = 0; curAttempt < maxAttempts; curAttempt++) {
+			final HttpURLConnection c = open("POST", bucket, key, args); //$NON-NLS-1$
+			c.setRequestProperty(X_AMZ_ACL, acl);
+			encryption.request(c, X_AMZ_META);
+			authorize(c);
+			switch (HttpSupport.response(c)) {
+			case HttpURLConnection.HTTP_OK:
+				final XmlValue r = XmlValue.parse(c.getInputStream(),
+						"UploadId"); //$NON-NLS-1$
+				if (r.value == null || r.value.length() == 0) {
+					throw new IOException(MessageFormat.format(
+							JGitText.get().amazonS3InvalidResponse,
+							JGitText.get().s3ActionWriting, key));
+				}
+				return r.value;
+			case HttpURLConnection.HTTP_INTERNAL_ERROR:
+				continue;
+			default:
+				throw error(JGitText.get().s3ActionWriting, key, c);
+			}
+		}
+		throw maxAttempts(JGitText.get().s3ActionWriting, key);
+	}
+
+	private String putPart(final String bucket, final String key,
+			final String uploadId, final int partNumber, final byte[] data,
+			final int len) throws IOException {
+		final Map<String, String> args = new TreeMap<>();
+		args.put(PART_NUMBER, String.valueOf(partNumber));
+		args.put(UPLOAD_ID, uploadId);
+		final MessageDigest md5 = newMD5();
+		md5.update(data, 0, len);
+		final String md5str = Base64.encodeBytes(md5.digest());
+		for (int curAttempt = 0; curAttempt < maxAttempts; curAttempt++) {
+			final HttpURLConnection c = open("PUT", bucket, key, args); //$NON-NLS-1$
+			c.setRequestProperty("Content-MD5", md5str); //$NON-NLS-1$
+			authorize(c);
+			c.setDoOutput(true);
+			c.setFixedLengthStreamingMode(len);
+			final OutputStream os = c.getOutputStream();
+			try {
+				os.write(data, 0, len);
+			} finally {
+				os.close();
+			}
+
+			switch (HttpSupport.response(c)) {
+			case HttpURLConnection.HTTP_OK:
+				final String etag = c.getHeaderField("ETag"); //$NON-NLS-1$
+				if (etag == null) {
+					throw new IOException(MessageFormat.format(
+							JGitText.get().amazonS3InvalidResponse,
+							JGitText.get().s3ActionWriting, key));
+				}
+				return etag;
+			case HttpURLConnection.HTTP_INTERNAL_ERROR:
+				continue;
+			default:
+				throw error(JGitText.get().s3ActionWriting, key, c);
+			}
+		}
+		throw maxAttempts(JGitText.get().s3ActionWriting, key);
+	}
+
+	private void completeMultipart(final String bucket, final String key,
+			final String uploadId, final List<String> etags)
+			throws IOException {
+		final StringBuilder xml = new StringBuilder();
+		xml.append("<CompleteMultipartUpload>"); //$NON-NLS-1$
+		for (int i = 0; i < etags.size(); i++) {
+			xml.append("<Part><PartNumber>").append(i + 1) //$NON-NLS-1$
+					.append("</PartNumber><ETag>") //$NON-NLS-1$
+					.append(escapeXml(etags.get(i)))
+					.append("</ETag></Part>"); //$NON-NLS-1$
+		}
+		xml.append("</CompleteMultipartUpload>"); //$NON-NLS-1$
+		final byte[] body = Constants.encode(xml.toString());
+
+		final Map<String, String> args = new TreeMap<>();
+		args.put(UPLOAD_ID, uploadId);
+		for (int curAttempt = 0; curAttempt < maxAttempts; curAttempt++) {
+			final HttpURLConnection c = open("POST", bucket, key, args); //$NON-NLS-1$
+			c.setRequestProperty("Content-Type", "application/xml"); //$NON-NLS-1$ //$NON-NLS-2$
+			authorize(c);
+			c.setDoOutput(true);
+			c.setFixedLengthStreamingMode(body.length);
+			final OutputStream os = c.getOutputStream();
+			try {
+				os.write(body);
+			} finally {
+				os.close();
+			}
+
+			switch (HttpSupport.response(c)) {
+			case HttpURLConnection.HTTP_OK:
+				// S3 may report a failure after it started the response.
+				final XmlValue r = XmlValue.parse(c.getInputStream(), "Code"); //$NON-NLS-1$
+				if ("Error".equals(r.root)) { //$NON-NLS-1$
+					if ("InternalError".equals(r.value)) //$NON-NLS-1$
+						continue;
+					throw new IOException(MessageFormat.format(
+							JGitText.get().amazonS3ActionFailed,
+							JGitText.get().s3ActionWriting, key,
+							Integer.valueOf(HttpURLConnection.HTTP_OK),
+							r.value));
+				}
+				return;
+			case HttpURLConnection.HTTP_INTERNAL_ERROR:
+				continue;
+			default:
+				throw error(JGitText.get().s3ActionWriting, key, c);
+			}
+		}
+		throw maxAttempts(JGitText.get().s3ActionWriting, key);
+	}
+
+	private void abortMultipart(final String bucket, final String key,
+			final String uploadId) {
+		final Map<String, String> args = new TreeMap<>();
+		args.put(UPLOAD_ID, uploadId);
+		try {
+			final HttpURLConnection c = open("DELETE", bucket, key, args); //$NON-NLS-1$
+			authorize(c);
+			HttpSupport.response(c);
+		} catch (IOException e) {
+			// Best effort; S3 can be configured to expire incomplete uploads.
+		}
+	}
+
+	private static String escapeXml(String s) {
+		return s.replace("&", "&amp;").replace("<", "&lt;") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				.replace(">", "&gt;"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	IOException error(final String action, final String key,
 			final HttpURLConnection c) throws IOException {
 		final IOException err = new IOException(MessageFormat.format(
@@ -586,8 +888,10 @@ HttpURLConnection open(final String method, final String bucket,
 			while (i.hasNext()) {
 				final Map.Entry<String, String> e = i.next();
 				urlstr.append(e.getKey());
-				urlstr.append('=');
-				HttpSupport.encode(urlstr, e.getValue());
+				if (e.getValue() != null) {
+					urlstr.append('=');
+					HttpSupport.encode(urlstr, e.getValue());
+				}
 				if (i.hasNext())
 					urlstr.append('&');
 			}
@@ -637,6 +941,7 @@ void authorize(final HttpURLConnection c) throws IOException {
 		s.append('/');
 		s.append(host.substring(0, host.length() - domain.length() - 1));
 		s.append(c.getURL().getPath());
+		appendSubresources(s, c.getURL().getQuery());
 
 		final String sec;
 		try {
@@ -651,6 +956,28 @@ void authorize(final HttpURLConnection c) throws IOException {
 		c.setRequestProperty("Authorization", "AWS " + publicKey + ":" + sec); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 	}
 
+	private static void appendSubresources(StringBuilder s, String query)
+			throws IOException {
+		if (query == null)
+			return;
+		final SortedMap<String, String> sub = new TreeMap<>();
+		for (String param : query.split("&")) { //$NON-NLS-1$
+			final int eq = param.indexOf('=');
+			final String name = eq < 0 ? param : param.substring(0, eq);
+			if (SIGNED_SUBRESOURCES.contains(name)) {
+				sub.put(name, eq < 0 ? null
+						: URLDecoder.decode(param.substring(eq + 1), "UTF-8")); //$NON-NLS-1$
+			}
+		}
+		char sep = '?';
+		for (Map.Entry<String, String> e : sub.entrySet()) {
+			s.append(sep).append(e.getKey());
+			if (e.getValue() != null)
+				s.append('=').append(e.getValue());
+			sep = '&';
+		}
+	}
+
 	static Properties properties(final File authFile)
 			throws FileNotFoundException, IOException {
 		final Properties p = new Properties();
@@ -663,6 +990,70 @@ static Properties properties(final File authFile)
 		return p;
 	}
 
+	/** Extracts the text of one element from an XML response. */
+	private static final class XmlValue extends DefaultHandler {
+		private final String element;
+
+		/** Name of the document's root element. */
+		String root;
+
+		/** Text of the first occurrence of the element, null if absent. */
+		String value;
+
+		private StringBuilder data;
+
+		private XmlValue(String element) {
+			this.element = element;
+		}
+
+		static XmlValue parse(InputStream in, String element)
+				throws IOException {
+			final XmlValue h = new XmlValue(element);
+			final XMLReader xr;
+			try {
+				xr = XMLReaderFactory.createXMLReader();
+			} catch (SAXException e) {
+				in.close();
+				throw new IOException(JGitText.get().noXMLParserAvailable);
+			}
+			xr.setContentHandler(h);
+			try {
+				xr.parse(new InputSource(in));
+			} catch (SAXException e) {
+				throw new IOException(e.getMessage(), e);
+			} finally {
+				in.close();
+			}
+			return h;
+		}
+
+		@Override
+		public void startElement(final String uri, final String name,
+				final String qName, final Attributes attributes)
+				throws SAXException {
+			if (root == null)
+				root = name;
+			if (value == null && element.equals(name))
+				data = new StringBuilder();
+		}
+
+		@Override
+		public void characters(final char[] ch, final int s, final int n)
+				throws SAXException {
+			if (data != null)
+				data.append(ch, s, n);
+		}
+
+		@Override
+		public void endElement(final String uri, final String name,
+				final String qName) throws SAXException {
+			if (data != null && element.equals(name)) {
+				value = data.toString().trim();
+				data = null;
+			}
+		}
+	}
+
 	private final class ListParser extends DefaultHandler {
 		final List<String> entries = new ArrayList<>();
 
@@ -756,4 +1147,306 @@ else if ("IsTruncated".equals(name)) //$NON-NLS-1$
 			data = null;
 		}
 	}
+
+	private ExecutorService newPool(final String threadName) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final ThreadFactory baseFactory = Executors
+					.defaultThreadFactory();
+
+			@Override
+			public Thread newThread(Runnable taskBody) {
+				Thread thr = baseFactory.newThread(taskBody);
+				thr.setName(threadName);
+				thr.setDaemon(true);
+				return thr;
+			}
+		});
+	}
+
+	/** Uploads an object in parts, using a multipart upload if needed. */
+	private final class MultipartPut extends OutputStream {
+		private final String bucket;
+
+		private final String key;
+
+		private final ProgressMonitor monitor;
+
+		private final String monitorTask;
+
+		private final List<Future<String>> parts = new ArrayList<>();
+
+		private final Semaphore inFlight = new Semaphore(threads);
+
+		private byte[] buf = new byte[partSize];
+
+		private int cnt;
+
+		private String uploadId;
+
+		private ExecutorService pool;
+
+		private final List<Integer> partLengths = new ArrayList<>();
+
+		private int partsDone;
+
+		private long bytesDone;
+
+		private long kibDone;
+
+		private boolean closed;
+
+		private boolean aborted;
+
+		MultipartPut(String bucket, String key, ProgressMonitor monitor,
+				String monitorTask) {
+			this.bucket = bucket;
+			this.key = key;
+			this.monitor = monitor != null ? monitor
+					: NullProgressMonitor.INSTANCE;
+			this.monitorTask = monitorTask != null ? monitorTask
+					: MessageFormat.format(
+							JGitText.get().progressMonUploading, key);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (cnt == buf.length)
+				flushPart();
+			buf[cnt++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (cnt == buf.length)
+					flushPart();
+				final int n = Math.min(len, buf.length - cnt);
+				System.arraycopy(b, off, buf, cnt, n);
+				cnt += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void flushPart() throws IOException {
+			try {
+				if (uploadId == null) {
+					uploadId = initiateMultipart(bucket, key);
+					pool = newPool("JGit-S3-Upload"); //$NON-NLS-1$
+					monitor.beginTask(monitorTask, ProgressMonitor.UNKNOWN);
+				}
+				reportDone(false);
+
+				final byte[] data = buf;
+				final int len = cnt;
+				final int partNumber = parts.size() + 1;
+				final String id = uploadId;
+				inFlight.acquire();
+				partLengths.add(Integer.valueOf(len));
+				parts.add(pool.submit(new Callable<String>() {
+					@Override
+					public String call() throws IOException {
+						try {
+							return putPart(bucket, key, id, partNumber, data,
+									len);
+						} finally {
+							inFlight.release();
+						}
+					}
+				}));
+				buf = new byte[partSize];
+				cnt = 0;
+			} catch (InterruptedException e) {
+				abort();
+				throw new InterruptedIOException();
+			} catch (IOException | RuntimeException e) {
+				abort();
+				throw e;
+			}
+		}
+
+		/**
+		 * Report uploaded parts to the monitor, failing if any part failed.
+		 *
+		 * @param wait
+		 *            wait for all parts to complete.
+		 * @return entity tags of all parts.
+		 * @throws IOException
+		 *             a part could not be uploaded.
+		 */
+		private List<String> reportDone(boolean wait) throws IOException {
+			final List<String> etags = new ArrayList<>(parts.size());
+			for (int i = 0; i < parts.size(); i++) {
+				final Future<String> f = parts.get(i);
+				if (!wait && !f.isDone())
+					break;
+				try {
+					etags.add(f.get());
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					throw new IOException(cause.getMessage(), cause);
+				}
+				if (i >= partsDone) {
+					bytesDone += partLengths.get(i).intValue();
+					final long kib = bytesDone / 1024;
+					monitor.update((int) (kib - kibDone));
+					kibDone = kib;
+					partsDone = i + 1;
+				}
+			}
+			return etags;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed || aborted)
+				return;
+			closed = true;
+
+			if (uploadId == null) {
+				final byte[] data = buf;
+				buf = null;
+				final TemporaryBuffer small = new TemporaryBuffer.Heap(cnt);
+				small.write(data, 0, cnt);
+				small.close();
+				final MessageDigest md5 = newMD5();
+				md5.update(data, 0, cnt);
+				putImpl(bucket, key, md5.digest(), small, monitor,
+						monitorTask);
+				return;
+			}
+
+			try {
+				if (cnt > 0)
+					flushPart();
+				buf = null;
+				final List<String> etags = reportDone(true);
+				completeMultipart(bucket, key, uploadId, etags);
+			} catch (IOException | RuntimeException e) {
+				abort();
+				throw e;
+			} finally {
+				monitor.endTask();
+				pool.shutdownNow();
+			}
+		}
+
+		private void abort() {
+			aborted = true;
+			if (pool != null)
+				pool.shutdownNow();
+			if (uploadId != null) {
+				abortMultipart(bucket, key, uploadId);
+				uploadId = null;
+			}
+		}
+	}
+
+	/** Reads an object in ranges, downloading following ranges in advance. */
+	private final class ParallelGet extends InputStream {
+		private final String bucket;
+
+		private final String key;
+
+		private final String etag;
+
+		private final long size;
+
+		private final ExecutorService pool;
+
+		private final LinkedList<Future<byte[]>> pending = new LinkedList<>();
+
+		private long nextOffset;
+
+		private InputStream current;
+
+		ParallelGet(String bucket, String key, String etag,
+				InputStream first, long size) {
+			this.bucket = bucket;
+			this.key = key;
+			this.etag = etag;
+			this.size = size;
+			this.current = first;
+			this.nextOffset = partSize;
+			this.pool = newPool("JGit-S3-Download"); //$NON-NLS-1$
+			schedule();
+		}
+
+		private void schedule() {
+			while (pending.size() < threads && nextOffset < size) {
+				final long first = nextOffset;
+				final long last = Math.min(first + partSize, size) - 1;
+				nextOffset = last + 1;
+				pending.add(pool.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException {
+						return readRange(first, last);
+					}
+				}));
+			}
+		}
+
+		byte[] readRange(long first, long last) throws IOException {
+			final HttpURLConnection c = getRange(bucket, key, first, last,
+					etag);
+			final byte[] data = new byte[(int) (last - first + 1)];
+			try (InputStream in = c.getInputStream()) {
+				if (HttpSupport.response(c) != HttpURLConnection.HTTP_PARTIAL)
+					throw new IOException(MessageFormat.format(
+							JGitText.get().amazonS3InvalidResponse,
+							JGitText.get().s3ActionReading, key));
+				IO.readFully(in, data, 0, data.length);
+			}
+			return data;
+		}
+
+		private boolean nextRange() throws IOException {
+			current.close();
+			if (pending.isEmpty())
+				return false;
+			try {
+				current = new ByteArrayInputStream(
+						pending.removeFirst().get());
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				throw new IOException(cause.getMessage(), cause);
+			}
+			schedule();
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			for (;;) {
+				final int r = current.read();
+				if (r >= 0 || !nextRange())
+					return r;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			for (;;) {
+				final int n = current.read(b, off, len);
+				if (n >= 0 || !nextRange())
+					return n;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			pool.shutdownNow();
+			current.close();
+		}
+	}
 }
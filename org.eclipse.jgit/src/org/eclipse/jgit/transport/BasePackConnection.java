@@ -46,6 +46,7 @@
 
 package org.eclipse.jgit.transport;
 
+import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_BUNDLE_URI;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_AGENT;
 
 import java.io.EOFException;
@@ -53,8 +54,11 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.jgit.errors.NoRemoteRepositoryException;
@@ -117,7 +121,7 @@ abstract class BasePackConnection extends BaseConnection {
 	protected boolean statelessRPC;
 
 	/** Capability tokens advertised by the remote side. */
-	private final Set<String> remoteCapablities = new HashSet<>();
+	private final Set<String> remoteCapablities = new LinkedHashSet<>();
 
 	/** Extra objects the remote has, but which aren't offered as refs. */
 	protected final Set<ObjectId> additionalHaves = new HashSet<>();
@@ -279,6 +283,17 @@ protected boolean wantCapability(final StringBuilder b, final String option) {
 		return true;
 	}
 
+	/** @return bundle URIs advertised by the remote, in advertised order. */
+	List<String> getBundleUris() {
+		String prefix = CAPABILITY_BUNDLE_URI + '=';
+		List<String> uris = new ArrayList<>(2);
+		for (String c : remoteCapablities) {
+			if (c.startsWith(prefix) && prefix.length() < c.length())
+				uris.add(c.substring(prefix.length()));
+		}
+		return uris;
+	}
+
 	protected void addUserAgentCapability(StringBuilder b) {
 		String a = UserAgent.get();
 		if (a != null && UserAgent.hasAgent(remoteCapablities)) {
@@ -54,6 +54,8 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -81,6 +83,7 @@
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.transport.GitProtocolConstants.MultiAck;
 import org.eclipse.jgit.transport.PacketLineIn.AckNackResult;
+import org.eclipse.jgit.transport.TransferConfig.NegotiationAlgorithm;
 import org.eclipse.jgit.util.TemporaryBuffer;
 
 /**
@@ -116,6 +119,10 @@ public abstract class BasePackFetchConnection extends BasePackConnection
 	 */
 	private static final int MAX_HAVES = 256;
 
+	private static final byte[] HAVE = Constants.encodeASCII("have "); //$NON-NLS-1$
+
+	private static final byte[] LF = { '\n' };
+
 	/**
 	 * Amount of data the client sends before starting to read.
 	 * <p>
@@ -200,6 +207,30 @@ public abstract class BasePackFetchConnection extends BasePackConnection
 	 */
 	public static final String OPTION_ALLOW_REACHABLE_SHA1_IN_WANT = GitProtocolConstants.OPTION_ALLOW_REACHABLE_SHA1_IN_WANT;
 
+	/**
+	 * The client asks the server to omit objects matching a filter.
+	 * @since 4.8
+	 */
+	public static final String OPTION_FILTER = GitProtocolConstants.OPTION_FILTER;
+
+	/**
+	 * The client wants to resume an interrupted pack transfer.
+	 * @since 4.8
+	 */
+	public static final String OPTION_RESUME_PACK = GitProtocolConstants.OPTION_RESUME_PACK;
+
+	/**
+	 * The client limits a shallow fetch to commits made after a time.
+	 * @since 4.8
+	 */
+	public static final String OPTION_DEEPEN_SINCE = GitProtocolConstants.OPTION_DEEPEN_SINCE;
+
+	/**
+	 * The client excludes the history of a ref from a shallow fetch.
+	 * @since 4.8
+	 */
+	public static final String OPTION_DEEPEN_NOT = GitProtocolConstants.OPTION_DEEPEN_NOT;
+
 	private final RevWalk walk;
 
 	/** All commits that are immediately reachable by a local ref. */
@@ -221,6 +252,40 @@ public abstract class BasePackFetchConnection extends BasePackConnection
 
 	private boolean thinPack;
 
+	private FilterSpec filterSpec;
+
+	/** Commits of history to ask for; 0 if not limited by depth. */
+	private final int depth;
+
+	/** Oldest commits to ask for; null if not limited by time. */
+	private final Date deepenSince;
+
+	/** Remote refs whose history is not asked for. */
+	private final List<String> deepenNots;
+
+	/** Whether a shallow history is asked for. */
+	private final boolean deepen;
+
+	/** Shallow commits of the local repository before the fetch. */
+	private Set<ObjectId> localShallow = Collections.emptySet();
+
+	/** Commits the remote makes shallow in the local repository. */
+	private final Set<ObjectId> newShallow = new HashSet<>();
+
+	/** Commits the remote makes no longer shallow. */
+	private final Set<ObjectId> unshallow = new HashSet<>();
+
+	private boolean skipping;
+
+	/** Blocks of have lines and final "done" sent to the remote. */
+	int negotiationRounds;
+
+	/** Have lines sent to the remote. */
+	long haveLines;
+
+	/** Commits the negotiator skipped instead of sending a have line. */
+	long skippedHaves;
+
 	private boolean sideband;
 
 	private boolean includeTags;
@@ -231,6 +296,13 @@ public abstract class BasePackFetchConnection extends BasePackConnection
 
 	private boolean noProgress;
 
+	/** Data of an interrupted pack transfer; null if resume is disabled. */
+	private PartialPack partialPack;
+
+	private boolean resumePack;
+
+	private boolean packResumable;
+
 	private String lockMessage;
 
 	private PackLock packLock;
@@ -252,11 +324,21 @@ public BasePackFetchConnection(final PackTransport packTransport) {
 		if (local != null) {
 			final FetchConfig cfg = local.getConfig().get(FetchConfig.KEY);
 			allowOfsDelta = cfg.allowOfsDelta;
+			skipping = local.getConfig().get(TransferConfig.KEY)
+					.getNegotiationAlgorithm() == NegotiationAlgorithm.SKIPPING;
 		} else {
 			allowOfsDelta = true;
 		}
 		includeTags = transport.getTagOpt() != TagOpt.NO_TAGS;
 		thinPack = transport.isFetchThin();
+		filterSpec = transport.getFilterSpec();
+		depth = transport.getDepth();
+		deepenSince = transport.getDeepenSince();
+		deepenNots = transport.getDeepenNots();
+		deepen = transport.isDeepen();
+		if (local != null && transport.isResumableFetch()
+				&& local.getDirectory() != null)
+			partialPack = new PartialPack(local.getDirectory());
 
 		if (local != null) {
 			walk = new RevWalk(local);
@@ -357,6 +439,8 @@ protected void doFetch(final ProgressMonitor monitor,
 			OutputStream outputStream) throws TransportException {
 		try {
 			noProgress = monitor == NullProgressMonitor.INSTANCE;
+			localShallow = new HashSet<>(
+					walk.getObjectReader().getShallowCommits());
 
 			markRefsAdvertised();
 			markReachable(have, maxTimeWanted(want));
@@ -367,6 +451,8 @@ protected void doFetch(final ProgressMonitor monitor,
 			}
 
 			if (sendWants(want)) {
+				if (deepen && !statelessRPC)
+					receiveShallowUpdate();
 				negotiate(monitor);
 
 				walk.dispose();
@@ -375,6 +461,8 @@ protected void doFetch(final ProgressMonitor monitor,
 				pckState = null;
 
 				receivePack(monitor, outputStream);
+				if (deepen)
+					updateShallow();
 			}
 		} catch (CancelledException ce) {
 			close();
@@ -476,9 +564,9 @@ private boolean sendWants(final Collection<Ref> want) throws IOException {
 				continue;
 			}
 			try {
-				if (walk.parseAny(objectId).has(REACHABLE)) {
+				if (!deepen && walk.parseAny(objectId).has(REACHABLE)) {
 					// We already have this object. Asking for it is
-					// not a very good idea.
+					// not a very good idea, unless its history changes.
 					//
 					continue;
 				}
@@ -499,6 +587,20 @@ private boolean sendWants(final Collection<Ref> want) throws IOException {
 		}
 		if (first)
 			return false;
+		for (ObjectId id : localShallow)
+			p.writeString("shallow " + id.name() + '\n'); //$NON-NLS-1$
+		if (depth > 0)
+			p.writeString("deepen " + depth + '\n'); //$NON-NLS-1$
+		if (deepenSince != null)
+			p.writeString(OPTION_DEEPEN_SINCE + ' '
+					+ deepenSince.getTime() / 1000 + '\n');
+		for (String ref : deepenNots)
+			p.writeString(OPTION_DEEPEN_NOT + ' ' + ref + '\n');
+		if (!filterSpec.isNoOp())
+			p.writeString(OPTION_FILTER + ' ' + filterSpec.filterLine() + '\n');
+		if (resumePack && partialPack.getKey() != null)
+			p.writeString(OPTION_RESUME_PACK + ' ' + partialPack.getKey() + ' '
+					+ partialPack.getLength() + '\n');
 		p.end();
 		outNeedsEnd = false;
 		return true;
@@ -524,6 +626,19 @@ private String enableCapabilities() throws TransportException {
 
 		if (thinPack)
 			thinPack = wantCapability(line, OPTION_THIN_PACK);
+		if (deepen || !localShallow.isEmpty())
+			requireCapability(wantCapability(line, OPTION_SHALLOW),
+					OPTION_SHALLOW);
+		if (deepenSince != null)
+			requireCapability(isCapableOf(OPTION_DEEPEN_SINCE),
+					OPTION_DEEPEN_SINCE);
+		if (!deepenNots.isEmpty())
+			requireCapability(isCapableOf(OPTION_DEEPEN_NOT),
+					OPTION_DEEPEN_NOT);
+		if (!filterSpec.isNoOp() && !wantCapability(line, OPTION_FILTER))
+			filterSpec = FilterSpec.NO_FILTER;
+		if (partialPack != null)
+			resumePack = wantCapability(line, OPTION_RESUME_PACK);
 		if (wantCapability(line, OPTION_SIDE_BAND_64K))
 			sideband = true;
 		else if (wantCapability(line, OPTION_SIDE_BAND))
@@ -543,6 +658,42 @@ else if (wantCapability(line, OPTION_SIDE_BAND))
 		return line.toString();
 	}
 
+	private void requireCapability(boolean supported, String option)
+			throws PackProtocolException {
+		if (!supported)
+			throw new PackProtocolException(uri, MessageFormat.format(
+					JGitText.get().remoteDoesNotSupportShallow, option));
+	}
+
+	/**
+	 * Read the commits the remote makes shallow or unshallow, sent before
+	 * the acknowledgements of a shallow request.
+	 */
+	private void receiveShallowUpdate() throws IOException {
+		for (;;) {
+			String line = pckIn.readString();
+			if (line == PacketLineIn.END)
+				return;
+			if (line.startsWith("shallow ")) //$NON-NLS-1$
+				newShallow.add(ObjectId.fromString(line.substring(8)));
+			else if (line.startsWith("unshallow ")) //$NON-NLS-1$
+				unshallow.add(ObjectId.fromString(line.substring(10)));
+			else if (line.startsWith("ERR ")) //$NON-NLS-1$
+				throw new PackProtocolException(uri, line.substring(4));
+			else
+				throw new PackProtocolException(uri, MessageFormat.format(
+						JGitText.get().expectedGot, "shallow", line)); //$NON-NLS-1$
+		}
+	}
+
+	private void updateShallow() throws IOException {
+		Set<ObjectId> shallow = new HashSet<>(localShallow);
+		shallow.addAll(newShallow);
+		shallow.removeAll(unshallow);
+		if (!shallow.equals(localShallow))
+			local.getObjectDatabase().setShallowCommits(shallow);
+	}
+
 	private void negotiate(final ProgressMonitor monitor) throws IOException,
 			CancelledException {
 		final MutableObjectId ackId = new MutableObjectId();
@@ -557,12 +708,15 @@ private void negotiate(final ProgressMonitor monitor) throws IOException,
 			state.writeTo(out, null);
 
 		negotiateBegin();
+		final SkippingNegotiator skipper = skipping
+				? new SkippingNegotiator(reachableCommits) : null;
 		SEND_HAVES: for (;;) {
-			final RevCommit c = walk.next();
+			final RevCommit c = skipper != null ? skipper.next(walk)
+					: walk.next();
 			if (c == null)
 				break SEND_HAVES;
 
-			pckOut.writeString("have " + c.getId().name() + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			pckOut.writeId(HAVE, c, LF);
 			havesSent++;
 			havesSinceLastContinue++;
 
@@ -579,6 +733,7 @@ private void negotiate(final ProgressMonitor monitor) throws IOException,
 
 			pckOut.end();
 			resultsPending++; // Each end will cause a result to come back.
+			negotiationRounds++;
 
 			if (havesSent == 32 && !statelessRPC) {
 				// On the first block we race ahead and try to send
@@ -589,6 +744,8 @@ private void negotiate(final ProgressMonitor monitor) throws IOException,
 				continue;
 			}
 
+			if (deepen && statelessRPC)
+				receiveShallowUpdate();
 			READ_RESULT: for (;;) {
 				final AckNackResult anr = pckIn.readACK(ackId);
 				switch (anr) {
@@ -620,6 +777,8 @@ private void negotiate(final ProgressMonitor monitor) throws IOException,
 					// our local history.
 					//
 					markCommon(walk.parseAny(ackId), anr);
+					if (skipper != null)
+						skipper.acknowledged();
 					receivedAck = true;
 					receivedContinue = true;
 					havesSinceLastContinue = 0;
@@ -659,7 +818,13 @@ private void negotiate(final ProgressMonitor monitor) throws IOException,
 			//
 			pckOut.writeString("done\n"); //$NON-NLS-1$
 			pckOut.flush();
+			negotiationRounds++;
+			if (deepen && statelessRPC)
+				receiveShallowUpdate();
 		}
+		haveLines += havesSent;
+		if (skipper != null)
+			skippedHaves += skipper.getSkipped();
 
 		if (!receivedAck) {
 			// Apparently if we have never received an ACK earlier
@@ -767,11 +932,17 @@ private void markCommon(final RevObject obj, final AckNackResult anr)
 	private void receivePack(final ProgressMonitor monitor,
 			OutputStream outputStream) throws IOException {
 		onReceivePack();
+		String resumeLine = resumePack ? pckIn.readString() : null;
 		InputStream input = in;
 		if (sideband)
 			input = new SideBandInputStream(input, monitor, getMessageWriter(),
 					outputStream);
 
+		PartialPack.Receiver receiver = null;
+		if (resumeLine != null) {
+			receiver = receiveResumable(resumeLine, input);
+			input = receiver;
+		}
 		try (ObjectInserter ins = local.newObjectInserter()) {
 			PackParser parser = ins.newPackParser(input);
 			parser.setAllowThin(thinPack);
@@ -779,9 +950,55 @@ private void receivePack(final ProgressMonitor monitor,
 			parser.setLockMessage(lockMessage);
 			packLock = parser.parse(monitor);
 			ins.flush();
+		} catch (IOException | RuntimeException err) {
+			if (receiver != null)
+				abortResumable(receiver);
+			throw err;
+		}
+		if (receiver != null) {
+			receiver.close();
+			partialPack.delete();
 		}
 	}
 
+	private PartialPack.Receiver receiveResumable(String line,
+			InputStream input) throws IOException {
+		// resume-pack <key> <start>
+		String[] args = line.split(" "); //$NON-NLS-1$
+		if (args.length == 3 && args[0].equals(OPTION_RESUME_PACK)
+				&& ObjectId.isId(args[1])) {
+			try {
+				long start = Long.parseLong(args[2]);
+				if (0 <= start)
+					return partialPack.receive(args[1], start, input);
+			} catch (NumberFormatException e) {
+				// Reported below.
+			}
+		}
+		throw new PackProtocolException(uri, MessageFormat
+				.format(JGitText.get().invalidResumePack, line));
+	}
+
+	private void abortResumable(PartialPack.Receiver receiver) {
+		try {
+			receiver.close();
+			if (receiver.isInterrupted() && 0 < receiver.getSaved())
+				packResumable = true;
+			else
+				partialPack.delete();
+		} catch (IOException e) {
+			// Keep the original failure.
+		}
+	}
+
+	/**
+	 * @return true if the pack transfer was interrupted after receiving data
+	 *         that a new fetch of the same objects can resume from.
+	 */
+	boolean isPackResumable() {
+		return packResumable;
+	}
+
 	/**
 	 * Notification event delivered just before the pack is received from the
 	 * network. This event can be used by RPC such as {@link TransportHttp} to
@@ -45,17 +45,20 @@
 package org.eclipse.jgit.transport;
 
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_ATOMIC;
+import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_PUSH_NEGOTIATE;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.NoRemoteRepositoryException;
 import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.PackProtocolException;
@@ -67,6 +70,10 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
 
 /**
@@ -120,8 +127,15 @@ public abstract class BasePackPushConnection extends BasePackConnection implemen
 	 */
 	public static final String CAPABILITY_PUSH_OPTIONS = GitProtocolConstants.CAPABILITY_PUSH_OPTIONS;
 
+	/** Maximum number of have lines sent while negotiating a push. */
+	private static final int MAX_HAVES = 256;
+
+	/** Number of have lines sent in the first round of negotiation. */
+	private static final int FIRST_HAVES = 16;
+
 	private final boolean thinPack;
 	private final boolean atomic;
+	private final boolean negotiate;
 
 	/** A list of option strings associated with this push. */
 	private List<String> pushOptions;
@@ -136,6 +150,9 @@ public abstract class BasePackPushConnection extends BasePackConnection implemen
 	private boolean sentCommand;
 	private boolean writePack;
 
+	/** Commits the remote acknowledged while negotiating the push. */
+	private final Set<ObjectId> commonCommits = new HashSet<>();
+
 	/** Time in milliseconds spent transferring the pack data. */
 	private long packTransferTime;
 
@@ -149,6 +166,7 @@ public BasePackPushConnection(final PackTransport packTransport) {
 		super(packTransport);
 		thinPack = transport.isPushThin();
 		atomic = transport.isPushAtomic();
+		negotiate = transport.isPushNegotiate();
 		pushOptions = transport.getPushOptions();
 	}
 
@@ -210,6 +228,11 @@ protected void doPush(final ProgressMonitor monitor,
 			final Map<String, RemoteRefUpdate> refUpdates,
 			OutputStream outputStream) throws TransportException {
 		try {
+			// A smart HTTP push sends commands and pack in one request,
+			// there is no response to wait for before the commands.
+			if (negotiate && !statelessRPC
+					&& isCapableOf(CAPABILITY_PUSH_NEGOTIATE))
+				negotiate(refUpdates.values(), monitor);
 			writeCommands(refUpdates.values(), monitor, outputStream);
 
 			if (pushOptions != null && capablePushOptions)
@@ -241,6 +264,89 @@ protected void doPush(final ProgressMonitor monitor,
 		}
 	}
 
+	/**
+	 * Find commits of the pushed history the remote already has.
+	 * <p>
+	 * Commits not reachable from the advertised refs are offered in rounds of
+	 * growing size, newest first. The history of every commit the remote
+	 * acknowledges is excluded from later rounds and from the pack.
+	 */
+	private void negotiate(Collection<RemoteRefUpdate> refUpdates,
+			ProgressMonitor monitor) throws IOException {
+		try (RevWalk rw = new RevWalk(local)) {
+			List<RevCommit> tips = new ArrayList<>();
+			for (RemoteRefUpdate rru : refUpdates) {
+				if (rru.isDelete())
+					continue;
+				RevObject o = rw.peel(rw.parseAny(rru.getNewObjectId()));
+				if (o instanceof RevCommit)
+					tips.add((RevCommit) o);
+			}
+			if (tips.isEmpty())
+				return;
+
+			List<RevCommit> common = new ArrayList<>();
+			for (Ref r : getRefs())
+				addCommon(rw, common, r.getObjectId());
+			for (ObjectId id : additionalHaves)
+				addCommon(rw, common, id);
+
+			RevFlag sent = rw.newFlag("SENT"); //$NON-NLS-1$
+			int haves = 0;
+			int batch = FIRST_HAVES;
+			while (haves < MAX_HAVES) {
+				rw.resetRetain(sent);
+				for (RevCommit c : tips)
+					rw.markStart(c);
+				for (RevCommit c : common)
+					rw.markUninteresting(c);
+
+				int n = 0;
+				RevCommit c;
+				while (n < batch && haves + n < MAX_HAVES
+						&& (c = rw.next()) != null) {
+					if (c.has(sent))
+						continue;
+					c.add(sent);
+					pckOut.writeString("have " + c.name() + '\n'); //$NON-NLS-1$
+					n++;
+				}
+				if (n == 0)
+					break;
+				pckOut.end();
+				haves += n;
+
+				String line;
+				while ((line = pckIn.readString()) != PacketLineIn.END) {
+					if (!line.startsWith("ACK ")) //$NON-NLS-1$
+						throw new PackProtocolException(uri, MessageFormat
+								.format(JGitText.get().expectedGot, "ACK", //$NON-NLS-1$
+										line));
+					c = rw.parseCommit(ObjectId.fromString(line.substring(4)));
+					common.add(c);
+					commonCommits.add(c.copy());
+				}
+				if (monitor.isCancelled())
+					throw new TransportException(uri,
+							JGitText.get().pushCancelled);
+				batch *= 2;
+			}
+		}
+	}
+
+	private void addCommon(RevWalk rw, List<RevCommit> common, ObjectId id)
+			throws IOException {
+		if (!local.hasObject(id))
+			return;
+		try {
+			RevObject o = rw.peel(rw.parseAny(id));
+			if (o instanceof RevCommit)
+				common.add((RevCommit) o);
+		} catch (MissingObjectException notFound) {
+			// An annotated tag of an object we do not have.
+		}
+	}
+
 	private void writeCommands(final Collection<RemoteRefUpdate> refUpdates,
 			final ProgressMonitor monitor, OutputStream outputStream) throws IOException {
 		final String capabilities = enableCapabilities(monitor, outputStream);
@@ -341,6 +447,7 @@ private void writePack(final Map<String, RemoteRefUpdate> refUpdates,
 					remoteObjects.add(oid);
 			}
 			remoteObjects.addAll(additionalHaves);
+			remoteObjects.addAll(commonCommits);
 			for (final RemoteRefUpdate r : refUpdates.values()) {
 				if (!ObjectId.zeroId().equals(r.getNewObjectId()))
 					newObjects.add(r.getNewObjectId());
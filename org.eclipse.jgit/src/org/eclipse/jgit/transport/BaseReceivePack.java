@@ -46,6 +46,7 @@
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_ATOMIC;
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_DELETE_REFS;
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_OFS_DELTA;
+import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_PUSH_NEGOTIATE;
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_PUSH_OPTIONS;
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_QUIET;
 import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_REPORT_STATUS;
@@ -70,13 +71,19 @@
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.InvalidObjectIdException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.PackProtocolException;
 import org.eclipse.jgit.errors.TooLargePackException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.file.PackLock;
+import org.eclipse.jgit.internal.storage.pack.PackWriterBitmapWalker;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Config.SectionParser;
 import org.eclipse.jgit.lib.Constants;
@@ -85,6 +92,7 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdSubclassMap;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
@@ -95,8 +103,10 @@
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.ObjectFilter;
 import org.eclipse.jgit.transport.PacketLineIn.InputOverLimitIOException;
 import org.eclipse.jgit.transport.ReceiveCommand.Result;
 import org.eclipse.jgit.util.io.InterruptTimer;
@@ -112,6 +122,12 @@
  * Subclasses compose these operations into full service implementations.
  */
 public abstract class BaseReceivePack {
+	/**
+	 * Maximum number of {@code have} lines accepted while negotiating a push;
+	 * four times what {@link BasePackPushConnection} sends.
+	 */
+	private static final int MAX_NEGOTIATE_HAVES = 1024;
+
 	/** Data in the first line of a request, the line itself plus capabilities. */
 	public static class FirstLine {
 		private final String line;
@@ -152,6 +168,9 @@ public Set<String> getCapabilities() {
 	/** Revision traversal support over {@link #db}. */
 	private final RevWalk walk;
 
+	/** Reader of {@link #walk}; also reads quarantined objects. */
+	private ObjectReader walkReader;
+
 	/**
 	 * Is the client connection a bi-directional socket or pipe?
 	 * <p>
@@ -184,6 +203,12 @@ public Set<String> getCapabilities() {
 	/** Should an incoming transfer permit push options? **/
 	private boolean allowPushOptions;
 
+	/** Should the client be allowed to negotiate common commits? */
+	private boolean allowPushNegotiate;
+
+	/** May negotiation acknowledge commits only hidden refs reach? */
+	private boolean pushNegotiateAnyCommit;
+
 	/**
 	 * Should the requested ref updates be performed as a single atomic
 	 * transaction?
@@ -240,6 +265,12 @@ public Set<String> getCapabilities() {
 	/** All SHA-1s shown to the client, which can be possible edges. */
 	private Set<ObjectId> advertisedHaves;
 
+	/** Commits acknowledged to the client while negotiating the push. */
+	private Set<ObjectId> negotiatedHaves;
+
+	/** Number of {@code have} lines read while negotiating the push. */
+	private int negotiateHaveLines;
+
 	/** Capabilities requested by the client. */
 	private Set<String> enabledCapabilities;
 	String userAgent;
@@ -255,6 +286,12 @@ public Set<String> getCapabilities() {
 
 	private boolean quiet;
 
+	/** Should received objects be quarantined? */
+	private boolean quarantine;
+
+	/** Received objects not yet moved into the repository. */
+	private PackQuarantine packQuarantine;
+
 	/** Lock around the received pack file, while updating refs. */
 	private PackLock packLock;
 
@@ -309,7 +346,13 @@ public void setPushCertificate(PushCertificate cert) {
 	 */
 	protected BaseReceivePack(final Repository into) {
 		db = into;
-		walk = new RevWalk(db);
+		walkReader = db.newObjectReader();
+		walk = new RevWalk(new ObjectReader.Filter() {
+			@Override
+			protected ObjectReader delegate() {
+				return walkReader;
+			}
+		});
 
 		TransferConfig tc = db.getConfig().get(TransferConfig.KEY);
 		objectChecker = tc.newReceiveObjectChecker();
@@ -321,11 +364,14 @@ protected BaseReceivePack(final Repository into) {
 		allowNonFastForwards = rc.allowNonFastForwards;
 		allowOfsDelta = rc.allowOfsDelta;
 		allowPushOptions = rc.allowPushOptions;
+		allowPushNegotiate = rc.allowPushNegotiate;
+		pushNegotiateAnyCommit = rc.pushNegotiateAnyCommit;
 		maxCommandBytes = rc.maxCommandBytes;
 		maxDiscardBytes = rc.maxDiscardBytes;
 		advertiseRefsHook = AdvertiseRefsHook.DEFAULT;
 		refFilter = RefFilter.DEFAULT;
 		advertisedHaves = new HashSet<>();
+		negotiatedHaves = new HashSet<>();
 		clientShallowCommits = new HashSet<>();
 		signedPushConfig = rc.signedPush;
 	}
@@ -344,6 +390,8 @@ public ReceiveConfig parse(final Config cfg) {
 		final boolean allowNonFastForwards;
 		final boolean allowOfsDelta;
 		final boolean allowPushOptions;
+		final boolean allowPushNegotiate;
+		final boolean pushNegotiateAnyCommit;
 		final long maxCommandBytes;
 		final long maxDiscardBytes;
 		final SignedPushConfig signedPush;
@@ -357,6 +405,10 @@ public ReceiveConfig parse(final Config cfg) {
 					true);
 			allowPushOptions = config.getBoolean("receive", "pushoptions", //$NON-NLS-1$ //$NON-NLS-2$
 					false);
+			allowPushNegotiate = config.getBoolean("receive", //$NON-NLS-1$
+					"advertisePushNegotiate", false); //$NON-NLS-1$
+			pushNegotiateAnyCommit = config.getBoolean("receive", //$NON-NLS-1$
+					"pushNegotiateAnyCommit", false); //$NON-NLS-1$
 			maxCommandBytes = config.getLong("receive", //$NON-NLS-1$
 					"maxCommandBytes", //$NON-NLS-1$
 					3 << 20);
@@ -514,6 +566,33 @@ public void setCheckReferencedObjectsAreReachable(boolean b) {
 		this.checkReferencedIsReachable = b;
 	}
 
+	/**
+	 * @return true if received objects are kept out of the repository until
+	 *         the pre-receive hook accepted the commands.
+	 * @since 4.8
+	 */
+	public boolean isQuarantine() {
+		return quarantine;
+	}
+
+	/**
+	 * Keep received objects out of the repository until they are accepted.
+	 * <p>
+	 * If enabled and supported by the repository, the received pack is held
+	 * in a quarantine while connectivity is checked and the pre-receive hook
+	 * runs. The objects are moved into the repository only if at least one
+	 * command remains to be executed afterwards, otherwise they are deleted.
+	 * Hooks must read the received objects through {@link #getRevWalk()};
+	 * they are not visible through {@link #getRepository()} until accepted.
+	 *
+	 * @param q
+	 *            {@code true} to quarantine received objects.
+	 * @since 4.8
+	 */
+	public void setQuarantine(boolean q) {
+		quarantine = q;
+	}
+
 	/**
 	 * @return true if this class expects a bi-directional pipe opened between
 	 *         the client and itself. The default is true.
@@ -860,6 +939,85 @@ public void setAllowPushOptions(boolean allow) {
 		allowPushOptions = allow;
 	}
 
+	/**
+	 * @return true if clients may ask which commits the server has before
+	 *         pushing.
+	 * @since 4.8
+	 */
+	public boolean isAllowPushNegotiate() {
+		return allowPushNegotiate;
+	}
+
+	/**
+	 * Configure if clients may negotiate common commits before pushing.
+	 * <p>
+	 * A negotiating client sends {@code have} lines ahead of its commands,
+	 * and the server acknowledges every commit found in its object database,
+	 * even if no advertised ref points to it. The client then omits the
+	 * history of those commits from the pack. At most 1024 {@code have}
+	 * lines are accepted.
+	 * <p>
+	 * If an {@link AdvertiseRefsHook} or {@link RefFilter} hides refs from
+	 * the client, only commits reachable from the advertised refs are
+	 * acknowledged, unless {@link #setPushNegotiateAnyCommit(boolean)} is
+	 * set. Negotiation is never offered if
+	 * {@link #isCheckReferencedObjectsAreReachable()} is set, or over a
+	 * stateless connection. When received objects are checked, the history
+	 * of an acknowledged commit is only trusted if a bitmap covers it;
+	 * without bitmaps the connectivity check walks that whole history.
+	 * <p>
+	 * Defaults to {@code receive.advertisePushNegotiate}, false if not
+	 * configured.
+	 *
+	 * @param allow
+	 *            true to answer {@code have} lines sent before the commands.
+	 * @since 4.8
+	 */
+	public void setAllowPushNegotiate(boolean allow) {
+		allowPushNegotiate = allow;
+	}
+
+	/**
+	 * @return true if negotiation acknowledges every commit of the
+	 *         repository, even if only refs hidden from the client reach it.
+	 * @since 4.8
+	 */
+	public boolean isPushNegotiateAnyCommit() {
+		return pushNegotiateAnyCommit;
+	}
+
+	/**
+	 * Configure which commits negotiation acknowledges if refs are hidden.
+	 * <p>
+	 * Acknowledging any commit lets a client probe for commits behind refs
+	 * an {@link AdvertiseRefsHook} or {@link RefFilter} hides from it, but
+	 * also lets it skip history shared with such refs, for example with
+	 * other forks of the repository. Without hidden refs every commit is
+	 * acknowledged regardless of this setting.
+	 * <p>
+	 * Defaults to {@code receive.pushNegotiateAnyCommit}, false if not
+	 * configured.
+	 *
+	 * @param any
+	 *            true to acknowledge every commit found in the repository;
+	 *            false to acknowledge only commits reachable from the
+	 *            advertised refs while refs are hidden.
+	 * @since 4.8
+	 */
+	public void setPushNegotiateAnyCommit(boolean any) {
+		pushNegotiateAnyCommit = any;
+	}
+
+	private boolean canNegotiate() {
+		return allowPushNegotiate && biDirectionalPipe
+				&& !checkReferencedIsReachable;
+	}
+
+	private boolean hidesRefs() {
+		return advertiseRefsHook != AdvertiseRefsHook.DEFAULT
+				|| refFilter != RefFilter.DEFAULT;
+	}
+
 	/**
 	 * True if the client wants less verbose output.
 	 *
@@ -1086,13 +1244,64 @@ protected void receivePackAndCheckConnectivity() throws IOException {
 		parser = null;
 	}
 
+	/**
+	 * Move quarantined objects into the repository.
+	 * <p>
+	 * Invoked after the pre-receive hook, before the commands are executed. If
+	 * no command remains to be executed the objects are discarded instead. If
+	 * the objects cannot be moved all remaining commands are rejected. Does
+	 * nothing if the received objects were not quarantined.
+	 *
+	 * @since 4.8
+	 */
+	protected void commitQuarantine() {
+		if (packQuarantine == null)
+			return;
+		List<ReceiveCommand> toApply = filterCommands(Result.NOT_ATTEMPTED);
+		if (toApply.isEmpty()) {
+			discardQuarantine();
+			return;
+		}
+
+		PackQuarantine q = packQuarantine;
+		packQuarantine = null;
+		try {
+			resetWalkReader();
+			packLock = q.commit();
+		} catch (IOException err) {
+			for (ReceiveCommand cmd : toApply)
+				cmd.reject(err);
+		} finally {
+			q.close();
+		}
+	}
+
+	private void discardQuarantine() {
+		if (packQuarantine != null) {
+			try {
+				resetWalkReader();
+			} finally {
+				packQuarantine.close();
+				packQuarantine = null;
+			}
+		}
+	}
+
+	private void resetWalkReader() {
+		walkReader.close();
+		walkReader = db.newObjectReader();
+	}
+
 	/**
 	 * Unlock the pack written by this object.
+	 * <p>
+	 * Objects still held in quarantine are discarded.
 	 *
 	 * @throws IOException
 	 *             the pack could not be unlocked.
 	 */
 	protected void unlockPack() throws IOException {
+		discardQuarantine();
 		if (packLock != null) {
 			packLock.unlock();
 			packLock = null;
@@ -1143,6 +1352,8 @@ public void sendAdvertisedRefs(final RefAdvertiser adv)
 		if (allowPushOptions) {
 			adv.advertiseCapability(CAPABILITY_PUSH_OPTIONS);
 		}
+		if (canNegotiate())
+			adv.advertiseCapability(CAPABILITY_PUSH_NEGOTIATE);
 		adv.advertiseCapability(OPTION_AGENT, UserAgent.get());
 		adv.send(getAdvertisedOrDefaultRefs());
 		for (ObjectId obj : advertisedHaves)
@@ -1194,6 +1405,11 @@ protected void recvCommands() throws IOException {
 					continue;
 				}
 
+				if (firstPkt && line.startsWith("have ") && canNegotiate()) { //$NON-NLS-1$
+					negotiate(pck, line);
+					continue;
+				}
+
 				if (firstPkt) {
 					firstPkt = false;
 					FirstLine firstLine = new FirstLine(line);
@@ -1253,6 +1469,82 @@ private void discardCommands() {
 		}
 	}
 
+	/**
+	 * Answer one round of {@code have} lines sent before the commands.
+	 * <p>
+	 * Every commit the repository has is acknowledged, whether or not it is
+	 * reachable from an advertised ref, unless refs are hidden from the
+	 * client and {@link #isPushNegotiateAnyCommit()} is not set.
+	 */
+	private void negotiate(PacketLineIn in, String line) throws IOException {
+		ObjectReader reader = walk.getObjectReader();
+		List<ObjectId> found = new ArrayList<>();
+		do {
+			if (MAX_NEGOTIATE_HAVES < ++negotiateHaveLines)
+				throw new PackProtocolException(MessageFormat.format(
+						JGitText.get().tooManyHaveLines,
+						Integer.valueOf(MAX_NEGOTIATE_HAVES)));
+			if (line.length() != 45 || !line.startsWith("have ")) //$NON-NLS-1$
+				throw new PackProtocolException(MessageFormat.format(
+						JGitText.get().expectedGot, "have", line)); //$NON-NLS-1$
+			ObjectId id;
+			try {
+				id = ObjectId.fromString(line.substring(5));
+			} catch (InvalidObjectIdException e) {
+				throw new PackProtocolException(e.getMessage(), e);
+			}
+			if (reader.has(id))
+				found.add(id);
+		} while ((line = in.readString()) != PacketLineIn.END);
+
+		if (!pushNegotiateAnyCommit && hidesRefs())
+			found = reachableFromAdvertised(found);
+		for (ObjectId id : found) {
+			negotiatedHaves.add(id);
+			pckOut.writeString("ACK " + id.name() + '\n'); //$NON-NLS-1$
+		}
+		pckOut.end();
+	}
+
+	/**
+	 * Select the commits reachable from the advertised refs.
+	 * <p>
+	 * Like the reachability check of {@link UploadPack}, walks the commits
+	 * back to the advertised ones; every commit the walk returns is not
+	 * reachable from them.
+	 */
+	private List<ObjectId> reachableFromAdvertised(List<ObjectId> haves)
+			throws IOException {
+		List<ObjectId> reachable = new ArrayList<>(haves.size());
+		try (RevWalk rw = new RevWalk(walk.getObjectReader())) {
+			rw.setRetainBody(false);
+			List<RevCommit> starts = new ArrayList<>(haves.size());
+			for (ObjectId id : haves) {
+				RevObject o = rw.parseAny(id);
+				if (o instanceof RevCommit) {
+					rw.markStart((RevCommit) o);
+					starts.add((RevCommit) o);
+				}
+			}
+			for (ObjectId id : advertisedHaves) {
+				try {
+					rw.markUninteresting(rw.parseCommit(id));
+				} catch (IncorrectObjectTypeException notCommit) {
+					continue;
+				}
+			}
+			RevFlag unreachable = rw.newFlag("UNREACHABLE"); //$NON-NLS-1$
+			RevCommit c;
+			while ((c = rw.next()) != null)
+				c.add(unreachable);
+			for (RevCommit start : starts) {
+				if (!start.has(unreachable))
+					reachable.add(start);
+			}
+		}
+		return reachable;
+	}
+
 	private void parseShallow(String idStr) throws PackProtocolException {
 		ObjectId id;
 		try {
@@ -1363,8 +1655,11 @@ private void receivePack() throws IOException {
 
 			parser = ins.newPackParser(packInputStream());
 			parser.setAllowThin(true);
-			parser.setNeedNewObjectIds(checkReferencedIsReachable);
+			parser.setNeedNewObjectIds(needCheckConnectivity());
 			parser.setNeedBaseObjectIds(checkReferencedIsReachable);
+			parser.setNeedReferencedObjectIds(needCheckConnectivity()
+					&& !checkReferencedIsReachable);
+			parser.setQuarantine(quarantine);
 			parser.setCheckEofAfterPackFooter(!biDirectionalPipe
 					&& !isExpectDataAfterPackFooter());
 			parser.setExpectDataAfterPackFooter(isExpectDataAfterPackFooter());
@@ -1377,6 +1672,13 @@ private void receivePack() throws IOException {
 			ins.flush();
 		}
 
+		packQuarantine = parser.getQuarantine();
+		if (packQuarantine != null) {
+			ObjectReader reader = packQuarantine.newReader();
+			walkReader.close();
+			walkReader = reader;
+		}
+
 		if (timeoutIn != null)
 			timeoutIn.setTimeout(timeout * 1000);
 	}
@@ -1403,6 +1705,9 @@ private boolean needCheckConnectivity() {
 	private void checkConnectivity() throws IOException {
 		ObjectIdSubclassMap<ObjectId> baseObjects = null;
 		ObjectIdSubclassMap<ObjectId> providedObjects = null;
+		ObjectIdSubclassMap<ObjectId> newObjects = parser.getNewObjectIds();
+		ObjectIdSubclassMap<ObjectId> referencedObjects = parser
+				.getReferencedObjectIds();
 		ProgressMonitor checking = NullProgressMonitor.INSTANCE;
 		if (sideBand && !quiet) {
 			SideBandProgressMonitor m = new SideBandProgressMonitor(msgOut);
@@ -1416,7 +1721,41 @@ private void checkConnectivity() throws IOException {
 		}
 		parser = null;
 
-		try (final ObjectWalk ow = new ObjectWalk(db)) {
+		BitmapBuilder reachable = null;
+		List<ObjectId> havesWithoutBitmap = null;
+		if (baseObjects == null) {
+			try (ObjectReader reader = db.newObjectReader();
+					ObjectWalk bw = new ObjectWalk(reader)) {
+				BitmapIndex bitmapIndex = reader.getBitmapIndex();
+				if (bitmapIndex != null) {
+					// Refs updated since the last repack are walked to their
+					// nearest ancestors with a bitmap.
+					reachable = new PackWriterBitmapWalker(bw, bitmapIndex,
+							null).findObjects(advertisedHaves, null, true);
+					havesWithoutBitmap = new ArrayList<>();
+					for (ObjectId have : advertisedHaves) {
+						if (!reachable.contains(have))
+							havesWithoutBitmap.add(have);
+					}
+					for (ObjectId have : negotiatedHaves) {
+						// The history of a negotiated commit is only trusted
+						// if a bitmap proves it complete; the bitmap walk
+						// does not check that blobs exist.
+						if (reachable.contains(have))
+							continue;
+						Bitmap bitmap = bitmapIndex.getBitmap(have);
+						if (bitmap != null)
+							reachable.or(bitmap);
+					}
+				}
+			}
+			if (reachable != null
+					&& isConnected(reachable, newObjects, referencedObjects))
+				return;
+		}
+
+		try (ObjectReader reader = walk.getObjectReader().newReader();
+				ObjectWalk ow = new ObjectWalk(reader)) {
 			if (baseObjects != null) {
 				ow.sort(RevSort.TOPO);
 				if (!baseObjects.isEmpty())
@@ -1430,16 +1769,22 @@ private void checkConnectivity() throws IOException {
 					continue;
 				ow.markStart(ow.parseAny(cmd.getNewId()));
 			}
-			for (final ObjectId have : advertisedHaves) {
-				RevObject o = ow.parseAny(have);
-				ow.markUninteresting(o);
-
-				if (baseObjects != null && !baseObjects.isEmpty()) {
-					o = ow.peel(o);
-					if (o instanceof RevCommit)
-						o = ((RevCommit) o).getTree();
-					if (o instanceof RevTree)
-						ow.markUninteresting(o);
+
+			if (reachable != null) {
+				markReachableWithBitmaps(ow, reachable, havesWithoutBitmap,
+						newObjects);
+			} else {
+				for (final ObjectId have : advertisedHaves) {
+					RevObject o = ow.parseAny(have);
+					ow.markUninteresting(o);
+
+					if (baseObjects != null && !baseObjects.isEmpty()) {
+						o = ow.peel(o);
+						if (o instanceof RevCommit)
+							o = ((RevCommit) o).getTree();
+						if (o instanceof RevTree)
+							ow.markUninteresting(o);
+					}
 				}
 			}
 
@@ -1467,7 +1812,7 @@ private void checkConnectivity() throws IOException {
 						throw new MissingObjectException(o, o.getType());
 				}
 
-				if (o instanceof RevBlob && !db.hasObject(o))
+				if (o instanceof RevBlob && !reader.has(o))
 					throw new MissingObjectException(o, Constants.TYPE_BLOB);
 			}
 			checking.endTask();
@@ -1482,6 +1827,105 @@ private void checkConnectivity() throws IOException {
 		}
 	}
 
+	/**
+	 * Check connectivity from what the pack parser recorded, without a walk.
+	 * <p>
+	 * Every object the received commits, trees and tags point to is either in
+	 * the pack, or must be proven reachable from an advertised ref by the
+	 * bitmaps. The same holds for the new values of the commands.
+	 *
+	 * @param reachable
+	 *            objects reachable from the advertised refs.
+	 * @param newObjects
+	 *            objects received in the pack.
+	 * @param referencedObjects
+	 *            objects referenced by the pack but not contained in it.
+	 * @return true if the pack is connected; false if a walk is needed to
+	 *         decide.
+	 */
+	private boolean isConnected(BitmapBuilder reachable,
+			ObjectIdSubclassMap<ObjectId> newObjects,
+			ObjectIdSubclassMap<ObjectId> referencedObjects) {
+		for (ObjectId id : referencedObjects) {
+			if (!reachable.contains(id) && !advertisedHaves.contains(id))
+				return false;
+		}
+		for (ReceiveCommand cmd : commands) {
+			if (cmd.getResult() != Result.NOT_ATTEMPTED)
+				continue;
+			if (cmd.getType() == ReceiveCommand.Type.DELETE)
+				continue;
+			ObjectId id = cmd.getNewId();
+			if (!newObjects.contains(id) && !reachable.contains(id)
+					&& !advertisedHaves.contains(id))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Limit the connectivity walk to the objects received in the pack.
+	 * <p>
+	 * Old objects referenced by the new commits, tags and commands that are
+	 * found in the bitmap of reachable objects end the walk, and trees or
+	 * blobs in it are never entered. Advertised objects the bitmap walk could
+	 * not cover, because an object reachable from them is missing, are marked
+	 * uninteresting as usual, so they are still checked by the full walk.
+	 *
+	 * @param ow
+	 *            walk that will check connectivity; must not be started.
+	 * @param reachable
+	 *            objects reachable from the advertised refs.
+	 * @param havesWithoutBitmap
+	 *            advertised objects not covered by {@code reachable}.
+	 * @param newObjects
+	 *            objects received in the pack.
+	 * @throws IOException
+	 *             an object could not be read.
+	 */
+	private void markReachableWithBitmaps(ObjectWalk ow,
+			final BitmapBuilder reachable, List<ObjectId> havesWithoutBitmap,
+			final ObjectIdSubclassMap<ObjectId> newObjects)
+			throws IOException {
+		for (ObjectId have : havesWithoutBitmap)
+			ow.markUninteresting(ow.parseAny(have));
+
+		for (ObjectId id : newObjects) {
+			int type = ((PackedObjectInfo) id).getType();
+			if (type == Constants.OBJ_COMMIT) {
+				for (RevCommit p : ow.parseCommit(id).getParents())
+					markBoundary(ow, reachable, newObjects, p);
+			} else if (type == Constants.OBJ_TAG) {
+				markBoundary(ow, reachable, newObjects,
+						ow.parseTag(id).getObject());
+			}
+		}
+		for (ReceiveCommand cmd : commands) {
+			if (cmd.getResult() != Result.NOT_ATTEMPTED)
+				continue;
+			if (cmd.getType() == ReceiveCommand.Type.DELETE)
+				continue;
+			markBoundary(ow, reachable, newObjects,
+					ow.parseAny(cmd.getNewId()));
+		}
+
+		ow.setObjectFilter(new ObjectFilter() {
+			@Override
+			public boolean include(ObjectWalk walker, AnyObjectId o) {
+				return newObjects.contains(o) || !reachable.contains(o);
+			}
+		});
+	}
+
+	private static void markBoundary(ObjectWalk ow, BitmapBuilder reachable,
+			ObjectIdSubclassMap<ObjectId> newObjects, RevObject o)
+			throws IOException {
+		if (newObjects.contains(o) || !reachable.contains(o))
+			return;
+		if (o instanceof RevCommit || o instanceof RevTag)
+			ow.markUninteresting(o);
+	}
+
 	/** Validate the command list. */
 	protected void validateCommands() {
 		for (final ReceiveCommand cmd : commands) {
@@ -1815,6 +2259,7 @@ protected void close() throws IOException {
 	protected void release() throws IOException {
 		walk.close();
 		unlockPack();
+		walkReader.close();
 		timeoutIn = null;
 		rawIn = null;
 		rawOut = null;
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.eclipse.jgit.util.HttpSupport.HDR_CONTENT_RANGE;
+import static org.eclipse.jgit.util.HttpSupport.HDR_ETAG;
+import static org.eclipse.jgit.util.HttpSupport.HDR_IF_RANGE;
+import static org.eclipse.jgit.util.HttpSupport.HDR_LAST_MODIFIED;
+import static org.eclipse.jgit.util.HttpSupport.HDR_RANGE;
+import static org.eclipse.jgit.util.HttpSupport.HDR_USER_AGENT;
+import static org.eclipse.jgit.util.HttpSupport.METHOD_GET;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.Collections;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.HttpSupport;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Fetches the content of a bundle advertised through the {@code bundle-uri}
+ * capability into the local repository.
+ * <p>
+ * Bundles on the local file system are read in place. Bundles served over
+ * HTTP are downloaded into a partial file below the repository directory
+ * first. If the download is interrupted it is resumed with a {@code Range}
+ * request, both by the retries of this instance and by a later fetch of the
+ * same URI. The {@code ETag} or {@code Last-Modified} header of the response
+ * is kept next to the partial file and sent as {@code If-Range}, so a bundle
+ * replaced on the server is downloaded again from the start.
+ */
+class BundleUriFetch {
+	/** Namespace the refs of fetched bundles are stored under. */
+	static final String R_BUNDLES = "refs/bundles/"; //$NON-NLS-1$
+
+	private static final RefSpec SPEC = new RefSpec(
+			"+" + Constants.R_REFS + "*:" + R_BUNDLES + "*"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private final Transport transport;
+
+	private final Repository local;
+
+	BundleUriFetch(Transport transport) {
+		this.transport = transport;
+		this.local = transport.local;
+	}
+
+	/**
+	 * Fetch all refs of one bundle into {@link #R_BUNDLES}.
+	 *
+	 * @param monitor
+	 *            progress of the download and of indexing the bundle.
+	 * @param location
+	 *            URI of the bundle.
+	 * @param allowLocal
+	 *            true if the bundle may be on the local file system. Only
+	 *            bundles configured locally may be; URIs advertised by the
+	 *            remote must not make the client read arbitrary local files.
+	 * @throws IOException
+	 *             the bundle cannot be downloaded or is not a valid bundle.
+	 */
+	void fetch(ProgressMonitor monitor, String location, boolean allowLocal)
+			throws IOException {
+		URIish uri;
+		try {
+			uri = new URIish(location);
+		} catch (URISyntaxException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+
+		String scheme = uri.getScheme();
+		if (allowLocal && (scheme == null || "file".equals(scheme))) { //$NON-NLS-1$
+			unbundle(monitor, uri, new File(uri.getPath()));
+		} else if ("http".equals(scheme) || "https".equals(scheme)) { //$NON-NLS-1$ //$NON-NLS-2$
+			File part = partialFile(location);
+			File validator = new File(part.getPath() + ".validator"); //$NON-NLS-1$
+			boolean keep = false;
+			try {
+				download(monitor, new URL(location), part, validator);
+				unbundle(monitor, uri, part);
+			} catch (DownloadException e) {
+				// Keep an incomplete download to resume it later on.
+				keep = local.getDirectory() != null;
+				throw e;
+			} finally {
+				if (!keep) {
+					FileUtils.delete(part, FileUtils.SKIP_MISSING);
+					FileUtils.delete(validator, FileUtils.SKIP_MISSING);
+				}
+			}
+		} else {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().URINotSupported, location));
+		}
+	}
+
+	private File partialFile(String location) throws IOException {
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(Constants.encode(location));
+		String name = ObjectId.fromRaw(md.digest()).name() + ".bundle.part"; //$NON-NLS-1$
+
+		File gitDir = local.getDirectory();
+		if (gitDir == null)
+			return File.createTempFile("jgit_", name); //$NON-NLS-1$
+		File dir = new File(gitDir, "bundles"); //$NON-NLS-1$
+		FileUtils.mkdirs(dir, true);
+		return new File(dir, name);
+	}
+
+	private void download(ProgressMonitor monitor, URL url, File part,
+			File validator) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			String ifRange = readValidator(validator);
+			// Without a validator a changed bundle cannot be detected.
+			long offset = ifRange != null ? part.length() : 0;
+			try {
+				downloadFrom(monitor, url, part, offset, ifRange, validator);
+				return;
+			} catch (IOException e) {
+				// Retry as long as each attempt makes progress.
+				if (MAX_ATTEMPTS <= attempt || part.length() == offset)
+					throw new DownloadException(e);
+			}
+		}
+	}
+
+	private void downloadFrom(ProgressMonitor monitor, URL url, File part,
+			long offset, String ifRange, File validator) throws IOException {
+		Proxy proxy = HttpSupport.proxyFor(ProxySelector.getDefault(), url);
+		HttpConnection c = HttpTransport.getConnectionFactory().create(url,
+				proxy);
+		c.setRequestMethod(METHOD_GET);
+		c.setUseCaches(false);
+		c.setInstanceFollowRedirects(true);
+		c.setRequestProperty(HDR_USER_AGENT, UserAgent.get());
+		int timeout = transport.getTimeout();
+		if (0 < timeout) {
+			c.setConnectTimeout(timeout * 1000);
+			c.setReadTimeout(timeout * 1000);
+		}
+		if (0 < offset) {
+			c.setRequestProperty(HDR_RANGE, "bytes=" + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$
+			c.setRequestProperty(HDR_IF_RANGE, ifRange);
+		}
+
+		int status = c.getResponseCode();
+		boolean append;
+		if (status == HttpConnection.HTTP_OK) {
+			// The entire bundle, possibly because it changed on the server.
+			append = false;
+			writeValidator(validator, validatorOf(c));
+		} else if (status == HttpURLConnection.HTTP_PARTIAL && 0 < offset) {
+			if (!rangeStartsAt(c.getHeaderField(HDR_CONTENT_RANGE), offset)) {
+				FileUtils.delete(part);
+				throw new IOException(MessageFormat.format(
+						JGitText.get().bundleUriDownloadFailed, url,
+						Integer.valueOf(status), c.getResponseMessage()));
+			}
+			append = true;
+		} else if (status == HTTP_RANGE_NOT_SATISFIABLE && 0 < offset) {
+			// A previous attempt already downloaded the entire bundle.
+			return;
+		} else {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().bundleUriDownloadFailed, url,
+					Integer.valueOf(status), c.getResponseMessage()));
+		}
+
+		int len = c.getContentLength();
+		long done = append ? offset : 0;
+		monitor.beginTask(JGitText.get().downloadingBundle,
+				len < 0 ? ProgressMonitor.UNKNOWN
+						: (int) ((done + len) >>> 10));
+		monitor.update((int) (done >>> 10));
+		try (InputStream in = c.getInputStream();
+				OutputStream out = new FileOutputStream(part, append)) {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+				long kib = done >>> 10;
+				done += n;
+				monitor.update((int) ((done >>> 10) - kib));
+			}
+			long size = (append ? offset : 0) + len;
+			if (0 <= len && done != size)
+				throw new IOException(MessageFormat.format(
+						JGitText.get().bundleUriTruncated, url,
+						Long.valueOf(done), Long.valueOf(size)));
+		} finally {
+			monitor.endTask();
+		}
+	}
+
+	private static boolean rangeStartsAt(String contentRange, long offset) {
+		// Content-Range: bytes <first>-<last>/<length>
+		String prefix = "bytes " + offset + '-'; //$NON-NLS-1$
+		return contentRange != null && contentRange.startsWith(prefix);
+	}
+
+	private static String validatorOf(HttpConnection c) {
+		String etag = c.getHeaderField(HDR_ETAG);
+		// If-Range requires a strong validator.
+		if (etag != null && !etag.startsWith("W/")) //$NON-NLS-1$
+			return etag;
+		return c.getHeaderField(HDR_LAST_MODIFIED);
+	}
+
+	private static String readValidator(File validator) throws IOException {
+		if (!validator.isFile())
+			return null;
+		String v = RawParseUtils.decode(IO.readFully(validator)).trim();
+		return v.isEmpty() ? null : v;
+	}
+
+	private static void writeValidator(File validator, String value)
+			throws IOException {
+		if (value == null) {
+			FileUtils.delete(validator, FileUtils.SKIP_MISSING);
+			return;
+		}
+		try (OutputStream out = new FileOutputStream(validator)) {
+			out.write(Constants.encode(value));
+		}
+	}
+
+	private void unbundle(ProgressMonitor monitor, URIish uri, File bundle)
+			throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(bundle));
+		try (Transport tn = new TransportBundleStream(local, uri, in)) {
+			tn.setObjectChecker(transport.getObjectChecker());
+			tn.setTimeout(transport.getTimeout());
+			tn.fetch(monitor, Collections.singleton(SPEC));
+		}
+	}
+
+	/** Download failed, but may be resumed from the partial file. */
+	private static class DownloadException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		DownloadException(IOException cause) {
+			super(cause.getMessage(), cause);
+		}
+	}
+}
@@ -52,6 +52,17 @@
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.internal.JGitText;
@@ -85,6 +96,24 @@ public class Daemon {
 
 	private PackConfig packConfig;
 
+	private int maxConnections;
+
+	private int maxConnectionsPerAddress;
+
+	private int maxQueuedConnections;
+
+	/** Runs clients if {@link #maxConnections} is set; null otherwise. */
+	private ThreadPoolExecutor executor;
+
+	/** Clients accepted or running, by remote address. */
+	private final Map<InetAddress, Integer> connectionsByAddress;
+
+	private final AtomicInteger activeConnections = new AtomicInteger();
+
+	private final AtomicInteger queuedConnections = new AtomicInteger();
+
+	private final AtomicLong rejectedConnections = new AtomicLong();
+
 	private volatile RepositoryResolver<DaemonClient> repositoryResolver;
 
 	volatile UploadPackFactory<DaemonClient> uploadPackFactory;
@@ -107,6 +136,7 @@ public Daemon() {
 	public Daemon(final InetSocketAddress addr) {
 		myAddress = addr;
 		processors = new ThreadGroup("Git-Daemon"); //$NON-NLS-1$
+		connectionsByAddress = new HashMap<>();
 
 		repositoryResolver = (RepositoryResolver<DaemonClient>) RepositoryResolver.NONE;
 
@@ -233,6 +263,106 @@ public void setPackConfig(PackConfig pc) {
 		this.packConfig = pc;
 	}
 
+	/**
+	 * @return maximum number of clients served at once; 0 if unlimited.
+	 * @since 4.8
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Limit the number of clients served at once.
+	 * <p>
+	 * With a limit, clients are run by a pool of at most {@code max} threads.
+	 * Clients accepted while all threads are busy wait in a queue of
+	 * {@link #getMaxQueuedConnections()} entries. A client that finds the
+	 * queue full is sent an error and disconnected. Without a limit (the
+	 * default) every client is run on a new thread. Takes effect the next
+	 * time the daemon is started.
+	 *
+	 * @param max
+	 *            maximum number of clients served at once; 0 for no limit.
+	 * @since 4.8
+	 */
+	public void setMaxConnections(int max) {
+		maxConnections = max;
+	}
+
+	/**
+	 * @return maximum number of clients waiting for a thread; only used if
+	 *         {@link #getMaxConnections()} is set.
+	 * @since 4.8
+	 */
+	public int getMaxQueuedConnections() {
+		return maxQueuedConnections;
+	}
+
+	/**
+	 * Set how many clients may wait for a thread once all are busy.
+	 * <p>
+	 * If {@link #getTimeout()} is set, a client that waited longer than the
+	 * timeout is disconnected instead of being served, as it has likely given
+	 * up already. Takes effect the next time the daemon is started.
+	 *
+	 * @param max
+	 *            maximum number of waiting clients; 0 to reject clients as
+	 *            soon as all threads are busy.
+	 * @since 4.8
+	 */
+	public void setMaxQueuedConnections(int max) {
+		maxQueuedConnections = max;
+	}
+
+	/**
+	 * @return maximum number of clients accepted from a single address; 0 if
+	 *         unlimited.
+	 * @since 4.8
+	 */
+	public int getMaxConnectionsPerAddress() {
+		return maxConnectionsPerAddress;
+	}
+
+	/**
+	 * Limit the number of clients accepted from a single address.
+	 * <p>
+	 * Clients waiting in the queue count against the limit as well as clients
+	 * being served. Further clients from the same address are sent an error
+	 * and disconnected.
+	 *
+	 * @param max
+	 *            maximum number of clients per address; 0 for no limit.
+	 * @since 4.8
+	 */
+	public void setMaxConnectionsPerAddress(int max) {
+		maxConnectionsPerAddress = max;
+	}
+
+	/**
+	 * @return number of clients currently being served.
+	 * @since 4.8
+	 */
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	/**
+	 * @return number of clients waiting for a thread to serve them.
+	 * @since 4.8
+	 */
+	public int getQueuedConnections() {
+		return queuedConnections.get();
+	}
+
+	/**
+	 * @return number of clients disconnected by the connection limits since
+	 *         this daemon was created.
+	 * @since 4.8
+	 */
+	public long getRejectedConnections() {
+		return rejectedConnections.get();
+	}
+
 	/**
 	 * Set the resolver used to locate a repository by name.
 	 *
@@ -298,6 +428,8 @@ public synchronized void start() throws IOException {
 				myAddress != null ? myAddress.getAddress() : null);
 		myAddress = (InetSocketAddress) listenSock.getLocalSocketAddress();
 
+		if (0 < maxConnections)
+			executor = newExecutor();
 		run = true;
 		acceptThread = new Thread(processors, "Git-Daemon-Accept") { //$NON-NLS-1$
 			@Override
@@ -318,6 +450,10 @@ public void run() {
 					//
 				} finally {
 					synchronized (Daemon.this) {
+						if (executor != null) {
+							executor.shutdown();
+							executor = null;
+						}
 						acceptThread = null;
 					}
 				}
@@ -339,38 +475,153 @@ public synchronized void stop() {
 		}
 	}
 
+	private ThreadPoolExecutor newExecutor() {
+		BlockingQueue<Runnable> queue;
+		if (0 < maxQueuedConnections)
+			queue = new ArrayBlockingQueue<>(maxQueuedConnections);
+		else
+			queue = new SynchronousQueue<>();
+
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConnections,
+				maxConnections, 60, TimeUnit.SECONDS, queue,
+				new ThreadFactory() {
+					private final AtomicInteger cnt = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						return new Thread(processors, r,
+								"Git-Daemon-Client-" + cnt.incrementAndGet()); //$NON-NLS-1$
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
 	void startClient(final Socket s) {
 		final DaemonClient dc = new DaemonClient(this);
 
 		final SocketAddress peer = s.getRemoteSocketAddress();
-		if (peer instanceof InetSocketAddress)
-			dc.setRemoteAddress(((InetSocketAddress) peer).getAddress());
-
-		new Thread(processors, "Git-Daemon-Client " + peer.toString()) { //$NON-NLS-1$
-			@Override
-			public void run() {
-				try {
-					dc.execute(s);
-				} catch (ServiceNotEnabledException e) {
-					// Ignored. Client cannot use this repository.
-				} catch (ServiceNotAuthorizedException e) {
-					// Ignored. Client cannot use this repository.
-				} catch (IOException e) {
-					// Ignore unexpected IO exceptions from clients
-				} finally {
+		final InetAddress addr;
+		if (peer instanceof InetSocketAddress) {
+			addr = ((InetSocketAddress) peer).getAddress();
+			dc.setRemoteAddress(addr);
+		} else
+			addr = null;
+
+		ThreadPoolExecutor pool;
+		synchronized (this) {
+			pool = executor;
+		}
+		if (!acquireAddress(addr)) {
+			reject(s);
+			return;
+		}
+		if (pool == null) {
+			new Thread(processors, "Git-Daemon-Client " + peer.toString()) { //$NON-NLS-1$
+				@Override
+				public void run() {
 					try {
-						s.getInputStream().close();
-					} catch (IOException e) {
-						// Ignore close exceptions
+						runClient(dc, s);
+					} finally {
+						releaseAddress(addr);
 					}
+				}
+			}.start();
+			return;
+		}
+
+		final long queuedAt = System.currentTimeMillis();
+		queuedConnections.incrementAndGet();
+		try {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					queuedConnections.decrementAndGet();
 					try {
-						s.getOutputStream().close();
-					} catch (IOException e) {
-						// Ignore close exceptions
+						long waited = System.currentTimeMillis() - queuedAt;
+						if (0 < timeout && timeout * 1000L < waited)
+							reject(s);
+						else
+							runClient(dc, s);
+					} finally {
+						releaseAddress(addr);
 					}
 				}
+			});
+		} catch (RejectedExecutionException e) {
+			queuedConnections.decrementAndGet();
+			releaseAddress(addr);
+			reject(s);
+		}
+	}
+
+	private boolean acquireAddress(InetAddress addr) {
+		if (addr == null || maxConnectionsPerAddress <= 0)
+			return true;
+		synchronized (connectionsByAddress) {
+			Integer n = connectionsByAddress.get(addr);
+			int cnt = n != null ? n.intValue() : 0;
+			if (maxConnectionsPerAddress <= cnt)
+				return false;
+			connectionsByAddress.put(addr, Integer.valueOf(cnt + 1));
+			return true;
+		}
+	}
+
+	private void releaseAddress(InetAddress addr) {
+		if (addr == null || maxConnectionsPerAddress <= 0)
+			return;
+		synchronized (connectionsByAddress) {
+			Integer n = connectionsByAddress.get(addr);
+			if (n == null || n.intValue() <= 1)
+				connectionsByAddress.remove(addr);
+			else
+				connectionsByAddress.put(addr,
+						Integer.valueOf(n.intValue() - 1));
+		}
+	}
+
+	private void reject(Socket s) {
+		rejectedConnections.incrementAndGet();
+		try {
+			OutputStream out = s.getOutputStream();
+			PacketLineOut pckOut = new PacketLineOut(out);
+			pckOut.writeString("ERR " + JGitText.get().daemonBusy + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			pckOut.flush();
+		} catch (IOException e) {
+			// Ignored. The client is disconnected below.
+		} finally {
+			try {
+				s.close();
+			} catch (IOException e) {
+				// Ignore close exceptions
+			}
+		}
+	}
+
+	private void runClient(DaemonClient dc, Socket s) {
+		activeConnections.incrementAndGet();
+		try {
+			dc.execute(s);
+		} catch (ServiceNotEnabledException e) {
+			// Ignored. Client cannot use this repository.
+		} catch (ServiceNotAuthorizedException e) {
+			// Ignored. Client cannot use this repository.
+		} catch (IOException e) {
+			// Ignore unexpected IO exceptions from clients
+		} finally {
+			activeConnections.decrementAndGet();
+			try {
+				s.getInputStream().close();
+			} catch (IOException e) {
+				// Ignore close exceptions
 			}
-		}.start();
+			try {
+				s.getOutputStream().close();
+			} catch (IOException e) {
+				// Ignore close exceptions
+			}
+		}
 	}
 
 	synchronized DaemonService matchService(final String cmd) {
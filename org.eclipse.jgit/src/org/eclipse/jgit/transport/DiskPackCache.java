@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A {@link PackCache} storing packs as files in a local directory.
+ * <p>
+ * The total size of the stored packs is limited; the least recently used
+ * packs are deleted first. Packs stored by an earlier instance using the same
+ * directory are reused.
+ * <p>
+ * Repositories are identified by their directory; packs of repositories
+ * without one are not cached. A stored pack is used until it is evicted, also
+ * after the repository was repacked or updated, so interrupted transfers can
+ * be resumed.
+ *
+ * @since 4.8
+ */
+public class DiskPackCache implements PackCache {
+	private static final String PACK_SUFFIX = ".pack"; //$NON-NLS-1$
+
+	private static final String TMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	private final Map<String, Long> packs = new LinkedHashMap<>(16, 0.75f,
+			true);
+
+	private final Map<String, DiskOutput> writing = new HashMap<>();
+
+	private long cachedBytes;
+
+	private int waitTimeout = 60;
+
+	/**
+	 * @param directory
+	 *            directory to store the packs in; created if it doesn't
+	 *            exist.
+	 * @param maxBytes
+	 *            maximum total size of the stored packs.
+	 * @throws IOException
+	 *             the directory cannot be created or read.
+	 */
+	public DiskPackCache(File directory, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		FileUtils.mkdirs(directory, true);
+
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException(directory.getPath());
+		List<File> found = new ArrayList<>(Arrays.asList(files));
+		Collections.sort(found, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (File f : found) {
+			String n = f.getName();
+			if (n.endsWith(PACK_SUFFIX)) {
+				long len = f.length();
+				packs.put(n.substring(0, n.length() - PACK_SUFFIX.length()),
+						Long.valueOf(len));
+				cachedBytes += len;
+			} else if (n.endsWith(TMP_SUFFIX)) {
+				// Left behind by an instance which didn't finish writing.
+				FileUtils.delete(f, FileUtils.SKIP_MISSING);
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * @return seconds {@link #open(Repository, String)} waits for another
+	 *         request storing the same pack.
+	 */
+	public int getWaitTimeout() {
+		return waitTimeout;
+	}
+
+	/**
+	 * Set how long to wait for another request storing the same pack.
+	 * <p>
+	 * The pack is stored while it is sent to the first client, so a slow
+	 * client slows down the requests waiting for it. After the timeout
+	 * {@link #open(Repository, String)} returns null and the waiting request
+	 * generates the pack itself. The default is 60 seconds.
+	 *
+	 * @param seconds
+	 *            seconds to wait; 0 to not wait at all.
+	 */
+	public void setWaitTimeout(int seconds) {
+		waitTimeout = seconds;
+	}
+
+	/** @return directory the packs are stored in. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Get the key identifying a repository in this cache.
+	 *
+	 * @param db
+	 *            the repository.
+	 * @return key of the repository; null if its packs must not be cached.
+	 */
+	protected String getRepositoryKey(Repository db) {
+		File dir = db.getDirectory();
+		return dir != null ? dir.getAbsolutePath() : null;
+	}
+
+	@Override
+	public Output create(Repository db, String key) throws IOException {
+		String name = name(db, key);
+		if (name == null)
+			return null;
+		synchronized (this) {
+			if (packs.containsKey(name) || writing.containsKey(name))
+				return null;
+			writing.put(name, null);
+		}
+		DiskOutput out;
+		try {
+			out = new DiskOutput(name,
+					File.createTempFile(name, TMP_SUFFIX, directory));
+		} catch (IOException e) {
+			finish(name, -1);
+			throw e;
+		}
+		synchronized (this) {
+			writing.put(name, out);
+		}
+		return out;
+	}
+
+	@Override
+	public InputStream open(Repository db, String key) throws IOException {
+		String name = name(db, key);
+		if (name == null)
+			return null;
+		synchronized (this) {
+			long end = System.nanoTime()
+					+ TimeUnit.SECONDS.toNanos(waitTimeout);
+			while (writing.containsKey(name)) {
+				long left = end - System.nanoTime();
+				if (left <= 0)
+					return null;
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, left);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (packs.get(name) == null)
+				return null;
+		}
+		return openStored(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A pack still being stored is read from its temporary file as it is
+	 * written.
+	 */
+	@Override
+	public InputStream openForResume(Repository db, String key)
+			throws IOException {
+		String name = name(db, key);
+		if (name == null)
+			return null;
+		synchronized (this) {
+			DiskOutput w = writing.get(name);
+			if (w != null)
+				return w.newReader();
+			if (packs.get(name) == null)
+				return null;
+		}
+		return openStored(name);
+	}
+
+	private InputStream openStored(String name) {
+		try {
+			return new FileInputStream(file(name));
+		} catch (FileNotFoundException e) {
+			synchronized (this) {
+				Long len = packs.remove(name);
+				if (len != null)
+					cachedBytes -= len.longValue();
+			}
+			return null;
+		}
+	}
+
+	private String name(Repository db, String key) {
+		String repository = getRepositoryKey(db);
+		if (repository == null)
+			return null;
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(Constants.encode(repository));
+		md.update((byte) 0);
+		md.update(Constants.encode(key));
+		return ObjectId.fromRaw(md.digest()).name();
+	}
+
+	private File file(String name) {
+		return new File(directory, name + PACK_SUFFIX);
+	}
+
+	private synchronized void finish(String name, long len) {
+		writing.remove(name);
+		if (0 <= len) {
+			packs.put(name, Long.valueOf(len));
+			cachedBytes += len;
+			evict();
+		}
+		notifyAll();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> i = packs.entrySet().iterator();
+		while (maxBytes < cachedBytes && i.hasNext()) {
+			Map.Entry<String, Long> e = i.next();
+			// Readers on POSIX systems keep reading the deleted file.
+			file(e.getKey()).delete();
+			cachedBytes -= e.getValue().longValue();
+			i.remove();
+		}
+	}
+
+	private class DiskOutput extends Output {
+		private final String name;
+
+		private final File tmp;
+
+		private final FileOutputStream out;
+
+		/** Bytes written so far; guarded by this output. */
+		private long written;
+
+		private boolean done;
+
+		private boolean committed;
+
+		DiskOutput(String name, File tmp) throws IOException {
+			this.name = name;
+			this.tmp = tmp;
+			this.out = new FileOutputStream(tmp);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			synchronized (this) {
+				written += len;
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void commit() throws IOException {
+			if (done)
+				return;
+			long len = -1;
+			try {
+				out.close();
+				File dst = file(name);
+				FileUtils.rename(tmp, dst);
+				len = dst.length();
+			} finally {
+				FileUtils.delete(tmp, FileUtils.SKIP_MISSING);
+				end(0 <= len);
+				finish(name, len);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (done)
+				return;
+			try {
+				out.close();
+			} finally {
+				FileUtils.delete(tmp, FileUtils.SKIP_MISSING);
+				end(false);
+				finish(name, -1);
+			}
+		}
+
+		private synchronized void end(boolean stored) {
+			done = true;
+			committed = stored;
+			notifyAll();
+		}
+
+		/**
+		 * Open the pack written so far. Readers keep reading the file after
+		 * it was renamed or deleted, as POSIX systems allow.
+		 */
+		InputStream newReader() throws IOException {
+			return new TailInputStream(this, new FileInputStream(tmp));
+		}
+
+		/**
+		 * Wait until more than {@code pos} bytes were written.
+		 *
+		 * @return number of bytes readable after {@code pos}; 0 if the pack
+		 *         was committed and ends at {@code pos}.
+		 */
+		synchronized long await(long pos) throws IOException {
+			while (written <= pos && !done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (written <= pos && !committed)
+				throw new IOException(MessageFormat.format(
+						JGitText.get().packCacheWriterFailed, name));
+			return written - pos;
+		}
+	}
+
+	/** Reads a pack while another request is still storing it. */
+	private static class TailInputStream extends InputStream {
+		private final DiskOutput writer;
+
+		private final FileInputStream in;
+
+		private long pos;
+
+		TailInputStream(DiskOutput writer, FileInputStream in) {
+			this.writer = writer;
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			long avail = writer.await(pos);
+			if (avail == 0)
+				return -1;
+			int n = in.read(b, off, (int) Math.min(len, avail));
+			if (0 < n)
+				pos += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -60,6 +60,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -78,6 +79,8 @@
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
 
 class FetchProcess {
@@ -99,6 +102,9 @@ class FetchProcess {
 	/** Records to be recorded into FETCH_HEAD. */
 	private final ArrayList<FetchHeadRecord> fetchHeadUpdates = new ArrayList<>();
 
+	/** Connections to try for a pack transfer interrupted repeatedly. */
+	private static final int MAX_RESUME_ATTEMPTS = 3;
+
 	private final ArrayList<PackLock> packLocks = new ArrayList<>();
 
 	private FetchConnection conn;
@@ -156,9 +162,14 @@ private void executeImp(final ProgressMonitor monitor,
 			else if (tagopt == TagOpt.FETCH_TAGS)
 				expandFetchTags();
 
+			if (!askFor.isEmpty() && transport.isUseBundleUris()
+					&& isEmptyRepository())
+				fetchBundles(monitor, result);
+
 			final boolean includedTags;
-			if (!askFor.isEmpty() && !askForIsComplete()) {
-				fetchObjects(monitor);
+			if (!askFor.isEmpty()
+					&& (transport.isDeepen() || !askForIsComplete())) {
+				fetchObjects(monitor, result);
 				includedTags = conn.didFetchIncludeTags();
 
 				// Connection was used for object transfer. If we
@@ -186,7 +197,7 @@ else if (tagopt == TagOpt.FETCH_TAGS)
 				if (!askFor.isEmpty() && (!includedTags || !askForIsComplete())) {
 					reopenConnection();
 					if (!askFor.isEmpty())
-						fetchObjects(monitor);
+						fetchObjects(monitor, result);
 				}
 			}
 		} finally {
@@ -238,13 +249,26 @@ else if (tagopt == TagOpt.FETCH_TAGS)
 		}
 	}
 
-	private void fetchObjects(final ProgressMonitor monitor)
-			throws TransportException {
-		try {
-			conn.setPackLockMessage("jgit fetch " + transport.uri); //$NON-NLS-1$
-			conn.fetch(monitor, askFor.values(), have);
-		} finally {
-			packLocks.addAll(conn.getPackLocks());
+	private void fetchObjects(final ProgressMonitor monitor,
+			final FetchResult result) throws NotSupportedException,
+			TransportException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				conn.setPackLockMessage("jgit fetch " + transport.uri); //$NON-NLS-1$
+				conn.fetch(monitor, askFor.values(), have);
+				break;
+			} catch (TransportException err) {
+				if (attempt == MAX_RESUME_ATTEMPTS || !isPackResumable())
+					throw err;
+			} finally {
+				packLocks.addAll(conn.getPackLocks());
+			}
+
+			// Resume the interrupted pack transfer on a new connection.
+			closeConnection(result);
+			reopenConnection();
+			if (askFor.isEmpty())
+				return;
 		}
 		if (transport.isCheckFetchedObjects()
 				&& !conn.didFetchTestConnectivity() && !askForIsComplete())
@@ -252,10 +276,61 @@ private void fetchObjects(final ProgressMonitor monitor)
 					JGitText.get().peerDidNotSupplyACompleteObjectGraph);
 	}
 
+	private boolean isPackResumable() {
+		return conn instanceof BasePackFetchConnection
+				&& ((BasePackFetchConnection) conn).isPackResumable();
+	}
+
+	private boolean isEmptyRepository() throws TransportException {
+		for (Ref r : localRefs().values()) {
+			if (r.getObjectId() != null)
+				return false;
+		}
+		return true;
+	}
+
+	private void fetchBundles(ProgressMonitor monitor, FetchResult result)
+			throws NotSupportedException, TransportException {
+		List<String> configured = transport.getBundleUris();
+		List<String> advertised = Collections.emptyList();
+		if (conn instanceof BasePackConnection)
+			advertised = ((BasePackConnection) conn).getBundleUris();
+		if (configured.isEmpty() && advertised.isEmpty())
+			return;
+
+		// Downloading may take long; do not keep the remote waiting.
+		closeConnection(result);
+		BundleUriFetch bundles = new BundleUriFetch(transport);
+		for (String uri : configured)
+			fetchBundle(monitor, result, bundles, uri, true);
+		for (String uri : advertised)
+			fetchBundle(monitor, result, bundles, uri, false);
+		localRefs = null;
+		reopenConnection();
+	}
+
+	private static void fetchBundle(ProgressMonitor monitor,
+			FetchResult result, BundleUriFetch bundles, String uri,
+			boolean allowLocal) {
+		try {
+			bundles.fetch(monitor, uri, allowLocal);
+		} catch (IOException e) {
+			result.addMessages(MessageFormat.format(
+					JGitText.get().bundleUriFailed, uri, e.getMessage())
+					+ '\n');
+		}
+	}
+
 	private void closeConnection(final FetchResult result) {
 		if (conn != null) {
 			conn.close();
 			result.addMessages(conn.getMessages());
+			if (conn instanceof BasePackFetchConnection) {
+				BasePackFetchConnection c = (BasePackFetchConnection) conn;
+				result.negotiationRounds += c.negotiationRounds;
+				result.haveLines += c.haveLines;
+				result.skippedHaves += c.skippedHaves;
+			}
 			conn = null;
 		}
 	}
@@ -334,6 +409,8 @@ private void updateFETCH_HEAD(final FetchResult result) throws IOException {
 	}
 
 	private boolean askForIsComplete() throws TransportException {
+		if (!transport.getFilterSpec().isNoOp())
+			return askForCommitsAreComplete();
 		try {
 			try (final ObjectWalk ow = new ObjectWalk(transport.local)) {
 				for (final ObjectId want : askFor.keySet())
@@ -350,6 +427,33 @@ private boolean askForIsComplete() throws TransportException {
 		}
 	}
 
+	/**
+	 * A filtered fetch leaves trees and blobs to be fetched on demand, so only
+	 * the history is expected to be complete.
+	 */
+	private boolean askForCommitsAreComplete() throws TransportException {
+		try (RevWalk rw = new RevWalk(transport.local)) {
+			for (final ObjectId want : askFor.keySet()) {
+				RevObject o = rw.peel(rw.parseAny(want));
+				if (o instanceof RevCommit)
+					rw.markStart((RevCommit) o);
+			}
+			for (final Ref ref : localRefs().values()) {
+				RevObject o = rw.peel(rw.parseAny(ref.getObjectId()));
+				if (o instanceof RevCommit)
+					rw.markUninteresting((RevCommit) o);
+			}
+			while (rw.next() != null) {
+				// Parsing each commit proves it is present.
+			}
+			return true;
+		} catch (MissingObjectException e) {
+			return false;
+		} catch (IOException e) {
+			throw new TransportException(JGitText.get().unableToCheckConnectivity, e);
+		}
+	}
+
 	private void expandWildcard(final RefSpec spec, final Set<Ref> matched)
 			throws TransportException {
 		for (final Ref src : conn.getRefs()) {
@@ -425,7 +529,7 @@ private void want(final Ref src, final RefSpec spec)
 		}
 		if (spec.getDestination() != null) {
 			final TrackingRefUpdate tru = createUpdate(spec, newId);
-			if (newId.equals(tru.getOldObjectId()))
+			if (newId.equals(tru.getOldObjectId()) && !transport.isDeepen())
 				return;
 			localUpdates.add(tru);
 		}
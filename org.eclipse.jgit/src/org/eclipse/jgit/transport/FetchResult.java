@@ -53,16 +53,28 @@
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.jgit.lib.Constants;
+
 /**
  * Final status after a successful fetch from a remote repository.
  *
  * @see Transport#fetch(org.eclipse.jgit.lib.ProgressMonitor, Collection)
  */
 public class FetchResult extends OperationResult {
+	/** Size of a have line on the wire, including the pkt-line header. */
+	private static final int HAVE_LINE_SIZE = 4 + 5
+			+ Constants.OBJECT_ID_STRING_LENGTH + 1;
+
 	private final List<FetchHeadRecord> forMerge;
 
 	private final Map<String, FetchResult> submodules;
 
+	int negotiationRounds;
+
+	long haveLines;
+
+	long skippedHaves;
+
 	FetchResult() {
 		forMerge = new ArrayList<>();
 		submodules = new HashMap<>();
@@ -73,6 +85,47 @@ void add(final FetchHeadRecord r) {
 			forMerge.add(r);
 	}
 
+	/**
+	 * Get the number of negotiation rounds with the remote.
+	 * <p>
+	 * Each block of up to 32 have lines and the final "done" count as one
+	 * round. Over a stateless transport such as HTTP each round is a request.
+	 *
+	 * @return rounds used to find common history; 0 if nothing was fetched
+	 *         or the transport does not negotiate.
+	 * @since 4.8
+	 */
+	public int getNegotiationRounds() {
+		return negotiationRounds;
+	}
+
+	/**
+	 * @return number of have lines sent to the remote.
+	 * @since 4.8
+	 */
+	public long getHavesSent() {
+		return haveLines;
+	}
+
+	/**
+	 * Get the number of local commits the skipping negotiator passed over.
+	 *
+	 * @return commits not sent as have lines; 0 unless
+	 *         {@link TransferConfig.NegotiationAlgorithm#SKIPPING} is used.
+	 * @since 4.8
+	 */
+	public long getHavesSkipped() {
+		return skippedHaves;
+	}
+
+	/**
+	 * @return bytes of have lines the skipping negotiator did not send.
+	 * @since 4.8
+	 */
+	public long getNegotiationBytesSaved() {
+		return skippedHaves * HAVE_LINE_SIZE;
+	}
+
 	/**
 	 * Add fetch results for a submodule.
 	 *
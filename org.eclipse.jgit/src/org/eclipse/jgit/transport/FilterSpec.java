@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.internal.JGitText;
+
+/**
+ * Object filter requested by a partial clone or fetch.
+ * <p>
+ * Supported filters are {@code blob:none}, {@code blob:limit=<n>[kmg]} and
+ * {@code tree:<depth>}. Objects explicitly named by the client are always
+ * sent, even if the filter would omit them.
+ *
+ * @since 4.8
+ */
+public final class FilterSpec {
+	/** A filter that omits nothing. */
+	public static final FilterSpec NO_FILTER = new FilterSpec(-1, -1);
+
+	private final long blobLimit;
+
+	private final long treeDepthLimit;
+
+	private FilterSpec(long blobLimit, long treeDepthLimit) {
+		this.blobLimit = blobLimit;
+		this.treeDepthLimit = treeDepthLimit;
+	}
+
+	/**
+	 * @param blobLimit
+	 *            blobs of this size or larger are omitted; 0 omits every
+	 *            blob.
+	 * @return a filter omitting large blobs.
+	 */
+	public static FilterSpec withBlobLimit(long blobLimit) {
+		if (blobLimit < 0)
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().invalidFilter, Long.valueOf(blobLimit)));
+		return new FilterSpec(blobLimit, -1);
+	}
+
+	/**
+	 * @param treeDepthLimit
+	 *            trees and blobs at this depth below the root tree or deeper
+	 *            are omitted. 0 omits every tree and blob, 1 sends only root
+	 *            trees.
+	 * @return a filter omitting deep trees and blobs.
+	 */
+	public static FilterSpec withTreeDepthLimit(long treeDepthLimit) {
+		if (treeDepthLimit < 0)
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().invalidFilter, Long.valueOf(treeDepthLimit)));
+		return new FilterSpec(-1, treeDepthLimit);
+	}
+
+	/**
+	 * Parse a filter as it appears on the wire or on the command line.
+	 *
+	 * @param spec
+	 *            the filter, for example {@code blob:limit=1m}.
+	 * @return the parsed filter.
+	 * @throws PackProtocolException
+	 *             the filter is not recognized.
+	 */
+	public static FilterSpec fromFilterLine(String spec)
+			throws PackProtocolException {
+		try {
+			if (spec.equals("blob:none")) //$NON-NLS-1$
+				return withBlobLimit(0);
+			if (spec.startsWith("blob:limit=")) //$NON-NLS-1$
+				return withBlobLimit(parseSize(spec.substring(11)));
+			if (spec.startsWith("tree:")) //$NON-NLS-1$
+				return withTreeDepthLimit(Long.parseLong(spec.substring(5)));
+		} catch (IllegalArgumentException | ArithmeticException e) {
+			// Fall through to the protocol error.
+		}
+		throw new PackProtocolException(
+				MessageFormat.format(JGitText.get().invalidFilter, spec));
+	}
+
+	private static long parseSize(String s) {
+		long unit = 1;
+		switch (s.isEmpty() ? 0 : Character.toLowerCase(s.charAt(s.length() - 1))) {
+		case 'g':
+			unit <<= 10;
+			//$FALL-THROUGH$
+		case 'm':
+			unit <<= 10;
+			//$FALL-THROUGH$
+		case 'k':
+			unit <<= 10;
+			s = s.substring(0, s.length() - 1);
+			break;
+		default:
+			break;
+		}
+		return Math.multiplyExact(Long.parseLong(s), unit);
+	}
+
+	/**
+	 * @return blobs of this size or larger are omitted; -1 if blobs are not
+	 *         filtered by size.
+	 */
+	public long getBlobLimit() {
+		return blobLimit;
+	}
+
+	/**
+	 * @return trees and blobs at this depth or deeper are omitted; -1 if the
+	 *         filter does not limit tree depth.
+	 */
+	public long getTreeDepthLimit() {
+		return treeDepthLimit;
+	}
+
+	/** @return true if this filter omits nothing. */
+	public boolean isNoOp() {
+		return blobLimit == -1 && treeDepthLimit == -1;
+	}
+
+	/**
+	 * @return the filter as sent on the wire, or null if this filter omits
+	 *         nothing.
+	 */
+	public String filterLine() {
+		if (blobLimit == 0)
+			return "blob:none"; //$NON-NLS-1$
+		if (blobLimit > 0)
+			return "blob:limit=" + blobLimit; //$NON-NLS-1$
+		if (treeDepthLimit >= 0)
+			return "tree:" + treeDepthLimit; //$NON-NLS-1$
+		return null;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof FilterSpec) {
+			FilterSpec f = (FilterSpec) o;
+			return blobLimit == f.blobLimit
+					&& treeDepthLimit == f.treeDepthLimit;
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (blobLimit * 31 + treeDepthLimit);
+	}
+
+	@SuppressWarnings("nls")
+	@Override
+	public String toString() {
+		return "FilterSpec[" + (isNoOp() ? "none" : filterLine()) + "]";
+	}
+}
@@ -107,6 +107,20 @@ public class GitProtocolConstants {
 	 */
 	public static final String OPTION_SHALLOW = "shallow"; //$NON-NLS-1$
 
+	/**
+	 * The client can limit a shallow fetch to commits made after a time.
+	 *
+	 * @since 4.8
+	 */
+	public static final String OPTION_DEEPEN_SINCE = "deepen-since"; //$NON-NLS-1$
+
+	/**
+	 * The client can exclude the history of a ref from a shallow fetch.
+	 *
+	 * @since 4.8
+	 */
+	public static final String OPTION_DEEPEN_NOT = "deepen-not"; //$NON-NLS-1$
+
 	/**
 	 * The client does not want progress messages and will ignore them.
 	 *
@@ -151,6 +165,23 @@ public class GitProtocolConstants {
 	 */
 	public static final String OPTION_PUSH_CERT = "push-cert"; //$NON-NLS-1$
 
+	/**
+	 * The server supports omitting objects from the pack according to a
+	 * filter sent by the client, and the client will send one.
+	 *
+	 * @since 4.8
+	 */
+	public static final String OPTION_FILTER = "filter"; //$NON-NLS-1$
+
+	/**
+	 * The server can resume sending a pack it sent before from a byte offset,
+	 * and the client wants to learn the identity of the pack in order to
+	 * resume it if the transfer is interrupted.
+	 *
+	 * @since 4.8
+	 */
+	public static final String OPTION_RESUME_PACK = "resume-pack"; //$NON-NLS-1$
+
 	/**
 	 * The client supports atomic pushes. If this option is used, the server
 	 * will update all refs within one atomic transaction.
@@ -215,6 +246,25 @@ public class GitProtocolConstants {
 	 */
 	public static final String CAPABILITY_PUSH_OPTIONS = "push-options"; //$NON-NLS-1$
 
+	/**
+	 * The server offers a pre-generated bundle at the URI given as the value
+	 * of this capability. A client may download the bundle and fetch its
+	 * content before asking the server for the remaining objects. The
+	 * capability may be advertised more than once.
+	 *
+	 * @since 4.8
+	 */
+	public static final String CAPABILITY_BUNDLE_URI = "bundle-uri"; //$NON-NLS-1$
+
+	/**
+	 * The server answers {@code have} lines sent before the commands of a
+	 * push, so the client can omit objects the server already has but does
+	 * not advertise.
+	 *
+	 * @since 4.8
+	 */
+	public static final String CAPABILITY_PUSH_NEGOTIATE = "push-negotiate"; //$NON-NLS-1$
+
 	static enum MultiAck {
 		OFF, CONTINUE, DETAILED;
 	}
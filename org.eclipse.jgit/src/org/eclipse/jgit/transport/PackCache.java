@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Stores packs generated by {@link UploadPack} for identical requests.
+ * <p>
+ * Many clients fetch exactly the same objects, for example fresh clones of a
+ * busy repository. With a cache configured through
+ * {@link UploadPack#setPackCache(PackCache)} the pack for such a request is
+ * generated once and the following requests stream the stored bytes, skipping
+ * object counting, delta search and compression.
+ * <p>
+ * The key passed to the cache describes the request: the wanted objects, the
+ * common objects, shallow options, the capabilities influencing the pack and
+ * the advertised references. Implementations must add the identity of the
+ * repository. A pack only depends on its key and stays valid while the
+ * repository changes, so it should be kept across repacks: clients resuming an
+ * interrupted transfer ask for the same pack again.
+ *
+ * @since 4.8
+ */
+public interface PackCache {
+	/**
+	 * Start storing a new pack.
+	 * <p>
+	 * At most one caller at a time receives an output for a key. Callers of
+	 * {@link #open(Repository, String)} with the same key wait until the pack
+	 * was committed or the output was closed, so concurrent identical requests
+	 * cost only one pack generation. If the output is closed without being
+	 * committed, one of the waiting callers may create the pack again.
+	 *
+	 * @param db
+	 *            repository the pack is generated from.
+	 * @param key
+	 *            key describing the request.
+	 * @return output to write the pack to; null if the pack is already
+	 *         cached, another caller is storing it, or it must not be cached.
+	 * @throws IOException
+	 *             the cache cannot be written to.
+	 */
+	@Nullable
+	Output create(Repository db, String key) throws IOException;
+
+	/**
+	 * Open a cached pack.
+	 * <p>
+	 * If another caller is currently storing the pack this method waits until
+	 * it finished, or until a timeout chosen by the implementation expired.
+	 *
+	 * @param db
+	 *            repository the pack was generated from.
+	 * @param key
+	 *            key describing the request.
+	 * @return the pack; null if it is not cached, or still being stored by
+	 *         another caller after the timeout.
+	 * @throws IOException
+	 *             the cached pack cannot be opened.
+	 */
+	@Nullable
+	InputStream open(Repository db, String key) throws IOException;
+
+	/**
+	 * Open a cached pack to resume an interrupted transfer.
+	 * <p>
+	 * Unlike {@link #open(Repository, String)} this method doesn't wait for a
+	 * pack still being stored: it returns the bytes written so far and blocks
+	 * when reading past them until more were written. Reading fails if the
+	 * pack is discarded before it was committed.
+	 *
+	 * @param db
+	 *            repository the pack was generated from.
+	 * @param key
+	 *            key describing the request.
+	 * @return the pack; null if it is neither cached nor being stored.
+	 * @throws IOException
+	 *             the cached pack cannot be opened.
+	 */
+	@Nullable
+	InputStream openForResume(Repository db, String key) throws IOException;
+
+	/**
+	 * Output storing a pack in the cache.
+	 * <p>
+	 * The pack becomes visible when {@link #commit()} is called. Closing the
+	 * output without committing it discards the pack.
+	 */
+	abstract class Output extends OutputStream {
+		/**
+		 * Make the written pack available to other requests.
+		 *
+		 * @throws IOException
+		 *             the pack cannot be stored.
+		 */
+		public abstract void commit() throws IOException;
+	}
+}
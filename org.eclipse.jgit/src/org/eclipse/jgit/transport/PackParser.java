@@ -58,6 +58,7 @@
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.TooLargeObjectInPackException;
@@ -67,6 +68,7 @@
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.BatchingProgressMonitor;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.InflaterCache;
 import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.NullProgressMonitor;
@@ -83,6 +85,7 @@
 import org.eclipse.jgit.util.BlockList;
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
 import org.eclipse.jgit.util.sha1.SHA1;
 
 /**
@@ -139,6 +142,10 @@ public static enum Source {
 
 	private boolean needBaseObjectIds;
 
+	private boolean needReferencedObjectIds;
+
+	private boolean quarantine;
+
 	private boolean checkEofAfterPackFooter;
 
 	private boolean expectDataAfterPackFooter;
@@ -171,6 +178,16 @@ public static enum Source {
 	 */
 	private ObjectIdSubclassMap<ObjectId> baseObjectIds;
 
+	/**
+	 * Objects named by the commits, trees and tags of the incoming pack.
+	 * <p>
+	 * Once parsing is complete only the names of objects that are not in the
+	 * pack remain, which is where the pack connects to the repository.
+	 */
+	private ObjectIdSubclassMap<ObjectId> referencedObjectIds;
+
+	private MutableObjectId referencedId;
+
 	private LongMap<UnresolvedDelta> baseByPos;
 
 	/** Blobs whose contents need to be double-checked after indexing. */
@@ -298,6 +315,62 @@ public void setNeedBaseObjectIds(boolean b) {
 		this.needBaseObjectIds = b;
 	}
 
+	/**
+	 * Configure this index pack instance to keep track of the objects the
+	 * incoming pack references but does not contain.
+	 * <p>
+	 * Commits, trees and tags are scanned for the names of the objects they
+	 * point to as they are inflated, so the caller can check the connectivity
+	 * of the pack with {@link #getReferencedObjectIds()} without reading the
+	 * new objects a second time. Enabling this also keeps track of new
+	 * objects, see {@link #getNewObjectIds()}.
+	 *
+	 * @param b
+	 *            {@code true} to enable keeping track of referenced objects.
+	 * @since 4.8
+	 */
+	public void setNeedReferencedObjectIds(boolean b) {
+		this.needReferencedObjectIds = b;
+	}
+
+	/**
+	 * @return true if the parsed objects should be kept out of the repository
+	 *         until they are explicitly committed.
+	 * @since 4.8
+	 */
+	public boolean isQuarantine() {
+		return quarantine;
+	}
+
+	/**
+	 * Request the parsed objects be kept out of the repository.
+	 * <p>
+	 * If the implementation supports it, the objects are only made visible
+	 * when the {@link PackQuarantine} returned by {@link #getQuarantine()} is
+	 * committed. Implementations that do not support quarantine ignore this
+	 * flag and make objects visible as soon as parsing completes.
+	 *
+	 * @param q
+	 *            true to quarantine the objects.
+	 * @since 4.8
+	 */
+	public void setQuarantine(boolean q) {
+		quarantine = q;
+	}
+
+	/**
+	 * Get the quarantine holding the parsed objects.
+	 *
+	 * @return the quarantine, if {@link #isQuarantine()} was requested, is
+	 *         supported by this implementation and the pack contained objects
+	 *         to keep; null otherwise.
+	 * @since 4.8
+	 */
+	@Nullable
+	public PackQuarantine getQuarantine() {
+		return null;
+	}
+
 	/** @return true if the EOF should be read from the input after the footer. */
 	public boolean isCheckEofAfterPackFooter() {
 		return checkEofAfterPackFooter;
@@ -335,6 +408,18 @@ public ObjectIdSubclassMap<ObjectId> getNewObjectIds() {
 		return new ObjectIdSubclassMap<>();
 	}
 
+	/**
+	 * @return objects named by the commits, trees and tags of the incoming
+	 *         pack that are not themselves contained in it. Gitlinks are not
+	 *         included.
+	 * @since 4.8
+	 */
+	public ObjectIdSubclassMap<ObjectId> getReferencedObjectIds() {
+		if (referencedObjectIds != null)
+			return referencedObjectIds;
+		return new ObjectIdSubclassMap<>();
+	}
+
 	/** @return set of objects the incoming pack assumed for delta purposes */
 	public ObjectIdSubclassMap<ObjectId> getBaseObjectIds() {
 		if (baseObjectIds != null)
@@ -526,6 +611,12 @@ public PackLock parse(ProgressMonitor receiving, ProgressMonitor resolving)
 			readPackHeader();
 
 			entries = new PackedObjectInfo[(int) objectCount];
+			if (needReferencedObjectIds) {
+				if (newObjectIds == null)
+					newObjectIds = new ObjectIdSubclassMap<>();
+				referencedObjectIds = new ObjectIdSubclassMap<>();
+				referencedId = new MutableObjectId();
+			}
 			baseById = new ObjectIdOwnerMap<>();
 			baseByPos = new LongMap<>();
 			deferredCheckBlobs = new BlockList<>();
@@ -572,6 +663,8 @@ public PackLock parse(ProgressMonitor receiving, ProgressMonitor resolving)
 				}
 				resolving.endTask();
 			}
+			if (referencedObjectIds != null)
+				removeReceivedReferences();
 
 			packDigest = null;
 			baseById = null;
@@ -675,10 +768,12 @@ private void resolveDeltas(DeltaVisit visit, final int type,
 			objectDigest.digest(tempObjectId);
 
 			verifySafeObject(tempObjectId, type, visit.data);
+			trackReferences(tempObjectId, type, visit.data);
 
 			PackedObjectInfo oe;
 			oe = newInfo(tempObjectId, visit.delta, visit.parent.id);
 			oe.setOffset(visit.delta.position);
+			oe.setType(type);
 			onInflatedObjectData(oe, type, visit.data);
 			addObjectAndTrack(oe);
 			visit.id = oe;
@@ -849,6 +944,7 @@ private void resolveDeltasWithExternalBases(final ProgressMonitor progress)
 			visit.id = baseId;
 			final int typeCode = ldr.getType();
 			final PackedObjectInfo oe = newInfo(baseId, null, null);
+			oe.setType(typeCode);
 
 			if (onAppendBase(typeCode, visit.data, oe))
 				entries[entryCount++] = oe;
@@ -1054,10 +1150,12 @@ private void whole(final long pos, final int type, final long sz)
 			objectDigest.update(data);
 			objectDigest.digest(tempObjectId);
 			verifySafeObject(tempObjectId, type, data);
+			trackReferences(tempObjectId, type, data);
 		}
 
 		PackedObjectInfo obj = newInfo(tempObjectId, null, null);
 		obj.setOffset(pos);
+		obj.setType(type);
 		onEndWholeObject(obj);
 		if (data != null)
 			onInflatedObjectData(obj, type, data);
@@ -1654,6 +1752,104 @@ DeltaVisit next() {
 		}
 	}
 
+	private void trackReferences(AnyObjectId id, int type, byte[] data)
+			throws CorruptObjectException {
+		if (referencedObjectIds == null)
+			return;
+		switch (type) {
+		case Constants.OBJ_COMMIT: {
+			int ptr = RawParseUtils.match(data, 0, ObjectChecker.tree);
+			if (ptr < 0)
+				throw new CorruptObjectException(id,
+						JGitText.get().corruptObjectNotreeHeader);
+			ptr = addReferenceFromHex(id, data, ptr);
+			int p;
+			while ((p = RawParseUtils.match(data, ptr,
+					ObjectChecker.parent)) >= 0)
+				ptr = addReferenceFromHex(id, data, p);
+			break;
+		}
+		case Constants.OBJ_TAG: {
+			int ptr = RawParseUtils.match(data, 0, ObjectChecker.object);
+			if (ptr < 0)
+				throw new CorruptObjectException(id,
+						JGitText.get().corruptObjectNoObjectHeader);
+			addReferenceFromHex(id, data, ptr);
+			break;
+		}
+		case Constants.OBJ_TREE:
+			trackTreeReferences(id, data);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void trackTreeReferences(AnyObjectId id, byte[] data)
+			throws CorruptObjectException {
+		int ptr = 0;
+		while (ptr < data.length) {
+			int mode = 0;
+			for (;;) {
+				if (ptr == data.length)
+					throw new CorruptObjectException(id,
+							JGitText.get().corruptObjectTruncatedInMode);
+				byte c = data[ptr++];
+				if (c == ' ')
+					break;
+				if (c < '0' || c > '7')
+					throw new CorruptObjectException(id,
+							JGitText.get().corruptObjectInvalidModeChar);
+				mode = (mode << 3) + (c - '0');
+			}
+			for (;;) {
+				if (ptr == data.length)
+					throw new CorruptObjectException(id,
+							JGitText.get().corruptObjectTruncatedInName);
+				if (data[ptr++] == 0)
+					break;
+			}
+			if (ptr + Constants.OBJECT_ID_LENGTH > data.length)
+				throw new CorruptObjectException(id,
+						JGitText.get().corruptObjectTruncatedInObjectId);
+			if ((mode & FileMode.TYPE_MASK) != FileMode.TYPE_GITLINK) {
+				referencedId.fromRaw(data, ptr);
+				addReference(referencedId);
+			}
+			ptr += Constants.OBJECT_ID_LENGTH;
+		}
+	}
+
+	private int addReferenceFromHex(AnyObjectId id, byte[] data, int ptr)
+			throws CorruptObjectException {
+		if (ptr + Constants.OBJECT_ID_STRING_LENGTH >= data.length)
+			throw new CorruptObjectException(id,
+					JGitText.get().corruptObjectTruncatedInObjectId);
+		try {
+			referencedId.fromString(data, ptr);
+		} catch (IllegalArgumentException e) {
+			throw new CorruptObjectException(id,
+					JGitText.get().corruptObjectInvalidObject);
+		}
+		addReference(referencedId);
+		return ptr + Constants.OBJECT_ID_STRING_LENGTH + 1;
+	}
+
+	private void addReference(AnyObjectId id) {
+		if (!referencedObjectIds.contains(id))
+			referencedObjectIds.add(id.toObjectId());
+	}
+
+	private void removeReceivedReferences() {
+		ObjectIdSubclassMap<ObjectId> external = new ObjectIdSubclassMap<>();
+		for (ObjectId id : referencedObjectIds) {
+			if (!newObjectIds.contains(id))
+				external.add(id);
+		}
+		referencedObjectIds = external;
+		referencedId = null;
+	}
+
 	private void addObjectAndTrack(PackedObjectInfo oe) {
 		entries[entryCount++] = oe;
 		if (needNewObjectIds())
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.internal.storage.file.PackLock;
+import org.eclipse.jgit.lib.ObjectReader;
+
+/**
+ * Objects received by a {@link PackParser} and held outside of the repository.
+ * <p>
+ * Quarantined objects can be read through {@link #newReader()}, but are not
+ * visible to other readers of the repository until {@link #commit()} moves
+ * them into place. Closing a quarantine that was not committed deletes the
+ * objects, leaving nothing behind in the repository.
+ *
+ * @see PackParser#setQuarantine(boolean)
+ * @since 4.8
+ */
+public abstract class PackQuarantine implements AutoCloseable {
+	/**
+	 * Create a reader for the quarantined objects.
+	 * <p>
+	 * The reader also returns objects already stored in the repository. It
+	 * must not be used after the quarantine is committed or closed.
+	 *
+	 * @return a new reader; the caller must close it.
+	 * @throws IOException
+	 *             the quarantined objects cannot be opened.
+	 */
+	public abstract ObjectReader newReader() throws IOException;
+
+	/**
+	 * Make the quarantined objects visible in the repository.
+	 *
+	 * @return lock protecting the objects from garbage collection, if the
+	 *         parser was given a lock message; null otherwise.
+	 * @throws IOException
+	 *             the objects cannot be moved into the repository. They are
+	 *             discarded.
+	 */
+	@Nullable
+	public abstract PackLock commit() throws IOException;
+
+	/** Release the quarantine, deleting its objects if not committed. */
+	@Override
+	public abstract void close();
+}
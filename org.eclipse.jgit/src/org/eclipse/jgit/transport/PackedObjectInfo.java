@@ -45,6 +45,7 @@
 package org.eclipse.jgit.transport;
 
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectIdOwnerMap;
 
 /**
@@ -59,6 +60,8 @@ public class PackedObjectInfo extends ObjectIdOwnerMap.Entry {
 
 	private int crc;
 
+	private int type = Constants.OBJ_BAD;
+
 	PackedObjectInfo(final long headerOffset, final int packedCRC,
 			final AnyObjectId id) {
 		super(id);
@@ -112,4 +115,27 @@ public int getCRC() {
 	public void setCRC(final int crc) {
 		this.crc = crc;
 	}
+
+	/**
+	 * @return the object type, one of {@link Constants#OBJ_COMMIT},
+	 *         {@link Constants#OBJ_TREE}, {@link Constants#OBJ_BLOB} or
+	 *         {@link Constants#OBJ_TAG}; {@link Constants#OBJ_BAD} if the type
+	 *         was not recorded.
+	 * @since 4.8
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Record the type of the object.
+	 *
+	 * @param type
+	 *            the object type, as stored in the pack after any delta has
+	 *            been resolved.
+	 * @since 4.8
+	 */
+	public void setType(int type) {
+		this.type = type;
+	}
 }
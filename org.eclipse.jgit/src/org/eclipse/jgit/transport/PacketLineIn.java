@@ -67,6 +67,10 @@
  * This class performs no buffering on its own. This makes it suitable to
  * interleave reads performed by this class with reads performed directly
  * against the underlying InputStream.
+ * <p>
+ * Lines are read into a buffer reused by every read. Callers processing many
+ * lines, such as a stream of {@code have} lines, can use {@link #readLine()}
+ * and inspect the raw bytes instead of decoding each line to a String.
  */
 public class PacketLineIn {
 	private static final Logger log = LoggerFactory.getLogger(PacketLineIn.class);
@@ -87,7 +91,20 @@ static enum AckNackResult {
 		ACK_READY;
 	}
 
-	private final byte[] lineBuffer = new byte[SideBandOutputStream.SMALL_BUF];
+	private static final byte[] ACK = Constants.encodeASCII("ACK "); //$NON-NLS-1$
+
+	private static final byte[] NAK = Constants.encodeASCII("NAK"); //$NON-NLS-1$
+
+	private static final byte[] ERR = Constants.encodeASCII("ERR "); //$NON-NLS-1$
+
+	private static final byte[] CONTINUE = Constants.encodeASCII(" continue"); //$NON-NLS-1$
+
+	private static final byte[] COMMON = Constants.encodeASCII(" common"); //$NON-NLS-1$
+
+	private static final byte[] READY = Constants.encodeASCII(" ready"); //$NON-NLS-1$
+
+	private byte[] lineBuffer = new byte[SideBandOutputStream.SMALL_BUF];
+	private int lineLength = -1;
 	private final InputStream in;
 	private long limit;
 
@@ -116,27 +133,27 @@ public PacketLineIn(InputStream in, long limit) {
 	}
 
 	AckNackResult readACK(final MutableObjectId returnedId) throws IOException {
-		final String line = readString();
-		if (line.length() == 0)
+		final int len = readLine();
+		if (len <= 0)
 			throw new PackProtocolException(JGitText.get().expectedACKNAKFoundEOF);
-		if ("NAK".equals(line)) //$NON-NLS-1$
+		if (lineEquals(NAK))
 			return AckNackResult.NAK;
-		if (line.startsWith("ACK ")) { //$NON-NLS-1$
-			returnedId.fromString(line.substring(4, 44));
-			if (line.length() == 44)
+		if (lineStartsWith(ACK) && len >= 44) {
+			returnedId.fromString(lineBuffer, 4);
+			if (len == 44)
 				return AckNackResult.ACK;
 
-			final String arg = line.substring(44);
-			if (arg.equals(" continue")) //$NON-NLS-1$
+			if (regionEquals(44, CONTINUE))
 				return AckNackResult.ACK_CONTINUE;
-			else if (arg.equals(" common")) //$NON-NLS-1$
+			else if (regionEquals(44, COMMON))
 				return AckNackResult.ACK_COMMON;
-			else if (arg.equals(" ready")) //$NON-NLS-1$
+			else if (regionEquals(44, READY))
 				return AckNackResult.ACK_READY;
 		}
-		if (line.startsWith("ERR ")) //$NON-NLS-1$
-			throw new PackProtocolException(line.substring(4));
-		throw new PackProtocolException(MessageFormat.format(JGitText.get().expectedACKNAKGot, line));
+		if (lineStartsWith(ERR))
+			throw new PackProtocolException(RawParseUtils.decode(
+					Constants.CHARSET, lineBuffer, 4, len));
+		throw new PackProtocolException(MessageFormat.format(JGitText.get().expectedACKNAKGot, lineToString()));
 	}
 
 	/**
@@ -152,31 +169,12 @@ else if (arg.equals(" ready")) //$NON-NLS-1$
 	 *             the stream cannot be read.
 	 */
 	public String readString() throws IOException {
-		int len = readLength();
-		if (len == 0) {
-			log.debug("git< 0000"); //$NON-NLS-1$
+		int len = readLine();
+		if (len < 0)
 			return END;
-		}
-
-		len -= 4; // length header (4 bytes)
-		if (len == 0) {
-			log.debug("git< "); //$NON-NLS-1$
+		if (len == 0)
 			return ""; //$NON-NLS-1$
-		}
-
-		byte[] raw;
-		if (len <= lineBuffer.length)
-			raw = lineBuffer;
-		else
-			raw = new byte[len];
-
-		IO.readFully(in, raw, 0, len);
-		if (raw[len - 1] == '\n')
-			len--;
-
-		String s = RawParseUtils.decode(Constants.CHARSET, raw, 0, len);
-		log.debug("git< " + s); //$NON-NLS-1$
-		return s;
+		return RawParseUtils.decode(Constants.CHARSET, lineBuffer, 0, len);
 	}
 
 	/**
@@ -190,25 +188,150 @@ public String readString() throws IOException {
 	 *             the stream cannot be read.
 	 */
 	public String readStringRaw() throws IOException {
-		int len = readLength();
-		if (len == 0) {
+		int len = readPacket();
+		if (len < 0) {
 			log.debug("git< 0000"); //$NON-NLS-1$
 			return END;
 		}
 
-		len -= 4; // length header (4 bytes)
+		String s = RawParseUtils.decode(Constants.CHARSET, lineBuffer, 0, len);
+		log.debug("git< " + s); //$NON-NLS-1$
+		return s;
+	}
 
-		byte[] raw;
-		if (len <= lineBuffer.length)
-			raw = lineBuffer;
-		else
-			raw = new byte[len];
+	/**
+	 * Read a single packet into the line buffer of this reader.
+	 * <p>
+	 * Unlike {@link #readString()} the packet is not decoded. Its payload is
+	 * left in {@link #getLineBuffer()} starting at index 0, where it remains
+	 * valid until the next read from this instance. The buffer is reused
+	 * across calls, so reading a stream of lines allocates no memory once
+	 * the buffer has grown to fit the longest line. A trailing LF is not
+	 * included in the returned length.
+	 *
+	 * @return number of bytes in the line; -1 if the packet was the magic
+	 *         flush packet.
+	 * @throws IOException
+	 *             the stream cannot be read.
+	 * @since 4.8
+	 */
+	public int readLine() throws IOException {
+		int len = readPacket();
+		if (0 < len && lineBuffer[len - 1] == '\n')
+			lineLength = --len;
+		if (log.isDebugEnabled()) {
+			if (len < 0)
+				log.debug("git< 0000"); //$NON-NLS-1$
+			else
+				log.debug("git< " + lineToString()); //$NON-NLS-1$
+		}
+		return len;
+	}
 
-		IO.readFully(in, raw, 0, len);
+	/**
+	 * Get the buffer holding the line most recently read by
+	 * {@link #readLine()}.
+	 * <p>
+	 * Callers must not modify the buffer. Its content is only valid until
+	 * the next read from this instance.
+	 *
+	 * @return the line buffer. The line starts at index 0.
+	 * @since 4.8
+	 */
+	public byte[] getLineBuffer() {
+		return lineBuffer;
+	}
 
-		String s = RawParseUtils.decode(Constants.CHARSET, raw, 0, len);
-		log.debug("git< " + s); //$NON-NLS-1$
-		return s;
+	/**
+	 * Test if the line most recently read by {@link #readLine()} begins with
+	 * the given bytes.
+	 *
+	 * @param prefix
+	 *            the expected start of the line.
+	 * @return true if the line starts with {@code prefix}.
+	 * @since 4.8
+	 */
+	public boolean lineStartsWith(byte[] prefix) {
+		if (lineLength < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++) {
+			if (lineBuffer[i] != prefix[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Test if the line most recently read by {@link #readLine()} is exactly
+	 * the given bytes.
+	 *
+	 * @param text
+	 *            the expected line, without trailing LF.
+	 * @return true if the line equals {@code text}.
+	 * @since 4.8
+	 */
+	public boolean lineEquals(byte[] text) {
+		return regionEquals(0, text);
+	}
+
+	/**
+	 * Parse an object id from the line most recently read by
+	 * {@link #readLine()}.
+	 *
+	 * @param ptr
+	 *            position of the first hex digit of the id within the line.
+	 * @param id
+	 *            receives the parsed id.
+	 * @return true if the line was long enough to hold an id at {@code ptr};
+	 *         false if it was too short and {@code id} was not modified.
+	 * @throws org.eclipse.jgit.errors.InvalidObjectIdException
+	 *             the line holds characters that are not hex digits.
+	 * @since 4.8
+	 */
+	public boolean parseLineId(int ptr, MutableObjectId id) {
+		if (lineLength < ptr + Constants.OBJECT_ID_STRING_LENGTH)
+			return false;
+		id.fromString(lineBuffer, ptr);
+		return true;
+	}
+
+	/**
+	 * Decode the line most recently read by {@link #readLine()}.
+	 *
+	 * @return the line as a UTF-8 decoded string; {@link #END} if the line
+	 *         was the magic flush packet.
+	 * @since 4.8
+	 */
+	public String lineToString() {
+		if (lineLength < 0)
+			return END;
+		return RawParseUtils.decode(Constants.CHARSET, lineBuffer, 0,
+				lineLength);
+	}
+
+	private boolean regionEquals(int ptr, byte[] text) {
+		if (lineLength - ptr != text.length)
+			return false;
+		for (int i = 0; i < text.length; i++) {
+			if (lineBuffer[ptr + i] != text[i])
+				return false;
+		}
+		return true;
+	}
+
+	private int readPacket() throws IOException {
+		int len = readLength();
+		if (len == 0) {
+			lineLength = -1;
+			return -1;
+		}
+
+		len -= 4; // length header (4 bytes)
+		if (lineBuffer.length < len)
+			lineBuffer = new byte[len];
+		IO.readFully(in, lineBuffer, 0, len);
+		lineLength = len;
+		return len;
 	}
 
 	void discardUntilEnd() throws IOException {
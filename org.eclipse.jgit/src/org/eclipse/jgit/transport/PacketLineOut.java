@@ -48,6 +48,7 @@
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.util.RawParseUtils;
 import org.slf4j.Logger;
@@ -70,6 +71,8 @@ public class PacketLineOut {
 
 	private final byte[] lenbuffer;
 
+	private final byte[] idbuffer;
+
 	private boolean flushOnEnd;
 
 	/**
@@ -81,6 +84,7 @@ public class PacketLineOut {
 	public PacketLineOut(final OutputStream outputStream) {
 		out = outputStream;
 		lenbuffer = new byte[5];
+		idbuffer = new byte[128];
 		flushOnEnd = true;
 	}
 
@@ -146,6 +150,41 @@ public void writePacket(byte[] buf, int pos, int len) throws IOException {
 		}
 	}
 
+	/**
+	 * Write a packet holding an object id as a single write to the stream.
+	 * <p>
+	 * The packet is formatted in a buffer reused across calls, allowing lines
+	 * such as {@code have <id>} or {@code ACK <id> common} to be written
+	 * without allocating a String or byte array for each line.
+	 *
+	 * @param prefix
+	 *            bytes written before the id, for example {@code "ACK "}.
+	 * @param id
+	 *            the id, written as 40 hex digits.
+	 * @param suffix
+	 *            bytes written after the id, typically ending with LF.
+	 * @throws IOException
+	 *             the packet could not be written, the stream is corrupted as
+	 *             the packet may have been only partially written.
+	 * @since 4.8
+	 */
+	public void writeId(byte[] prefix, AnyObjectId id, byte[] suffix)
+			throws IOException {
+		int idPos = 4 + prefix.length;
+		int sfxPos = idPos + Constants.OBJECT_ID_STRING_LENGTH;
+		int len = sfxPos + suffix.length;
+		byte[] buf = len <= idbuffer.length ? idbuffer : new byte[len];
+		formatLength(buf, len);
+		System.arraycopy(prefix, 0, buf, 4, prefix.length);
+		id.copyTo(buf, idPos);
+		System.arraycopy(suffix, 0, buf, sfxPos, suffix.length);
+		out.write(buf, 0, len);
+		if (log.isDebugEnabled()) {
+			String s = RawParseUtils.decode(Constants.CHARSET, buf, 4, len - 4);
+			log.debug("git> " + s); //$NON-NLS-1$
+		}
+	}
+
 	/**
 	 * Write a packet end marker, sometimes referred to as a flush command.
 	 * <p>
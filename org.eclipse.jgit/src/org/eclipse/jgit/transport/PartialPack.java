@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * Pack data received by an interrupted fetch, kept to resume the transfer.
+ * <p>
+ * The data is stored as {@code $GIT_DIR/resume/<key>.pack.part}, where the
+ * key is the identity the remote assigned to the pack. Only the most recent
+ * partial pack of a repository is kept.
+ */
+class PartialPack {
+	private static final String SUFFIX = ".pack.part"; //$NON-NLS-1$
+
+	private final File dir;
+
+	private File file;
+
+	PartialPack(File gitDir) {
+		dir = new File(gitDir, "resume"); //$NON-NLS-1$
+		File[] list = dir.listFiles();
+		if (list != null) {
+			for (File f : list) {
+				String name = f.getName();
+				if (name.endsWith(SUFFIX) && ObjectId.isId(name.substring(0,
+						name.length() - SUFFIX.length()))) {
+					file = f;
+					break;
+				}
+			}
+		}
+	}
+
+	/** @return identity of the partial pack; null if there is none. */
+	@Nullable
+	String getKey() {
+		if (file == null)
+			return null;
+		String name = file.getName();
+		return name.substring(0, name.length() - SUFFIX.length());
+	}
+
+	/** @return number of bytes of the pack already received. */
+	long getLength() {
+		return file != null ? file.length() : 0;
+	}
+
+	/**
+	 * Begin receiving a pack.
+	 *
+	 * @param key
+	 *            identity of the pack, as sent by the remote.
+	 * @param start
+	 *            offset of the first byte the remote sends; 0 if it sends the
+	 *            entire pack. A partial pack with the same key is kept in that
+	 *            case, and only cut where the remote's data differs.
+	 * @param remote
+	 *            the pack data sent by the remote.
+	 * @return stream of the entire pack, reading data already received from
+	 *         the partial pack and saving data read from {@code remote}.
+	 * @throws IOException
+	 *             the partial pack cannot be written, or the remote resumes
+	 *             from an offset not matching the partial pack.
+	 */
+	Receiver receive(String key, long start, InputStream remote)
+			throws IOException {
+		if (0 < start && (!key.equals(getKey()) || start != getLength()))
+			throw new PackProtocolException(MessageFormat.format(
+					JGitText.get().invalidResumePack,
+					key + ' ' + start));
+		if (start == 0 && !key.equals(getKey())) {
+			delete();
+			FileUtils.mkdirs(dir, true);
+			file = new File(dir, key + SUFFIX);
+		}
+		return new Receiver(file, start, remote);
+	}
+
+	/**
+	 * Delete the partial pack.
+	 *
+	 * @throws IOException
+	 *             the partial pack cannot be deleted.
+	 */
+	void delete() throws IOException {
+		if (file != null) {
+			FileUtils.delete(file, FileUtils.SKIP_MISSING);
+			file = null;
+		}
+	}
+
+	/**
+	 * Pack stream reading the saved prefix and then the remote's data,
+	 * saving the latter to the partial pack.
+	 */
+	static class Receiver extends InputStream {
+		private final InputStream in;
+
+		private final InputStream remote;
+
+		private final RandomAccessFile out;
+
+		/** Length of the partial pack matching the remote's data. */
+		private long saved;
+
+		/** Offset of the next byte read from the remote. */
+		private long pos;
+
+		private boolean interrupted;
+
+		Receiver(File file, long start, InputStream remote)
+				throws IOException {
+			this.remote = remote;
+			this.out = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			this.saved = out.length();
+			this.pos = start;
+			InputStream tee = new InputStream() {
+				@Override
+				public int read() throws IOException {
+					byte[] b = new byte[1];
+					return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len)
+						throws IOException {
+					return readRemote(b, off, len);
+				}
+			};
+			if (0 < start) {
+				in = new SequenceInputStream(new FileInputStream(file), tee);
+			} else {
+				in = tee;
+			}
+		}
+
+		int readRemote(byte[] b, int off, int len) throws IOException {
+			int n;
+			try {
+				n = remote.read(b, off, len);
+			} catch (IOException e) {
+				interrupted = true;
+				throw e;
+			}
+			if (n <= 0) {
+				// A side band stream returns 0 if the data ends in a packet.
+				if (0 < len)
+					interrupted = true;
+				return n;
+			}
+			if (pos < saved) {
+				// The remote sends data again; keep the saved data as long
+				// as it is identical.
+				byte[] old = new byte[(int) Math.min(n, saved - pos)];
+				out.seek(pos);
+				out.readFully(old);
+				for (int i = 0; i < old.length; i++) {
+					if (old[i] != b[off + i]) {
+						saved = pos + i;
+						out.setLength(saved);
+						break;
+					}
+				}
+			}
+			out.seek(pos);
+			out.write(b, off, n);
+			pos += n;
+			saved = Math.max(saved, pos);
+			return n;
+		}
+
+		/**
+		 * @return true if the remote's data failed or ended early, rather than
+		 *         the pack being rejected while the data was still flowing.
+		 */
+		boolean isInterrupted() {
+			return interrupted;
+		}
+
+		/** @return number of bytes of the pack saved in the partial pack. */
+		long getSaved() {
+			return saved;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return in.read(b, off, len);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return in.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				out.close();
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
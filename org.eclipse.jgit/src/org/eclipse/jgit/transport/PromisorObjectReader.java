@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.storage.file.PackLock;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Reader for a partial clone that fetches missing objects on demand.
+ * <p>
+ * A repository cloned with a {@link FilterSpec} lacks the trees and blobs
+ * the filter omitted. When {@link #open(AnyObjectId, int)} or
+ * {@link #getObjectSize(AnyObjectId, int)} finds an object missing, this
+ * reader fetches it from the promisor remote named by
+ * {@code extensions.partialclone} and retries. {@link #has(AnyObjectId)} does
+ * not fetch. Callers that know they need many objects should pass them to
+ * {@link #fetch(Collection)} first, as each object fetched on demand costs a
+ * round trip to the remote.
+ * <p>
+ * Readers of repositories without a promisor remote behave like the
+ * repository's own reader.
+ *
+ * @since 4.8
+ */
+public class PromisorObjectReader extends ObjectReader.Filter {
+	private final Repository db;
+
+	private final String remote;
+
+	private final ObjectReader delegate;
+
+	/**
+	 * Create a reader fetching from the configured promisor remote.
+	 *
+	 * @param db
+	 *            the partial clone.
+	 */
+	public PromisorObjectReader(Repository db) {
+		this(db, db.getConfig().getString(
+				ConfigConstants.CONFIG_EXTENSIONS_SECTION, null,
+				ConfigConstants.CONFIG_KEY_PARTIAL_CLONE));
+	}
+
+	/**
+	 * Create a reader fetching from a specific remote.
+	 *
+	 * @param db
+	 *            the partial clone.
+	 * @param remote
+	 *            name or URI of the remote to fetch missing objects from; null
+	 *            to never fetch.
+	 */
+	public PromisorObjectReader(Repository db, String remote) {
+		this.db = db;
+		this.remote = remote;
+		this.delegate = db.newObjectReader();
+	}
+
+	/** @return the remote missing objects are fetched from, or null. */
+	public String getRemote() {
+		return remote;
+	}
+
+	@Override
+	protected ObjectReader delegate() {
+		return delegate;
+	}
+
+	@Override
+	public ObjectReader newReader() {
+		return new PromisorObjectReader(db, remote) {
+			@Override
+			protected void configureTransport(Transport tn) {
+				PromisorObjectReader.this.configureTransport(tn);
+			}
+		};
+	}
+
+	@Override
+	public ObjectLoader open(AnyObjectId objectId)
+			throws MissingObjectException, IOException {
+		return open(objectId, OBJ_ANY);
+	}
+
+	@Override
+	public ObjectLoader open(AnyObjectId objectId, int typeHint)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		try {
+			return delegate.open(objectId, typeHint);
+		} catch (MissingObjectException e) {
+			if (remote == null)
+				throw e;
+		}
+		fetch(Collections.singleton(objectId.copy()));
+		return delegate.open(objectId, typeHint);
+	}
+
+	@Override
+	public long getObjectSize(AnyObjectId objectId, int typeHint)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		try {
+			return delegate.getObjectSize(objectId, typeHint);
+		} catch (MissingObjectException e) {
+			if (remote == null)
+				throw e;
+		}
+		fetch(Collections.singleton(objectId.copy()));
+		return delegate.getObjectSize(objectId, typeHint);
+	}
+
+	/**
+	 * Fetch objects missing from the repository in a single request.
+	 * <p>
+	 * Trees are fetched without the blobs they reference. Objects already
+	 * present are skipped.
+	 *
+	 * @param objects
+	 *            the objects to fetch.
+	 * @throws IOException
+	 *             the remote cannot be contacted, or the objects cannot be
+	 *             stored.
+	 */
+	public void fetch(Collection<? extends ObjectId> objects)
+			throws IOException {
+		if (remote == null)
+			return;
+		List<Ref> want = new ArrayList<>();
+		for (ObjectId id : objects) {
+			if (!delegate.has(id))
+				want.add(new ObjectIdRef.Unpeeled(Ref.Storage.NETWORK,
+						id.name(), id.copy()));
+		}
+		if (want.isEmpty())
+			return;
+
+		try (Transport tn = Transport.open(db, remote)) {
+			// Missing blobs are named explicitly; there is no need for the
+			// remote to send the blobs of a missing tree as well. Thin packs
+			// are refused as their bases may be missing too.
+			tn.setFilterSpec(FilterSpec.withBlobLimit(0));
+			tn.setFetchThin(false);
+			configureTransport(tn);
+			try (FetchConnection conn = tn.openFetch()) {
+				conn.fetch(NullProgressMonitor.INSTANCE, want,
+						Collections.<ObjectId> emptySet());
+				for (PackLock lock : conn.getPackLocks())
+					lock.unlock();
+			}
+		} catch (URISyntaxException e) {
+			throw new TransportException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Configure the transport used to fetch missing objects, for example to
+	 * set its credentials provider or timeout.
+	 *
+	 * @param tn
+	 *            the transport, not yet connected.
+	 */
+	protected void configureTransport(Transport tn) {
+		// Use the repository's configuration.
+	}
+}
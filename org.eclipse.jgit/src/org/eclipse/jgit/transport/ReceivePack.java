@@ -266,6 +266,7 @@ private void service() throws IOException {
 				preReceive.onPreReceive(this, filterCommands(Result.NOT_ATTEMPTED));
 				if (atomic && anyRejects())
 					failPendingCommands();
+				commitQuarantine();
 				executeCommands();
 			}
 			unlockPack();
@@ -111,13 +111,20 @@ public void advertiseId(AnyObjectId id, String refName)
 			pckOut.writePacket(binArr, 0, binBuf.position());
 		}
 
-		private void append(String str) throws CharacterCodingException {
+		private void append(CharSequence str)
+				throws CharacterCodingException {
 			int n = str.length();
 			if (n > chArr.length) {
 				chArr = new char[n + 256];
 				chBuf = CharBuffer.wrap(chArr);
 			}
-			str.getChars(0, n, chArr, 0);
+			if (str instanceof String) {
+				((String) str).getChars(0, n, chArr, 0);
+			} else {
+				for (int i = 0; i < n; i++) {
+					chArr[i] = str.charAt(i);
+				}
+			}
 			chBuf.position(0).limit(n);
 			utf8.reset();
 			for (;;) {
@@ -150,7 +157,9 @@ private void grow() {
 
 		@Override
 		protected void writeOne(final CharSequence line) throws IOException {
-			pckOut.writeString(line.toString());
+			binBuf.position(0);
+			append(line);
+			pckOut.writePacket(binArr, 0, binBuf.position());
 		}
 
 		@Override
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Chooses the "have" lines of a fetch negotiation from a date ordered walk,
+ * skipping an exponentially growing number of commits along each line of
+ * history.
+ * <p>
+ * After a commit is sent, the next commit sent along the same line of
+ * history is 1, 2, 3, 5, 9, ... commits further back, so a client far ahead
+ * of the remote reaches common history in a logarithmic number of haves.
+ * Skipped commits the remote knows about are not recognized as common, which
+ * may make the pack larger. When the remote acknowledges a commit, the lines
+ * still being walked start again from a gap of one, as common history is
+ * likely close. Commits local references point to are always sent.
+ */
+class SkippingNegotiator {
+	private static class Gap {
+		/** Commits to skip before the next have on this line. */
+		int skip;
+
+		/** Gap to leave after the next have on this line. */
+		int interval;
+
+		Gap(int skip, int interval) {
+			this.skip = skip;
+			this.interval = interval;
+		}
+	}
+
+	private final Map<ObjectId, Gap> pending = new HashMap<>();
+
+	private long skipped;
+
+	/**
+	 * @param tips
+	 *            commits the walk starts from, which are never skipped.
+	 */
+	SkippingNegotiator(Collection<RevCommit> tips) {
+		for (RevCommit c : tips)
+			pending.put(c, new Gap(0, 0));
+	}
+
+	/**
+	 * @param walk
+	 *            walk over the local history, newest first.
+	 * @return next commit to send as "have"; null if the walk is done.
+	 * @throws IOException
+	 *             a commit cannot be read.
+	 */
+	RevCommit next(RevWalk walk) throws IOException {
+		RevCommit c;
+		while ((c = walk.next()) != null) {
+			Gap g = pending.remove(c);
+			if (g != null && g.skip > 0) {
+				skipped++;
+				enqueueParents(c, g.skip - 1, g.interval);
+				continue;
+			}
+			int interval = g != null ? g.interval : 0;
+			enqueueParents(c, interval, interval == 0 ? 1 : interval * 2);
+			return c;
+		}
+		return null;
+	}
+
+	private void enqueueParents(RevCommit c, int skip, int interval) {
+		for (RevCommit p : c.getParents()) {
+			Gap g = pending.get(p);
+			if (g == null)
+				pending.put(p, new Gap(skip, interval));
+			else if (skip < g.skip) {
+				// Reached along a shorter gap; send it sooner.
+				g.skip = skip;
+				g.interval = interval;
+			}
+		}
+	}
+
+	/** The remote acknowledged a commit; probe the remaining lines densely. */
+	void acknowledged() {
+		for (Gap g : pending.values()) {
+			g.skip = 0;
+			g.interval = 0;
+		}
+	}
+
+	/** @return number of commits skipped without sending a have line. */
+	long getSkipped() {
+		return skipped;
+	}
+}
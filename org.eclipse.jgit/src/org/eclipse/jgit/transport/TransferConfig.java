@@ -80,7 +80,27 @@ enum FsckMode {
 		ERROR, WARN, IGNORE;
 	}
 
+	/**
+	 * How a fetch chooses the commits it tells the remote it already has.
+	 *
+	 * @since 4.8
+	 */
+	public enum NegotiationAlgorithm {
+		/** Send every local commit, newest first. */
+		CONSECUTIVE,
+
+		/**
+		 * Skip an exponentially growing number of commits along each line of
+		 * history, finding common history in fewer rounds at the cost of a
+		 * possibly larger pack.
+		 */
+		SKIPPING;
+	}
+
 	private final boolean fetchFsck;
+	private final NegotiationAlgorithm negotiationAlgorithm;
+	private final boolean useBundleUris;
+	private final boolean pushNegotiate;
 	private final boolean receiveFsck;
 	private final String fsckSkipList;
 	private final EnumSet<ObjectChecker.ErrorType> ignore;
@@ -89,7 +109,10 @@ enum FsckMode {
 	private final boolean safeForMacOS;
 	private final boolean allowTipSha1InWant;
 	private final boolean allowReachableSha1InWant;
+	private final boolean allowAnySha1InWant;
+	private final boolean allowFilter;
 	final String[] hideRefs;
+	final String[] bundleUris;
 
 	TransferConfig(final Repository db) {
 		this(db.getConfig());
@@ -98,6 +121,10 @@ enum FsckMode {
 	TransferConfig(final Config rc) {
 		boolean fsck = rc.getBoolean("transfer", "fsckobjects", false); //$NON-NLS-1$ //$NON-NLS-2$
 		fetchFsck = rc.getBoolean("fetch", "fsckobjects", fsck); //$NON-NLS-1$ //$NON-NLS-2$
+		negotiationAlgorithm = rc.getEnum("fetch", null, //$NON-NLS-1$
+				"negotiationAlgorithm", NegotiationAlgorithm.CONSECUTIVE); //$NON-NLS-1$
+		useBundleUris = rc.getBoolean("transfer", "bundleuri", false); //$NON-NLS-1$ //$NON-NLS-2$
+		pushNegotiate = rc.getBoolean("push", "negotiate", false); //$NON-NLS-1$ //$NON-NLS-2$
 		receiveFsck = rc.getBoolean("receive", "fsckobjects", fsck); //$NON-NLS-1$ //$NON-NLS-2$
 		fsckSkipList = rc.getString(FSCK, null, "skipList"); //$NON-NLS-1$
 		allowInvalidPersonIdent = rc.getBoolean(FSCK, "allowInvalidPersonIdent", false); //$NON-NLS-1$
@@ -141,7 +168,12 @@ enum FsckMode {
 				"uploadpack", "allowtipsha1inwant", false); //$NON-NLS-1$ //$NON-NLS-2$
 		allowReachableSha1InWant = rc.getBoolean(
 				"uploadpack", "allowreachablesha1inwant", false); //$NON-NLS-1$ //$NON-NLS-2$
+		allowAnySha1InWant = rc.getBoolean(
+				"uploadpack", "allowanysha1inwant", false); //$NON-NLS-1$ //$NON-NLS-2$
+		allowFilter = rc.getBoolean(
+				"uploadpack", "allowfilter", false); //$NON-NLS-1$ //$NON-NLS-2$
 		hideRefs = rc.getStringList("uploadpack", null, "hiderefs"); //$NON-NLS-1$ //$NON-NLS-2$
+		bundleUris = rc.getStringList("uploadpack", null, "bundleuri"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
 	/**
@@ -183,6 +215,34 @@ private ObjectIdSet skipList() {
 		return null;
 	}
 
+	/**
+	 * @return algorithm a fetch uses to negotiate common history, from
+	 *         {@code fetch.negotiationAlgorithm}.
+	 * @since 4.8
+	 */
+	public NegotiationAlgorithm getNegotiationAlgorithm() {
+		return negotiationAlgorithm;
+	}
+
+	/**
+	 * @return should an initial fetch download bundles the server advertises
+	 *         before fetching the remaining objects, from
+	 *         {@code transfer.bundleuri}?
+	 * @since 4.8
+	 */
+	public boolean isUseBundleUris() {
+		return useBundleUris;
+	}
+
+	/**
+	 * @return should push ask the remote which commits it has before sending
+	 *         objects, from {@code push.negotiate}?
+	 * @since 4.8
+	 */
+	public boolean isPushNegotiate() {
+		return pushNegotiate;
+	}
+
 	/**
 	 * @return allow clients to request non-advertised tip SHA-1s?
 	 * @since 3.1
@@ -199,6 +259,24 @@ public boolean isAllowReachableSha1InWant() {
 		return allowReachableSha1InWant;
 	}
 
+	/**
+	 * @return allow clients to request any object by SHA-1, as partial
+	 *         clones do to fetch missing objects?
+	 * @since 4.8
+	 */
+	public boolean isAllowAnySha1InWant() {
+		return allowAnySha1InWant;
+	}
+
+	/**
+	 * @return allow clients to request a pack omitting objects matching a
+	 *         {@link FilterSpec}?
+	 * @since 4.8
+	 */
+	public boolean isAllowFilter() {
+		return allowFilter;
+	}
+
 	/**
 	 * @return {@link RefFilter} respecting configured hidden refs.
 	 * @since 3.1
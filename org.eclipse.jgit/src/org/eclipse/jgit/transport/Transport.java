@@ -63,6 +63,7 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -778,6 +779,27 @@ private static String findTrackingRefName(final String remoteName,
 	/** Should fetch request thin-pack if remote repository can produce it. */
 	private boolean fetchThin = DEFAULT_FETCH_THIN;
 
+	/** Objects fetch should ask the remote repository to omit. */
+	private FilterSpec filterSpec = FilterSpec.NO_FILTER;
+
+	/** Commits of history fetch should ask for; 0 for the full history. */
+	private int depth;
+
+	/** Oldest commits fetch should ask for; null for the full history. */
+	private Date deepenSince;
+
+	/** Refs whose history fetch should not ask for. */
+	private List<String> deepenNots = Collections.emptyList();
+
+	/** Should an initial fetch first download advertised bundles? */
+	private boolean useBundleUris;
+
+	/** Bundles to download in addition to the advertised ones. */
+	private List<String> bundleUris = Collections.emptyList();
+
+	/** Should an interrupted pack transfer be resumed? */
+	private boolean resumableFetch;
+
 	/** Name of the receive pack program, if it must be executed. */
 	private String optionReceivePack = RemoteConfig.DEFAULT_RECEIVE_PACK;
 
@@ -790,6 +812,9 @@ private static String findTrackingRefName(final String remoteName,
 	/** Should push be all-or-nothing atomic behavior? */
 	private boolean pushAtomic;
 
+	/** Should push ask the remote which commits it already has? */
+	private boolean pushNegotiate;
+
 	/** Should push just check for operation result, not really push. */
 	private boolean dryRun;
 
@@ -830,6 +855,8 @@ protected Transport(final Repository local, final URIish uri) {
 		this.local = local;
 		this.uri = uri;
 		this.objectChecker = tc.newObjectChecker();
+		this.useBundleUris = tc.isUseBundleUris();
+		this.pushNegotiate = tc.isPushNegotiate();
 		this.credentialsProvider = CredentialsProvider.getDefault();
 		prePush = Hooks.prePush(local, hookOutRedirect);
 	}
@@ -922,6 +949,205 @@ public void setFetchThin(final boolean fetchThin) {
 		this.fetchThin = fetchThin;
 	}
 
+	/**
+	 * @return objects fetch asks the remote repository to omit; never null.
+	 * @since 4.8
+	 */
+	public FilterSpec getFilterSpec() {
+		return filterSpec;
+	}
+
+	/**
+	 * Set the filter a fetch asks the remote repository to apply, making
+	 * the local repository a partial clone. The filter is only sent if the
+	 * remote repository advertises support for it; otherwise every object is
+	 * fetched.
+	 *
+	 * @param filter
+	 *            the objects to omit; null or {@link FilterSpec#NO_FILTER} to
+	 *            fetch every object.
+	 * @see PackTransport
+	 * @since 4.8
+	 */
+	public void setFilterSpec(FilterSpec filter) {
+		filterSpec = filter != null ? filter : FilterSpec.NO_FILTER;
+	}
+
+	/**
+	 * @return number of commits of history a fetch asks for, starting at the
+	 *         fetched refs; 0 if the history is not limited by depth.
+	 * @since 4.8
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Limit the history a fetch asks for to a number of commits, making the
+	 * local repository shallow.
+	 * <p>
+	 * If the local repository is already shallow, its history is deepened or
+	 * shortened to the new depth for the fetched refs.
+	 *
+	 * @param depth
+	 *            number of commits to fetch, starting at the fetched refs; 1
+	 *            fetches only the commits the refs point to. 0 to not limit
+	 *            the history by depth.
+	 * @since 4.8
+	 */
+	public void setDepth(int depth) {
+		if (depth < 0)
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().invalidDepth, Integer.valueOf(depth)));
+		this.depth = depth;
+	}
+
+	/**
+	 * @return time of the oldest commits a fetch asks for; null if the history
+	 *         is not limited by time.
+	 * @since 4.8
+	 */
+	public Date getDeepenSince() {
+		return deepenSince;
+	}
+
+	/**
+	 * Limit the history a fetch asks for to commits made at or after a time,
+	 * making the local repository shallow.
+	 * <p>
+	 * Requires the remote to support the {@code deepen-since} capability.
+	 * Cannot be combined with {@link #setDepth(int)}.
+	 *
+	 * @param since
+	 *            time of the oldest commits to fetch; null to not limit the
+	 *            history by time.
+	 * @since 4.8
+	 */
+	public void setDeepenSince(Date since) {
+		deepenSince = since;
+	}
+
+	/**
+	 * @return names of the remote refs whose history a fetch does not ask
+	 *         for; never null.
+	 * @since 4.8
+	 */
+	public List<String> getDeepenNots() {
+		return deepenNots;
+	}
+
+	/**
+	 * Exclude the history of remote refs from a fetch, making the local
+	 * repository shallow.
+	 * <p>
+	 * Requires the remote to support the {@code deepen-not} capability.
+	 * Cannot be combined with {@link #setDepth(int)}.
+	 *
+	 * @param refs
+	 *            names of refs advertised by the remote, e.g.
+	 *            {@code "refs/heads/maint"} or {@code "maint"}; the commits
+	 *            reachable from them are not fetched.
+	 * @since 4.8
+	 */
+	public void setDeepenNots(Collection<String> refs) {
+		deepenNots = refs == null || refs.isEmpty()
+				? Collections.<String> emptyList()
+				: Collections.unmodifiableList(new ArrayList<>(refs));
+	}
+
+	/** @return true if fetch asks for a shallow history. */
+	boolean isDeepen() {
+		return depth != 0 || deepenSince != null || !deepenNots.isEmpty();
+	}
+
+	/**
+	 * Default setting is the {@code transfer.bundleuri} configuration of the
+	 * local repository, false if not set.
+	 *
+	 * @return true if a fetch into a repository without refs downloads the
+	 *         bundles the remote advertises before fetching the remaining
+	 *         objects from the remote.
+	 * @since 4.8
+	 */
+	public boolean isUseBundleUris() {
+		return useBundleUris;
+	}
+
+	/**
+	 * Set whether a fetch into a repository without refs first downloads the
+	 * bundles advertised by the remote through the {@code bundle-uri}
+	 * capability.
+	 * <p>
+	 * Refs of a downloaded bundle are stored below {@code refs/bundles/}, so
+	 * the following fetch from the remote only transfers objects the bundles
+	 * did not contain. A bundle that cannot be downloaded or read is skipped.
+	 *
+	 * @param use
+	 *            true to download advertised bundles.
+	 * @since 4.8
+	 */
+	public void setUseBundleUris(boolean use) {
+		useBundleUris = use;
+	}
+
+	/**
+	 * @return bundles an initial fetch downloads before the bundles the
+	 *         remote advertises; never null.
+	 * @since 4.8
+	 */
+	public List<String> getBundleUris() {
+		return bundleUris;
+	}
+
+	/**
+	 * Set bundles an initial fetch downloads before the bundles the remote
+	 * advertises.
+	 * <p>
+	 * Bundles are only downloaded if {@link #isUseBundleUris()} is true. The
+	 * remote may only advertise {@code http} and {@code https} URIs. Bundles
+	 * on the local file system, given as a path or {@code file} URI, can
+	 * only be set here.
+	 *
+	 * @param uris
+	 *            URIs or local paths of the bundles; null or empty for none.
+	 * @since 4.8
+	 */
+	public void setBundleUris(List<String> uris) {
+		if (uris == null || uris.isEmpty())
+			bundleUris = Collections.emptyList();
+		else
+			bundleUris = Collections
+					.unmodifiableList(new ArrayList<>(uris));
+	}
+
+	/**
+	 * Default setting is false.
+	 *
+	 * @return true if fetch keeps the data of an interrupted pack transfer and
+	 *         asks the remote to resume it.
+	 * @since 4.8
+	 */
+	public boolean isResumableFetch() {
+		return resumableFetch;
+	}
+
+	/**
+	 * Set whether fetch resumes an interrupted pack transfer.
+	 * <p>
+	 * If the remote supports the {@code resume-pack} capability, data of a
+	 * pack transfer interrupted by a network failure is kept below
+	 * {@code $GIT_DIR/resume/}. The fetch then reconnects and the remote only
+	 * sends the rest of the pack. A later fetch of the same objects also
+	 * resumes the transfer.
+	 *
+	 * @param resumable
+	 *            true to resume interrupted pack transfers.
+	 * @since 4.8
+	 */
+	public void setResumableFetch(boolean resumable) {
+		resumableFetch = resumable;
+	}
+
 	/**
 	 * @return true if fetch will verify received objects are formatted
 	 *         correctly. Validating objects requires more CPU time on the
@@ -1035,6 +1261,36 @@ public void setPushAtomic(final boolean atomic) {
 		this.pushAtomic = atomic;
 	}
 
+	/**
+	 * Default setting is the value of {@code push.negotiate}, false if not
+	 * configured.
+	 *
+	 * @return true if push asks the remote which commits it has before
+	 *         sending objects.
+	 * @since 4.8
+	 */
+	public boolean isPushNegotiate() {
+		return pushNegotiate;
+	}
+
+	/**
+	 * Set whether push negotiates the commits the remote already has.
+	 * <p>
+	 * Without negotiation push only omits objects reachable from the refs
+	 * the remote advertises. If the remote supports the
+	 * {@code push-negotiate} capability, push first offers commits of the
+	 * pushed history and omits the history of those the remote has, even
+	 * if no advertised ref points to them. This costs additional round trips
+	 * and is not available over stateless (smart HTTP) connections.
+	 *
+	 * @param negotiate
+	 *            true to negotiate common commits before pushing.
+	 * @since 4.8
+	 */
+	public void setPushNegotiate(boolean negotiate) {
+		pushNegotiate = negotiate;
+	}
+
 	/**
 	 * @return true if destination refs should be removed if they no longer
 	 *         exist at the source repository.
@@ -285,8 +285,19 @@ Collection<String> getPackNames() throws IOException {
 			return packs;
 		}
 
+		@Override
+		boolean supportsConcurrentOpen() {
+			// Decryption keeps state between validating a response and
+			// decrypting its content.
+			return !s3.isEncrypted();
+		}
+
 		@Override
 		FileStream open(final String path) throws IOException {
+			if (path.endsWith(".pack")) { //$NON-NLS-1$
+				// Pack files can be large, download them in parallel ranges.
+				return new FileStream(s3.getParallel(bucket, resolveKey(path)));
+			}
 			final URLConnection c = s3.get(bucket, resolveKey(path));
 			final InputStream raw = c.getInputStream();
 			final InputStream in = s3.decrypt(c);
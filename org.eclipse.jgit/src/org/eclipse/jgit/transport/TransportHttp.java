@@ -747,6 +747,11 @@ Collection<String> getPackNames() throws IOException {
 			}
 		}
 
+		@Override
+		boolean supportsConcurrentOpen() {
+			return true;
+		}
+
 		@Override
 		FileStream open(final String path) throws IOException {
 			return open(path, AcceptEncoding.UNSPECIFIED);
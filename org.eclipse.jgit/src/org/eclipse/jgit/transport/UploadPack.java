@@ -44,15 +44,20 @@
 package org.eclipse.jgit.transport;
 
 import static org.eclipse.jgit.lib.RefDatabase.ALL;
+import static org.eclipse.jgit.transport.GitProtocolConstants.CAPABILITY_BUNDLE_URI;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_AGENT;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_ALLOW_REACHABLE_SHA1_IN_WANT;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_ALLOW_TIP_SHA1_IN_WANT;
+import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_DEEPEN_NOT;
+import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_DEEPEN_SINCE;
+import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_FILTER;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_INCLUDE_TAG;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_MULTI_ACK;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_MULTI_ACK_DETAILED;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_NO_DONE;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_NO_PROGRESS;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_OFS_DELTA;
+import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_RESUME_PACK;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_SHALLOW;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_SIDE_BAND;
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_SIDE_BAND_64K;
@@ -63,14 +68,17 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -79,6 +87,7 @@
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
@@ -99,6 +108,7 @@
 import org.eclipse.jgit.storage.pack.PackStatistics;
 import org.eclipse.jgit.transport.GitProtocolConstants.MultiAck;
 import org.eclipse.jgit.transport.RefAdvertiser.PacketLineOutRefAdvertiser;
+import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.io.InterruptTimer;
 import org.eclipse.jgit.util.io.NullOutputStream;
 import org.eclipse.jgit.util.io.TimeoutInputStream;
@@ -203,6 +213,24 @@ public Set<String> getOptions() {
 		}
 	}
 
+	private static final byte[] WANT_SP = Constants.encodeASCII("want "); //$NON-NLS-1$
+
+	private static final byte[] HAVE_SP = Constants.encodeASCII("have "); //$NON-NLS-1$
+
+	private static final byte[] DONE = Constants.encodeASCII("done"); //$NON-NLS-1$
+
+	private static final byte[] ACK_SP = Constants.encodeASCII("ACK "); //$NON-NLS-1$
+
+	private static final byte[] NAK_LF = Constants.encodeASCII("NAK\n"); //$NON-NLS-1$
+
+	private static final byte[] LF = { '\n' };
+
+	private static final byte[] CONTINUE_LF = Constants.encodeASCII(" continue\n"); //$NON-NLS-1$
+
+	private static final byte[] COMMON_LF = Constants.encodeASCII(" common\n"); //$NON-NLS-1$
+
+	private static final byte[] READY_LF = Constants.encodeASCII(" ready\n"); //$NON-NLS-1$
+
 	/** Database we read the objects from. */
 	private final Repository db;
 
@@ -215,6 +243,12 @@ public Set<String> getOptions() {
 	/** Configuration for various transfer options. */
 	private TransferConfig transferConfig;
 
+	/** Cache of packs sent to clients, or null. */
+	private PackCache packCache;
+
+	/** URIs of bundles to advertise; null to use {@link #transferConfig}. */
+	private List<String> bundleUris;
+
 	/** Timeout in seconds to wait for client interaction. */
 	private int timeout;
 
@@ -242,6 +276,9 @@ public Set<String> getOptions() {
 
 	private PacketLineOut pckOut;
 
+	/** Scratch id parsed from the most recent want or have line. */
+	private final MutableObjectId idBuf = new MutableObjectId();
+
 	private OutputStream msgOut = NullOutputStream.INSTANCE;
 
 	/** The refs we advertised as existing at the start of the connection. */
@@ -281,6 +318,21 @@ public Set<String> getOptions() {
 	/** Desired depth from the client on a shallow request. */
 	private int depth;
 
+	/** Oldest commit time (in seconds) of a shallow request; 0 if none. */
+	private int deepenSince;
+
+	/** Commits whose history is excluded from a shallow request. */
+	private final List<ObjectId> deepenNots = new ArrayList<>();
+
+	/** Objects the client asked us to omit from the pack. */
+	private FilterSpec filterSpec = FilterSpec.NO_FILTER;
+
+	/** Pack the client asks to resume, if any. */
+	private String resumeKey;
+
+	/** Bytes of {@link #resumeKey} the client already received. */
+	private long resumeOffset;
+
 	/** Commit time of the oldest common commit, in seconds. */
 	private int oldestTime;
 
@@ -571,6 +623,39 @@ public void setPackConfig(PackConfig pc) {
 		this.packConfig = pc;
 	}
 
+	/**
+	 * Set the cache storing generated packs for identical requests.
+	 * <p>
+	 * A pack sent from the cache is not generated, so {@link #getStatistics()}
+	 * returns null and the {@link PostUploadHook} is not called for it.
+	 *
+	 * @param cache
+	 *            the cache; if null every pack is generated.
+	 * @since 4.8
+	 */
+	public void setPackCache(PackCache cache) {
+		this.packCache = cache;
+	}
+
+	/**
+	 * Set the URIs of pre-generated bundles advertised to clients.
+	 * <p>
+	 * Each URI is advertised through the {@code bundle-uri} capability. A
+	 * client cloning the repository may download the bundles from there, for
+	 * example from a static file server, and then only fetch the objects the
+	 * bundles lack from this service. Bundles are typically written
+	 * periodically with a {@link BundleWriter}, e.g. after garbage collection.
+	 * URIs containing whitespace cannot be advertised and are ignored.
+	 *
+	 * @param uris
+	 *            the bundle URIs; null to use the {@code uploadpack.bundleuri}
+	 *            values of the repository configuration.
+	 * @since 4.8
+	 */
+	public void setBundleUris(Collection<String> uris) {
+		this.bundleUris = uris != null ? new ArrayList<>(uris) : null;
+	}
+
 	/**
 	 * @param tc
 	 *            configuration controlling transfer options. If null the source
@@ -579,7 +664,9 @@ public void setPackConfig(PackConfig pc) {
 	 */
 	public void setTransferConfig(TransferConfig tc) {
 		this.transferConfig = tc != null ? tc : new TransferConfig(db);
-		if (transferConfig.isAllowTipSha1InWant()) {
+		if (transferConfig.isAllowAnySha1InWant()) {
+			setRequestPolicy(RequestPolicy.ANY);
+		} else if (transferConfig.isAllowTipSha1InWant()) {
 			setRequestPolicy(transferConfig.isAllowReachableSha1InWant()
 				? RequestPolicy.REACHABLE_COMMIT_TIP : RequestPolicy.TIP);
 		} else {
@@ -747,7 +834,7 @@ else if (requestValidator instanceof AnyRequestValidator)
 
 			if (!clientShallowCommits.isEmpty())
 				verifyClientShallow();
-			if (depth != 0)
+			if (isDeepen())
 				processShallow();
 			if (!clientShallowCommits.isEmpty())
 				walk.assumeShallow(clientShallowCommits);
@@ -800,10 +887,29 @@ private static Set<ObjectId> refIdSet(Collection<Ref> refs) {
 		return ids;
 	}
 
+	/** @return true if the client asked for a shallow pack. */
+	private boolean isDeepen() {
+		return depth != 0 || deepenSince != 0 || !deepenNots.isEmpty();
+	}
+
+	/** @return depth of a shallow pack; unlimited if only time or refs cut it. */
+	private int shallowPackDepth() {
+		return depth != 0 ? depth : Integer.MAX_VALUE;
+	}
+
+	private DepthWalk.RevWalk newDepthWalk() {
+		DepthWalk.RevWalk dw = new DepthWalk.RevWalk(walk.getObjectReader(),
+				shallowPackDepth() - 1);
+		dw.setDeepenSince(deepenSince);
+		dw.setDeepenNots(deepenNots);
+		return dw;
+	}
+
 	private void processShallow() throws IOException {
-		int walkDepth = depth - 1;
-		try (DepthWalk.RevWalk depthWalk = new DepthWalk.RevWalk(
-				walk.getObjectReader(), walkDepth)) {
+		int walkDepth = shallowPackDepth() - 1;
+		try (DepthWalk.RevWalk depthWalk = newDepthWalk()) {
+			// Only the parents and commit times are needed.
+			depthWalk.setRetainBody(false);
 
 			// Find all the commits which will be shallow
 			for (ObjectId o : wantIds) {
@@ -815,23 +921,27 @@ private void processShallow() throws IOException {
 			}
 
 			RevCommit o;
+			boolean atLeastOne = false;
 			while ((o = depthWalk.next()) != null) {
 				DepthWalk.Commit c = (DepthWalk.Commit) o;
+				atLeastOne = true;
+				boolean boundary = c.getDepth() == walkDepth || c.isBoundary();
 
 				// Commits at the boundary which aren't already shallow in
 				// the client need to be marked as such
-				if (c.getDepth() == walkDepth
-						&& !clientShallowCommits.contains(c))
+				if (boundary && !clientShallowCommits.contains(c))
 					pckOut.writeString("shallow " + o.name()); //$NON-NLS-1$
 
 				// Commits not on the boundary which are shallow in the client
 				// need to become unshallowed
-				if (c.getDepth() < walkDepth
-						&& clientShallowCommits.remove(c)) {
+				if (!boundary && clientShallowCommits.remove(c)) {
 					unshallowCommits.add(c.copy());
 					pckOut.writeString("unshallow " + c.name()); //$NON-NLS-1$
 				}
 			}
+			if (!atLeastOne)
+				throw new PackProtocolException(
+						JGitText.get().noCommitsSelectedForShallow);
 		}
 		pckOut.end();
 	}
@@ -888,6 +998,54 @@ public void sendAdvertisedRefs(final RefAdvertiser adv) throws IOException,
 		}
 
 		adv.init(db);
+		advertiseCapabilities(adv);
+		adv.setDerefTags(true);
+		Map<String, Ref> advertisedOrDefaultRefs = getAdvertisedOrDefaultRefs();
+		findSymrefs(adv, advertisedOrDefaultRefs);
+		advertised = adv.send(advertisedOrDefaultRefs);
+		if (adv.isEmpty())
+			adv.advertiseId(ObjectId.zeroId(), "capabilities^{}"); //$NON-NLS-1$
+		adv.end();
+	}
+
+	/**
+	 * Get the capabilities {@link #sendAdvertisedRefs(RefAdvertiser)} would
+	 * advertise with the current settings.
+	 * <p>
+	 * The {@code symref} capabilities, which depend on the references of the
+	 * repository, are not included.
+	 *
+	 * @return the capabilities, in the order they are advertised.
+	 * @since 4.8
+	 */
+	public List<String> getAdvertisedCapabilities() {
+		final List<String> caps = new ArrayList<>();
+		advertiseCapabilities(new RefAdvertiser() {
+			@Override
+			public void advertiseCapability(String name) {
+				caps.add(name);
+			}
+
+			@Override
+			public void advertiseCapability(String name, String value) {
+				if (value != null)
+					caps.add(name + '=' + value);
+			}
+
+			@Override
+			protected void writeOne(CharSequence line) {
+				// Nothing is sent.
+			}
+
+			@Override
+			protected void end() {
+				// Nothing is sent.
+			}
+		});
+		return caps;
+	}
+
+	private void advertiseCapabilities(RefAdvertiser adv) {
 		adv.advertiseCapability(OPTION_INCLUDE_TAG);
 		adv.advertiseCapability(OPTION_MULTI_ACK_DETAILED);
 		adv.advertiseCapability(OPTION_MULTI_ACK);
@@ -897,6 +1055,16 @@ public void sendAdvertisedRefs(final RefAdvertiser adv) throws IOException,
 		adv.advertiseCapability(OPTION_THIN_PACK);
 		adv.advertiseCapability(OPTION_NO_PROGRESS);
 		adv.advertiseCapability(OPTION_SHALLOW);
+		adv.advertiseCapability(OPTION_DEEPEN_SINCE);
+		adv.advertiseCapability(OPTION_DEEPEN_NOT);
+		if (transferConfig.isAllowFilter())
+			adv.advertiseCapability(OPTION_FILTER);
+		if (packCache != null)
+			adv.advertiseCapability(OPTION_RESUME_PACK);
+		for (String uri : getBundleUris()) {
+			if (isCapabilityValue(uri))
+				adv.advertiseCapability(CAPABILITY_BUNDLE_URI, uri);
+		}
 		if (!biDirectionalPipe)
 			adv.advertiseCapability(OPTION_NO_DONE);
 		RequestPolicy policy = getRequestPolicy();
@@ -909,13 +1077,6 @@ public void sendAdvertisedRefs(final RefAdvertiser adv) throws IOException,
 				|| policy == null)
 			adv.advertiseCapability(OPTION_ALLOW_REACHABLE_SHA1_IN_WANT);
 		adv.advertiseCapability(OPTION_AGENT, UserAgent.get());
-		adv.setDerefTags(true);
-		Map<String, Ref> advertisedOrDefaultRefs = getAdvertisedOrDefaultRefs();
-		findSymrefs(adv, advertisedOrDefaultRefs);
-		advertised = adv.send(advertisedOrDefaultRefs);
-		if (adv.isEmpty())
-			adv.advertiseId(ObjectId.zeroId(), "capabilities^{}"); //$NON-NLS-1$
-		adv.end();
 	}
 
 	/**
@@ -945,21 +1106,44 @@ public OutputStream getMessageOutputStream() {
 		return msgOut;
 	}
 
+	private List<String> getBundleUris() {
+		if (bundleUris != null)
+			return bundleUris;
+		return Arrays.asList(transferConfig.bundleUris);
+	}
+
+	private static boolean isCapabilityValue(String value) {
+		if (value.isEmpty())
+			return false;
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) <= ' ')
+				return false;
+		}
+		return true;
+	}
+
 	private void recvWants() throws IOException {
 		boolean isFirst = true;
 		for (;;) {
-			String line;
+			int len;
 			try {
-				line = pckIn.readString();
+				len = pckIn.readLine();
 			} catch (EOFException eof) {
 				if (isFirst)
 					break;
 				throw eof;
 			}
 
-			if (line == PacketLineIn.END)
+			if (len < 0)
 				break;
 
+			if (!isFirst && len == 45 && pckIn.lineStartsWith(WANT_SP)) {
+				pckIn.parseLineId(5, idBuf);
+				wantIds.add(idBuf.toObjectId());
+				continue;
+			}
+
+			String line = pckIn.lineToString();
 			if (line.startsWith("deepen ")) { //$NON-NLS-1$
 				depth = Integer.parseInt(line.substring(7));
 				if (depth <= 0) {
@@ -970,11 +1154,34 @@ private void recvWants() throws IOException {
 				continue;
 			}
 
+			if (line.startsWith(OPTION_DEEPEN_SINCE + ' ')) {
+				parseDeepenSince(line);
+				continue;
+			}
+
+			if (line.startsWith(OPTION_DEEPEN_NOT + ' ')) {
+				parseDeepenNot(line);
+				continue;
+			}
+
 			if (line.startsWith("shallow ")) { //$NON-NLS-1$
 				clientShallowCommits.add(ObjectId.fromString(line.substring(8)));
 				continue;
 			}
 
+			if (transferConfig.isAllowFilter()
+					&& line.startsWith(OPTION_FILTER + ' ')) {
+				filterSpec = FilterSpec.fromFilterLine(
+						line.substring(OPTION_FILTER.length() + 1));
+				continue;
+			}
+
+			if (packCache != null
+					&& line.startsWith(OPTION_RESUME_PACK + ' ')) {
+				parseResumePack(line);
+				continue;
+			}
+
 			if (!line.startsWith("want ") || line.length() < 45) //$NON-NLS-1$
 				throw new PackProtocolException(MessageFormat.format(JGitText.get().expectedGot, "want", line)); //$NON-NLS-1$
 
@@ -990,6 +1197,52 @@ private void recvWants() throws IOException {
 			wantIds.add(ObjectId.fromString(line.substring(5)));
 			isFirst = false;
 		}
+		if (depth != 0 && (deepenSince != 0 || !deepenNots.isEmpty()))
+			throw new PackProtocolException(
+					JGitText.get().cannotCombineDeepen);
+	}
+
+	private void parseDeepenSince(String line) throws PackProtocolException {
+		String arg = line.substring(OPTION_DEEPEN_SINCE.length() + 1);
+		try {
+			long since = Long.parseLong(arg);
+			if (0 < since && since <= Integer.MAX_VALUE) {
+				deepenSince = (int) since;
+				return;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		throw new PackProtocolException(MessageFormat
+				.format(JGitText.get().invalidDeepenSince, arg));
+	}
+
+	private void parseDeepenNot(String line) throws IOException {
+		String name = line.substring(OPTION_DEEPEN_NOT.length() + 1);
+		// Only refs the client may see can exclude history.
+		Ref ref = RefDatabase.findRef(getAdvertisedOrDefaultRefs(), name);
+		ObjectId id = ref != null ? ref.getObjectId() : null;
+		if (id == null)
+			throw new PackProtocolException(MessageFormat
+					.format(JGitText.get().invalidDeepenNot, name));
+		deepenNots.add(id);
+	}
+
+	private void parseResumePack(String line) throws PackProtocolException {
+		// resume-pack <key> <offset>
+		String[] args = line.split(" "); //$NON-NLS-1$
+		try {
+			if (args.length == 3 && ObjectId.isId(args[1])) {
+				resumeKey = args[1];
+				resumeOffset = Long.parseLong(args[2]);
+				if (0 <= resumeOffset)
+					return;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		throw new PackProtocolException(MessageFormat
+				.format(JGitText.get().invalidResumePack, line));
 	}
 
 	/**
@@ -1005,6 +1258,20 @@ public int getDepth() {
 		return depth;
 	}
 
+	/**
+	 * Returns the filter the client asked to apply to the pack. Valid only
+	 * after calling recvWants().
+	 *
+	 * @return the requested filter; {@link FilterSpec#NO_FILTER} if the client
+	 *         did not send one.
+	 * @since 4.8
+	 */
+	public FilterSpec getFilterSpec() {
+		if (options == null)
+			throw new RequestNotYetReadException();
+		return filterSpec;
+	}
+
 	/**
 	 * Get the user agent of the client.
 	 * <p>
@@ -1030,48 +1297,49 @@ private boolean negotiate() throws IOException {
 		ObjectId last = ObjectId.zeroId();
 		List<ObjectId> peerHas = new ArrayList<>(64);
 		for (;;) {
-			String line;
+			int len;
 			try {
-				line = pckIn.readString();
+				len = pckIn.readLine();
 			} catch (EOFException eof) {
 				// EOF on stateless RPC (aka smart HTTP) and non-shallow request
 				// means the client asked for the updated shallow/unshallow data,
 				// disconnected, and will try another request with actual want/have.
 				// Don't report the EOF here, its a bug in the protocol that the client
 				// just disconnects without sending an END.
-				if (!biDirectionalPipe && depth > 0)
+				if (!biDirectionalPipe && isDeepen())
 					return false;
 				throw eof;
 			}
 
-			if (line == PacketLineIn.END) {
+			if (len < 0) {
 				last = processHaveLines(peerHas, last);
 				if (commonBase.isEmpty() || multiAck != MultiAck.OFF)
-					pckOut.writeString("NAK\n"); //$NON-NLS-1$
+					pckOut.writePacket(NAK_LF);
 				if (noDone && sentReady) {
-					pckOut.writeString("ACK " + last.name() + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+					pckOut.writeId(ACK_SP, last, LF);
 					return true;
 				}
 				if (!biDirectionalPipe)
 					return false;
 				pckOut.flush();
 
-			} else if (line.startsWith("have ") && line.length() == 45) { //$NON-NLS-1$
-				peerHas.add(ObjectId.fromString(line.substring(5)));
+			} else if (len == 45 && pckIn.lineStartsWith(HAVE_SP)) {
+				pckIn.parseLineId(5, idBuf);
+				peerHas.add(idBuf.toObjectId());
 
-			} else if (line.equals("done")) { //$NON-NLS-1$
+			} else if (pckIn.lineEquals(DONE)) {
 				last = processHaveLines(peerHas, last);
 
 				if (commonBase.isEmpty())
-					pckOut.writeString("NAK\n"); //$NON-NLS-1$
+					pckOut.writePacket(NAK_LF);
 
 				else if (multiAck != MultiAck.OFF)
-					pckOut.writeString("ACK " + last.name() + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+					pckOut.writeId(ACK_SP, last, LF);
 
 				return true;
 
 			} else {
-				throw new PackProtocolException(MessageFormat.format(JGitText.get().expectedGot, "have", line)); //$NON-NLS-1$
+				throw new PackProtocolException(MessageFormat.format(JGitText.get().expectedGot, "have", pckIn.lineToString())); //$NON-NLS-1$
 			}
 		}
 	}
@@ -1121,13 +1389,13 @@ private ObjectId processHaveLines(List<ObjectId> peerHas, ObjectId last)
 				switch (multiAck) {
 				case OFF:
 					if (commonBase.size() == 1)
-						pckOut.writeString("ACK " + obj.name() + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+						pckOut.writeId(ACK_SP, obj, LF);
 					break;
 				case CONTINUE:
-					pckOut.writeString("ACK " + obj.name() + " continue\n"); //$NON-NLS-1$ //$NON-NLS-2$
+					pckOut.writeId(ACK_SP, obj, CONTINUE_LF);
 					break;
 				case DETAILED:
-					pckOut.writeString("ACK " + obj.name() + " common\n"); //$NON-NLS-1$ //$NON-NLS-2$
+					pckOut.writeId(ACK_SP, obj, COMMON_LF);
 					break;
 				}
 			}
@@ -1153,10 +1421,10 @@ private ObjectId processHaveLines(List<ObjectId> peerHas, ObjectId last)
 						case OFF:
 							break;
 						case CONTINUE:
-							pckOut.writeString("ACK " + id.name() + " continue\n"); //$NON-NLS-1$ //$NON-NLS-2$
+							pckOut.writeId(ACK_SP, id, CONTINUE_LF);
 							break;
 						case DETAILED:
-							pckOut.writeString("ACK " + id.name() + " ready\n"); //$NON-NLS-1$ //$NON-NLS-2$
+							pckOut.writeId(ACK_SP, id, READY_LF);
 							sentReady = true;
 							break;
 						}
@@ -1168,7 +1436,7 @@ private ObjectId processHaveLines(List<ObjectId> peerHas, ObjectId last)
 
 		if (multiAck == MultiAck.DETAILED && !didOkToGiveUp && okToGiveUp()) {
 			ObjectId id = peerHas.get(peerHas.size() - 1);
-			pckOut.writeString("ACK " + id.name() + " ready\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			pckOut.writeId(ACK_SP, id, READY_LF);
 			sentReady = true;
 		}
 
@@ -1444,7 +1712,6 @@ private boolean reportInternalServerErrorOverSideband() {
 		}
 	}
 
-	@SuppressWarnings("deprecation")
 	private void sendPack(final boolean sideband) throws IOException {
 		ProgressMonitor pm = NullProgressMonitor.INSTANCE;
 		OutputStream packOut = rawOut;
@@ -1483,6 +1750,87 @@ private void sendPack(final boolean sideband) throws IOException {
 			throw noPack;
 		}
 
+		PackCache.Output cacheOut = null;
+		InputStream cached = null;
+		if (packCache != null) {
+			String key = packCacheKey();
+			try {
+				// Resume from the bytes stored so far, even if the
+				// interrupted request is still writing the pack.
+				if (options.contains(OPTION_RESUME_PACK)
+						&& key.equals(resumeKey) && 0 < resumeOffset)
+					cached = packCache.openForResume(db, key);
+				if (cached == null)
+					cacheOut = packCache.create(db, key);
+				if (cached == null && cacheOut == null) {
+					cached = packCache.open(db, key);
+					// If the other writer failed, store the pack instead.
+					if (cached == null)
+						cacheOut = packCache.create(db, key);
+				}
+			} catch (IOException err) {
+				// The pack is generated without the cache.
+			}
+			if (options.contains(OPTION_RESUME_PACK))
+				cached = sendResumeStart(key, cached);
+		}
+		if (cached != null) {
+			sendCachedPack(cached, packOut, sideband);
+			return;
+		}
+		try {
+			sendPack(sideband, pm, packOut, cacheOut);
+		} finally {
+			if (cacheOut != null)
+				cacheOut.close();
+		}
+	}
+
+	/**
+	 * Tell the client the identity of the pack and where the pack data sent
+	 * next starts, skipping data the client already has if possible.
+	 */
+	private InputStream sendResumeStart(String key, InputStream cached)
+			throws IOException {
+		long start = 0;
+		if (cached != null && key.equals(resumeKey) && 0 < resumeOffset) {
+			try {
+				IO.skipFully(cached, resumeOffset);
+				start = resumeOffset;
+			} catch (IOException err) {
+				// The cached pack is shorter; send it again from the start.
+				cached.close();
+				cached = null;
+				try {
+					cached = packCache.open(db, key);
+				} catch (IOException reopen) {
+					// The pack is generated without the cache.
+				}
+			}
+		}
+		pckOut.writeString(OPTION_RESUME_PACK + ' ' + key + ' ' + start + '\n');
+		return cached;
+	}
+
+	private void sendCachedPack(InputStream cached, OutputStream packOut,
+			boolean sideband) throws IOException {
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = cached.read(buf)) > 0)
+				packOut.write(buf, 0, n);
+		} finally {
+			cached.close();
+		}
+		packOut.flush();
+		if (sideband)
+			pckOut.end();
+	}
+
+	@SuppressWarnings("deprecation")
+	private void sendPack(boolean sideband, ProgressMonitor pm,
+			OutputStream packOut, PackCache.Output cacheOut)
+			throws IOException {
 		PackConfig cfg = packConfig;
 		if (cfg == null)
 			cfg = new PackConfig(db);
@@ -1490,12 +1838,13 @@ private void sendPack(final boolean sideband) throws IOException {
 		try {
 			pw.setIndexDisabled(true);
 			pw.setUseCachedPacks(true);
-			pw.setUseBitmaps(depth == 0 && clientShallowCommits.isEmpty());
+			pw.setUseBitmaps(!isDeepen() && clientShallowCommits.isEmpty());
 			pw.setClientShallowCommits(clientShallowCommits);
 			pw.setReuseDeltaCommits(true);
 			pw.setDeltaBaseAsOffset(options.contains(OPTION_OFS_DELTA));
 			pw.setThin(options.contains(OPTION_THIN_PACK));
 			pw.setReuseValidatingObjects(false);
+			pw.setFilterSpec(filterSpec);
 
 			if (commonBase.isEmpty() && refs != null) {
 				Set<ObjectId> tagTargets = new HashSet<>();
@@ -1511,9 +1860,9 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 			}
 
 			RevWalk rw = walk;
-			if (depth > 0) {
-				pw.setShallowPack(depth, unshallowCommits);
-				rw = new DepthWalk.RevWalk(walk.getObjectReader(), depth - 1);
+			if (isDeepen()) {
+				pw.setShallowPack(shallowPackDepth(), unshallowCommits);
+				rw = newDepthWalk();
 				rw.assumeShallow(clientShallowCommits);
 			}
 
@@ -1554,7 +1903,14 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 				}
 			}
 
-			pw.writePack(pm, NullProgressMonitor.INSTANCE, packOut);
+			if (cacheOut != null) {
+				CachingOutputStream out = new CachingOutputStream(packOut,
+						cacheOut);
+				pw.writePack(pm, NullProgressMonitor.INSTANCE, out);
+				out.commit();
+			} else {
+				pw.writePack(pm, NullProgressMonitor.INSTANCE, packOut);
+			}
 
 			if (msgOut != NullOutputStream.INSTANCE) {
 				String msg = pw.getStatistics().getMessage() + '\n';
@@ -1575,6 +1931,49 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 			pckOut.end();
 	}
 
+	/**
+	 * Describe everything the pack for the current request depends on,
+	 * except for the repository's objects.
+	 */
+	private String packCacheKey() {
+		MessageDigest md = Constants.newMessageDigest();
+		digestIds(md, "want", wantAll.isEmpty() ? wantIds : wantAll); //$NON-NLS-1$
+		digestIds(md, "have", commonBase); //$NON-NLS-1$
+		digestIds(md, "shallow", clientShallowCommits); //$NON-NLS-1$
+		digestIds(md, "unshallow", unshallowCommits); //$NON-NLS-1$
+		md.update(Constants.encode("depth " + depth + '\n')); //$NON-NLS-1$
+		if (deepenSince != 0)
+			md.update(Constants.encode(OPTION_DEEPEN_SINCE + ' ' + deepenSince
+					+ '\n'));
+		digestIds(md, OPTION_DEEPEN_NOT, deepenNots);
+		if (!filterSpec.isNoOp())
+			md.update(Constants.encode(OPTION_FILTER + ' '
+					+ filterSpec.filterLine() + '\n'));
+		for (String option : new String[] { OPTION_THIN_PACK,
+				OPTION_OFS_DELTA, OPTION_INCLUDE_TAG }) {
+			if (options.contains(option))
+				md.update(Constants.encode(option + '\n'));
+		}
+		if (options.contains(OPTION_INCLUDE_TAG) && refs != null) {
+			// The tags included depend on the advertised references.
+			for (Ref ref : new TreeMap<>(refs).values()) {
+				if (ref.getObjectId() == null)
+					continue;
+				md.update(Constants.encode("ref " + ref.getName() + ' ' //$NON-NLS-1$
+						+ ref.getObjectId().name() + '\n'));
+			}
+		}
+		return ObjectId.fromRaw(md.digest()).name();
+	}
+
+	private static void digestIds(MessageDigest md, String type,
+			Collection<? extends ObjectId> ids) {
+		List<ObjectId> sorted = new ArrayList<ObjectId>(ids);
+		Collections.sort(sorted);
+		for (ObjectId id : sorted)
+			md.update(Constants.encode(type + ' ' + id.name() + '\n'));
+	}
+
 	private static void findSymrefs(
 			final RefAdvertiser adv, final Map<String, Ref> refs) {
 		Ref head = refs.get(Constants.HEAD);
@@ -1583,6 +1982,81 @@ private static void findSymrefs(
 		}
 	}
 
+	/**
+	 * Copies a pack to the cache while it is sent to the client.
+	 * <p>
+	 * If the client connection fails the pack is still written to the cache,
+	 * so the client can resume the transfer; the failure is reported by
+	 * {@link #commit()}.
+	 */
+	private static class CachingOutputStream extends OutputStream {
+		private final OutputStream out;
+
+		private PackCache.Output cache;
+
+		private IOException clientError;
+
+		CachingOutputStream(OutputStream out, PackCache.Output cache) {
+			this.out = out;
+			this.cache = cache;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (clientError == null) {
+				try {
+					out.write(b, off, len);
+				} catch (IOException err) {
+					clientFailed(err);
+				}
+			}
+			if (cache != null) {
+				try {
+					cache.write(b, off, len);
+				} catch (IOException err) {
+					// The client gets the pack anyway, just don't cache it.
+					cache = null;
+					if (clientError != null)
+						throw clientError;
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (clientError == null) {
+				try {
+					out.flush();
+				} catch (IOException err) {
+					clientFailed(err);
+				}
+			}
+		}
+
+		private void clientFailed(IOException err) throws IOException {
+			if (cache == null)
+				throw err;
+			clientError = err;
+		}
+
+		void commit() throws IOException {
+			if (cache != null) {
+				try {
+					cache.commit();
+				} catch (IOException err) {
+					// Not cached, the next request generates the pack again.
+				}
+			}
+			if (clientError != null)
+				throw clientError;
+		}
+	}
+
 	private static class ResponseBufferedOutputStream extends OutputStream {
 		private final OutputStream rawOut;
 
@@ -60,6 +60,12 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.jgit.errors.CompoundException;
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -71,6 +77,7 @@
 import org.eclipse.jgit.internal.storage.file.PackLock;
 import org.eclipse.jgit.internal.storage.file.UnpackedObject;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.MutableObjectId;
@@ -110,6 +117,11 @@
  * Instead it delegates the transfer to a {@link WalkRemoteObjectDatabase},
  * which knows how to read individual files from the remote repository and
  * supply the data as a standard Java InputStream.
+ * <p>
+ * If the database supports it, loose objects waiting in the work queue are
+ * downloaded in the background by up to {@code fetch.parallelDownloads}
+ * threads. Objects are still inserted and parsed one at a time in queue
+ * order, so the connectivity guarantees of the sequential walk are kept.
  *
  * @see WalkRemoteObjectDatabase
  */
@@ -190,6 +202,17 @@ class WalkFetchConnection extends BaseFetchConnection {
 	/** Inserter to read objects from {@link #local}. */
 	private final ObjectReader reader;
 
+	/** Maximum number of loose objects downloaded in the background. */
+	private final int parallelDownloads;
+
+	/** Objects to consider for a background download, in discovery order. */
+	private final LinkedList<ObjectId> prefetchQueue;
+
+	/** Loose objects being downloaded (or downloaded) in the background. */
+	private final HashMap<ObjectId, LooseDownload> prefetched;
+
+	private ExecutorService prefetchPool;
+
 	WalkFetchConnection(final WalkTransport t, final WalkRemoteObjectDatabase w) {
 		Transport wt = (Transport)t;
 		local = wt.local;
@@ -221,6 +244,12 @@ class WalkFetchConnection extends BaseFetchConnection {
 
 		localCommitQueue = new DateRevQueue();
 		workQueue = new LinkedList<>();
+
+		parallelDownloads = local.getConfig().getInt(
+				ConfigConstants.CONFIG_FETCH_SECTION,
+				ConfigConstants.CONFIG_KEY_PARALLEL_DOWNLOADS, 8);
+		prefetchQueue = new LinkedList<>();
+		prefetched = new HashMap<>();
 	}
 
 	@Override
@@ -235,11 +264,18 @@ protected void doFetch(final ProgressMonitor monitor,
 		markLocalRefsComplete(have);
 		queueWants(want);
 
-		while (!monitor.isCancelled() && !workQueue.isEmpty()) {
-			final ObjectId id = workQueue.removeFirst();
-			if (!(id instanceof RevObject) || !((RevObject) id).has(COMPLETE))
-				downloadObject(monitor, id);
-			process(id);
+		try {
+			while (!monitor.isCancelled() && !workQueue.isEmpty()) {
+				final ObjectId id = workQueue.removeFirst();
+				if (!(id instanceof RevObject)
+						|| !((RevObject) id).has(COMPLETE)) {
+					startPrefetch();
+					downloadObject(monitor, id);
+				}
+				process(id);
+			}
+		} finally {
+			stopPrefetch();
 		}
 
 		try {
@@ -261,6 +297,7 @@ public void setPackLockMessage(final String message) {
 
 	@Override
 	public void close() {
+		stopPrefetch();
 		inserter.close();
 		reader.close();
 		for (final RemotePack p : unfetchedPacks) {
@@ -286,11 +323,11 @@ private void queueWants(final Collection<Ref> want)
 					continue;
 				if (inWorkQueue.add(id)) {
 					obj.add(IN_WORK_QUEUE);
-					workQueue.add(obj);
+					enqueue(obj);
 				}
 			} catch (MissingObjectException e) {
 				if (inWorkQueue.add(id))
-					workQueue.add(id);
+					enqueue(id);
 			} catch (IOException e) {
 				throw new TransportException(MessageFormat.format(JGitText.get().cannotRead, id.name()), e);
 			}
@@ -399,39 +436,153 @@ private void needs(final RevObject obj) {
 			return;
 		if (!obj.has(IN_WORK_QUEUE)) {
 			obj.add(IN_WORK_QUEUE);
-			workQueue.add(obj);
+			enqueue(obj);
 		}
 	}
 
+	private void enqueue(ObjectId id) {
+		workQueue.add(id);
+		if (parallelDownloads > 1)
+			prefetchQueue.add(id);
+	}
+
+	/**
+	 * Start background downloads of loose objects from the work queue.
+	 * <p>
+	 * Pack files take priority: while a known pack's index has not been
+	 * examined yet, or if a known pack contains the object, it is left to
+	 * {@link #downloadPackedObject(ProgressMonitor, AnyObjectId)}.
+	 *
+	 * @throws TransportException
+	 *             the local repository cannot be read.
+	 */
+	private void startPrefetch() throws TransportException {
+		if (parallelDownloads <= 1)
+			return;
+		final WalkRemoteObjectDatabase remote = remotes.get(lastRemoteIdx);
+		if (!remote.supportsConcurrentOpen())
+			return;
+		if (prefetchPool == null)
+			prefetchPool = newPrefetchPool(parallelDownloads);
+
+		while (prefetched.size() < parallelDownloads
+				&& !prefetchQueue.isEmpty()) {
+			final ObjectId id = prefetchQueue.getFirst();
+			if (id instanceof RevObject && ((RevObject) id).has(COMPLETE)
+					|| prefetched.containsKey(id)) {
+				prefetchQueue.removeFirst();
+				continue;
+			}
+			switch (inUnfetchedPack(id)) {
+			case 1:
+				prefetchQueue.removeFirst();
+				continue;
+			case -1:
+				return;
+			}
+			prefetchQueue.removeFirst();
+			if (alreadyHave(id))
+				continue;
+
+			final String looseName = looseName(id);
+			prefetched.put(id.copy(), new LooseDownload(remote,
+					prefetchPool.submit(new Callable<byte[]>() {
+						@Override
+						public byte[] call() throws IOException {
+							return remote.open(looseName).toArray();
+						}
+					})));
+		}
+	}
+
+	private static ExecutorService newPrefetchPool(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final ThreadFactory baseFactory = Executors
+					.defaultThreadFactory();
+
+			@Override
+			public Thread newThread(Runnable taskBody) {
+				Thread thr = baseFactory.newThread(taskBody);
+				thr.setName("JGit-WalkFetch"); //$NON-NLS-1$
+				thr.setDaemon(true);
+				return thr;
+			}
+		});
+	}
+
+	/**
+	 * @param id
+	 *            object to find.
+	 * @return 1 if a known pack has the object; 0 if no known pack has it; -1
+	 *         if not all known packs have been examined yet.
+	 */
+	private int inUnfetchedPack(AnyObjectId id) {
+		for (RemotePack pack : unfetchedPacks) {
+			if (pack.index == null)
+				return -1;
+			if (pack.index.hasObject(id))
+				return 1;
+		}
+		return 0;
+	}
+
+	private void stopPrefetch() {
+		if (prefetchPool != null) {
+			prefetchPool.shutdownNow();
+			prefetchPool = null;
+		}
+		prefetched.clear();
+		prefetchQueue.clear();
+	}
+
 	private void downloadObject(final ProgressMonitor pm, final AnyObjectId id)
 			throws TransportException {
-		if (alreadyHave(id))
+		LooseDownload pending = prefetched.remove(id);
+		if (alreadyHave(id)) {
+			if (pending != null)
+				pending.data.cancel(true);
 			return;
+		}
 
 		for (;;) {
 			// Try a pack file we know about, but don't have yet. Odds are
 			// that if it has this object, it has others related to it so
 			// getting the pack is a good bet.
 			//
-			if (downloadPackedObject(pm, id))
+			if (downloadPackedObject(pm, id)) {
+				if (pending != null)
+					pending.data.cancel(true);
 				return;
+			}
+
+			// Use the loose object if it was already downloaded in the
+			// background.
+			//
+			WalkRemoteObjectDatabase tried = null;
+			if (pending != null) {
+				tried = pending.remote;
+				if (insertPrefetched(id, pending)) {
+					lastRemoteIdx = remotes.indexOf(tried);
+					return;
+				}
+				pending = null;
+			}
 
 			// Search for a loose object over all alternates, starting
 			// from the one we last successfully located an object through.
 			//
-			final String idStr = id.name();
-			final String subdir = idStr.substring(0, 2);
-			final String file = idStr.substring(2);
-			final String looseName = subdir + "/" + file; //$NON-NLS-1$
+			final String looseName = looseName(id);
 
 			for (int i = lastRemoteIdx; i < remotes.size(); i++) {
-				if (downloadLooseObject(id, looseName, remotes.get(i))) {
+				if (remotes.get(i) != tried
+						&& downloadLooseObject(id, looseName, remotes.get(i))) {
 					lastRemoteIdx = i;
 					return;
 				}
 			}
 			for (int i = 0; i < lastRemoteIdx; i++) {
-				if (downloadLooseObject(id, looseName, remotes.get(i))) {
+				if (remotes.get(i) != tried
+						&& downloadLooseObject(id, looseName, remotes.get(i))) {
 					lastRemoteIdx = i;
 					return;
 				}
@@ -493,6 +644,39 @@ private void downloadObject(final ProgressMonitor pm, final AnyObjectId id)
 		}
 	}
 
+	private static String looseName(AnyObjectId id) {
+		final String idStr = id.name();
+		final String subdir = idStr.substring(0, 2);
+		final String file = idStr.substring(2);
+		return subdir + "/" + file; //$NON-NLS-1$
+	}
+
+	private boolean insertPrefetched(final AnyObjectId id,
+			final LooseDownload pending) throws TransportException {
+		try {
+			verifyAndInsertLooseObject(id, pending.data.get());
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransportException(MessageFormat.format(
+					JGitText.get().cannotDownload, id.name()), e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof FileNotFoundException) {
+				recordError(id, cause);
+				return false;
+			}
+			throw new TransportException(MessageFormat.format(
+					JGitText.get().cannotDownload, id.name()), cause);
+		} catch (FileNotFoundException e) {
+			recordError(id, e);
+			return false;
+		} catch (IOException e) {
+			throw new TransportException(MessageFormat.format(
+					JGitText.get().cannotDownload, id.name()), e);
+		}
+	}
+
 	private boolean alreadyHave(final AnyObjectId id) throws TransportException {
 		try {
 			return reader.has(id);
@@ -577,6 +761,18 @@ private boolean downloadPackedObject(final ProgressMonitor monitor,
 				continue;
 			}
 
+			// Objects in the pack need not be downloaded in the background.
+			//
+			final Iterator<Map.Entry<ObjectId, LooseDownload>> dl = prefetched
+					.entrySet().iterator();
+			while (dl.hasNext()) {
+				final Map.Entry<ObjectId, LooseDownload> e = dl.next();
+				if (pack.index.hasObject(e.getKey())) {
+					e.getValue().data.cancel(true);
+					dl.remove();
+				}
+			}
+
 			// Complete any other objects that we can.
 			//
 			final Iterator<ObjectId> pending = swapFetchQueue();
@@ -800,6 +996,17 @@ private void recordError(final AnyObjectId id, final Throwable what) {
 		errors.add(what);
 	}
 
+	private static class LooseDownload {
+		final WalkRemoteObjectDatabase remote;
+
+		final Future<byte[]> data;
+
+		LooseDownload(WalkRemoteObjectDatabase remote, Future<byte[]> data) {
+			this.remote = remote;
+			this.data = data;
+		}
+	}
+
 	private class RemotePack {
 		final WalkRemoteObjectDatabase connection;
 
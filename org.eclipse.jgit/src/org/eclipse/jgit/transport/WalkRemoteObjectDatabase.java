@@ -154,6 +154,20 @@ abstract Collection<WalkRemoteObjectDatabase> getAlternates()
 	abstract FileStream open(String path) throws FileNotFoundException,
 			IOException;
 
+	/**
+	 * Check if {@link #open(String)} may be called from several threads at
+	 * once.
+	 * <p>
+	 * Implementations which issue an independent request for every file, such
+	 * as HTTP, should return true to allow {@link WalkFetchConnection} to
+	 * download several loose objects concurrently.
+	 *
+	 * @return true if concurrent calls to {@link #open(String)} are safe.
+	 */
+	boolean supportsConcurrentOpen() {
+		return false;
+	}
+
 	/**
 	 * Create a new connection for a discovered alternate object database
 	 * <p>
@@ -281,4 +281,17 @@ public void configure(KeyManager[] km, TrustManager[] tm,
 	 */
 	public void setHostnameVerifier(HostnameVerifier hostnameverifier)
 			throws NoSuchAlgorithmException, KeyManagementException;
+
+	/**
+	 * Release the connection once the response has been processed.
+	 * <p>
+	 * Implementations pooling connections return the underlying connection
+	 * to the pool, reading what is left of the response body if necessary.
+	 * The default implementation does nothing.
+	 *
+	 * @since 4.8
+	 */
+	public default void disconnect() {
+		// Nothing to release.
+	}
 }
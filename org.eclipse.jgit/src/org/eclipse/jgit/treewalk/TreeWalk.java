@@ -1438,9 +1438,19 @@ private String getFilterCommandDefinition(String filterDriverName,
 					+ filterDriverName + '/' + filterCommandType;
 			if (filterCommands != null
 					&& filterCommands.contains(builtinFilterCommand)) {
-				filterCommand = builtinFilterCommand;
+				return cacheFilterCommand(key, builtinFilterCommand);
 			}
 		}
+		// A long-running process takes precedence over per-file commands
+		if (config.getString(ConfigConstants.CONFIG_FILTER_SECTION,
+				filterDriverName, ConfigConstants.CONFIG_KEY_PROCESS) != null) {
+			filterCommand = Constants.PROCESS_FILTER_PREFIX + filterDriverName
+					+ '/' + filterCommandType;
+		}
+		return cacheFilterCommand(key, filterCommand);
+	}
+
+	private String cacheFilterCommand(String key, String filterCommand) {
 		if (filterCommand != null) {
 			filterCommandsByNameDotType.put(key, filterCommand);
 		}
@@ -66,6 +66,7 @@
 import org.eclipse.jgit.attributes.AttributesRule;
 import org.eclipse.jgit.attributes.FilterCommand;
 import org.eclipse.jgit.attributes.FilterCommandRegistry;
+import org.eclipse.jgit.attributes.FilterProcess;
 import org.eclipse.jgit.diff.RawText;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
@@ -464,6 +465,16 @@ private InputStream filterClean(InputStream in, OperationType opType)
 				}
 				return buffer.openInputStream();
 			}
+			if (FilterProcess.isProcessCommand(filterCommand)) {
+				LocalFile buffer = new TemporaryBuffer.LocalFile(null);
+				try {
+					FilterProcess.run(repository, filterCommand,
+							getEntryPathString(), in, buffer);
+				} finally {
+					buffer.close();
+				}
+				return buffer.openInputStream();
+			}
 			FS fs = repository.getFS();
 			ProcessBuilder filterProcessBuilder = fs.runInShell(filterCommand,
 					new String[0]);